@@ -59,6 +59,7 @@ public interface DataManager
 	void clearAllAttachments() throws AttachmentStorageException;
 	
 	public File getContactInfoFile(String accountId) throws IOException;
+	public boolean hasContactInfo(String accountId) throws IOException;
 	public void writeContactInfoToFile(String accountId, Vector contactInfo) throws IOException;
 	public Vector getContactInfo(String accountId) throws IOException;
 	
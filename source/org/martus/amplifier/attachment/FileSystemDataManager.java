@@ -28,6 +28,8 @@ package org.martus.amplifier.attachment;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import org.martus.amplifier.main.MartusAmplifier;
@@ -38,11 +40,14 @@ import org.martus.common.crypto.MartusCrypto;
 import org.martus.common.crypto.MartusCrypto.CryptoException;
 import org.martus.common.database.DatabaseKey;
 import org.martus.common.database.ServerFileDatabase;
+import org.martus.common.database.Database.PacketVisitor;
 import org.martus.common.database.Database.RecordHiddenException;
 import org.martus.common.database.FileDatabase.MissingAccountMapException;
 import org.martus.common.database.FileDatabase.MissingAccountMapSignatureException;
 import org.martus.common.fieldspec.StandardFieldSpecs;
+import org.martus.common.packet.BulletinHeaderPacket;
 import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.Packet;
 import org.martus.common.packet.UniversalId;
 import org.martus.common.utilities.MartusServerUtilities;
 import org.martus.util.inputstreamwithseek.InputStreamWithSeek;
@@ -105,7 +110,10 @@ public class FileSystemDataManager implements DataManager
 	{
 		try
 		{
-			db.writeRecord(DatabaseKey.createSealedKey(attachmentId), data);
+			synchronized(writeLock)
+			{
+				db.writeRecord(DatabaseKey.createSealedKey(attachmentId), data);
+			}
 		}
 		catch (Exception e)
 		{
@@ -122,23 +130,57 @@ public class FileSystemDataManager implements DataManager
 		catch (Exception e)
 		{
 			throw new AttachmentStorageException(e);
-		}		
+		}
+		finally
+		{
+			forgetAllContactInfo();
+		}
 	}
 	
 	public File getContactInfoFile(String accountId) throws IOException
 	{
-		return db.getContactInfoFile(accountId);	
+		return getContactInfoEntry(accountId).file;	
+	}
+	
+	public boolean hasContactInfo(String accountId) throws IOException
+	{
+		return getContactInfoEntry(accountId).exists;
 	}
 	
 	public void writeContactInfoToFile(String accountId, Vector contactInfo) throws IOException
 	{
-		MartusServerUtilities.writeContatctInfo(accountId, contactInfo, db.getContactInfoFile(accountId));
+		try
+		{
+			synchronized(writeLock)
+			{
+				MartusServerUtilities.writeContatctInfo(accountId, contactInfo, db.getContactInfoFile(accountId));
+			}
+		}
+		finally
+		{
+			forgetContactInfo(accountId);
+		}
 	}
 
 	
 	public Vector getContactInfo(String accountId) throws IOException
 	{
-		File contactFile = getContactInfoFile(accountId);
+		ContactInfoEntry entry = getContactInfoEntry(accountId);
+		synchronized(entry)
+		{
+			if(!entry.loaded)
+			{
+				entry.verifiedInfo = loadVerifiedContactInfo(entry.file, accountId);
+				entry.loaded = true;
+			}
+			if(entry.verifiedInfo == null)
+				return null;
+			return new Vector(entry.verifiedInfo);
+		}
+	}
+	
+	private Vector loadVerifiedContactInfo(File contactFile, String accountId) throws IOException
+	{
 		if(!contactFile.exists())
 			return null;
 		
@@ -151,6 +193,39 @@ public class FileSystemDataManager implements DataManager
 		return info;
 	}
 
+	// NOTE: Contact info only changes through writeContactInfoToFile, so 
+	// whether it exists, and its verified contents, are looked up once 
+	// per account instead of on every search result and every view
+	private ContactInfoEntry getContactInfoEntry(String accountId) throws IOException
+	{
+		synchronized(contactInfoCache)
+		{
+			ContactInfoEntry entry = (ContactInfoEntry)contactInfoCache.get(accountId);
+			if(entry == null)
+			{
+				entry = new ContactInfoEntry(db.getContactInfoFile(accountId));
+				contactInfoCache.put(accountId, entry);
+			}
+			return entry;
+		}
+	}
+	
+	private void forgetContactInfo(String accountId)
+	{
+		synchronized(contactInfoCache)
+		{
+			contactInfoCache.remove(accountId);
+		}
+	}
+	
+	private void forgetAllContactInfo()
+	{
+		synchronized(contactInfoCache)
+		{
+			contactInfoCache.clear();
+		}
+	}
+
 	private Vector removeContactInfoBlankDataElements(Vector info)
 	{
 		Vector stripped = new Vector();
@@ -171,25 +246,61 @@ public class FileSystemDataManager implements DataManager
 
 	public void putDataPacket(UniversalId uid, ZipEntryInputStreamWithSeek data) throws IOException, RecordHiddenException, CryptoException
 	{
-		db.writeRecord(DatabaseKey.createSealedKey(uid), data);
+		synchronized(writeLock)
+		{
+			db.writeRecord(DatabaseKey.createSealedKey(uid), data);
+		}
 	}
 
 	public FieldDataPacket getFieldDataPacket(UniversalId uid) throws Exception
 	{
 		FieldSpecCollection standardPublicFieldSpecs = StandardFieldSpecs.getDefaultTopSetionFieldSpecs();
-		FieldDataPacket fdp = new FieldDataPacket(uid, standardPublicFieldSpecs);
+		return getFieldDataPacket(uid, standardPublicFieldSpecs);
+	}
+	
+	public FieldDataPacket getFieldDataPacket(UniversalId uid, FieldSpecCollection fieldSpecs) throws Exception
+	{
+		FieldDataPacket fdp = new FieldDataPacket(uid, fieldSpecs);
+		loadPacket(fdp);
+		return fdp;
+	}
+	
+	public BulletinHeaderPacket getBulletinHeaderPacket(UniversalId uid) throws Exception
+	{
+		BulletinHeaderPacket bhp = new BulletinHeaderPacket(uid);
+		loadPacket(bhp);
+		return bhp;
+	}
+	
+	private void loadPacket(Packet packet) throws Exception
+	{
 		InputStreamWithSeek in = null;
 		try
 		{
-		in = db.openInputStream(DatabaseKey.createSealedKey(fdp.getUniversalId()),db.security);					
-		fdp.loadFromXml(in, null);
+		in = db.openInputStream(DatabaseKey.createSealedKey(packet.getUniversalId()),db.security);					
+		packet.loadFromXml(in, null);
 		}
 		finally
 		{
 			if(in != null)
 				in.close();
 		}
-		return fdp;
+	}
+	
+	// NOTE: Returns the universal ids of every stored bulletin header 
+	// packet, which is every bulletin the amplifier has received
+	public Vector getStoredBulletinIds()
+	{
+		final Vector bulletinIds = new Vector();
+		db.visitAllRecords(new PacketVisitor()
+		{
+			public void visit(DatabaseKey key)
+			{
+				if(BulletinHeaderPacket.isValidLocalId(key.getLocalId()))
+					bulletinIds.add(key.getUniversalId());
+			}
+		});
+		return bulletinIds;
 	}
 	
 	public ServerFileDatabase getDatabase()
@@ -197,6 +308,24 @@ public class FileSystemDataManager implements DataManager
 		return db;
 	}
 
+	static class ContactInfoEntry
+	{
+		ContactInfoEntry(File fileToUse)
+		{
+			file = fileToUse;
+			exists = file.exists();
+		}
+		
+		File file;
+		boolean exists;
+		boolean loaded;
+		Vector verifiedInfo;
+	}
+
 	private ServerFileDatabase db;
+	private Map contactInfoCache = new HashMap();
+	// NOTE: Several backup servers are synced at once, so writes to the 
+	// database are made one at a time
+	private Object writeLock = new Object();
 	public static final int Kbytes = 1024;
 }
\ No newline at end of file
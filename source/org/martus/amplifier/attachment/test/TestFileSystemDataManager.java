@@ -287,6 +287,36 @@ public class TestFileSystemDataManager
 		assertEquals(data2, contactInfo.get(1));
 	}
 	
+	public void testContactInfoCachedUntilRewritten() throws Exception
+	{
+		MockMartusSecurity client = new MockMartusSecurity();
+		client.createKeyPair();
+		MartusAmplifier.setStaticSecurity(client);
+		String accountId = client.getPublicKeyString();
+		assertFalse("has info before written?", dataManager.hasContactInfo(accountId));
+		
+		Vector original = new Vector();
+		original.add(accountId);
+		original.add(new Integer(1));
+		original.add("data 1");
+		original.add(client.createSignatureOfVectorOfStrings(original));
+		dataManager.writeContactInfoToFile(accountId, original);
+		assertTrue("write not noticed?", dataManager.hasContactInfo(accountId));
+		
+		Vector contactInfo = dataManager.getContactInfo(accountId);
+		contactInfo.set(0, "changed by caller");
+		dataManager.getContactInfoFile(accountId).delete();
+		assertTrue("checked the file again?", dataManager.hasContactInfo(accountId));
+		contactInfo = dataManager.getContactInfo(accountId);
+		assertNotNull("loaded the file again?", contactInfo);
+		assertEquals("caller changed the cached copy?", "data 1", contactInfo.get(0));
+		
+		original.set(2, "data 2");
+		original.set(3, client.createSignatureOfVectorOfStrings(new Vector(original.subList(0, 3))));
+		dataManager.writeContactInfoToFile(accountId, original);
+		assertEquals("rewrite not noticed?", "data 2", dataManager.getContactInfo(accountId).get(0));
+	}
+	
 	protected DataManager getAttachmentManager()
 	{
 		return dataManager;
@@ -28,8 +28,10 @@ package org.martus.amplifier.common;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
 
 import org.martus.amplifier.main.MartusAmplifier;
@@ -52,11 +54,12 @@ public class AmplifierLocalization extends MiniLocalization
 
 	public static String getLanguageString(String code)
 	{
-		InputStream in = getEnglishLanguageTranslationFile();
-		HashMap languages = AmplifierLocalization.buildLanguageMap(in);
-		if(!languages.containsKey(code))
-			return null;
-		return (String)languages.get(code);		
+		return (String)getLanguageNames().get(code);
+	}
+
+	public static Map getLanguageNames()
+	{
+		return LanguageNamesHolder.languageNames;
 	}
 
 	public static InputStream getEnglishLanguageTranslationFile()
@@ -92,4 +95,12 @@ public class AmplifierLocalization extends MiniLocalization
 		return languages;
 	}
 
+	// NOTE: The holder class is not loaded until getLanguageNames() is first 
+	// called, and the JVM guarantees class initialization happens once, so 
+	// every thread shares one parsed copy of the file without locking
+	private static class LanguageNamesHolder
+	{
+		static final Map languageNames = Collections.unmodifiableMap(
+				buildLanguageMap(getEnglishLanguageTranslationFile()));
+	}
 }
@@ -26,43 +26,79 @@ Boston, MA 02111-1307, USA.
 
 package org.martus.amplifier.common;
 
-import java.util.StringTokenizer;
+import java.util.Vector;
 
 public class CharacterUtil
 {	
+	// NOTE: The quote state is local to each call, so concurrent 
+	// searches can safely clean their query strings at the same time
 	public static String removeRestrictCharacters(String str)
 	{	
 		if(str == null)
 			return "";
-		insideQuotes = false;
-		char[] strArray = str.toCharArray();		
-		for (int j=0; j<strArray.length;j++)
-		{							
-			if (!isAllowed(strArray[j]) && !insideQuotes)
-				strArray[j] = ' ';													
+		StringBuffer cleaned = new StringBuffer(str.length());
+		boolean insideQuotes = false;
+		boolean spacePending = false;
+		for (int j=0; j<str.length();j++)
+		{
+			char ch = str.charAt(j);
+			if (ch == '\"')
+				insideQuotes = !insideQuotes;
+			
+			if (isSpace(ch) || (!insideQuotes && !isAllowed(ch)))
+			{
+				spacePending = true;
+				continue;
+			}
+			
+			if (spacePending && cleaned.length() > 0)
+				cleaned.append(' ');
+			spacePending = false;
+			cleaned.append(ch);
 		}									
 										
-		return removeExtraSpaces(new String(strArray));
+		return cleaned.toString();
 	}
 	
-	private static String removeExtraSpaces(String str)
+	// NOTE: Expects a string that has already been through 
+	// removeRestrictCharacters. Each quoted phrase becomes one entry, 
+	// without its quotes, and an unbalanced quote runs to the end
+	public static String[] splitWordsAndPhrases(String cleaned)
 	{
-		StringTokenizer st = new StringTokenizer(str);
-		StringBuffer strBuffer = new StringBuffer();
-		while (st.hasMoreTokens()) 
+		Vector words = new Vector();
+		int start = 0;
+		boolean insideQuotes = false;
+		for (int j=0; j<cleaned.length();j++)
 		{
-			strBuffer.append(st.nextToken()).append(" ");
+			char ch = cleaned.charAt(j);
+			if (ch == '\"')
+			{
+				addWord(words, cleaned, start, j);
+				insideQuotes = !insideQuotes;
+				start = j + 1;
+			}
+			else if (ch == ' ' && !insideQuotes)
+			{
+				addWord(words, cleaned, start, j);
+				start = j + 1;
+			}
 		}
-		return strBuffer.toString().trim();
+		addWord(words, cleaned, start, cleaned.length());
+		
+		return (String[])words.toArray(new String[words.size()]);
+	}
+	
+	private static void addWord(Vector words, String cleaned, int start, int end)
+	{
+		String word = cleaned.substring(start, end).trim();
+		if (word.length() > 0)
+			words.add(word);
 	}
 	
 	public static boolean isAllowed(char ch)
 	{
 		if (ch == '\"')
-		{	
-			insideQuotes = !insideQuotes;
 			return true;
-		}
 		
 		if (Character.isLetterOrDigit(ch)|| 
 				ch == '\'' || ch >= 128)
@@ -70,5 +106,11 @@ public class CharacterUtil
 			
 		return false;	
 	}
-	static boolean insideQuotes;
+	
+	private static boolean isSpace(char ch)
+	{
+		return (SPACE_CHARACTERS.indexOf(ch) >= 0);
+	}
+	
+	private static final String SPACE_CHARACTERS = " \t\n\r\f";
 }
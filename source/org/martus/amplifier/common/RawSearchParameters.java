@@ -54,11 +54,6 @@ public class RawSearchParameters
 		return (String) inputParameters.get(key);
 	}
 	
-	String getFormattedString(SearchParameters.LuceneQueryFormatter formatter)
-	{
-		return formatter.getFormattedString(getParameters());
-	}
-
 	Map getParameters()
 	{
 		return inputParameters;
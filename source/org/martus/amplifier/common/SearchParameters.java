@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.martus.amplifier.lucene.LuceneSearchConstants;
+import org.martus.amplifier.search.BulletinQuery;
 import org.martus.amplifier.search.SearchConstants;
 import org.martus.common.utilities.MartusFlexidate;
 import org.martus.util.MultiCalendar;
@@ -43,11 +44,7 @@ public class SearchParameters implements SearchResultConstants, SearchConstants
 		searchFields = new HashMap();
 		if(!inputParameters.getParameters().isEmpty())
 		{		
-			copyFormattedQueryString(new FormatterForAllWordsSearch());
-			copyFormattedQueryString(new FormatterForExactPhraseSearch());
-			copyFormattedQueryString(new FormatterForAnyWordSearch());
-			copyLanguageChoice();
-			copyFieldsChoice();
+			copyWordsQuery();
 			copyEntryDateChoice();
 			copyEventDateChoice();
 			copySortByChoice();	
@@ -59,30 +56,48 @@ public class SearchParameters implements SearchResultConstants, SearchConstants
 		return searchFields;
 	}
 	
-	private void copyFormattedQueryString(LuceneQueryFormatter formatter)
+	private void copyWordsQuery()
 	{
-		String decoratedString = inputParameters.getFormattedString(formatter);
-		if (decoratedString != null)
-			searchFields.put(formatter.getTag(), decoratedString);
-		else
-			searchFields.put(formatter.getTag(), "");
+		BulletinQuery query = createWordsQuery(inputParameters.getParameters());
+		searchFields.put(RESULT_WORDS_QUERY_KEY, query);
+	}
+	
+	public static BulletinQuery createWordsQuery(Map rawParameters)
+	{
+		String[] anyWords = getWordsAndPhrases(rawParameters, ANYWORD_TAG);
+		String[] allWords = getWordsAndPhrases(rawParameters, THESE_WORD_TAG);
+		String exactPhrase = getCleanedString(rawParameters, EXACTPHRASE_TAG).replace('\"',' ').trim();
+		return new BulletinQuery(getFieldChoice(rawParameters), 
+				anyWords, allWords, exactPhrase, getLanguageChoice(rawParameters));
 	}
 	
-	private void copyLanguageChoice()
+	private static String[] getWordsAndPhrases(Map rawParameters, String tag)
 	{
-		String languageString = inputParameters.getLanguage();
+		return CharacterUtil.splitWordsAndPhrases(getCleanedString(rawParameters, tag));
+	}
+	
+	private static String getCleanedString(Map rawParameters, String tag)
+	{
+		return CharacterUtil.removeRestrictCharacters((String)rawParameters.get(tag));
+	}
+	
+	private static String getLanguageChoice(Map rawParameters)
+	{
+		String languageString = (String)rawParameters.get(RESULT_LANGUAGE_KEY);
 		if(languageString == null)
-			return;
+			return null;
 		if(languageString.equals(LANGUAGE_ANYLANGUAGE_LABEL))
-			return;
+			return null;
 
-		String key = RESULT_LANGUAGE_KEY;
-		searchFields.put(key, languageString);
+		return languageString;
 	}
 
-	private void copyFieldsChoice()
+	private static String getFieldChoice(Map rawParameters)
 	{
-		searchFields.put(RESULT_FIELDS_KEY, inputParameters.getFieldToSearchIn());
+		String fieldString = (String)rawParameters.get(RESULT_FIELDS_KEY);
+		if(fieldString == null)
+			return IN_ALL_FIELDS;
+		return fieldString;
 	}
 
 	private void copyEntryDateChoice()
@@ -145,84 +160,6 @@ public class SearchParameters implements SearchResultConstants, SearchConstants
 		return MultiCalendar.createFromGregorianYearMonthDay(year, monthIndex + 1, day);
 	}	
 	
-	abstract static class LuceneQueryFormatter
-	{
-		public LuceneQueryFormatter(String tagToUse)
-		{
-			tag = tagToUse;
-		}
-		
-		public String getTag()
-		{
-			return tag;
-		}
-		
-		public void addFormattedString(Map destination, Map source)
-		{
-			String decoratedString = getFormattedString(source);
-			destination.put(tag, decoratedString);
-		}
-
-		public String getFormattedString(Map source)
-		{
-			String rawString = (String)source.get(tag);
-			rawString = CharacterUtil.removeRestrictCharacters(rawString);
-			String decoratedString = "";
-			if(rawString.length() > 0)
-				decoratedString = getFormattedString(rawString);
-			return decoratedString;
-		}
-		
-		abstract String getFormattedString(String rawString);
-		
-		String tag;
-	}
-	
-	public static class FormatterForAnyWordSearch extends LuceneQueryFormatter
-	{
-		public FormatterForAnyWordSearch()
-		{
-			super(SearchResultConstants.ANYWORD_TAG);
-		}
-		
-		public String getFormattedString(String rawString)
-		{
-			return "(" + rawString + ")";
-		}
-	}
-	
-	public static class FormatterForExactPhraseSearch extends LuceneQueryFormatter
-	{
-		public FormatterForExactPhraseSearch()
-		{
-			super(SearchResultConstants.EXACTPHRASE_TAG);
-		}
-		
-		public String getFormattedString(String rawString)
-		{		
-			return "\"" + rawString.replace('\"',' ').trim() + "\"";
-		}
-	}
-	
-	public static class FormatterForAllWordsSearch extends LuceneQueryFormatter
-	{
-		public FormatterForAllWordsSearch()
-		{
-			super(SearchResultConstants.THESE_WORD_TAG);
-		}
-		
-		public String getFormattedString(String rawString)
-		{
-			String[] words = rawString.split(" ");
-			String query = "(";		
-			
-			for (int i=0;i<words.length;i++)		
-				query += "+" + words[i]+ " ";
-			
-			return query + ")";
-		}
-	}
-	
 	RawSearchParameters inputParameters;
 	HashMap	searchFields;
 	public static MultiCalendar todaysDateUsedForTesting = null;
@@ -42,6 +42,7 @@ public interface SearchResultConstants
 	final String RESULT_SORTBY_KEY		= "sortBy";
 	final String RESULT_BASIC_FIELD_KEY	= "field";
 	final String RESULT_BASIC_QUERY_KEY	= "query";
+	final String RESULT_WORDS_QUERY_KEY	= "wordsQuery";
 	
 	final String THESE_WORD_TAG 		= "allWordsQuery";
 	final String ANYWORD_TAG 			= "anyWordsQuery";
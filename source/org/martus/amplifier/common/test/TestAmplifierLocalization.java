@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.martus.amplifier.common.AmplifierLocalization;
 import org.martus.amplifier.common.SearchResultConstants;
@@ -81,4 +82,21 @@ public class TestAmplifierLocalization extends TestCaseEnhanced
 		assertEquals("es should give us Spanish", "Spanish", languages.get("es"));		
 	}
 
+	public void testLanguageNamesLoadedOnce() throws Exception
+	{
+		Map languages = AmplifierLocalization.getLanguageNames();
+		assertSame("Should share one table", languages, AmplifierLocalization.getLanguageNames());
+		assertEquals("Wrong number of languages", 51, languages.size());
+		assertEquals("fr should give us French", "French", AmplifierLocalization.getLanguageString("fr"));
+		assertNull("Unknown code should give null", AmplifierLocalization.getLanguageString("zz"));
+		try
+		{
+			languages.put("zz", "Unknown");
+			fail("Shared table should be read-only");
+		}
+		catch(UnsupportedOperationException ignoreExpected)
+		{
+		}
+	}
+
 }
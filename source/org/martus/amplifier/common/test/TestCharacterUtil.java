@@ -92,4 +92,53 @@ public class TestCharacterUtil extends TestCaseEnhanced
 		String empty = CharacterUtil.removeRestrictCharacters(test11);
 		assertEquals("Should return an empty string", "", empty);
 	}			
+	
+	public void testSplitWordsAndPhrases() throws Exception
+	{
+		String[] words = CharacterUtil.splitWordsAndPhrases("cat \"big dog\" bird");
+		assertEquals(3, words.length);
+		assertEquals("cat", words[0]);
+		assertEquals("big dog", words[1]);
+		assertEquals("bird", words[2]);
+		
+		words = CharacterUtil.splitWordsAndPhrases("cat \"big dog");
+		assertEquals("unbalanced quote not to the end?", 2, words.length);
+		assertEquals("big dog", words[1]);
+		
+		words = CharacterUtil.splitWordsAndPhrases("\"\" \" \"");
+		assertEquals("kept empty phrases?", 0, words.length);
+		assertEquals(0, CharacterUtil.splitWordsAndPhrases("").length);
+	}
+	
+	public void testRemoveRestrictCharactersFromSeveralThreads() throws Exception
+	{
+		CleaningThread[] threads = new CleaningThread[4];
+		for(int i = 0; i < threads.length; ++i)
+			threads[i] = new CleaningThread();
+		for(int i = 0; i < threads.length; ++i)
+			threads[i].start();
+		for(int i = 0; i < threads.length; ++i)
+		{
+			threads[i].join();
+			assertNull(threads[i].failure, threads[i].failure);
+		}
+	}
+	
+	static class CleaningThread extends Thread
+	{
+		public void run()
+		{
+			for(int i = 0; i < 10000; ++i)
+			{
+				String cleaned = CharacterUtil.removeRestrictCharacters("*\"*\"* a\"b");
+				if(!cleaned.equals("\"*\" a\"b"))
+				{
+					failure = "Got " + cleaned;
+					return;
+				}
+			}
+		}
+		
+		String failure;
+	}
 }
@@ -31,6 +31,7 @@ import java.util.Map;
 
 import org.martus.amplifier.common.SearchParameters;
 import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.search.BulletinQuery;
 import org.martus.util.MultiCalendar;
 import org.martus.util.TestCaseEnhanced;
 
@@ -54,41 +55,29 @@ public class TestSearchParameters extends TestCaseEnhanced
 		assertEquals(day, result.getGregorianDay());
 	}
 	
-	public void testAllWordsFormatter() throws Exception
+	public void testCreateWordsQuery() throws Exception
 	{
-		SearchParameters.FormatterForAllWordsSearch d = 
-			new SearchParameters.FormatterForAllWordsSearch();
-		assertEquals("(+cat +dog )", d.getFormattedString("cat dog"));		
-	}
-
-	public void testAnyWordFormatter() throws Exception
-	{
-		SearchParameters.FormatterForAnyWordSearch d = 
-			new SearchParameters.FormatterForAnyWordSearch();
-		assertEquals("(cat dog)", d.getFormattedString("cat dog"));		
-	}
-
-	public void testExactPhraseFormatter() throws Exception
-	{
-		SearchParameters.FormatterForExactPhraseSearch d = 
-			new SearchParameters.FormatterForExactPhraseSearch();
-		assertEquals("\"cat dog\"", d.getFormattedString("cat dog"));		
-	}
-	
-	public void testLuceneQueryFormatter() throws Exception
-	{
-		Map destination = new HashMap();
-		Map source = new HashMap();
+		Map raw = new HashMap();
+		raw.put(SearchResultConstants.ANYWORD_TAG, "cat (dog)");
+		raw.put(SearchResultConstants.THESE_WORD_TAG, "\"big bird\" +fish");
+		raw.put(SearchResultConstants.EXACTPHRASE_TAG, "\"wet  paint\"");
+		raw.put(SearchResultConstants.RESULT_LANGUAGE_KEY, SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL);
 		
-		SearchParameters.FormatterForAnyWordSearch d = 
-			new SearchParameters.FormatterForAnyWordSearch();
-
-		source.put(SearchResultConstants.ANYWORD_TAG, "");
-		d.addFormattedString(destination, source);
-		assertEquals("Formatted blank?", "", destination.get(SearchResultConstants.ANYWORD_TAG));		
+		BulletinQuery query = SearchParameters.createWordsQuery(raw);
+		assertEquals("not all fields by default?", SearchResultConstants.IN_ALL_FIELDS, query.getField());
+		assertEquals(2, query.getAnyWordCount());
+		assertEquals("dog", query.getAnyWord(1));
+		assertEquals(2, query.getAllWordCount());
+		assertEquals("big bird", query.getAllWord(0));
+		assertEquals("fish", query.getAllWord(1));
+		assertEquals("wet paint", query.getExactPhrase());
+		assertNull("any language not null?", query.getLanguage());
 		
-		source.put(SearchResultConstants.ANYWORD_TAG, "cat dog");
-		d.addFormattedString(destination, source);
-		assertEquals("(cat dog)", destination.get(SearchResultConstants.ANYWORD_TAG));
+		raw.put(SearchResultConstants.ANYWORD_TAG, "cat dog");
+		assertEquals("different key for the same words?", 
+				query.toString(), SearchParameters.createWordsQuery(raw).toString());
+		raw.put(SearchResultConstants.RESULT_LANGUAGE_KEY, "en");
+		assertNotEquals("same key for another language?", 
+				query.toString(), SearchParameters.createWordsQuery(raw).toString());
 	}
 }
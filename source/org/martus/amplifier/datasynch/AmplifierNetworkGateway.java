@@ -32,7 +32,6 @@ import java.io.IOException;
 import java.util.Vector;
 
 import org.martus.amplifier.attachment.DataManager;
-import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.network.AmplifierBulletinRetrieverGatewayInterface;
 import org.martus.amplifier.network.AmplifierClientSideNetworkGateway;
 import org.martus.amplifier.network.AmplifierClientSideXmlrpcHandler;
@@ -44,7 +43,6 @@ import org.martus.common.MartusLogger;
 import org.martus.common.MartusUtilities.ServerErrorException;
 import org.martus.common.bulletin.BulletinZipUtilities;
 import org.martus.common.crypto.MartusCrypto;
-import org.martus.common.crypto.MartusCrypto.DecryptionException;
 import org.martus.common.network.MartusXmlrpcClient.SSLSocketSetupException;
 import org.martus.common.network.NetworkInterfaceConstants;
 import org.martus.common.network.NetworkResponse;
@@ -117,8 +115,11 @@ public class AmplifierNetworkGateway implements LoggerInterface
 				return null;
 			Vector encodedContactInfoResult = response.getResultVector();
 			Vector decodedContactInfoResult = ContactInfo.decodeContactInfoVectorIfNecessary(encodedContactInfoResult);
-			if(security.verifySignatureOfVectorOfStrings(decodedContactInfoResult, accountId))
-				return decodedContactInfoResult;
+			synchronized(security)
+			{
+				if(security.verifySignatureOfVectorOfStrings(decodedContactInfoResult, accountId))
+					return decodedContactInfoResult;
+			}
 		}
 		catch (Exception e)
 		{
@@ -147,35 +148,6 @@ public class AmplifierNetworkGateway implements LoggerInterface
 	}
 	
 
-	public void retrieveAndManageBulletin(
-		UniversalId uid, BulletinExtractor bulletinExtractor, MartusAmplifier amp) 
-		throws Exception
-	{
-		File bulletinFile = retrieveBulletin(uid);
-		bulletinFile.deleteOnExit();
-		if(amp.isShutdownRequested())
-		{
-			bulletinFile.delete();
-			return;
-		}
-		amp.startSynch();
-		try
-		{
-			bulletinExtractor.extractAndStoreBulletin(bulletinFile);
-			bulletinFile.delete();
-			
-		}
-		catch(DecryptionException e)
-		{
-			throw(e);
-		}
-		finally
-		{
-			amp.endSynch();
-		}
-	}
-	
-	
 	public File retrieveBulletin(UniversalId uid)
 	{
 		File tempFile = null;
@@ -310,6 +282,10 @@ public class AmplifierNetworkGateway implements LoggerInterface
 	private static final int AMPLIFIER_MAX_CHUNK_SIZE = 1024 * 1024;
 	
 	private AmplifierBulletinRetrieverGatewayInterface gateway;
+	// NOTE: Every request is signed with this, and it keeps a single 
+	// signature engine. The same object is shared by the gateways of 
+	// every backup server, so each signature made or checked with it 
+	// is synchronized on it, but the calls to the server are not
 	private MartusCrypto security;
 	private LoggerInterface logger;
 	BackupServerInfo serverToPullFrom;
@@ -0,0 +1,93 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.datasynch;
+
+import java.util.LinkedList;
+
+/**
+ * A first-in first-out queue shared by threads. put() waits while the 
+ * queue is full, so a fast producer is held back by a slow consumer, 
+ * and take() waits while it is empty. Once the queue is closed, take() 
+ * returns whatever is left and then null.
+ */
+public class BoundedQueue
+{
+	public BoundedQueue(int capacityToUse)
+	{
+		if(capacityToUse < 1)
+			throw new IllegalArgumentException("capacity must be at least 1: " + capacityToUse);
+		capacity = capacityToUse;
+		items = new LinkedList();
+	}
+	
+	public synchronized void put(Object item) throws InterruptedException
+	{
+		if(item == null)
+			throw new IllegalArgumentException("null item");
+		while(items.size() >= capacity && !closed)
+			wait();
+		if(closed)
+			throw new IllegalStateException("queue is closed");
+		items.addLast(item);
+		notifyAll();
+	}
+	
+	public synchronized Object take() throws InterruptedException
+	{
+		while(items.isEmpty() && !closed)
+			wait();
+		if(items.isEmpty())
+			return null;
+		Object item = items.removeFirst();
+		notifyAll();
+		return item;
+	}
+	
+	public synchronized void close()
+	{
+		closed = true;
+		notifyAll();
+	}
+	
+	public synchronized boolean isClosed()
+	{
+		return closed;
+	}
+	
+	public synchronized int size()
+	{
+		return items.size();
+	}
+	
+	public int getCapacity()
+	{
+		return capacity;
+	}
+	
+	private int capacity;
+	private LinkedList items;
+	private boolean closed;
+}
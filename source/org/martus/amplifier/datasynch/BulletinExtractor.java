@@ -30,13 +30,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.martus.amplifier.attachment.AttachmentStorageException;
 import org.martus.amplifier.attachment.DataManager;
+import org.martus.amplifier.main.BulletinHtmlCache;
 import org.martus.amplifier.main.EventDatesIndexedList;
 import org.martus.amplifier.main.LanguagesIndexedList;
+import org.martus.amplifier.search.BulletinCatalog;
 import org.martus.amplifier.search.BulletinField;
 import org.martus.amplifier.search.BulletinIndexer;
 import org.martus.common.FieldSpecCollection;
@@ -45,13 +49,10 @@ import org.martus.common.bulletin.BulletinConstants;
 import org.martus.common.crypto.MartusCrypto;
 import org.martus.common.crypto.MartusCrypto.CryptoException;
 import org.martus.common.database.Database.RecordHiddenException;
+import org.martus.common.fieldspec.StandardFieldSpecs;
 import org.martus.common.packet.BulletinHeaderPacket;
 import org.martus.common.packet.FieldDataPacket;
 import org.martus.common.packet.UniversalId;
-import org.martus.common.packet.Packet.InvalidPacketException;
-import org.martus.common.packet.Packet.SignatureVerificationException;
-import org.martus.common.packet.Packet.WrongPacketTypeException;
-import org.martus.util.StreamableBase64.InvalidBase64Exception;
 import org.martus.util.inputstreamwithseek.ZipEntryInputStreamWithSeek;
 
 
@@ -70,31 +71,136 @@ public class BulletinExtractor
 	
 	public void extractAndStoreBulletin(File bulletinFile) 
 		throws Exception
+	{
+		storeBulletin(extractBulletin(bulletinFile));
+	}
+	
+	// NOTE: Verifies and parses the bulletin, decodes its attachments 
+	// and renders its HTML without storing anything, so it may run on 
+	// several threads at once. The result holds the zip file open and 
+	// the decoded attachments in temporary files until it is stored or 
+	// closed
+	public ExtractedBulletin extractBulletin(File bulletinFile) 
+		throws Exception
 	{
 		ZipFile bulletinZipFile = new ZipFile(bulletinFile);
+		ExtractedBulletin extracted = null;
+		try
+		{
+			BulletinHeaderPacket bhp = loadHeaderPacket(bulletinZipFile);
+			FieldDataPacket fdp = loadFieldData(bhp, bulletinZipFile);
+			extracted = new ExtractedBulletin(bulletinZipFile, bhp, fdp);
+			AttachmentProxy[] proxies = fdp.getAttachments();
+			for (int i = 0; i < proxies.length; i++) 
+				extracted.attachmentFiles[i] = decodeAttachment(proxies[i], bulletinZipFile);
+			extracted.html = renderBulletinHtml(bhp, bulletinZipFile);
+			return extracted;
+		}
+		catch(Exception e)
+		{
+			if(extracted != null)
+				extracted.close();
+			else
+				bulletinZipFile.close();
+			throw e;
+		}
+	}
+	
+	// NOTE: Stores the packets and attachments and indexes the bulletin. 
+	// Only one thread at a time may store bulletins, because they all 
+	// share the index writer
+	public void storeBulletin(ExtractedBulletin bulletin) 
+		throws Exception
+	{
 		try {
-			BulletinHeaderPacket bhp = 
-				BulletinHeaderPacket.loadFromZipFile(bulletinZipFile, verifier);
+			ZipFile bulletinZipFile = bulletin.getZipFile();
+			BulletinHeaderPacket bhp = bulletin.getHeaderPacket();
+			FieldDataPacket fdp = bulletin.getFieldDataPacket();
 			String accountId = bhp.getAccountId();
 
 			ZipEntryInputStreamWithSeek zipEntryPointForHeaderPacket = getInputStreamForZipEntry(bulletinZipFile, accountId, bhp.getLocalId());
 			storeDataPacket(bhp.getUniversalId(), zipEntryPointForHeaderPacket);
 			
-			FieldDataPacket fdp = indexFieldData(bhp, bulletinZipFile);
+			Map attachmentSizes = storeAttachments(bulletin);
+			indexFieldData(bhp, fdp, attachmentSizes);
 			
 			String fieldDataPacketId = bhp.getFieldDataPacketId();
 			ZipEntryInputStreamWithSeek zipEntryPointForFieldDataPacket = getInputStreamForZipEntry(bulletinZipFile, accountId, fieldDataPacketId);
 			storeDataPacket(fdp.getUniversalId(), zipEntryPointForFieldDataPacket);
 			zipEntryPointForFieldDataPacket.close();
-			
-			storeAttachments(fdp.getAttachments(), bulletinZipFile);
+			prepareBulletinHtml(fdp.getUniversalId(), bulletin.getHtml());
 		} finally {
-			bulletinZipFile.close();
+			bulletin.close();
 		}
 	}
 	
+	public static class ExtractedBulletin
+	{
+		ExtractedBulletin(ZipFile zipFileToUse, BulletinHeaderPacket bhpToUse, FieldDataPacket fdpToUse)
+		{
+			zipFile = zipFileToUse;
+			bhp = bhpToUse;
+			fdp = fdpToUse;
+			attachmentFiles = new File[fdp.getAttachments().length];
+		}
+		
+		public UniversalId getUniversalId()
+		{
+			return bhp.getUniversalId();
+		}
+		
+		ZipFile getZipFile()
+		{
+			return zipFile;
+		}
+		
+		BulletinHeaderPacket getHeaderPacket()
+		{
+			return bhp;
+		}
+		
+		FieldDataPacket getFieldDataPacket()
+		{
+			return fdp;
+		}
+		
+		String getHtml()
+		{
+			return html;
+		}
+		
+		public File getAttachmentFile(int index)
+		{
+			return attachmentFiles[index];
+		}
+		
+		// NOTE: Deletes any decoded attachments that were not stored
+		public void close() throws IOException
+		{
+			for(int i = 0; i < attachmentFiles.length; ++i)
+			{
+				if(attachmentFiles[i] != null)
+					attachmentFiles[i].delete();
+			}
+			zipFile.close();
+		}
+		
+		private ZipFile zipFile;
+		private BulletinHeaderPacket bhp;
+		private FieldDataPacket fdp;
+		private File[] attachmentFiles;
+		private String html;
+	}
 
-	private FieldDataPacket indexFieldData(BulletinHeaderPacket bhp, ZipFile bulletinZipFile) 
+	// NOTE: Each step of receiving a bulletin is its own protected 
+	// method, so the ingest benchmark can time them separately
+	protected BulletinHeaderPacket loadHeaderPacket(ZipFile bulletinZipFile) 
+		throws Exception
+	{
+		return BulletinHeaderPacket.loadFromZipFile(bulletinZipFile, getVerifier());
+	}
+	
+	protected FieldDataPacket loadFieldData(BulletinHeaderPacket bhp, ZipFile bulletinZipFile) 
 		throws Exception
 	{
 		String fieldDataPacketId = bhp.getFieldDataPacketId();
@@ -107,12 +213,17 @@ public class BulletinExtractor
 		
 		ZipEntryInputStreamWithSeek zipEntryPointForFieldDataPacket = getInputStreamForZipEntry(bulletinZipFile, accountId, fieldDataPacketId);
 
-		fdp.loadFromXml(zipEntryPointForFieldDataPacket,verifier);
-		bulletinIndexer.indexFieldData(bhp.getUniversalId(), fdp, bhp.getHistory());
+		fdp.loadFromXml(zipEntryPointForFieldDataPacket, getVerifier());
+		return fdp;
+	}
+	
+	protected void indexFieldData(BulletinHeaderPacket bhp, FieldDataPacket fdp, Map attachmentSizes) 
+		throws Exception
+	{
+		bulletinIndexer.indexFieldData(bhp.getUniversalId(), fdp, bhp.getHistory(), attachmentSizes);
+		BulletinCatalog.getInstance().bulletinWasIndexed(bhp.getUniversalId());
 		indexLanguage(fdp.get(BulletinConstants.TAGLANGUAGE));
 		indexEventDate(fdp.get(BulletinConstants.TAGEVENTDATE));
-		
-		return fdp;
 	}
 
 	public static ZipEntryInputStreamWithSeek getInputStreamForZipEntry(ZipFile bulletinZipFile, String accountId, String fieldDataPacketId) throws IOException 
@@ -135,45 +246,129 @@ public class BulletinExtractor
 		EventDatesIndexedList.getEventDatesIndexedList().addValue(flexidateString);
 	}
 	
-	private void storeDataPacket(UniversalId uId, ZipEntryInputStreamWithSeek data) throws IOException, RecordHiddenException, CryptoException
+	protected void storeDataPacket(UniversalId uId, ZipEntryInputStreamWithSeek data) throws IOException, RecordHiddenException, CryptoException
 	{
 		bulletinDataManager.putDataPacket(uId, data);	
 	}
 	
-	private void storeAttachments(
-		AttachmentProxy[] proxies, ZipFile bulletinZipFile) 
-		throws IOException, WrongPacketTypeException, 
-			SignatureVerificationException, InvalidPacketException, 
-			InvalidBase64Exception, AttachmentStorageException
+	// NOTE: The HTML is only a cache, so a bulletin that can't be 
+	// rendered must not stop it from being received. It is simply 
+	// rendered again when it is first viewed. The field data is parsed 
+	// again here because the HTML shows the top section fields, not 
+	// just the ones that are searched, and it was already verified.
+	protected String renderBulletinHtml(BulletinHeaderPacket bhp, ZipFile bulletinZipFile)
 	{
-		for (int i = 0; i < proxies.length; i++) 
+		String accountId = bhp.getAccountId();
+		String fieldDataPacketId = bhp.getFieldDataPacketId();
+		UniversalId fieldUid = UniversalId.createFromAccountAndLocalId(accountId, fieldDataPacketId);
+		if(!BulletinHtmlCache.getBulletinHtmlCache().needsHtml(fieldUid))
+			return null;
+		
+		try
 		{
-			AttachmentProxy proxy = proxies[i];
-			UniversalId attachmentId = proxy.getUniversalId();
-			ZipEntry attachmentEntry = bulletinZipFile.getEntry(attachmentId.getLocalId());
-			if (attachmentEntry == null) 
+			FieldDataPacket fdp = new FieldDataPacket(fieldUid, StandardFieldSpecs.getDefaultTopSetionFieldSpecs());
+			ZipEntryInputStreamWithSeek in = getInputStreamForZipEntry(bulletinZipFile, accountId, fieldDataPacketId);
+			try
 			{
-				throw new IOException(
-					"No entry " + attachmentId.getLocalId() + 
-					" found for account " + attachmentId.getAccountId());
+				fdp.loadFromXml(in, null);
 			}
-			proxy = AttachmentProxy.createFileProxyFromAttachmentPacket(
-				new ZipEntryInputStreamWithSeek(bulletinZipFile, attachmentEntry), 
-				proxy, verifier);
-			InputStream attachmentData = new FileInputStream(proxy.getFile());
-			try 
-			{
-				bulletinDataManager.putAttachment(attachmentId, attachmentData);
-			} 
-			finally 
+			finally
 			{
-				attachmentData.close();
-				proxy.getFile().delete();
+				in.close();
 			}
+			return BulletinHtmlCache.generateHtml(fdp);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	protected void prepareBulletinHtml(UniversalId fieldDataPacketId, String html)
+	{
+		if(html == null)
+			return;
+		BulletinHtmlCache.getBulletinHtmlCache().prepareHtml(fieldDataPacketId, html);
+	}
+	
+	// NOTE: Stores the attachments decoded by extractBulletin, and 
+	// returns the stored size of each, by local id, so the index can 
+	// record them
+	private Map storeAttachments(ExtractedBulletin bulletin) 
+		throws IOException, AttachmentStorageException
+	{
+		Map attachmentSizes = new HashMap();
+		AttachmentProxy[] proxies = bulletin.getFieldDataPacket().getAttachments();
+		for (int i = 0; i < proxies.length; i++) 
+		{
+			UniversalId attachmentId = proxies[i].getUniversalId();
+			long sizeInBytes = storeAttachment(attachmentId, bulletin.getAttachmentFile(i));
+			attachmentSizes.put(attachmentId.getLocalId(), new Long(sizeInBytes));
+		}
+		return attachmentSizes;
+	}
+	
+	// NOTE: Verifies and decodes the attachment packet into a temporary 
+	// file, which storeAttachment deletes
+	protected File decodeAttachment(AttachmentProxy proxy, ZipFile bulletinZipFile) 
+		throws Exception
+	{
+		UniversalId attachmentId = proxy.getUniversalId();
+		ZipEntry attachmentEntry = bulletinZipFile.getEntry(attachmentId.getLocalId());
+		if (attachmentEntry == null) 
+		{
+			throw new IOException(
+				"No entry " + attachmentId.getLocalId() + 
+				" found for account " + attachmentId.getAccountId());
+		}
+		AttachmentProxy fileProxy = AttachmentProxy.createFileProxyFromAttachmentPacket(
+			new ZipEntryInputStreamWithSeek(bulletinZipFile, attachmentEntry), 
+			proxy, getVerifier());
+		return fileProxy.getFile();
+	}
+	
+	protected long storeAttachment(UniversalId attachmentId, File attachmentFile) 
+		throws IOException, AttachmentStorageException
+	{
+		InputStream attachmentData = new FileInputStream(attachmentFile);
+		try 
+		{
+			bulletinDataManager.putAttachment(attachmentId, attachmentData);
+		} 
+		finally 
+		{
+			attachmentData.close();
+			attachmentFile.delete();
 		}
+		return bulletinDataManager.getAttachmentSizeInBytes(attachmentId);
+	}
+	
+	// NOTE: A MartusCrypto verifies signatures with a single signature 
+	// engine, so it must not be used by two threads at once. Each thread 
+	// that extracts bulletins verifies them with its own verifier. It 
+	// needs no key pair, because every packet is checked against the 
+	// public key of the account it belongs to
+	MartusCrypto getVerifier() throws Exception
+	{
+		MartusCrypto threadVerifier = (MartusCrypto)threadVerifiers.get();
+		if(threadVerifier == null)
+		{
+			threadVerifier = createVerifier();
+			threadVerifiers.set(threadVerifier);
+		}
+		return threadVerifier;
+	}
+	
+	// NOTE: Creates a verifier of the same class as the one this 
+	// extractor was given
+	protected MartusCrypto createVerifier() throws Exception
+	{
+		return (MartusCrypto)verifier.getClass().newInstance();
 	}
 	
 	private DataManager bulletinDataManager;
 	private BulletinIndexer bulletinIndexer;
 	private MartusCrypto verifier;
+	private ThreadLocal threadVerifiers = new ThreadLocal();
 }
\ No newline at end of file
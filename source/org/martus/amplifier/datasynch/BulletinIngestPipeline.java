@@ -0,0 +1,262 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.datasynch;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.martus.amplifier.datasynch.BulletinExtractor.ExtractedBulletin;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.search.BulletinCatalog;
+import org.martus.common.packet.UniversalId;
+
+/**
+ * Receives bulletins from one backup server in three stages, so that 
+ * downloading, verifying and storing different bulletins overlap:
+ * 
+ *   - download threads fetch bulletins from the server,
+ *   - one thread per processor verifies and parses them and decodes 
+ *     their attachments, each with its own verifier, and
+ *   - a single thread stores the packets and writes the index.
+ * 
+ * The queues between the stages are bounded, so a stage that falls 
+ * behind holds back the stages before it instead of filling the disk 
+ * with downloaded bulletins.
+ */
+public class BulletinIngestPipeline
+{
+	public BulletinIngestPipeline(AmplifierNetworkGateway gatewayToUse, BulletinExtractor extractorToUse, MartusAmplifier ampToUse, int downloadThreads, int parseThreads)
+	{
+		gateway = gatewayToUse;
+		extractor = extractorToUse;
+		amp = ampToUse;
+		
+		toDownload = new BoundedQueue(downloadThreads * 2);
+		toParse = new BoundedQueue(parseThreads * 2);
+		toStore = new BoundedQueue(parseThreads * 2);
+		
+		downloadStage = new DownloadStage(downloadThreads);
+		parseStage = new ParseStage(parseThreads);
+		storeStage = new StoreStage();
+	}
+	
+	public void start()
+	{
+		storeStage.start();
+		parseStage.start();
+		downloadStage.start();
+	}
+	
+	// NOTE: Waits while the pipeline is full
+	public void addBulletin(UniversalId uid) throws InterruptedException
+	{
+		toDownload.put(new IngestItem(uid));
+	}
+	
+	// NOTE: Waits for every bulletin already added to be stored, or 
+	// discarded if shutdown has been requested
+	public void finish() throws InterruptedException
+	{
+		toDownload.close();
+		downloadStage.waitUntilFinished();
+		parseStage.waitUntilFinished();
+		storeStage.waitUntilFinished();
+	}
+	
+	public void stop()
+	{
+		downloadStage.stop();
+		parseStage.stop();
+		storeStage.stop();
+	}
+	
+	public synchronized int getStoredCount()
+	{
+		return storedCount;
+	}
+	
+	public synchronized int getFailedCount()
+	{
+		return failedCount;
+	}
+	
+	synchronized void bulletinStored()
+	{
+		++storedCount;
+	}
+	
+	void bulletinFailed(IngestItem item, Exception e)
+	{
+		synchronized(this)
+		{
+			++failedCount;
+		}
+		gateway.logError("Unable to process " + item.uid + ": " + e.getMessage());
+		e.printStackTrace();
+		item.discard();
+	}
+	
+	boolean isShutdownRequested()
+	{
+		return amp != null && amp.isShutdownRequested();
+	}
+	
+	abstract class IngestStage extends PipelineStage
+	{
+		IngestStage(String name, BoundedQueue input, BoundedQueue output, int threadCount)
+		{
+			super(name, input, output, threadCount);
+		}
+		
+		public synchronized boolean isStopRequested()
+		{
+			return super.isStopRequested() || isShutdownRequested();
+		}
+		
+		protected void processFailed(Object item, Exception e)
+		{
+			bulletinFailed((IngestItem)item, e);
+		}
+		
+		protected void discard(Object item)
+		{
+			((IngestItem)item).discard();
+		}
+	}
+	
+	class DownloadStage extends IngestStage
+	{
+		DownloadStage(int threadCount)
+		{
+			super("AmpDownload", toDownload, toParse, threadCount);
+		}
+		
+		protected Object process(Object object) throws Exception
+		{
+			IngestItem item = (IngestItem)object;
+			item.file = gateway.retrieveBulletin(item.uid);
+			item.file.deleteOnExit();
+			return item;
+		}
+	}
+	
+	class ParseStage extends IngestStage
+	{
+		ParseStage(int threadCount)
+		{
+			super("AmpParse", toParse, toStore, threadCount);
+		}
+		
+		protected Object process(Object object) throws Exception
+		{
+			IngestItem item = (IngestItem)object;
+			item.extracted = extractor.extractBulletin(item.file);
+			return item;
+		}
+	}
+	
+	class StoreStage extends IngestStage
+	{
+		StoreStage()
+		{
+			super("AmpStore", toStore, null, 1);
+		}
+		
+		protected Object process(Object object) throws Exception
+		{
+			IngestItem item = (IngestItem)object;
+			if(amp != null)
+				amp.startSynch();
+			try
+			{
+				ExtractedBulletin extracted = item.extracted;
+				item.extracted = null;
+				extractor.storeBulletin(extracted);
+				item.stored = true;
+				bulletinStored();
+			}
+			finally
+			{
+				if(amp != null)
+					amp.endSynch();
+				item.discard();
+			}
+			return null;
+		}
+	}
+	
+	static class IngestItem
+	{
+		IngestItem(UniversalId uidToUse)
+		{
+			uid = uidToUse;
+		}
+		
+		void discard()
+		{
+			if(extracted != null)
+			{
+				try
+				{
+					extracted.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+				extracted = null;
+			}
+			if(file != null)
+			{
+				file.delete();
+				file = null;
+			}
+			// NOTE: Lets another server's sync offer this bulletin again
+			if(!stored)
+				BulletinCatalog.getInstance().releaseBulletin(uid);
+		}
+		
+		UniversalId uid;
+		boolean stored;
+		File file;
+		ExtractedBulletin extracted;
+	}
+	
+	private AmplifierNetworkGateway gateway;
+	private BulletinExtractor extractor;
+	private MartusAmplifier amp;
+	
+	private BoundedQueue toDownload;
+	private BoundedQueue toParse;
+	private BoundedQueue toStore;
+	
+	private PipelineStage downloadStage;
+	private PipelineStage parseStage;
+	private PipelineStage storeStage;
+	
+	private int storedCount;
+	private int failedCount;
+}
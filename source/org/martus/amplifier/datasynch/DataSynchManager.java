@@ -42,10 +42,15 @@ import org.martus.common.packet.UniversalId;
 public class DataSynchManager
 {
 	public DataSynchManager(MartusAmplifier ampToUse, BackupServerInfo backupServerToCall, LoggerInterface loggerToUse, MartusCrypto securityToUse)
+	{
+		this(ampToUse, new AmplifierNetworkGateway(backupServerToCall, loggerToUse, securityToUse));
+	}
+	
+	public DataSynchManager(MartusAmplifier ampToUse, AmplifierNetworkGateway gatewayToUse)
 	{
 		super();
 		amp = ampToUse;
-		amplifierGateway = new AmplifierNetworkGateway(backupServerToCall, loggerToUse, securityToUse);
+		amplifierGateway = gatewayToUse;
 	}
 	
 	public void getAllNewData(DataManager attachmentManager, BulletinIndexer indexer, List accountsNotAmplified)
@@ -58,18 +63,69 @@ public class DataSynchManager
 		BulletinExtractor bulletinExtractor = 
 			amplifierGateway.createBulletinExtractor(
 				attachmentManager, indexer);
+		BulletinIngestPipeline pipeline = new BulletinIngestPipeline(
+				amplifierGateway, bulletinExtractor, amp, 
+				DOWNLOAD_THREADS_PER_SERVER, parseThreadCount);
+		pipeline.start();
 		
-		for(int index=0; index <accountsToBeAmplified.size();index++)
+		try
+		{
+			for(int index=0; index <accountsToBeAmplified.size();index++)
+			{
+				if(amp.isShutdownRequested())
+					break;
+				String accountId = (String) accountsToBeAmplified.get(index);
+				pullContactInfoForAccount(accountId);
+				pullNewBulletinsForAccount(accountId, pipeline);
+			}
+		}
+		catch (InterruptedException e)
 		{
-			if(amp.isShutdownRequested())
-				return;
-			String accountId = (String) accountsToBeAmplified.get(index);
-			pullContactInfoForAccount(accountId);
-			pullNewBulletinsForAccount(accountId, bulletinExtractor);
+			amplifierGateway.logError("Interrupted while queueing bulletins");
+			pipeline.stop();
+		}
+		finally
+		{
+			finishPipeline(pipeline);
 		}
 		amplifierGateway.logDebug("finished polling this server");
 	}
 	
+	// NOTE: The index must not be closed while the pipeline is still 
+	// storing bulletins, so this waits even if interrupted
+	private void finishPipeline(BulletinIngestPipeline pipeline)
+	{
+		boolean interrupted = false;
+		while(true)
+		{
+			try
+			{
+				pipeline.finish();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+				pipeline.stop();
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		
+		String counts = pipeline.getStoredCount() + " bulletins stored, " + pipeline.getFailedCount() + " failed";
+		if(pipeline.getStoredCount() + pipeline.getFailedCount() > 0)
+			amplifierGateway.logNotice(counts);
+		else
+			amplifierGateway.logDebug(counts);
+	}
+	
+	// NOTE: When several servers are synced at once, they share the 
+	// processors between them
+	public void setParseThreadCount(int threadCount)
+	{
+		parseThreadCount = Math.max(1, threadCount);
+	}
+	
 	static public List removeAccountsFromList(List allAccounts, List accountsToRemove)
 	{
 		if(accountsToRemove==null || accountsToRemove.isEmpty())
@@ -105,7 +161,7 @@ public class DataSynchManager
 		}
 	}
 
-	private void pullNewBulletinsForAccount(String accountId, BulletinExtractor bulletinExtractor)
+	private void pullNewBulletinsForAccount(String accountId, BulletinIngestPipeline pipeline) throws InterruptedException
 	{
 		BulletinCatalog catalog = BulletinCatalog.getInstance();
 		Vector response = amplifierGateway.getAccountPublicBulletinLocalIds(accountId);
@@ -116,7 +172,7 @@ public class DataSynchManager
 			
 			try
 			{
-				if( !catalog.bulletinHasBeenIndexed(uid) )
+				if( catalog.claimBulletin(uid) )
 					newBulletinIds.add(uid);
 			}
 			catch (Exception e)
@@ -132,25 +188,34 @@ public class DataSynchManager
 		else
 			amplifierGateway.logInfo(logMessage);
 		
-		for(int j = 0; j < newBulletinCount; ++j)
+		int queuedCount = 0;
+		try
 		{
-			UniversalId uid = (UniversalId) newBulletinIds.get(j);
-			try
+			for(; queuedCount < newBulletinCount; ++queuedCount)
 			{
 				if(amp.isShutdownRequested())
-					return;
-				amplifierGateway.retrieveAndManageBulletin(uid, bulletinExtractor, amp);
-			}
-			catch (Exception e)
-			{
-				amplifierGateway.logError("Unable to process " + uid + ": " + e.getMessage());
-				e.printStackTrace();
+					break;
+				pipeline.addBulletin((UniversalId) newBulletinIds.get(queuedCount));
 			}
 		}
+		finally
+		{
+			// NOTE: Lets another server's sync offer the bulletins that 
+			// were never queued, after a shutdown or an interrupt
+			for(int j = queuedCount; j < newBulletinCount; ++j)
+				catalog.releaseBulletin((UniversalId) newBulletinIds.get(j));
+		}
 	}
 	
 	MartusAmplifier amp;
 	private AmplifierNetworkGateway amplifierGateway = null;
 	boolean isIndexingNeeded;
+	private int parseThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+	
+	// NOTE: Each download waits on the network far more than it uses 
+	// the server, so a few at once keep the pipeline busy without 
+	// putting much load on any one backup server. Only signing each 
+	// chunk request is done one at a time
+	static final int DOWNLOAD_THREADS_PER_SERVER = 4;
 
 }
@@ -0,0 +1,141 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.datasynch;
+
+/**
+ * One stage of a pipeline: a fixed number of threads that take items 
+ * from an input queue, process them, and put any results on the 
+ * output queue. When the input queue is closed and drained, the last 
+ * thread to finish closes the output queue, so closing the first 
+ * queue shuts down every stage in turn.
+ */
+public abstract class PipelineStage implements Runnable
+{
+	public PipelineStage(String nameToUse, BoundedQueue inputToUse, BoundedQueue outputToUse, int threadCountToUse)
+	{
+		if(threadCountToUse < 1)
+			throw new IllegalArgumentException("thread count must be at least 1: " + threadCountToUse);
+		name = nameToUse;
+		input = inputToUse;
+		output = outputToUse;
+		threadCount = threadCountToUse;
+	}
+	
+	// NOTE: Returns the result to pass on, or null if there is none
+	abstract protected Object process(Object item) throws Exception;
+	
+	abstract protected void processFailed(Object item, Exception e);
+
+	// NOTE: Called instead of process() for items still queued after 
+	// the pipeline has been told to stop early
+	protected void discard(Object item)
+	{
+	}
+	
+	public synchronized void start()
+	{
+		for(int i = 0; i < threadCount; ++i)
+		{
+			Thread thread = new Thread(this, name + "-" + (i + 1));
+			thread.setDaemon(true);
+			thread.start();
+			++runningThreads;
+		}
+	}
+	
+	public void run()
+	{
+		try
+		{
+			Object item;
+			while((item = input.take()) != null)
+			{
+				if(isStopRequested())
+				{
+					discard(item);
+					continue;
+				}
+				
+				Object result = null;
+				try
+				{
+					result = process(item);
+				}
+				catch (Exception e)
+				{
+					processFailed(item, e);
+				}
+				if(result == null)
+					continue;
+				if(output == null || isStopRequested())
+					discard(result);
+				else
+					output.put(result);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			stop();
+		}
+		finally
+		{
+			threadFinished();
+		}
+	}
+	
+	public synchronized void stop()
+	{
+		stopRequested = true;
+	}
+	
+	public synchronized boolean isStopRequested()
+	{
+		return stopRequested;
+	}
+	
+	public synchronized void waitUntilFinished() throws InterruptedException
+	{
+		while(runningThreads > 0)
+			wait();
+	}
+	
+	private synchronized void threadFinished()
+	{
+		--runningThreads;
+		if(runningThreads > 0)
+			return;
+		if(output != null)
+			output.close();
+		notifyAll();
+	}
+	
+	private String name;
+	private BoundedQueue input;
+	private BoundedQueue output;
+	private int threadCount;
+	private int runningThreads;
+	private boolean stopRequested;
+}
@@ -0,0 +1,143 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.datasynch;
+
+import java.util.List;
+
+import org.martus.amplifier.attachment.DataManager;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.search.BulletinCatalog;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.common.LoggerInterface;
+import org.martus.common.crypto.MartusCrypto;
+
+/**
+ * Pulls new data from every backup server at once, with one thread 
+ * per server. All of the servers share the DataManager and indexer, 
+ * and the BulletinCatalog makes sure a bulletin offered by more than 
+ * one server is only received once.
+ */
+public class SyncCoordinator
+{
+	public SyncCoordinator(MartusAmplifier ampToUse, List backupServersToCall, LoggerInterface loggerToUse, MartusCrypto securityToUse)
+	{
+		amp = ampToUse;
+		backupServers = backupServersToCall;
+		logger = loggerToUse;
+		security = securityToUse;
+	}
+	
+	public void pullNewDataFromAllServers(DataManager dataManager, BulletinIndexer indexer, List accountsNotAmplified)
+	{
+		int serverCount = backupServers.size();
+		if(serverCount <= 0)
+			return;
+		
+		try
+		{
+			BulletinCatalog.getInstance().loadIndexedBulletinIds();
+		}
+		catch (Exception e)
+		{
+			logger.logError("Unable to load indexed bulletin ids: " + e.getMessage());
+			e.printStackTrace();
+		}
+		
+		int parseThreadsPerServer = Runtime.getRuntime().availableProcessors() / serverCount;
+		ServerSyncThread[] threads = new ServerSyncThread[serverCount];
+		for(int i = 0; i < serverCount; ++i)
+		{
+			BackupServerInfo server = (BackupServerInfo)backupServers.get(i);
+			DataSynchManager manager = createDataSynchManager(server);
+			manager.setParseThreadCount(parseThreadsPerServer);
+			threads[i] = new ServerSyncThread(server, manager, dataManager, indexer, accountsNotAmplified);
+			threads[i].start();
+		}
+		
+		// NOTE: The caller closes the indexer when this returns, so this 
+		// must wait for every server even if interrupted
+		boolean interrupted = false;
+		for(int i = 0; i < serverCount; ++i)
+		{
+			while(threads[i].isAlive())
+			{
+				try
+				{
+					threads[i].join();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	protected DataSynchManager createDataSynchManager(BackupServerInfo server)
+	{
+		return new DataSynchManager(amp, server, logger, security);
+	}
+	
+	class ServerSyncThread extends Thread
+	{
+		ServerSyncThread(BackupServerInfo serverToUse, DataSynchManager managerToUse, DataManager dataManagerToUse, BulletinIndexer indexerToUse, List accountsNotAmplifiedToUse)
+		{
+			super("AmpSync-" + serverToUse.getName());
+			server = serverToUse;
+			manager = managerToUse;
+			dataManager = dataManagerToUse;
+			indexer = indexerToUse;
+			accountsNotAmplified = accountsNotAmplifiedToUse;
+		}
+		
+		public void run()
+		{
+			logger.logInfo("Pulling amplifier data from: " + server.getName() + "(" + server.getAddress() + ")");
+			try
+			{
+				manager.getAllNewData(dataManager, indexer, accountsNotAmplified);
+			}
+			catch (Exception e)
+			{
+				logger.logError("Unable to pull from " + server.getName() + ": " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+		
+		private BackupServerInfo server;
+		private DataSynchManager manager;
+		private DataManager dataManager;
+		private BulletinIndexer indexer;
+		private List accountsNotAmplified;
+	}
+	
+	private MartusAmplifier amp;
+	private List backupServers;
+	private LoggerInterface logger;
+	private MartusCrypto security;
+}
@@ -55,6 +55,8 @@ public class TestAllDataSynch extends TestSuite
 		suite.addTest(new TestSuite(TestAmplifierNetworkGateway.class));
 		suite.addTest(new TestSuite(TestDataSynchManager.class));
 		suite.addTest(new TestSuite(TestBulletinExtractor.class));
+		suite.addTest(new TestSuite(TestBulletinIngestPipeline.class));
+		suite.addTest(new TestSuite(TestSyncCoordinator.class));
 
 		return suite;
 	}
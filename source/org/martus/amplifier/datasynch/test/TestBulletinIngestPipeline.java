@@ -0,0 +1,482 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.datasynch.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.datasynch.AmplifierNetworkGateway;
+import org.martus.amplifier.datasynch.BackupServerInfo;
+import org.martus.amplifier.datasynch.BoundedQueue;
+import org.martus.amplifier.datasynch.BulletinExtractor;
+import org.martus.amplifier.datasynch.BulletinIngestPipeline;
+import org.martus.amplifier.datasynch.PipelineStage;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.LuceneBulletinSearcher;
+import org.martus.amplifier.main.BulletinHtmlCache;
+import org.martus.amplifier.main.EventDatesIndexedList;
+import org.martus.amplifier.main.LanguagesIndexedList;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.network.AmplifierClientSideNetworkGateway;
+import org.martus.amplifier.search.AttachmentInfo;
+import org.martus.amplifier.search.BulletinCatalog;
+import org.martus.amplifier.search.BulletinField;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.amplifier.search.BulletinInfo;
+import org.martus.amplifier.search.BulletinSearcher;
+import org.martus.amplifier.test.AbstractAmplifierTestCase;
+import org.martus.common.LoggerToNull;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.bulletin.Bulletin;
+import org.martus.common.bulletin.BulletinForTesting;
+import org.martus.common.bulletinstore.BulletinStore;
+import org.martus.common.crypto.MockMartusSecurity;
+import org.martus.common.packet.UniversalId;
+import org.martus.common.test.MockBulletinStore;
+import org.martus.util.StreamCopier;
+
+public class TestBulletinIngestPipeline extends AbstractAmplifierTestCase
+{
+	public TestBulletinIngestPipeline(String name)
+	{
+		super(name);
+	}
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		security = new MockMartusSecurity();
+		security.createKeyPair();
+		dataManager = new FileSystemDataManager(getTestBasePath(), security);
+		MartusAmplifier.dataManager = dataManager;
+		MartusAmplifier.localization = new AmplifierLocalization();
+		LanguagesIndexedList.languagesIndexedSingleton = new LanguagesIndexedList(new File(getTestBasePath(), "langIndex"));
+		EventDatesIndexedList.initialize(new File(getTestBasePath(), "eventDatesIndex"));
+		BulletinHtmlCache.initialize(new File(getTestBasePath(), "htmlCache"));
+		store = new MockBulletinStore(this);
+		gateway = new ZipFileGateway();
+		
+		new LuceneBulletinIndexer(getTestBasePath()).close();
+		oldAmplifierDirectory = MartusAmplifier.staticAmplifierDirectory;
+		MartusAmplifier.staticAmplifierDirectory = new File(getTestBasePath());
+		BulletinCatalog.getInstance().loadIndexedBulletinIds();
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			BulletinCatalog.getInstance().clear();
+			MartusAmplifier.staticAmplifierDirectory = oldAmplifierDirectory;
+			dataManager.clearAllAttachments();
+		}
+		finally
+		{
+			super.tearDown();
+		}
+	}
+
+	// NOTE: An interrupted put() can only throw if it was waiting, so 
+	// this shows that put() waits while the queue is full without 
+	// depending on how long the other thread takes to get there
+	public void testBoundedQueue() throws Exception
+	{
+		final BoundedQueue queue = new BoundedQueue(2);
+		queue.put("a");
+		queue.put("b");
+		assertEquals("wrong size?", 2, queue.size());
+		
+		QueuePutter interrupted = new QueuePutter(queue, "x");
+		interrupted.start();
+		interrupted.interrupt();
+		interrupted.join();
+		assertTrue("put didn't wait while full?", interrupted.wasInterrupted);
+		assertEquals("put added while full?", 2, queue.size());
+		
+		QueuePutter putter = new QueuePutter(queue, "c");
+		putter.start();
+		assertEquals("wrong first item?", "a", queue.take());
+		putter.join();
+		assertFalse("put interrupted?", putter.wasInterrupted);
+		
+		queue.close();
+		assertEquals("wrong item after close?", "b", queue.take());
+		assertEquals("wrong last item?", "c", queue.take());
+		assertNull("not empty after close?", queue.take());
+		try
+		{
+			queue.put("d");
+			fail("Should have thrown");
+		}
+		catch(IllegalStateException ignoreExpected)
+		{
+		}
+	}
+	
+	public void testStagesPassItemsAlong() throws Exception
+	{
+		BoundedQueue input = new BoundedQueue(1);
+		BoundedQueue middle = new BoundedQueue(1);
+		BoundedQueue output = new BoundedQueue(100);
+		Vector failures = new Vector();
+		PipelineStage first = new TestStage(input, middle, 3, failures);
+		PipelineStage second = new TestStage(middle, output, 1, failures);
+		second.start();
+		first.start();
+		
+		final int count = 50;
+		for(int i = 0; i < count; ++i)
+			input.put(new Integer(i));
+		input.put("bad");
+		input.close();
+		first.waitUntilFinished();
+		second.waitUntilFinished();
+		
+		assertTrue("last stage didn't close its output?", output.isClosed());
+		assertEquals("wrong number of results?", count, output.size());
+		assertEquals("failure not reported?", 1, failures.size());
+		assertEquals("wrong failed item?", "bad", failures.get(0));
+		
+		boolean[] seen = new boolean[count];
+		Integer result;
+		while((result = (Integer)output.take()) != null)
+			seen[result.intValue() - 2] = true;
+		for(int i = 0; i < count; ++i)
+			assertTrue("missing " + i, seen[i]);
+	}
+	
+	public void testStoppedStageDiscards() throws Exception
+	{
+		BoundedQueue input = new BoundedQueue(10);
+		BoundedQueue output = new BoundedQueue(10);
+		Vector failures = new Vector();
+		TestStage stage = new TestStage(input, output, 2, failures);
+		stage.stop();
+		stage.start();
+		
+		input.put(new Integer(1));
+		input.put(new Integer(2));
+		input.close();
+		stage.waitUntilFinished();
+		
+		assertEquals("processed after stop?", 0, output.size());
+		assertEquals("didn't discard?", 2, stage.discarded.size());
+	}
+	
+	public void testStoresSignedBulletins() throws Exception
+	{
+		final int count = 8;
+		Bulletin[] bulletins = new Bulletin[count];
+		String[] attachmentData = new String[count];
+		for(int i = 0; i < count; ++i)
+		{
+			if(i % 2 == 0)
+				attachmentData[i] = "Attachment of bulletin " + i;
+			bulletins[i] = createBulletin("Author" + i, attachmentData[i]);
+		}
+		
+		BulletinIndexer indexer = new LuceneBulletinIndexer(getTestBasePath());
+		try
+		{
+			BulletinIngestPipeline pipeline = new BulletinIngestPipeline(gateway, new BulletinExtractor(dataManager, indexer, security), null, 2, 3);
+			pipeline.start();
+			for(int i = 0; i < count; ++i)
+				addBulletin(pipeline, bulletins[i].getUniversalId());
+			pipeline.finish();
+			
+			assertEquals("not all stored?", count, pipeline.getStoredCount());
+			assertEquals("failures?", 0, pipeline.getFailedCount());
+		}
+		finally
+		{
+			indexer.close();
+		}
+		assertDownloadsDeleted();
+		
+		BulletinSearcher searcher = new LuceneBulletinSearcher(getTestBasePath(), new LoggerToNull());
+		try
+		{
+			for(int i = 0; i < count; ++i)
+			{
+				UniversalId uid = bulletins[i].getUniversalId();
+				BulletinInfo info = searcher.lookup(uid);
+				assertNotNull("not indexed " + i, info);
+				assertEquals("wrong author?", bulletins[i].get(BulletinField.TAGAUTHOR), info.get(BulletinField.TAGAUTHOR));
+				assertFalse("claimed after being stored?", BulletinCatalog.getInstance().claimBulletin(uid));
+				
+				UniversalId fieldDataId = bulletins[i].getFieldDataPacket().getUniversalId();
+				BulletinHtmlCache htmlCache = BulletinHtmlCache.getBulletinHtmlCache();
+				assertFalse("html not prepared " + i, htmlCache.needsHtml(fieldDataId));
+				assertEquals("wrong html " + i, BulletinHtmlCache.generateHtml(dataManager, fieldDataId), htmlCache.getHtml(dataManager, fieldDataId));
+				
+				int expectedCount = (attachmentData[i] == null) ? 0 : 1;
+				assertEquals("wrong attachment count?", expectedCount, info.getAttachments().size());
+				if(expectedCount > 0)
+				{
+					AttachmentInfo attachment = (AttachmentInfo)info.getAttachments().get(0);
+					UniversalId attachmentId = UniversalId.createFromAccountAndLocalId(uid.getAccountId(), attachment.getLocalId());
+					InputStream in = dataManager.getAttachment(attachmentId);
+					try
+					{
+						assertEquals("wrong attachment?", attachmentData[i], inputStreamToString(in));
+					}
+					finally
+					{
+						in.close();
+					}
+				}
+			}
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+	
+	public void testFailedBulletinIsReleased() throws Exception
+	{
+		Bulletin good = createBulletin("Good", "Attachment");
+		UniversalId badUid = UniversalId.createFromAccountAndLocalId(security.getPublicKeyString(), "bad");
+		File badFile = createTempFileFromName("$$$MartusAmpBadBulletin");
+		writeFile(badFile, "not a bulletin zip file");
+		gateway.bulletinFiles.put(badUid, badFile);
+		
+		BulletinIndexer indexer = new LuceneBulletinIndexer(getTestBasePath());
+		try
+		{
+			BulletinIngestPipeline pipeline = new BulletinIngestPipeline(gateway, new BulletinExtractor(dataManager, indexer, security), null, 1, 2);
+			pipeline.start();
+			addBulletin(pipeline, badUid);
+			addBulletin(pipeline, good.getUniversalId());
+			pipeline.finish();
+			
+			assertEquals("good one not stored?", 1, pipeline.getStoredCount());
+			assertEquals("bad one not failed?", 1, pipeline.getFailedCount());
+		}
+		finally
+		{
+			indexer.close();
+		}
+		assertDownloadsDeleted();
+		
+		BulletinCatalog catalog = BulletinCatalog.getInstance();
+		assertTrue("failed bulletin still claimed?", catalog.claimBulletin(badUid));
+		assertFalse("stored bulletin released?", catalog.claimBulletin(good.getUniversalId()));
+	}
+	
+	public void testStopDiscardsQueuedBulletins() throws Exception
+	{
+		final int count = 4;
+		UniversalId[] uids = new UniversalId[count];
+		for(int i = 0; i < count; ++i)
+			uids[i] = createBulletin("Author" + i, "Attachment " + i).getUniversalId();
+		
+		BulletinIndexer indexer = new LuceneBulletinIndexer(getTestBasePath());
+		try
+		{
+			BulletinIngestPipeline pipeline = new BulletinIngestPipeline(gateway, new BulletinExtractor(dataManager, indexer, security), null, 1, 2);
+			gateway.pipelineToStop = pipeline;
+			pipeline.start();
+			for(int i = 0; i < count; ++i)
+				addBulletin(pipeline, uids[i]);
+			pipeline.finish();
+			
+			assertEquals("stored after stop?", 0, pipeline.getStoredCount());
+			assertEquals("discarded counted as failed?", 0, pipeline.getFailedCount());
+		}
+		finally
+		{
+			indexer.close();
+		}
+		assertEquals("downloaded after stop?", 1, gateway.downloads.size());
+		assertDownloadsDeleted();
+		
+		BulletinCatalog catalog = BulletinCatalog.getInstance();
+		for(int i = 0; i < count; ++i)
+			assertTrue("discarded bulletin still claimed? " + i, catalog.claimBulletin(uids[i]));
+	}
+	
+	private void addBulletin(BulletinIngestPipeline pipeline, UniversalId uid) throws Exception
+	{
+		assertTrue("already claimed?", BulletinCatalog.getInstance().claimBulletin(uid));
+		pipeline.addBulletin(uid);
+	}
+	
+	private void assertDownloadsDeleted()
+	{
+		for(int i = 0; i < gateway.downloads.size(); ++i)
+		{
+			File downloaded = (File)gateway.downloads.get(i);
+			assertFalse("download not deleted: " + downloaded, downloaded.exists());
+		}
+	}
+	
+	private Bulletin createBulletin(String author, String attachmentData) throws Exception
+	{
+		Bulletin b = new Bulletin(security);
+		b.set(BulletinField.TAGAUTHOR, author);
+		b.set(BulletinField.TAGKEYWORDS, "pipeline");
+		b.set(BulletinField.TAGENTRYDATE, "2003-04-30");
+		if(attachmentData != null)
+		{
+			File attachment = createTempFileFromName("$$$MartusAmpTempAttachment");
+			writeFile(attachment, attachmentData);
+			b.addPublicAttachment(new AttachmentProxy(attachment));
+		}
+		b.setAllPrivate(false);
+		b.getFieldDataPacket().setEncrypted(false);
+		b.setSealed();
+		store.saveBulletinForTesting(b);
+		
+		File zipFile = createTempFileFromName("$$$MartusAmpPipelineTest");
+		BulletinForTesting.saveToFile(store.getDatabase(), b, zipFile, security);
+		gateway.bulletinFiles.put(b.getUniversalId(), zipFile);
+		return b;
+	}
+	
+	private void writeFile(File file, String data) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(data.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	// NOTE: Hands out copies of bulletin zip files made by the test, 
+	// as if they had been downloaded from a backup server
+	class ZipFileGateway extends AmplifierNetworkGateway
+	{
+		ZipFileGateway() throws Exception
+		{
+			super(new AmplifierClientSideNetworkGateway(null), 
+					new BackupServerInfo("test", "10.1.1.1", 1, security.getPublicKeyString()), 
+					new LoggerToNull(), security);
+		}
+		
+		public File retrieveBulletin(UniversalId uid)
+		{
+			try
+			{
+				File downloaded = createTempFileFromName("$$$MartusAmpTestDownload");
+				InputStream in = new FileInputStream((File)bulletinFiles.get(uid));
+				OutputStream out = new FileOutputStream(downloaded);
+				try
+				{
+					new StreamCopier().copyStream(in, out);
+				}
+				finally
+				{
+					in.close();
+					out.close();
+				}
+				downloads.add(downloaded);
+				if(pipelineToStop != null)
+					pipelineToStop.stop();
+				return downloaded;
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException(e.toString());
+			}
+		}
+		
+		Map bulletinFiles = new HashMap();
+		Vector downloads = new Vector();
+		BulletinIngestPipeline pipelineToStop;
+	}
+	
+	static class QueuePutter extends Thread
+	{
+		QueuePutter(BoundedQueue queueToUse, String itemToPut)
+		{
+			queue = queueToUse;
+			item = itemToPut;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				queue.put(item);
+			}
+			catch (InterruptedException e)
+			{
+				wasInterrupted = true;
+			}
+		}
+		
+		BoundedQueue queue;
+		String item;
+		boolean wasInterrupted;
+	}
+	
+	static class TestStage extends PipelineStage
+	{
+		TestStage(BoundedQueue input, BoundedQueue output, int threadCount, Vector failuresToUse)
+		{
+			super("TestStage", input, output, threadCount);
+			failures = failuresToUse;
+		}
+		
+		protected Object process(Object item) throws Exception
+		{
+			return new Integer(((Integer)item).intValue() + 1);
+		}
+		
+		protected void processFailed(Object item, Exception e)
+		{
+			failures.add(item);
+		}
+		
+		protected void discard(Object item)
+		{
+			discarded.add(item);
+		}
+		
+		Vector failures;
+		Vector discarded = new Vector();
+	}
+	
+	private MockMartusSecurity security;
+	private FileSystemDataManager dataManager;
+	private BulletinStore store;
+	private ZipFileGateway gateway;
+	private File oldAmplifierDirectory;
+}
@@ -0,0 +1,257 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.datasynch.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.datasynch.AmplifierNetworkGateway;
+import org.martus.amplifier.datasynch.BackupServerInfo;
+import org.martus.amplifier.datasynch.DataSynchManager;
+import org.martus.amplifier.datasynch.SyncCoordinator;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.main.test.MockMartusServer;
+import org.martus.amplifier.network.AmplifierBulletinRetrieverGatewayInterface;
+import org.martus.amplifier.search.BulletinCatalog;
+import org.martus.amplifier.test.AbstractAmplifierTestCase;
+import org.martus.common.LoggerToNull;
+import org.martus.common.crypto.MartusCrypto;
+import org.martus.common.crypto.MockMartusSecurity;
+import org.martus.common.crypto.MartusCrypto.MartusSignatureException;
+import org.martus.common.network.NetworkInterfaceConstants;
+import org.martus.common.network.NetworkResponse;
+
+public class TestSyncCoordinator extends AbstractAmplifierTestCase
+{
+	public TestSyncCoordinator(String name)
+	{
+		super(name);
+	}
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		security = new MockMartusSecurity();
+		security.createKeyPair();
+		dataManager = new FileSystemDataManager(getTestBasePath(), security);
+		MartusAmplifier.dataManager = dataManager;
+		
+		new LuceneBulletinIndexer(getTestBasePath()).close();
+		oldAmplifierDirectory = MartusAmplifier.staticAmplifierDirectory;
+		MartusAmplifier.staticAmplifierDirectory = new File(getTestBasePath());
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			BulletinCatalog.getInstance().clear();
+			MartusAmplifier.staticAmplifierDirectory = oldAmplifierDirectory;
+			dataManager.clearAllAttachments();
+		}
+		finally
+		{
+			super.tearDown();
+		}
+	}
+	
+	// NOTE: Each server's download waits until the other's has started, 
+	// so the servers only meet if nothing makes them take turns. If they 
+	// do take turns, the first gives up waiting after a while
+	public void testServersDownloadAtOnce() throws Exception
+	{
+		DownloadMeeting meeting = new DownloadMeeting(2);
+		String[] accountIds = 
+		{
+			MockMartusSecurity.createClient().getPublicKeyString(),
+			MockMartusSecurity.createOtherServer().getPublicKeyString(),
+		};
+		
+		Vector servers = new Vector();
+		Map gateways = new HashMap();
+		for(int i = 0; i < accountIds.length; ++i)
+		{
+			BackupServerInfo server = new BackupServerInfo("test" + i, "10.1.1." + i, 1, security.getPublicKeyString());
+			servers.add(server);
+			gateways.put(server, new MeetingGatewayInterface(accountIds[i], meeting));
+		}
+		
+		MockMartusServer coreServer = new MockMartusServer(new File(getTestBasePath()), new LoggerToNull(), security);
+		MartusAmplifier amp = new MartusAmplifier(coreServer);
+		SyncCoordinator coordinator = new FakeGatewayCoordinator(amp, servers, gateways);
+		LuceneBulletinIndexer indexer = new LuceneBulletinIndexer(getTestBasePath());
+		try
+		{
+			coordinator.pullNewDataFromAllServers(dataManager, indexer, null);
+		}
+		finally
+		{
+			indexer.close();
+		}
+		
+		for(int i = 0; i < servers.size(); ++i)
+		{
+			MeetingGatewayInterface gateway = (MeetingGatewayInterface)gateways.get(servers.get(i));
+			assertTrue("server " + i + " not asked for its bulletin?", gateway.wasChunkRequested());
+		}
+		assertEquals("servers didn't download at once?", 2, meeting.getMostAtOnce());
+	}
+	
+	class FakeGatewayCoordinator extends SyncCoordinator
+	{
+		FakeGatewayCoordinator(MartusAmplifier ampToUse, List servers, Map gatewaysToUse)
+		{
+			super(ampToUse, servers, new LoggerToNull(), security);
+			amp = ampToUse;
+			gateways = gatewaysToUse;
+		}
+		
+		protected DataSynchManager createDataSynchManager(BackupServerInfo server)
+		{
+			AmplifierBulletinRetrieverGatewayInterface gateway = (AmplifierBulletinRetrieverGatewayInterface)gateways.get(server);
+			return new DataSynchManager(amp, new AmplifierNetworkGateway(gateway, server, new LoggerToNull(), security));
+		}
+		
+		MartusAmplifier amp;
+		Map gateways;
+	}
+	
+	static class DownloadMeeting
+	{
+		DownloadMeeting(int expectedCountToUse)
+		{
+			expectedCount = expectedCountToUse;
+		}
+		
+		synchronized void downloadStarted() throws InterruptedException
+		{
+			++inProgressCount;
+			mostAtOnce = Math.max(mostAtOnce, inProgressCount);
+			notifyAll();
+			
+			long giveUpAt = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+			try
+			{
+				while(mostAtOnce < expectedCount)
+				{
+					long remaining = giveUpAt - System.currentTimeMillis();
+					if(remaining <= 0)
+						break;
+					wait(remaining);
+				}
+			}
+			finally
+			{
+				--inProgressCount;
+			}
+		}
+		
+		synchronized int getMostAtOnce()
+		{
+			return mostAtOnce;
+		}
+		
+		private int expectedCount;
+		private int inProgressCount;
+		private int mostAtOnce;
+		private static final long MAX_WAIT_MILLIS = 10 * 1000;
+	}
+	
+	// NOTE: Offers one bulletin in one account. Its download never 
+	// succeeds, which only means the bulletin fails to be received
+	static class MeetingGatewayInterface implements AmplifierBulletinRetrieverGatewayInterface
+	{
+		MeetingGatewayInterface(String accountIdToUse, DownloadMeeting meetingToUse)
+		{
+			accountId = accountIdToUse;
+			meeting = meetingToUse;
+		}
+		
+		public NetworkResponse getAccountIds(MartusCrypto signer) throws MartusSignatureException, IOException
+		{
+			Vector ids = new Vector();
+			ids.add(accountId);
+			return createResponse(NetworkInterfaceConstants.OK, ids);
+		}
+		
+		public NetworkResponse getContactInfo(String accountIdToGet, MartusCrypto signer) throws MartusSignatureException, IOException
+		{
+			return createResponse(NetworkInterfaceConstants.NOT_FOUND, new Vector());
+		}
+		
+		public NetworkResponse getPublicBulletinLocalIds(MartusCrypto signer, String accountIdToGet) throws MartusSignatureException, IOException
+		{
+			Vector ids = new Vector();
+			ids.add("B-" + accountIdToGet.hashCode());
+			return createResponse(NetworkInterfaceConstants.OK, ids);
+		}
+		
+		public NetworkResponse getBulletinChunk(MartusCrypto signer, String authorAccountId, String bulletinLocalId, int chunkOffset, int maxChunkSize) throws MartusSignatureException, IOException
+		{
+			synchronized(this)
+			{
+				chunkRequested = true;
+			}
+			try
+			{
+				meeting.downloadStarted();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return createResponse(NetworkInterfaceConstants.NOT_FOUND, new Vector());
+		}
+		
+		synchronized boolean wasChunkRequested()
+		{
+			return chunkRequested;
+		}
+		
+		private NetworkResponse createResponse(String resultCode, Vector result)
+		{
+			Vector rawData = new Vector();
+			rawData.add(resultCode);
+			rawData.add(result.toArray());
+			return new NetworkResponse(rawData);
+		}
+		
+		private String accountId;
+		private DownloadMeeting meeting;
+		private boolean chunkRequested;
+	}
+	
+	private MockMartusSecurity security;
+	private FileSystemDataManager dataManager;
+	private File oldAmplifierDirectory;
+}
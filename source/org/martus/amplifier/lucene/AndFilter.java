@@ -0,0 +1,60 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+
+/**
+ * Matches the documents that every one of its filters matches. The 
+ * filters may return shared (cached) bits, so they are copied before 
+ * being combined.
+ */
+public class AndFilter extends Filter
+{
+	public AndFilter(Filter[] filtersToUse)
+	{
+		filters = filtersToUse;
+	}
+	
+	public AndFilter(Filter first, Filter second)
+	{
+		this(new Filter[] {first, second});
+	}
+	
+	public BitSet bits(IndexReader reader) throws IOException
+	{
+		BitSet bits = (BitSet)filters[0].bits(reader).clone();
+		for(int i = 1; i < filters.length; ++i)
+			bits.and(filters[i].bits(reader));
+		return bits;
+	}
+	
+	private Filter[] filters;
+}
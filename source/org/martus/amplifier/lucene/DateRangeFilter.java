@@ -0,0 +1,100 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+
+/**
+ * Matches documents whose date range (from startDayField to 
+ * endDayField) overlaps fromDay..toDay, using the cached per-reader 
+ * DayNumbers arrays. A single date can be matched by passing the same 
+ * field as both the start and the end. 
+ * 
+ * Documents with an unknown start or end date only match when 
+ * includeUnknowns is set, and documents without the fields never do.
+ */
+public class DateRangeFilter extends Filter
+{
+	public DateRangeFilter(String startDayFieldToUse, String endDayFieldToUse, 
+			String fromDate, String toDate, boolean includeUnknownsToUse)
+	{
+		startDayField = startDayFieldToUse;
+		endDayField = endDayFieldToUse;
+		fromDay = parseBound(fromDate, EARLIEST_DAY);
+		toDay = parseBound(toDate, LATEST_DAY);
+		includeUnknowns = includeUnknownsToUse;
+	}
+	
+	public BitSet bits(IndexReader reader) throws IOException
+	{
+		int[] startDays = DayNumbers.getDayNumbers(reader, startDayField);
+		int[] endDays = DayNumbers.getDayNumbers(reader, endDayField);
+		
+		BitSet bits = new BitSet(startDays.length);
+		for(int doc = 0; doc < startDays.length; ++doc)
+		{
+			int startDay = startDays[doc];
+			int endDay = endDays[doc];
+			if(startDay == DayNumbers.NO_DAY || endDay == DayNumbers.NO_DAY)
+				continue;
+			
+			if(startDay == DayNumbers.UNKNOWN_DAY || endDay == DayNumbers.UNKNOWN_DAY)
+			{
+				if(includeUnknowns)
+					bits.set(doc);
+				continue;
+			}
+			
+			if(startDay <= toDay && endDay >= fromDay)
+				bits.set(doc);
+		}
+		return bits;
+	}
+	
+	private static int parseBound(String date, int defaultDay)
+	{
+		if(date == null)
+			return defaultDay;
+		
+		int day = DayNumbers.parseDay(date);
+		if(day < 0)
+			return defaultDay;
+		return day;
+	}
+	
+	private static final int EARLIEST_DAY = 0;
+	private static final int LATEST_DAY = Integer.MAX_VALUE;
+	
+	private String startDayField;
+	private String endDayField;
+	private int fromDay;
+	private int toDay;
+	private boolean includeUnknowns;
+}
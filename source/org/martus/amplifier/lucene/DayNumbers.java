@@ -0,0 +1,140 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+/**
+ * For one day field, maps each document number to its date as a 
+ * yyyymmdd int, so date ranges can be checked with int comparisons 
+ * instead of being expanded into one query clause per date term. 
+ * Documents with an unknown date get UNKNOWN_DAY, and documents 
+ * without the field at all get NO_DAY.
+ * 
+ * The arrays are built by one walk of the terms, and are cached for 
+ * as long as the IndexReader is in use. They are shared, so callers 
+ * must not modify them.
+ */
+class DayNumbers implements LuceneSearchConstants
+{
+	static int[] getDayNumbers(IndexReader reader, String dayFieldName) throws IOException
+	{
+		Map dayNumbersByField;
+		synchronized(dayNumbersByReader)
+		{
+			dayNumbersByField = (Map)dayNumbersByReader.get(reader);
+			if(dayNumbersByField == null)
+			{
+				dayNumbersByField = new HashMap();
+				dayNumbersByReader.put(reader, dayNumbersByField);
+			}
+		}
+		
+		synchronized(dayNumbersByField)
+		{
+			int[] dayNumbers = (int[])dayNumbersByField.get(dayFieldName);
+			if(dayNumbers == null)
+			{
+				dayNumbers = computeDayNumbers(reader, dayFieldName);
+				dayNumbersByField.put(dayFieldName, dayNumbers);
+			}
+			return dayNumbers;
+		}
+	}
+	
+	static String toIndexTerm(String isoDate)
+	{
+		int day = parseDay(isoDate);
+		if(day < 0)
+			return UNKNOWN_DATE;
+		
+		String digits = Integer.toString(day);
+		return "00000000".substring(digits.length()) + digits;
+	}
+	
+	static int parseDay(String isoDate)
+	{
+		if(isoDate == null || isoDate.equals(UNKNOWN_DATE))
+			return UNKNOWN_DAY;
+		
+		StringBuffer digits = new StringBuffer(DAY_DIGITS);
+		for(int i = 0; i < isoDate.length(); ++i)
+		{
+			char c = isoDate.charAt(i);
+			if(Character.isDigit(c))
+				digits.append(c);
+		}
+		if(digits.length() != DAY_DIGITS)
+			return UNKNOWN_DAY;
+		
+		return Integer.parseInt(digits.toString());
+	}
+	
+	private static int[] computeDayNumbers(IndexReader reader, String dayFieldName) throws IOException
+	{
+		int[] dayNumbers = new int[reader.maxDoc()];
+		for(int doc = 0; doc < dayNumbers.length; ++doc)
+			dayNumbers[doc] = NO_DAY;
+		
+		TermEnum days = reader.terms(new Term(dayFieldName, ""));
+		TermDocs docsWithDay = reader.termDocs();
+		try
+		{
+			do
+			{
+				Term term = days.term();
+				if(term == null || !term.field().equals(dayFieldName))
+					break;
+				
+				int day = parseDay(term.text());
+				docsWithDay.seek(term);
+				while(docsWithDay.next())
+					dayNumbers[docsWithDay.doc()] = day;
+			}
+			while(days.next());
+		}
+		finally
+		{
+			docsWithDay.close();
+			days.close();
+		}
+		return dayNumbers;
+	}
+	
+	static final int UNKNOWN_DAY = -1;
+	static final int NO_DAY = -2;
+	
+	private static final int DAY_DIGITS = 8;
+	private static Map dayNumbersByReader = new WeakHashMap();
+}
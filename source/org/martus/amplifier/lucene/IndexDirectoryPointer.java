@@ -0,0 +1,165 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.martus.util.DirectoryUtils;
+import org.martus.util.UnicodeReader;
+import org.martus.util.UnicodeWriter;
+
+/**
+ * Keeps track of which directory under the amplifier's data path holds 
+ * the live index. The name is kept in a small pointer file, so a new 
+ * index can be built in a side directory while the old one is still 
+ * searched, and then switched to by renaming one file. Without a 
+ * pointer file the index is in the original ampIndex directory.
+ */
+public class IndexDirectoryPointer
+{
+	public static String getCurrentIndexDirName(String basePath)
+	{
+		synchronized(currentIndexDirNames)
+		{
+			String key = getKey(basePath);
+			String name = (String)currentIndexDirNames.get(key);
+			if(name == null)
+			{
+				name = readPointer(basePath);
+				currentIndexDirNames.put(key, name);
+			}
+			return name;
+		}
+	}
+	
+	// NOTE: A new name, in the same directory, that no index is using
+	public static File createSideIndexDir(String basePath)
+	{
+		File sideDir;
+		long suffix = System.currentTimeMillis();
+		do
+		{
+			sideDir = new File(basePath, DEFAULT_INDEX_DIR_NAME + "-" + suffix);
+			++suffix;
+		}
+		while(sideDir.exists());
+		return sideDir;
+	}
+	
+	/**
+	 * Makes newIndexDir the live index and returns the directory that 
+	 * was live before. The pointer is replaced by a rename, so a crash 
+	 * leaves either the old pointer or the new one.
+	 */
+	public static File switchTo(String basePath, File newIndexDir) throws IOException
+	{
+		synchronized(currentIndexDirNames)
+		{
+			File oldIndexDir = new File(basePath, getCurrentIndexDirName(basePath));
+			
+			File pointerFile = new File(basePath, POINTER_FILENAME);
+			File newPointerFile = new File(basePath, POINTER_FILENAME + ".new");
+			UnicodeWriter writer = new UnicodeWriter(newPointerFile);
+			writer.writeln(newIndexDir.getName());
+			writer.close();
+			if(!newPointerFile.renameTo(pointerFile))
+			{
+				// NOTE: Windows will not rename over an existing file. 
+				// readPointer() falls back to the new pointer if a crash 
+				// happens between the delete and the rename
+				pointerFile.delete();
+				if(!newPointerFile.renameTo(pointerFile))
+					throw new IOException("Unable to replace " + pointerFile);
+			}
+			
+			currentIndexDirNames.put(getKey(basePath), newIndexDir.getName());
+			return oldIndexDir;
+		}
+	}
+	
+	// NOTE: Removes index directories left behind by earlier switches 
+	// or by rebuilds that did not finish. Only safe at startup, before 
+	// anything has opened them
+	public static void deleteUnusedIndexDirs(String basePath)
+	{
+		String currentName = getCurrentIndexDirName(basePath);
+		File[] candidates = new File(basePath).listFiles();
+		if(candidates == null)
+			return;
+		for(int i = 0; i < candidates.length; ++i)
+		{
+			File candidate = candidates[i];
+			String name = candidate.getName();
+			if(!candidate.isDirectory() || name.equals(currentName))
+				continue;
+			if(name.equals(DEFAULT_INDEX_DIR_NAME) || name.startsWith(DEFAULT_INDEX_DIR_NAME + "-"))
+				DirectoryUtils.deleteEntireDirectoryTree(candidate);
+		}
+	}
+	
+	private static String readPointer(String basePath)
+	{
+		File pointerFile = new File(basePath, POINTER_FILENAME);
+		if(!pointerFile.exists())
+			pointerFile = new File(basePath, POINTER_FILENAME + ".new");
+		if(!pointerFile.exists())
+			return DEFAULT_INDEX_DIR_NAME;
+		
+		try
+		{
+			UnicodeReader reader = new UnicodeReader(pointerFile);
+			try
+			{
+				String name = reader.readLine();
+				if(name == null || name.trim().length() == 0)
+					return DEFAULT_INDEX_DIR_NAME;
+				return name.trim();
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return DEFAULT_INDEX_DIR_NAME;
+		}
+	}
+	
+	private static String getKey(String basePath)
+	{
+		return new File(basePath).getAbsolutePath();
+	}
+	
+	static final String DEFAULT_INDEX_DIR_NAME = "ampIndex";
+	public static final String POINTER_FILENAME = "ampIndex.current";
+	
+	private static Map currentIndexDirNames = new HashMap();
+}
@@ -0,0 +1,235 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.InputStream;
+import org.apache.lucene.store.Lock;
+
+/**
+ * Decides when the index is worth optimizing, and keeps statistics 
+ * about the segments and merges so they can be logged.
+ * 
+ * Optimizing rewrites every segment of the index, so it is only done 
+ * when an indexer closes with more than maxSegments segments, or, if 
+ * an off-peak window is configured, once the index has more than one 
+ * segment during that window. Otherwise Lucene's own merging (every 
+ * mergeFactor segments) keeps the segment count down.
+ */
+public class IndexMergePolicy
+{
+	public IndexMergePolicy(int mergeFactorToUse, int maxSegmentsToUse, int offPeakStartHourToUse, int offPeakEndHourToUse)
+	{
+		mergeFactor = mergeFactorToUse;
+		maxSegments = maxSegmentsToUse;
+		offPeakStartHour = offPeakStartHourToUse;
+		offPeakEndHour = offPeakEndHourToUse;
+		lastSegmentCount = -1;
+	}
+	
+	public int getMergeFactor()
+	{
+		return mergeFactor;
+	}
+	
+	public int getMaxSegments()
+	{
+		return maxSegments;
+	}
+	
+	public boolean shouldOptimizeOnClose(int segmentCount)
+	{
+		return segmentCount > maxSegments;
+	}
+	
+	public boolean hasOffPeakWindow()
+	{
+		return offPeakStartHour >= 0 && offPeakEndHour >= 0;
+	}
+	
+	// NOTE: The window may wrap past midnight (e.g. 22 to 4)
+	public boolean isOffPeak(Calendar now)
+	{
+		if(!hasOffPeakWindow())
+			return false;
+		
+		int hour = now.get(Calendar.HOUR_OF_DAY);
+		if(offPeakStartHour <= offPeakEndHour)
+			return hour >= offPeakStartHour && hour < offPeakEndHour;
+		return hour >= offPeakStartHour || hour < offPeakEndHour;
+	}
+	
+	public boolean shouldOptimizeOffPeak(int segmentCount, Calendar now)
+	{
+		return segmentCount > 1 && isOffPeak(now);
+	}
+	
+	public synchronized void recordSegmentCount(int segmentCount)
+	{
+		lastSegmentCount = segmentCount;
+	}
+	
+	public synchronized void recordOptimize(int segmentsBefore, long millis)
+	{
+		++optimizeCount;
+		lastOptimizeMillis = millis;
+		totalOptimizeMillis += millis;
+		lastSegmentsBeforeOptimize = segmentsBefore;
+		lastSegmentCount = 1;
+	}
+	
+	public synchronized int getLastSegmentCount()
+	{
+		return lastSegmentCount;
+	}
+	
+	public synchronized int getOptimizeCount()
+	{
+		return optimizeCount;
+	}
+	
+	public synchronized long getLastOptimizeMillis()
+	{
+		return lastOptimizeMillis;
+	}
+	
+	public synchronized long getTotalOptimizeMillis()
+	{
+		return totalOptimizeMillis;
+	}
+	
+	public synchronized String toString()
+	{
+		String report = "index segments: " + lastSegmentCount + 
+			", optimizes: " + optimizeCount + 
+			" (" + totalOptimizeMillis + " ms total)";
+		if(optimizeCount > 0)
+			report += ", last merged " + lastSegmentsBeforeOptimize + 
+				" segments in " + lastOptimizeMillis + " ms";
+		return report;
+	}
+	
+	// NOTE: Counted from Lucene's segments file, which lists every 
+	// segment whether or not it was written as a compound (.cfs) file, 
+	// so counting one kind of file per segment would miss some. The 
+	// file is read under the commit lock, like IndexReader reads it, 
+	// so a writer never replaces it part way through.
+	public static int getSegmentCount(File indexDir)
+	{
+		if(!new File(indexDir, SEGMENTS_FILE_NAME).exists())
+			return 0;
+		
+		try
+		{
+			final Directory directory = FSDirectory.getDirectory(indexDir, false);
+			try
+			{
+				Lock commitLock = directory.makeLock(COMMIT_LOCK_NAME);
+				Integer count = (Integer)new Lock.With(commitLock)
+				{
+					protected Object doBody() throws IOException
+					{
+						return new Integer(readSegmentCount(directory));
+					}
+				}.run();
+				return count.intValue();
+			}
+			finally
+			{
+				directory.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return 0;
+		}
+	}
+	
+	// NOTE: Lucene 1.3 starts the file with a negative format number 
+	// and a version, where older indexes start straight away with the 
+	// counter used to name new segments. The segment count comes next.
+	static int readSegmentCount(Directory directory) throws IOException
+	{
+		InputStream in = directory.openFile(SEGMENTS_FILE_NAME);
+		try
+		{
+			int formatOrCounter = in.readInt();
+			if(formatOrCounter < 0)
+			{
+				in.readLong();
+				in.readInt();
+			}
+			return in.readInt();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	static public synchronized void initialize(IndexMergePolicy policy)
+	{
+		mergePolicySingleton = policy;
+	}
+	
+	// NOTE: calling this without first calling initialize() will 
+	// automatically create a policy with the defaults and no off-peak 
+	// window 
+	public static synchronized IndexMergePolicy getMergePolicy()
+	{
+		if(mergePolicySingleton == null)
+		{
+			mergePolicySingleton = new IndexMergePolicy(DEFAULT_MERGE_FACTOR, DEFAULT_MAX_SEGMENTS, NO_HOUR, NO_HOUR);
+		}
+		return mergePolicySingleton;
+	}
+	
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+	public static final int DEFAULT_MAX_SEGMENTS = 30;
+	public static final int NO_HOUR = -1;
+	public static final String SEGMENTS_FILE_NAME = "segments";
+	
+	private static final String COMMIT_LOCK_NAME = "commit.lock";
+	
+	private static IndexMergePolicy mergePolicySingleton;
+	
+	private int mergeFactor;
+	private int maxSegments;
+	private int offPeakStartHour;
+	private int offPeakEndHour;
+	
+	private int lastSegmentCount;
+	private int optimizeCount;
+	private int lastSegmentsBeforeOptimize;
+	private long lastOptimizeMillis;
+	private long totalOptimizeMillis;
+}
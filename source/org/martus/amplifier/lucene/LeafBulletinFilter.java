@@ -0,0 +1,105 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.Filter;
+
+/**
+ * Restricts searches to the latest version of each bulletin.
+ * 
+ * Each indexed bulletin lists the ids of the versions it supersedes 
+ * (see LuceneBulletinIndexer), so a bulletin is a leaf exactly when 
+ * no other document names it. The bits are computed by walking those 
+ * terms once per IndexReader, and are then cached for as long as 
+ * the reader is in use.
+ * 
+ * The returned BitSet is shared, so callers must not modify it.
+ */
+public class LeafBulletinFilter extends Filter implements LuceneSearchConstants
+{
+	public BitSet bits(IndexReader reader) throws IOException
+	{
+		synchronized(leafBitsByReader)
+		{
+			BitSet cachedLeafBits = (BitSet)leafBitsByReader.get(reader);
+			if(cachedLeafBits != null)
+				return cachedLeafBits;
+		}
+		
+		BitSet leafBits = computeLeafBits(reader);
+		synchronized(leafBitsByReader)
+		{
+			leafBitsByReader.put(reader, leafBits);
+		}
+		return leafBits;
+	}
+	
+	static BitSet computeLeafBits(IndexReader reader) throws IOException
+	{
+		int maxDoc = reader.maxDoc();
+		BitSet leafBits = new BitSet(maxDoc);
+		for(int doc = 0; doc < maxDoc; ++doc)
+		{
+			if(!reader.isDeleted(doc))
+				leafBits.set(doc);
+		}
+		
+		TermEnum supersededIds = reader.terms(new Term(SUPERSEDED_BULLETIN_ID_INDEX_FIELD, ""));
+		TermDocs supersededDocs = reader.termDocs();
+		try
+		{
+			do
+			{
+				Term term = supersededIds.term();
+				if(term == null || !term.field().equals(SUPERSEDED_BULLETIN_ID_INDEX_FIELD))
+					break;
+				
+				supersededDocs.seek(new Term(BULLETIN_UNIVERSAL_ID_INDEX_FIELD, term.text()));
+				while(supersededDocs.next())
+					leafBits.clear(supersededDocs.doc());
+			} 
+			while(supersededIds.next());
+		}
+		finally
+		{
+			supersededDocs.close();
+			supersededIds.close();
+		}
+		
+		return leafBits;
+	}
+	
+	private static Map leafBitsByReader = new WeakHashMap();
+}
@@ -28,8 +28,13 @@ package org.martus.amplifier.lucene;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.text.Collator;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Vector;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -37,11 +42,16 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.martus.amplifier.common.ChoiceEntry;
+import org.martus.amplifier.common.FindBulletinsFields;
 import org.martus.amplifier.common.SearchResultConstants;
 import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.search.BulletinField;
 import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.amplifier.search.SearchConstants;
 import org.martus.common.MiniLocalization;
 import org.martus.common.bulletin.AttachmentProxy;
 import org.martus.common.fieldspec.FieldSpec;
@@ -60,45 +70,151 @@ public class LuceneBulletinIndexer
 	public LuceneBulletinIndexer(String baseDirName) 
 		throws BulletinIndexException
 	{
-		indexDir = getIndexDir(baseDirName);
+		this(getIndexDir(baseDirName));
+	}
+	
+	public LuceneBulletinIndexer(File indexDirToUse) 
+		throws BulletinIndexException
+	{
+		indexDir = indexDirToUse;
 		try {
 			createIndexIfNecessary(indexDir);
-			writer = new IndexWriter(indexDir, getAnalyzer(), false);
 		} catch (IOException e) {
 			throw new BulletinIndexException(
 				"Could not create LuceneBulletinIndexer", e);
 		}		
 	}
 	
-	public void close() throws BulletinIndexException
+	// NOTE: The writer is only opened once something is written, so 
+	// closing an indexer that wrote nothing leaves the index untouched 
+	// and searchers keep their caches
+	public synchronized void close() throws BulletinIndexException
 	{
+		if(writer == null)
+			return;
+		
 		try {
-			// TODO pdalbora 23-Apr-2003 -- Don't call this unnecessarily.
-			writer.optimize();
+			writer.close();
 		} catch (IOException e) {
-			throw new BulletinIndexException("Unable to close the index", e);
+			throw new BulletinIndexException(
+				"Unable to close the index", e);
 		} finally {
-			try {
-				writer.close();
-			} catch (IOException e) {
-				throw new BulletinIndexException(
-					"Unable to close the index", e);
-			}		
-		}		
+			writer = null;
+			LuceneSearcherManager.indexChanged(indexDir);
+		}
+		
+		IndexMergePolicy policy = IndexMergePolicy.getMergePolicy();
+		int segmentCount = IndexMergePolicy.getSegmentCount(indexDir);
+		policy.recordSegmentCount(segmentCount);
+		if(policy.shouldOptimizeOnClose(segmentCount))
+			optimize(indexDir);
 	}
 	
-	public void clearIndex() throws BulletinIndexException
+	public synchronized void clearIndex() throws BulletinIndexException
 	{
 		try {
-			writer.close();
-			writer = new IndexWriter(indexDir, ANALYZER, true);
+			if(writer != null)
+				writer.close();
+			writer = openWriter(indexDir, true);
 		} catch (IOException e) {
 			throw new BulletinIndexException("Unable to clear the index", e);
-		}		
+		} finally {
+			LuceneSearcherManager.indexCleared(indexDir);
+		}
+	}
+	
+	/**
+	 * Merges the index into a single segment. This rewrites the whole 
+	 * index, so it should only be called when the merge policy says 
+	 * so, and never while an indexer has the index open for writing.
+	 * Returns how long the merge took, in milliseconds.
+	 */
+	public static long optimize(File indexDir) throws BulletinIndexException
+	{
+		int segmentsBefore = IndexMergePolicy.getSegmentCount(indexDir);
+		long startedAt = System.currentTimeMillis();
+		try {
+			IndexWriter optimizer = openWriter(indexDir, false);
+			try {
+				optimizer.optimize();
+			} finally {
+				optimizer.close();
+			}
+		} catch (IOException e) {
+			throw new BulletinIndexException("Unable to optimize the index", e);
+		} finally {
+			LuceneSearcherManager.indexChanged(indexDir);
+		}
+		long millis = System.currentTimeMillis() - startedAt;
+		IndexMergePolicy.getMergePolicy().recordOptimize(segmentsBefore, millis);
+		return millis;
+	}
+	
+	/**
+	 * Adds the documents of indexes that were built separately to the 
+	 * index in indexDir. Lucene optimizes the index while adding them, 
+	 * so the result is a single segment. Nothing else may have indexDir 
+	 * open for writing.
+	 */
+	public static void addIndexes(File indexDir, File[] otherIndexDirs) 
+		throws BulletinIndexException
+	{
+		Directory[] others = new Directory[otherIndexDirs.length];
+		try {
+			for(int i = 0; i < otherIndexDirs.length; ++i)
+				others[i] = FSDirectory.getDirectory(otherIndexDirs[i], false);
+			IndexWriter merger = openWriter(indexDir, false);
+			try {
+				merger.addIndexes(others);
+			} finally {
+				merger.close();
+			}
+		} catch (IOException e) {
+			throw new BulletinIndexException("Unable to merge the indexes", e);
+		} finally {
+			closeDirectories(others);
+			LuceneSearcherManager.indexChanged(indexDir);
+		}
+	}
+	
+	private static void closeDirectories(Directory[] directories)
+	{
+		for(int i = 0; i < directories.length; ++i)
+		{
+			if(directories[i] == null)
+				continue;
+			try {
+				directories[i].close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private IndexWriter getWriter() throws IOException
+	{
+		if(writer == null)
+			writer = openWriter(indexDir, false);
+		return writer;
+	}
+	
+	private static IndexWriter openWriter(File indexDir, boolean create) throws IOException
+	{
+		IndexWriter newWriter = new IndexWriter(indexDir, getAnalyzer(), create);
+		newWriter.mergeFactor = IndexMergePolicy.getMergePolicy().getMergeFactor();
+		return newWriter;
 	}
 	
 	public void indexFieldData(UniversalId bulletinId, FieldDataPacket fdp, BulletinHistory history) 
 		throws BulletinIndexException
+	{
+		indexFieldData(bulletinId, fdp, history, new HashMap());
+	}
+	
+	// NOTE: Synchronized because the bulletins from every backup server 
+	// are indexed through one indexer, and the sort collator is shared
+	public synchronized void indexFieldData(UniversalId bulletinId, FieldDataPacket fdp, BulletinHistory history, Map attachmentSizes) 
+		throws BulletinIndexException
 	{
 		Document doc = new Document();
 		addBulletinId(doc, bulletinId);
@@ -111,12 +227,13 @@ public class LuceneBulletinIndexer
 			throw new BulletinIndexException(
 				"Unable to index field data for " + bulletinId, e1);
 		}
-		addAttachmentIds(doc, fdp.getAttachments());
-		addHistory(doc, history);
+		addSortKeys(doc, fdp);
+		addAttachmentIds(doc, fdp.getAttachments(), attachmentSizes);
+		addHistory(doc, bulletinId, history);
 		addFieldDataPacketId(doc, fdp.getLocalId());
 		
 		try {
-			writer.addDocument(doc);
+			getWriter().addDocument(doc);
 		} catch (IOException e) {
 			throw new BulletinIndexException(
 				"Unable to index field data for " + bulletinId, e);
@@ -133,7 +250,10 @@ public class LuceneBulletinIndexer
 		try
 		{
 			String builtWithClassName = reader.readLine();
-			return(!getAnalyzerName().equals(builtWithClassName));
+			if(!getAnalyzerName().equals(builtWithClassName))
+				return true;
+			String builtWithFormatVersion = reader.readLine();
+			return(!INDEX_FORMAT_VERSION.equals(builtWithFormatVersion));
 		}
 		finally
 		{
@@ -141,6 +261,15 @@ public class LuceneBulletinIndexer
 		}
 	}
 	
+	// NOTE: True while an IndexWriter has the index open, or if one 
+	// was left open by a process that did not exit cleanly
+	public static boolean isIndexLocked(File indexDir) throws IOException
+	{
+		if(!indexDir.exists())
+			return false;
+		return IndexReader.isLocked(indexDir.getPath());
+	}
+	
 	/* package */ 
 	static void createIndexIfNecessary(File indexDir)
 		throws IOException
@@ -159,6 +288,7 @@ public class LuceneBulletinIndexer
 		File file = new File(indexDir, INDEX_TYPE_FILENAME);
 		UnicodeWriter writer = new UnicodeWriter(file);
 		writer.writeln(getAnalyzerName());
+		writer.writeln(INDEX_FORMAT_VERSION);
 		writer.close();
 	}
 	
@@ -177,7 +307,7 @@ public class LuceneBulletinIndexer
 	public static File getIndexDir(String basePath)
 		throws BulletinIndexException
 	{
-		File f = new File(basePath, INDEX_DIR_NAME);
+		File f = new File(basePath, IndexDirectoryPointer.getCurrentIndexDirName(basePath));
 		if (!f.exists() && !f.mkdirs()) {
 			throw new BulletinIndexException(
 				"Unable to create path: " + f);
@@ -212,6 +342,8 @@ public class LuceneBulletinIndexer
 		{
 			String tag = specs[i].getTag();
 			String value = fdp.get(tag);
+			if(value == null || value.length() == 0)
+				continue;
 			allFieldData.append(ALL_FIELD_VALUE_SEPARATOR);
 			allFieldData.append(value);
 		}
@@ -223,7 +355,9 @@ public class LuceneBulletinIndexer
 			allFieldData.append(attachments[i].getLabel());
 		}
 		
-		doc.add(Field.Text(SearchResultConstants.IN_ALL_FIELDS, new String(allFieldData)));
+		// NOTE: Only searched, never displayed, so it is not stored. 
+		// Storing it roughly doubled the size of every stored document
+		doc.add(Field.UnStored(SearchResultConstants.IN_ALL_FIELDS, new String(allFieldData)));
 	}
 	
 	private static void addField(Document doc, BulletinField field, String value)
@@ -232,6 +366,8 @@ public class LuceneBulletinIndexer
 		if (field.isDateField()) 
 		{
 			doc.add(Field.Keyword(field.getIndexId(), value));
+			if(field.getIndexId().equals(SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD))
+				addDay(doc, ENTRY_DAY_INDEX_FIELD, value);
 		}
 		else if (field.isDateField())
 		{
@@ -247,26 +383,92 @@ public class LuceneBulletinIndexer
 		}
 	}
 	
+	private static void addSortKeys(Document doc, FieldDataPacket fdp)
+	{
+		Vector sortByFields = FindBulletinsFields.getSortByFieldDisplayNames();
+		for(int i = 0; i < sortByFields.size(); ++i)
+		{
+			String tag = ((ChoiceEntry)sortByFields.get(i)).getTag();
+			String value = fdp.get(tag);
+			if(value == null || value.length() == 0)
+				continue;
+			
+			String sortKey = createSortKey(BulletinField.getFieldByXmlId(tag), value);
+			doc.add(new Field(SortOrdinals.getSortKeyFieldName(tag), sortKey, false, true, false));
+		}
+	}
+	
+	// NOTE: Sort keys are compared as plain strings (term order), so 
+	// dates use their ISO form and text uses a hex encoded collation key
+	public static String createSortKey(BulletinField field, String value)
+	{
+		if(field.isDateRangeField())
+		{
+			MartusFlexidate mfd = MartusAmplifier.localization.createFlexidateFromStoredData(value);
+			return mfd.getBeginDate().toIsoDateString();
+		}
+		if(field.isDateField())
+			return value;
+		
+		byte[] collationKey = SORT_COLLATOR.getCollationKey(value).toByteArray();
+		StringBuffer hex = new StringBuffer(collationKey.length * 2);
+		for(int i = 0; i < collationKey.length; ++i)
+		{
+			hex.append(HEX_DIGITS.charAt((collationKey[i] >> 4) & 0x0f));
+			hex.append(HEX_DIGITS.charAt(collationKey[i] & 0x0f));
+		}
+		return hex.toString();
+	}
+	
+	private static Collator createSortCollator()
+	{
+		Collator collator = Collator.getInstance(new Locale(MartusAmplifier.AMP_DEFAULT_LANGUAGE));
+		collator.setStrength(Collator.SECONDARY);
+		return collator;
+	}
+	
 	private static void addAttachmentIds(
-		Document doc, AttachmentProxy[] proxies)
+		Document doc, AttachmentProxy[] proxies, Map attachmentSizes)
 	{
 		if (proxies.length > 0) {
 			StringBuffer buf = new StringBuffer();
+			StringBuffer sizes = new StringBuffer();
 			for (int i = 0; i < proxies.length; i++) {
 				AttachmentProxy proxy = proxies[i];
-				buf.append(proxy.getUniversalId().getLocalId());
+				String localId = proxy.getUniversalId().getLocalId();
+				buf.append(localId);
 				buf.append(ATTACHMENT_LIST_SEPARATOR);
 				buf.append(proxy.getLabel());
 				buf.append(ATTACHMENT_LIST_SEPARATOR);
+				
+				Long size = (Long)attachmentSizes.get(localId);
+				if (size == null)
+					sizes.append(UNKNOWN_ATTACHMENT_SIZE);
+				else
+					sizes.append(size.longValue());
+				sizes.append(ATTACHMENT_LIST_SEPARATOR);
 			}
 			doc.add(Field.UnIndexed(
 				ATTACHMENT_LIST_INDEX_FIELD, buf.toString()));
+			doc.add(Field.UnIndexed(
+				ATTACHMENT_SIZE_LIST_INDEX_FIELD, sizes.toString()));
 		}
 	}
 	
-	private static void addHistory(Document doc, BulletinHistory history)
+	private static void addHistory(Document doc, UniversalId bulletinId, BulletinHistory history)
 	{
 		doc.add(Field.UnIndexed(HISTORY_INDEX_FIELD, history.toString()));
+		
+		// NOTE: Every older version is recorded as an indexed (but not stored)
+		// term, so LeafBulletinFilter can find the leaves without loading 
+		// any documents
+		String accountId = bulletinId.getAccountId();
+		for(int version = 0; version < history.size(); ++version)
+		{
+			String localId = history.get(version);
+			UniversalId supersededId = UniversalId.createFromAccountAndLocalId(accountId, localId);
+			doc.add(new Field(SUPERSEDED_BULLETIN_ID_INDEX_FIELD, supersededId.toString(), false, true, false));
+		}
 	}
 	
 	private static void addFieldDataPacketId(Document doc, String fieldDataPacketLocalId)
@@ -291,17 +493,24 @@ public class LuceneBulletinIndexer
 		String isoBeginDate = localization.convertStoredDateToDisplay(beginDate.toIsoDateString());
 		if(beginDate.isUnknown())
 			isoBeginDate = LuceneSearchConstants.UNKNOWN_DATE;
-		doc.add(Field.Keyword(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, isoBeginDate)); 			
+		addDay(doc, EVENT_START_DAY_INDEX_FIELD, isoBeginDate);
 
 		MultiCalendar endDate = mfd.getEndDate();
 		String isoEndDate = localization.convertStoredDateToDisplay(endDate.toIsoDateString());
 		if(endDate.isUnknown())
 			isoEndDate = LuceneSearchConstants.UNKNOWN_DATE;
-		doc.add(Field.Keyword(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, isoEndDate));
+		addDay(doc, EVENT_END_DAY_INDEX_FIELD, isoEndDate);
 					
 		doc.add(Field.Text(field.getIndexId(), value));				
 	}
 	
+	// NOTE: Day terms are compact yyyymmdd strings (or UNKNOWN), which 
+	// DateRangeFilter reads back as ints rather than expanding a range query
+	private static void addDay(Document doc, String dayFieldName, String isoDate)
+	{
+		doc.add(new Field(dayFieldName, DayNumbers.toIndexTerm(isoDate), false, true, false));
+	}
+	
 	// NOTE: if the external behavior changes, this class MUST be renamed,
 	// so the search engine can force the index to be rebuilt
 	static class AlphanumericAnalyzer extends Analyzer
@@ -316,8 +525,15 @@ public class LuceneBulletinIndexer
 	private File indexDir;
 	private IndexWriter writer;
 	private final static Analyzer ANALYZER = new AlphanumericAnalyzer();
+	private final static Collator SORT_COLLATOR = createSortCollator();
+	private final static String HEX_DIGITS = "0123456789abcdef";
+	
+	static final long UNKNOWN_ATTACHMENT_SIZE = -1;
 	
-	private static final String INDEX_DIR_NAME = "ampIndex";
 	private static final String ALL_FIELD_VALUE_SEPARATOR = "    |    ";
 	private static final String INDEX_TYPE_FILENAME = "indexType.txt";
+	
+	// NOTE: bump this whenever the set of indexed fields changes, 
+	// so the search engine can force the index to be rebuilt
+	private static final String INDEX_FORMAT_VERSION = "5";
 }
\ No newline at end of file
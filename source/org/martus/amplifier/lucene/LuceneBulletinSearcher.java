@@ -28,13 +28,15 @@ package org.martus.amplifier.lucene;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
 
-import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.Hits;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
@@ -43,9 +45,9 @@ import org.martus.amplifier.search.BulletinCatalog;
 import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinInfo;
 import org.martus.amplifier.search.BulletinSearcher;
+import org.martus.amplifier.search.IndexedBulletinIdSet;
 import org.martus.amplifier.search.Results;
 import org.martus.common.LoggerInterface;
-import org.martus.common.packet.BulletinHistory;
 import org.martus.common.packet.UniversalId;
 
 public class LuceneBulletinSearcher implements BulletinSearcher
@@ -56,11 +58,47 @@ public class LuceneBulletinSearcher implements BulletinSearcher
 		
 		File indexDir = LuceneBulletinIndexer.getIndexDir(baseDirName);
 		LuceneBulletinIndexer.createIndexIfNecessary(indexDir);
-		searcher = new IndexSearcher(indexDir.getPath());
-	}	
+		manager = new LuceneSearcherManager(indexDir);
+		ownsManager = true;
+		openSharedSearcher();
+	}
+	
+	public LuceneBulletinSearcher(LuceneSearcherManager managerToUse, LoggerInterface loggerToUse) throws Exception
+	{
+		logger = loggerToUse;
+		manager = managerToUse;
+		ownsManager = false;
+		openSharedSearcher();
+	}
+	
+	private void openSharedSearcher() throws IOException
+	{
+		sharedSearcher = manager.acquire();
+		reader = sharedSearcher.getReader();
+		searcher = sharedSearcher.getSearcher();
+	}
 	
 	public Results search(Map fields) throws Exception 
 	{	
+		SearchResultCache resultCache = manager.getResultCache();
+		String cacheKey = SearchResultCache.createKey(fields);
+		long generation = sharedSearcher.getGeneration();
+		int[] docNumbers = resultCache.get(cacheKey, generation);
+		if(docNumbers == null)
+		{
+			docNumbers = findMatches(fields);
+			resultCache.put(cacheKey, generation, docNumbers);
+			logger.logDebug("Search result cache miss: " + resultCache);
+		}
+		else
+		{
+			logger.logDebug("Search result cache hit: " + resultCache);
+		}
+		return createResults(docNumbers);
+	}
+
+	private int[] findMatches(Map fields) throws Exception
+	{
 		if (isComplexSearch(fields))
 			return getComplexSearchResults(fields);
 
@@ -83,9 +121,40 @@ public class LuceneBulletinSearcher implements BulletinSearcher
 		throw new BulletinCatalog.DuplicateBulletinException(message);
 	}
 
+	public IndexedBulletinIdSet getIndexedBulletinIds() throws Exception
+	{
+		IndexedBulletinIdSet ids = new IndexedBulletinIdSet();
+		String fieldToRead = LuceneSearchConstants.BULLETIN_UNIVERSAL_ID_INDEX_FIELD;
+		TermEnum bulletinIds = reader.terms(new Term(fieldToRead, ""));
+		try
+		{
+			do
+			{
+				Term term = bulletinIds.term();
+				if(term == null || !term.field().equals(fieldToRead))
+					break;
+				ids.add(UniversalId.createFromString(term.text()));
+			}
+			while(bulletinIds.next());
+		}
+		finally
+		{
+			bulletinIds.close();
+		}
+		return ids;
+	}
+
 	public void close() throws Exception
 	{
-		searcher.close();
+		try
+		{
+			manager.release(sharedSearcher);
+		}
+		finally
+		{
+			if(ownsManager)
+				manager.close();
+		}
 	}
 
 	private boolean isComplexSearch(Map fields)
@@ -99,22 +168,26 @@ public class LuceneBulletinSearcher implements BulletinSearcher
 		String fieldToSearch = LuceneSearchConstants.BULLETIN_UNIVERSAL_ID_INDEX_FIELD;
 		Term term = new Term(fieldToSearch, bulletinId.toString());
 		TermQuery query = new TermQuery(term);
-		return new LuceneResults(getRawResults(query));
+		return getRawResults(query);
 	}
 
-	private Results getComplexSearchResults(Map fields)
+	private int[] getComplexSearchResults(Map fields)
 		throws Exception, IOException
 	{
-		Query query = new QueryBuilder(fields).getQuery();
-		return getResults(query);
+		QueryBuilder builder = new QueryBuilder(fields);
+		Filter filter = new AndFilter(LEAF_BULLETINS, builder.getFilter());
+		Query query = builder.getQuery();
+		if(query == null)
+			return getFilteredResults(filter);
+		return getResults(query, filter);
 	}
 
-	private Results getSimpleSearchResults(Map fields)
+	private int[] getSimpleSearchResults(Map fields)
 		throws Exception, IOException
 	{
 		String queryString = (String) fields.get(SearchResultConstants.RESULT_BASIC_QUERY_KEY);
 		Query query = buildSimpleSearchQuery(queryString);				
-		return getResults(query);
+		return getResults(query, LEAF_BULLETINS);
 	}
 	
 	private Query buildSimpleSearchQuery(String queryString) throws Exception
@@ -123,12 +196,6 @@ public class LuceneBulletinSearcher implements BulletinSearcher
 		return query;
 	}
 	
-	private Query buildAllBulletinsQuery() throws Exception
-	{
-		HashMap fields = getDefaultSearchValues();
-		return new QueryBuilder(fields).getQuery();
-	}
-
 	static public HashMap getDefaultSearchValues()
 	{
 		HashMap fields = new HashMap();
@@ -144,82 +211,59 @@ public class LuceneBulletinSearcher implements BulletinSearcher
 		return fields;
 	}
 
-	private Results getResults(Query query) throws Exception
+	private int[] getResults(Query query, Filter filter) throws Exception
 	{
-		Vector matchingDocs = getRawResults(query);
-		Vector matchingLeafs = extractLeafDocuments(matchingDocs);
-		return new LuceneResults(matchingLeafs);
+		int[] docNumbers = collectDocNumbers(query, filter);
+		logger.logDebug("Final Version Bulletins = " + docNumbers.length);
+		return docNumbers;
 	}
 	
-	private Vector getRawResults(Query query) throws IOException
+	// NOTE: With no words to score, every match ties, and would be 
+	// returned in document order anyway
+	private int[] getFilteredResults(Filter filter) throws IOException
 	{
-		Hits hits = searcher.search(query);
-		Vector docs = new Vector();
-		for(int i=0; i < hits.length(); ++i)
-		{
-			Document doc = hits.doc(i);
-			docs.add(doc);
-		}
-		return docs;
+		BitSet matches = filter.bits(reader);
+		int[] docNumbers = new int[matches.cardinality()];
+		int next = 0;
+		for(int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1))
+			docNumbers[next++] = doc;
+		logger.logDebug("Final Version Bulletins = " + docNumbers.length);
+		return docNumbers;
 	}
-
-	public Vector extractLeafDocuments(Vector docs) throws Exception
+	
+	private Results getRawResults(Query query) throws IOException
 	{
-		Vector results = new Vector();
-		
-		Vector leafs = getAllLeafUids();
-		for(int i=0; i < docs.size(); ++i)
-		{
-			Document doc = (Document)docs.get(i);
-			UniversalId uid = LuceneResults.getBulletinId(doc);
-			if(leafs.contains(uid))
-				results.add(doc);
-		}
-		
-		logger.logDebug("Final Version Bulletins = " + leafs.size());
-		logger.logDebug("All Bulletins = " + docs.size());
-		
-		return results;
+		return createResults(collectDocNumbers(query, null));
 	}
 
-	public Vector getAllLeafUids() throws IOException, Exception, BulletinIndexException
+	private int[] collectDocNumbers(Query query, Filter filter) throws IOException
 	{
-		Query query = buildAllBulletinsQuery();
-		Hits allBulletins = searcher.search(query);
-		Vector leafCandidates = extractAllUidsFromHits(allBulletins);
-		
-		for(int i=0; i < allBulletins.length(); ++i)
-		{
-			Document doc = allBulletins.doc(i);
-			String accountId = LuceneResults.getBulletinId(doc).getAccountId();
-			String historyString = doc.get(LuceneSearchConstants.HISTORY_INDEX_FIELD);
-			if(historyString == null)
-				continue;
-
-			BulletinHistory history = BulletinHistory.createFromHistoryString(historyString);
-			for(int version = 0; version < history.size(); ++version)
-			{
-				String localId = history.get(version);
-				UniversalId nonLeafUid = UniversalId.createFromAccountAndLocalId(accountId, localId);
-				leafCandidates.remove(nonLeafUid);
-			}
-		}
-		
-		return leafCandidates;
+		ScoredDocCollector collector = new ScoredDocCollector();
+		searcher.search(query, filter, collector);
+		return collector.getDocNumbersByScore();
+	}
+	
+	private Results createResults(int[] docNumbers)
+	{
+		return new LuceneResults(manager, sharedSearcher.getEpoch(), docNumbers);
 	}
 
-	private Vector extractAllUidsFromHits(Hits allBulletins) throws IOException, BulletinIndexException
+	public Vector getAllLeafUids() throws IOException, BulletinIndexException
 	{
 		Vector leafs = new Vector();
-		for(int i=0; i < allBulletins.length(); ++i)
-		{
-			Document doc = allBulletins.doc(i);
-			UniversalId uid = LuceneResults.getBulletinId(doc);
-			leafs.add(uid);
-		}
+		BitSet leafBits = LEAF_BULLETINS.bits(reader);
+		for(int doc = leafBits.nextSetBit(0); doc >= 0; doc = leafBits.nextSetBit(doc + 1))
+			leafs.add(LuceneResults.getBulletinId(reader.document(doc)));
+		
 		return leafs;
 	}
 
+	private static final LeafBulletinFilter LEAF_BULLETINS = new LeafBulletinFilter();
+	
+	private LuceneSearcherManager manager;
+	private boolean ownsManager;
+	private LuceneSearcherManager.SharedSearcher sharedSearcher;
+	private IndexReader reader;
 	private IndexSearcher searcher;
 	private LoggerInterface logger;
 }
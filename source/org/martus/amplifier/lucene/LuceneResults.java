@@ -25,11 +25,14 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.lucene;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.lucene.document.Document;
+import org.martus.amplifier.attachment.DataManager;
+import org.martus.amplifier.attachment.FileSystemDataManager;
 import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.search.AttachmentInfo;
 import org.martus.amplifier.search.BulletinField;
@@ -45,20 +48,188 @@ import org.martus.common.utilities.MartusFlexidate;
 
 public class LuceneResults implements Results, LuceneSearchConstants, SearchConstants
 {
-	public LuceneResults(Vector docsToUse) throws IOException
+	LuceneResults(LuceneSearcherManager managerToUse, long epochToUse, int[] docNumbersToUse)
 	{
-		docs = docsToUse;
+		manager = managerToUse;
+		epoch = epochToUse;
+		docNumbers = docNumbersToUse;
 	}
 		
 	public int getCount()
 	{
-		return docs.size();
+		return docNumbers.length;
 	}
 
 	public BulletinInfo getBulletinInfo(int n)
 		throws BulletinIndexException 
 	{
-		Document doc = (Document)docs.get(n);
+		return (BulletinInfo)getBulletinInfos(n, 1).get(0);
+	}
+	
+	public List getBulletinInfos(int first, int count) 
+		throws BulletinIndexException
+	{
+		int end = Math.min(first + count, docNumbers.length);
+		ensureSortedThrough(end);
+		
+		ArrayList infos = new ArrayList();
+		LuceneSearcherManager.SharedSearcher searcher = acquireSearcher();
+		try
+		{
+			for(int i = first; i < end; ++i)
+			{
+				Document doc = searcher.getSearcher().doc(getDocNumber(i));
+				infos.add(createBulletinInfo(doc));
+			}
+		}
+		catch (IOException e)
+		{
+			throw new BulletinIndexException("Unable to load search results", e);
+		}
+		finally
+		{
+			releaseSearcher(searcher);
+		}
+		return infos;
+	}
+	
+	/**
+	 * Only computes one int sort key per hit, using the ordinals of 
+	 * the sort keys written at index time. The hits are then put in 
+	 * order lazily, just far enough to cover the windows that are 
+	 * actually requested (see ensureSortedThrough).
+	 */
+	public void sortBy(String fieldTag, boolean descending) 
+		throws BulletinIndexException
+	{
+		int[] ordinals;
+		LuceneSearcherManager.SharedSearcher searcher = acquireSearcher();
+		try
+		{
+			ordinals = SortOrdinals.getOrdinals(searcher.getReader(), fieldTag);
+		}
+		catch (IOException e)
+		{
+			throw new BulletinIndexException("Unable to sort search results", e);
+		}
+		finally
+		{
+			releaseSearcher(searcher);
+		}
+		
+		long[] keys = new long[docNumbers.length];
+		for(int i = 0; i < docNumbers.length; ++i)
+		{
+			int ordinal = ordinals[docNumbers[i]];
+			if(descending)
+				ordinal = Integer.MAX_VALUE - ordinal;
+			keys[i] = ((long)ordinal << 32) | i;
+		}
+		sortKeys = keys;
+		sortedCount = 0;
+	}
+	
+	// NOTE: A rough guess at the heap used by the document numbers and 
+	// the sort keys, which is what a session holds between pages
+	public long getSizeInBytes()
+	{
+		long bytes = 4L * docNumbers.length;
+		if(sortKeys != null)
+			bytes += 8L * sortKeys.length;
+		return bytes;
+	}
+	
+	private int getDocNumber(int n)
+	{
+		if(sortKeys == null)
+			return docNumbers[n];
+		int hitIndex = (int)(sortKeys[n] & 0xffffffffL);
+		return docNumbers[hitIndex];
+	}
+	
+	private void ensureSortedThrough(int end)
+	{
+		if(sortKeys == null || end <= sortedCount)
+			return;
+		
+		int newSortedCount = Math.min(sortKeys.length, Math.max(end, sortedCount * 2));
+		if(newSortedCount < sortKeys.length)
+			selectSmallest(sortKeys, sortedCount, sortKeys.length - 1, newSortedCount - 1);
+		Arrays.sort(sortKeys, sortedCount, newSortedCount);
+		sortedCount = newSortedCount;
+	}
+	
+	// Rearranges keys[left..right] so that keys[k] holds the value it 
+	// would have if sorted, with nothing larger before it and nothing 
+	// smaller after it
+	static void selectSmallest(long[] keys, int left, int right, int k)
+	{
+		while(left < right)
+		{
+			long pivot = keys[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while(i <= j)
+			{
+				while(keys[i] < pivot)
+					++i;
+				while(keys[j] > pivot)
+					--j;
+				if(i <= j)
+				{
+					long temp = keys[i];
+					keys[i] = keys[j];
+					keys[j] = temp;
+					++i;
+					--j;
+				}
+			}
+			if(k <= j)
+				right = j;
+			else if(k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+	
+	private LuceneSearcherManager.SharedSearcher acquireSearcher()
+		throws BulletinIndexException
+	{
+		LuceneSearcherManager.SharedSearcher searcher;
+		try
+		{
+			searcher = manager.acquire();
+		}
+		catch (IOException e)
+		{
+			throw new BulletinIndexException("Unable to open the index", e);
+		}
+		
+		if(searcher.getEpoch() != epoch)
+		{
+			releaseSearcher(searcher);
+			throw new BulletinIndexException("The index was cleared after these results were found");
+		}
+		return searcher;
+	}
+	
+	private void releaseSearcher(LuceneSearcherManager.SharedSearcher searcher)
+		throws BulletinIndexException
+	{
+		try
+		{
+			manager.release(searcher);
+		}
+		catch (IOException e)
+		{
+			throw new BulletinIndexException("Unable to close the index", e);
+		}
+	}
+	
+	private static BulletinInfo createBulletinInfo(Document doc)
+		throws BulletinIndexException 
+	{
 		BulletinInfo info = new BulletinInfo(getBulletinId(doc));
 		
 		addAllEmptyFields(info);
@@ -143,12 +314,13 @@ public class LuceneResults implements Results, LuceneSearchConstants, SearchCons
 					"Invalid attachments string found: " + 
 					attachmentsString);
 			}
+			String[] sizesInBytes = getAttachmentSizes(doc);
 			for (int i = 0; i < attachmentsAssocList.length; i += 2) 
 			{
 				String accountId = bulletinInfo.getAccountId();
 				String localId = attachmentsAssocList[i];
 				UniversalId uId = UniversalId.createFromAccountAndLocalId(accountId, localId);
-				long size = getAttachmentSizeInKb(uId);
+				long size = getAttachmentSizeInKb(uId, sizesInBytes, i / 2);
 				
 				String attachmentLabel = attachmentsAssocList[i + 1];
 				AttachmentInfo attachmentInfo = new AttachmentInfo(uId, attachmentLabel, size);
@@ -162,10 +334,10 @@ public class LuceneResults implements Results, LuceneSearchConstants, SearchCons
 		String accountId = info.getAccountId();
 		try
 		{
-			File contactInfoFile = MartusAmplifier.dataManager.getContactInfoFile(accountId);
-			if(!contactInfoFile.exists())
+			DataManager dataManager = MartusAmplifier.dataManager;
+			if(!dataManager.hasContactInfo(accountId))
 				return;
-			info.setContactInfoFile(contactInfoFile);
+			info.setContactInfoFile(dataManager.getContactInfoFile(accountId));
 		}
 		catch (IOException e)
 		{
@@ -183,6 +355,28 @@ public class LuceneResults implements Results, LuceneSearchConstants, SearchCons
 		info.setFieldDataPacketUId(doc.get(FIELD_DATA_PACKET_LOCAL_ID_INDEX_FIELD));
 	}
 	
+	private static String[] getAttachmentSizes(Document doc)
+	{
+		String sizesString = doc.get(ATTACHMENT_SIZE_LIST_INDEX_FIELD);
+		if (sizesString == null)
+			return new String[0];
+		return sizesString.split(ATTACHMENT_LIST_SEPARATOR);
+	}
+	
+	// NOTE: Sizes are recorded in the index as bulletins are received, 
+	// but documents indexed before that (or with a size that couldn't 
+	// be found) still ask the DataManager
+	private static long getAttachmentSizeInKb(UniversalId uId, String[] sizesInBytes, int index)
+	{
+		if (index < sizesInBytes.length)
+		{
+			long sizeInBytes = Long.parseLong(sizesInBytes[index]);
+			if (sizeInBytes >= 0)
+				return Math.max(1, sizeInBytes / FileSystemDataManager.Kbytes);
+		}
+		return getAttachmentSizeInKb(uId);
+	}
+	
 	private static long getAttachmentSizeInKb(UniversalId uId)
 	{
 		long size = -1;
@@ -218,6 +412,10 @@ public class LuceneResults implements Results, LuceneSearchConstants, SearchCons
 		}
 	}
 	
-	private Vector docs;		
+	private LuceneSearcherManager manager;
+	private long epoch;
+	private int[] docNumbers;
+	private long[] sortKeys;
+	private int sortedCount;
 }
 	
\ No newline at end of file
@@ -29,9 +29,15 @@ public interface LuceneSearchConstants
 {
 	String BULLETIN_UNIVERSAL_ID_INDEX_FIELD = "bulletin_uid";
 	String HISTORY_INDEX_FIELD = "$$$history";
+	String SUPERSEDED_BULLETIN_ID_INDEX_FIELD = "$$$supersedes";
 	String ATTACHMENT_LIST_INDEX_FIELD = "attachments";
 	String ATTACHMENT_LIST_SEPARATOR = "\n";	
+	String ATTACHMENT_SIZE_LIST_INDEX_FIELD = "attachment_sizes";
 	String FIELD_DATA_PACKET_LOCAL_ID_INDEX_FIELD = "field_data_packet_local_id";
+	String SORT_KEY_INDEX_FIELD_PREFIX = "$$$sort_";
+	String EVENT_START_DAY_INDEX_FIELD = "$$$eventStartDay";
+	String EVENT_END_DAY_INDEX_FIELD = "$$$eventEndDay";
+	String ENTRY_DAY_INDEX_FIELD = "$$$entryDay";
 	public static final String EARLIEST_POSSIBLE_DATE = "0000-00-00";
 	public static final String LATEST_POSSIBLE_DATE = "9999-99-99";
 	final String SEARCH_EVENT_START_DATE_INDEX_FIELD = "$$$eventStartDate";
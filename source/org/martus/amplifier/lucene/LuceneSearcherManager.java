@@ -0,0 +1,245 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Hands out a reference-counted IndexSearcher for one index directory.
+ * 
+ * The same searcher is shared by every request until the indexer 
+ * reports that it has committed changes. The next acquire then opens 
+ * a fresh searcher, and the old one is closed as soon as the last 
+ * request using it has released it.
+ * 
+ * The amplifier uses one shared manager per index directory (see 
+ * getSharedManager). A manager that has been closed still works, but 
+ * no longer keeps a searcher open between requests.
+ */
+public class LuceneSearcherManager
+{
+	public static LuceneSearcherManager getSharedManager(File indexDir) 
+		throws IOException
+	{
+		synchronized(sharedManagers)
+		{
+			String key = getKey(indexDir);
+			LuceneSearcherManager manager = (LuceneSearcherManager)sharedManagers.get(key);
+			if(manager == null)
+			{
+				LuceneBulletinIndexer.createIndexIfNecessary(indexDir);
+				manager = new LuceneSearcherManager(indexDir);
+				sharedManagers.put(key, manager);
+			}
+			return manager;
+		}
+	}
+	
+	static void indexChanged(File indexDir)
+	{
+		LuceneSearcherManager manager = findSharedManager(indexDir);
+		if(manager != null)
+			manager.indexChanged();
+	}
+	
+	// NOTE: Called once another directory has become the live index. 
+	// Searchers already in use carry on, but results found in the old 
+	// index can no longer be loaded, so they are searched for again
+	public static void indexReplaced(File oldIndexDir) throws IOException
+	{
+		LuceneSearcherManager manager;
+		synchronized(sharedManagers)
+		{
+			manager = (LuceneSearcherManager)sharedManagers.remove(getKey(oldIndexDir));
+		}
+		if(manager != null)
+			manager.retire();
+	}
+	
+	static void indexCleared(File indexDir)
+	{
+		LuceneSearcherManager manager = findSharedManager(indexDir);
+		if(manager != null)
+			manager.indexCleared();
+	}
+	
+	private static LuceneSearcherManager findSharedManager(File indexDir)
+	{
+		synchronized(sharedManagers)
+		{
+			return (LuceneSearcherManager)sharedManagers.get(getKey(indexDir));
+		}
+	}
+	
+	private static String getKey(File indexDir)
+	{
+		return indexDir.getAbsolutePath();
+	}
+	
+	LuceneSearcherManager(File indexDirToUse)
+	{
+		indexDir = indexDirToUse;
+	}
+	
+	public File getIndexDir()
+	{
+		return indexDir;
+	}
+	
+	public SearchResultCache getResultCache()
+	{
+		return resultCache;
+	}
+	
+	public synchronized SharedSearcher acquire() throws IOException
+	{
+		if(retired)
+			throw new IOException("The index in " + indexDir + " has been replaced");
+		
+		if(current != null && current.generation != generation)
+			retireCurrent();
+		
+		if(current == null)
+			current = new SharedSearcher(IndexReader.open(indexDir), generation, epoch);
+		
+		++current.refCount;
+		return current;
+	}
+	
+	public synchronized void release(SharedSearcher searcher) throws IOException
+	{
+		--searcher.refCount;
+		if(searcher.refCount > 0)
+			return;
+		
+		if(searcher == current)
+		{
+			if(!closed)
+				return;
+			current = null;
+		}
+		searcher.close();
+	}
+	
+	public synchronized void indexChanged()
+	{
+		++generation;
+	}
+	
+	/**
+	 * Document numbers stay valid while documents are only added, 
+	 * so they can be kept between requests. Clearing the index 
+	 * starts a new epoch, which invalidates them.
+	 */
+	public synchronized void indexCleared()
+	{
+		++epoch;
+		++generation;
+	}
+	
+	synchronized void retire() throws IOException
+	{
+		retired = true;
+		++epoch;
+		++generation;
+		close();
+	}
+	
+	public synchronized void close() throws IOException
+	{
+		closed = true;
+		if(current != null && current.refCount == 0)
+			retireCurrent();
+	}
+	
+	private void retireCurrent() throws IOException
+	{
+		SharedSearcher retired = current;
+		current = null;
+		if(retired.refCount == 0)
+			retired.close();
+	}
+	
+	public static class SharedSearcher
+	{
+		SharedSearcher(IndexReader readerToUse, long generationToUse, long epochToUse)
+		{
+			reader = readerToUse;
+			searcher = new IndexSearcher(reader);
+			generation = generationToUse;
+			epoch = epochToUse;
+		}
+		
+		public IndexReader getReader()
+		{
+			return reader;
+		}
+		
+		public IndexSearcher getSearcher()
+		{
+			return searcher;
+		}
+		
+		public long getGeneration()
+		{
+			return generation;
+		}
+		
+		public long getEpoch()
+		{
+			return epoch;
+		}
+		
+		void close() throws IOException
+		{
+			searcher.close();
+		}
+		
+		private IndexReader reader;
+		private IndexSearcher searcher;
+		private long generation;
+		private long epoch;
+		private int refCount;
+	}
+	
+	private static final long RESULT_CACHE_BYTES = 8 * 1024 * 1024;
+	
+	private File indexDir;
+	private SearchResultCache resultCache = new SearchResultCache(RESULT_CACHE_BYTES);
+	private SharedSearcher current;
+	private long generation;
+	private long epoch;
+	private boolean closed;
+	private boolean retired;
+	
+	private static Map sharedManagers = new HashMap();
+}
@@ -26,14 +26,23 @@ Boston, MA 02111-1307, USA.
 
 package org.martus.amplifier.lucene;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.search.BulletinQuery;
 import org.martus.amplifier.search.SearchConstants;
 
 public class QueryBuilder
@@ -45,7 +54,10 @@ public class QueryBuilder
 
 	QueryBuilder(Map fields) throws Exception
 	{
-		query = parseAdvancedQuery(fields);
+		BulletinQuery wordsQuery = (BulletinQuery)fields.get(SearchResultConstants.RESULT_WORDS_QUERY_KEY);
+		if(wordsQuery != null)
+			query = buildWordsQuery(wordsQuery);
+		filter = buildDateFilter(fields);
 	}
 	
 	QueryBuilder(String searchFor) throws Exception
@@ -58,48 +70,29 @@ public class QueryBuilder
 		return query;
 	}
 	
-
-	static Query parseEventDateQuery(Map fields)
-			throws Exception 
+	public Filter getFilter()
 	{
-		String startDate	= (String) fields.get(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD);
-		String endDate 	= (String) fields.get(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD);
-
-
-		String queryString = "";
-	
-		Boolean searchUnknowns = (Boolean)fields.get(LuceneSearchConstants.SEARCH_UNKNOWN_DATES_FIELD);
-		if(searchUnknowns != null && searchUnknowns.booleanValue())
-		{
-			String unknownRange = setRangeQuery(LuceneSearchConstants.UNKNOWN_DATE, LuceneSearchConstants.UNKNOWN_DATE);
-			queryString += getFieldQuery(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, unknownRange);
-			queryString += OR;
-			queryString += getFieldQuery(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, unknownRange);
-			queryString += OR;
-		}
-
-		String startDateString = setRangeQuery("*", endDate);
-		String endDateString   = setRangeQuery(startDate, "?");
-		queryString += " ( ";
-		queryString += getFieldQuery(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, startDateString);
-		queryString += AND;
-		queryString += getFieldQuery(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD,endDateString);
-		queryString += " ) ";
-
-		return parseSingleFieldQuery(queryString,SearchConstants.SEARCH_EVENT_DATE_INDEX_FIELD, ERROR_PARSING_QUERY);
-	
+		return filter;
 	}
-	
-	static Query parseEntryDateQuery(Map fields)
-			throws Exception 
-	{		
-		String startDate	= (String) fields.get(SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD);
-
-		if (startDate == null)				
-			return null;
 
-		return parseSingleFieldQuery(buildEntryDateSearchString(startDate), SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD,
-			"Improperly formed advanced find entry date type in bulletin query: ");		
+	static Filter buildDateFilter(Map fields)
+	{
+		String startDate = (String) fields.get(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD);
+		String endDate = (String) fields.get(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD);
+		Boolean searchUnknowns = (Boolean)fields.get(LuceneSearchConstants.SEARCH_UNKNOWN_DATES_FIELD);
+		boolean includeUnknowns = (searchUnknowns != null && searchUnknowns.booleanValue());
+		Filter eventDateFilter = new DateRangeFilter(
+			LuceneSearchConstants.EVENT_START_DAY_INDEX_FIELD, LuceneSearchConstants.EVENT_END_DAY_INDEX_FIELD, 
+			startDate, endDate, includeUnknowns);
+		
+		String entryStartDate = (String) fields.get(SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD);
+		if (entryStartDate == null)
+			return eventDateFilter;
+		
+		Filter entryDateFilter = new DateRangeFilter(
+			LuceneSearchConstants.ENTRY_DAY_INDEX_FIELD, LuceneSearchConstants.ENTRY_DAY_INDEX_FIELD, 
+			entryStartDate, null, false);
+		return new AndFilter(eventDateFilter, entryDateFilter);
 	}
 	
 	static public String buildEntryDateSearchString(String startDate)
@@ -108,80 +101,103 @@ public class QueryBuilder
 		return setRangeQuery(startDate, endDate);
 	}
 	
-	static Query parseAnyWordsQuery(Map fields) throws Exception
-	{
-		return parseStringQuery(fields, SearchResultConstants.ANYWORD_TAG);
-	}
-
-	static Query parseTheseWordsQuery(Map fields) throws Exception
+	// NOTE: Builds the clauses QueryParser would give for the words 
+	// quoted and marked up as a query string, without formatting and 
+	// reparsing them. Returns null when the search is by date only
+	public static Query buildWordsQuery(BulletinQuery wordsQuery) throws IOException
 	{
-		return parseStringQuery(fields, SearchResultConstants.THESE_WORD_TAG);
-	}
-
-	static Query parseExactPhraseQuery(Map fields) throws Exception
-	{
-		return parseStringQuery(fields, SearchResultConstants.EXACTPHRASE_TAG);
-	}	
+		BooleanQuery query = new BooleanQuery();
+		boolean hasClauses = false;
+		String field = wordsQuery.getField();
+		
+		BooleanQuery anyWordsQuery = new BooleanQuery();
+		Query onlyAnyWordQuery = null;
+		int anyWordClauses = 0;
+		for(int i = 0; i < wordsQuery.getAnyWordCount(); ++i)
+		{
+			Query wordQuery = buildTextQuery(field, wordsQuery.getAnyWord(i));
+			if(addClause(anyWordsQuery, wordQuery, false))
+			{
+				onlyAnyWordQuery = wordQuery;
+				++anyWordClauses;
+			}
+		}
+		// NOTE: QueryParser unwraps "(word)" the same way
+		if(anyWordClauses == 1)
+			hasClauses |= addRequired(query, onlyAnyWordQuery);
+		else if(anyWordClauses > 1)
+			hasClauses |= addRequired(query, anyWordsQuery);
+		
+		BooleanQuery allWordsQuery = new BooleanQuery();
+		boolean hasAllWords = false;
+		for(int i = 0; i < wordsQuery.getAllWordCount(); ++i)
+			hasAllWords |= addClause(allWordsQuery, buildTextQuery(field, wordsQuery.getAllWord(i)), true);
+		if(hasAllWords)
+			hasClauses |= addRequired(query, allWordsQuery);
+
+		hasClauses |= addRequired(query, buildTextQuery(field, wordsQuery.getExactPhrase()));
+		
+		String languageField = SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD;
+		hasClauses |= addRequired(query, buildTextQuery(languageField, wordsQuery.getLanguage()));
 
-	static Query parseWithoutWordsQuery(Map fields) throws Exception
-	{
-		return parseStringQuery(fields, SearchResultConstants.WITHOUTWORDS_TAG);
+		if (!hasClauses)
+			return null;
+		return query;	
 	}
-
-	private static Query parseStringQuery(Map fields, String queryTag)
-		throws Exception
+	
+	// NOTE: Analyzes the text the same way QueryParser does for a word 
+	// or a quoted phrase: no terms gives no query, one term gives a 
+	// TermQuery, and several terms give a PhraseQuery
+	static Query buildTextQuery(String field, String text) throws IOException
 	{
-		String fieldString = (String) fields.get(SearchResultConstants.RESULT_FIELDS_KEY);
-		String queryString = (String) fields.get(queryTag);
-		
-		if (queryString == null || queryString.length() <= 1)
+		if (text == null)
 			return null;
-			
-		return parseSingleFieldQuery(queryString, fieldString, "Improperly formed advanced find bulletin query: ");
-	}	
-
-	static Query parseAdvancedQuery(Map fields) throws Exception
-	{
-		BooleanQuery query = new BooleanQuery();
 		
-		Query foundEventDateQuery = parseEventDateQuery(fields);					
-		query.add(foundEventDateQuery, true, false);
-		
-		Query foudAnywordsQuery = parseAnyWordsQuery(fields);
-		if (foudAnywordsQuery != null)
-			query.add(foudAnywordsQuery, true, false);
-
-		Query foudThesewordsQuery = parseTheseWordsQuery(fields);
-		if (foudThesewordsQuery != null)
-			query.add(foudThesewordsQuery, true, false);
-
-		Query foudExactPhraseQuery = parseExactPhraseQuery(fields);
-		if (foudExactPhraseQuery != null)
-			query.add(foudExactPhraseQuery, true, false);
-
-		Query foudWithoutWordsQuery = parseWithoutWordsQuery(fields);
-		if (foudWithoutWordsQuery != null)
-			query.add(foudWithoutWordsQuery, true, false);
-			
-		addLanguageQuery(query, fields);
-			
-		Query foudEntryDateQuery = parseEntryDateQuery(fields);
-		if (foudEntryDateQuery != null)
-			query.add(foudEntryDateQuery, true, false);			
+		TokenStream tokens = getAnalyzer().tokenStream(field, new StringReader(text));
+		try
+		{
+			Term firstTerm = null;
+			PhraseQuery phrase = null;
+			for(Token token = tokens.next(); token != null; token = tokens.next())
+			{
+				Term term = new Term(field, token.termText());
+				if(firstTerm == null)
+				{
+					firstTerm = term;
+					continue;
+				}
+				if(phrase == null)
+				{
+					phrase = new PhraseQuery();
+					phrase.add(firstTerm);
+				}
+				phrase.add(term);
+			}
 			
-		return query;	
+			if(phrase != null)
+				return phrase;
+			if(firstTerm != null)
+				return new TermQuery(firstTerm);
+			return null;
+		}
+		finally
+		{
+			tokens.close();
+		}
+	}
+	
+	private static boolean addClause(BooleanQuery wholeQuery, Query newQuery, boolean required)
+	{
+		if (newQuery == null)
+			return false;
+		wholeQuery.add(newQuery, required, false);
+		return true;
 	}
 
-	private static void addLanguageQuery(BooleanQuery wholeQuery, Map fields)
-		throws Exception
+	private static boolean addRequired(BooleanQuery wholeQuery, Query newQuery)
 	{
-		String fieldString = (String) fields.get(SearchResultConstants.RESULT_LANGUAGE_KEY);
-		if (fieldString != null)
-		{				
-			Query newQuery = parseSingleFieldQuery(fieldString,SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD, "Improperly formed advanced find language type in bulletin query: ");
-			wholeQuery.add(newQuery, true, false);
-		}
-	}			
+		return addClause(wholeQuery, newQuery, true);
+	}
 
 	static Query parseMultiFieldQuery(String query, String[] fields, String msg)
 			throws Exception 
@@ -200,20 +216,14 @@ public class QueryBuilder
 		return "[ " + from + " TO " + to + " ]";
 	}
 	
-	static String getFieldQuery(String fieldTag, String query)
-	{
-		return fieldTag + ":" + query;
-	}
-		
 	static Analyzer getAnalyzer()
 	{
 		return LuceneBulletinIndexer.getAnalyzer();
 	}
 
-	final static String AND = " AND ";
-	final static String OR = " OR ";
 	private static final String ERROR_PARSING_QUERY = "Improperly formed query: ";
 	private static final String ERROR_PARSING_MULTIQUERY = "Improperly formed multiquery: ";
 
 	Query query;
+	Filter filter;
 }
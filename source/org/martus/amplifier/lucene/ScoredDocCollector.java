@@ -0,0 +1,134 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import org.apache.lucene.search.HitCollector;
+
+/**
+ * Collects every match of one search into plain arrays of document 
+ * numbers and scores. Unlike Hits, the query runs exactly once, and 
+ * no stored document is loaded; LuceneResults loads only the 
+ * documents of the rows that are shown.
+ */
+public class ScoredDocCollector extends HitCollector
+{
+	public ScoredDocCollector()
+	{
+		docNumbers = new int[INITIAL_CAPACITY];
+		scores = new float[INITIAL_CAPACITY];
+	}
+	
+	public void collect(int docNumber, float score)
+	{
+		if(count == docNumbers.length)
+			grow();
+		docNumbers[count] = docNumber;
+		scores[count] = score;
+		++count;
+	}
+	
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Returns the matching document numbers, best score first, in the 
+	 * same order Hits would have returned them: ties are in document 
+	 * order.
+	 */
+	public int[] getDocNumbersByScore()
+	{
+		sort(0, count - 1);
+		int[] result = new int[count];
+		System.arraycopy(docNumbers, 0, result, 0, count);
+		return result;
+	}
+	
+	private void grow()
+	{
+		int newCapacity = docNumbers.length * 2;
+		int[] newDocNumbers = new int[newCapacity];
+		System.arraycopy(docNumbers, 0, newDocNumbers, 0, count);
+		docNumbers = newDocNumbers;
+		float[] newScores = new float[newCapacity];
+		System.arraycopy(scores, 0, newScores, 0, count);
+		scores = newScores;
+	}
+	
+	// NOTE: A quicksort of both arrays together, so no Integer or Float 
+	// objects are created. No two entries are equal, so it need not be 
+	// stable
+	private void sort(int low, int high)
+	{
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			swap(middle, high);
+			int last = low;
+			for(int i = low; i < high; ++i)
+			{
+				if(comesBefore(i, high))
+					swap(i, last++);
+			}
+			swap(last, high);
+			
+			if(last - low < high - last)
+			{
+				sort(low, last - 1);
+				low = last + 1;
+			}
+			else
+			{
+				sort(last + 1, high);
+				high = last - 1;
+			}
+		}
+	}
+	
+	private boolean comesBefore(int a, int b)
+	{
+		if(scores[a] != scores[b])
+			return scores[a] > scores[b];
+		return docNumbers[a] < docNumbers[b];
+	}
+	
+	private void swap(int a, int b)
+	{
+		int docNumber = docNumbers[a];
+		docNumbers[a] = docNumbers[b];
+		docNumbers[b] = docNumber;
+		float score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+	}
+	
+	public static final int INITIAL_CAPACITY = 256;
+	
+	private int[] docNumbers;
+	private float[] scores;
+	private int count;
+}
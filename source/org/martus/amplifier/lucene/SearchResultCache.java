@@ -0,0 +1,185 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.martus.amplifier.common.SearchResultConstants;
+
+/**
+ * Remembers the matching document numbers of recent searches, keyed 
+ * by a canonical form of the search fields, so repeated searches skip 
+ * parsing and searching entirely. The least recently used searches 
+ * are dropped to stay within a byte budget.
+ * 
+ * Every entry belongs to one index generation (see 
+ * LuceneSearcherManager). As soon as a searcher from a newer 
+ * generation uses the cache, everything older is thrown away, and 
+ * searchers still using an older generation neither read nor 
+ * write it.
+ * 
+ * The cached arrays are shared, so callers must not modify them.
+ */
+public class SearchResultCache
+{
+	public SearchResultCache(long maxBytesToUse)
+	{
+		maxBytes = maxBytesToUse;
+		entries = new LinkedHashMap(16, 0.75f, true);
+	}
+	
+	// NOTE: The sort order is applied to the results afterwards, 
+	// so it is left out of the key
+	public static String createKey(Map fields)
+	{
+		TreeMap canonicalFields = new TreeMap();
+		for(Iterator iter = fields.entrySet().iterator(); iter.hasNext();)
+		{
+			Map.Entry entry = (Map.Entry)iter.next();
+			String key = String.valueOf(entry.getKey());
+			if(key.equals(SearchResultConstants.RESULT_SORTBY_KEY))
+				continue;
+			canonicalFields.put(key, String.valueOf(entry.getValue()));
+		}
+		return canonicalFields.toString();
+	}
+	
+	public synchronized int[] get(String key, long generation)
+	{
+		startGeneration(generation);
+		Entry entry = (Entry)entries.get(key);
+		if(entry == null || generation != currentGeneration)
+		{
+			++missCount;
+			return null;
+		}
+		
+		++hitCount;
+		return entry.docNumbers;
+	}
+	
+	public synchronized void put(String key, long generation, int[] docNumbers)
+	{
+		startGeneration(generation);
+		if(generation != currentGeneration)
+			return;
+		
+		long entryBytes = estimateBytes(key, docNumbers);
+		if(entryBytes > maxBytes)
+			return;
+		
+		Entry replaced = (Entry)entries.put(key, new Entry(docNumbers, entryBytes));
+		if(replaced != null)
+			currentBytes -= replaced.bytes;
+		currentBytes += entryBytes;
+		
+		Iterator oldestFirst = entries.values().iterator();
+		while(currentBytes > maxBytes)
+		{
+			Entry evicted = (Entry)oldestFirst.next();
+			oldestFirst.remove();
+			currentBytes -= evicted.bytes;
+			++evictionCount;
+		}
+	}
+	
+	public synchronized void clear()
+	{
+		entries.clear();
+		currentBytes = 0;
+	}
+	
+	public synchronized int getEntryCount()
+	{
+		return entries.size();
+	}
+	
+	public synchronized long getSizeInBytes()
+	{
+		return currentBytes;
+	}
+	
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+	
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+	
+	public synchronized long getEvictionCount()
+	{
+		return evictionCount;
+	}
+	
+	public synchronized String toString()
+	{
+		return "hits=" + hitCount + " misses=" + missCount + 
+			" evictions=" + evictionCount + " entries=" + entries.size() + 
+			" bytes=" + currentBytes;
+	}
+	
+	private void startGeneration(long generation)
+	{
+		if(generation <= currentGeneration)
+			return;
+		clear();
+		currentGeneration = generation;
+	}
+	
+	// NOTE: A rough guess at the heap used, which is all the budget needs
+	private static long estimateBytes(String key, int[] docNumbers)
+	{
+		return ENTRY_OVERHEAD_BYTES + 2L * key.length() + 4L * docNumbers.length;
+	}
+	
+	private static class Entry
+	{
+		Entry(int[] docNumbersToUse, long bytesToUse)
+		{
+			docNumbers = docNumbersToUse;
+			bytes = bytesToUse;
+		}
+		
+		int[] docNumbers;
+		long bytes;
+	}
+	
+	private static final long ENTRY_OVERHEAD_BYTES = 128;
+	
+	private long maxBytes;
+	private LinkedHashMap entries;
+	private long currentBytes;
+	private long currentGeneration;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+}
@@ -0,0 +1,111 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+/**
+ * For one sort field, maps each document number to the rank of its 
+ * sort key among all of the keys in the index. Sort keys are written 
+ * by LuceneBulletinIndexer so that term order is the display order, 
+ * so comparing two documents is just comparing two ints. Documents 
+ * without a key get 0, and so sort first.
+ * 
+ * The arrays are built by one walk of the terms, and are cached for 
+ * as long as the IndexReader is in use. They are shared, so callers 
+ * must not modify them.
+ */
+class SortOrdinals implements LuceneSearchConstants
+{
+	static int[] getOrdinals(IndexReader reader, String fieldTag) throws IOException
+	{
+		Map ordinalsByField;
+		synchronized(ordinalsByReader)
+		{
+			ordinalsByField = (Map)ordinalsByReader.get(reader);
+			if(ordinalsByField == null)
+			{
+				ordinalsByField = new HashMap();
+				ordinalsByReader.put(reader, ordinalsByField);
+			}
+		}
+		
+		synchronized(ordinalsByField)
+		{
+			int[] ordinals = (int[])ordinalsByField.get(fieldTag);
+			if(ordinals == null)
+			{
+				ordinals = computeOrdinals(reader, getSortKeyFieldName(fieldTag));
+				ordinalsByField.put(fieldTag, ordinals);
+			}
+			return ordinals;
+		}
+	}
+	
+	static String getSortKeyFieldName(String fieldTag)
+	{
+		return SORT_KEY_INDEX_FIELD_PREFIX + fieldTag;
+	}
+	
+	private static int[] computeOrdinals(IndexReader reader, String sortKeyFieldName) throws IOException
+	{
+		int[] ordinals = new int[reader.maxDoc()];
+		TermEnum sortKeys = reader.terms(new Term(sortKeyFieldName, ""));
+		TermDocs docsWithKey = reader.termDocs();
+		try
+		{
+			int ordinal = 0;
+			do
+			{
+				Term term = sortKeys.term();
+				if(term == null || !term.field().equals(sortKeyFieldName))
+					break;
+				
+				++ordinal;
+				docsWithKey.seek(term);
+				while(docsWithKey.next())
+					ordinals[docsWithKey.doc()] = ordinal;
+			}
+			while(sortKeys.next());
+		}
+		finally
+		{
+			docsWithKey.close();
+			sortKeys.close();
+		}
+		return ordinals;
+	}
+	
+	private static Map ordinalsByReader = new WeakHashMap();
+}
@@ -53,10 +53,14 @@ public class TestAllLucene extends TestSuite
 			new TestSuite("All Martus Amplifier Lucene Tests");
 		
 		suite.addTest(new TestSuite(TestAlphanumericTokenizer.class));
+		suite.addTest(new TestSuite(TestScoredDocCollector.class));
 		suite.addTest(new TestSuite(TestLuceneSearcher.class));
 		suite.addTest(new TestSuite(TestLuceneBulletinIndexer.class));
 		suite.addTest(new TestSuite(TestRawLuceneSearching.class));
 		suite.addTest(new TestSuite(TestQueryBuilder.class));
+		suite.addTest(new TestSuite(TestLuceneSearcherManager.class));
+		suite.addTest(new TestSuite(TestSearchResultCache.class));
+		suite.addTest(new TestSuite(TestIndexMergePolicy.class));
 		
 		return suite;
 	}
@@ -0,0 +1,166 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene.test;
+
+import java.io.File;
+import java.util.Calendar;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.OutputStream;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.lucene.IndexMergePolicy;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.common.packet.BulletinHistory;
+import org.martus.common.packet.UniversalId;
+import org.martus.common.test.UniversalIdForTesting;
+import org.martus.util.DirectoryUtils;
+
+public class TestIndexMergePolicy extends CommonSearchTest
+{
+	public TestIndexMergePolicy(String name)
+	{
+		super(name);
+	}
+
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		MartusAmplifier.localization = new AmplifierLocalization();
+	}
+	
+	public void tearDown() throws Exception
+	{
+		IndexMergePolicy.initialize(null);
+		super.tearDown();
+	}
+	
+	public void testOptimizeOnClose() throws Exception
+	{
+		IndexMergePolicy policy = new IndexMergePolicy(10, 3, IndexMergePolicy.NO_HOUR, IndexMergePolicy.NO_HOUR);
+		assertFalse("optimize at threshold?", policy.shouldOptimizeOnClose(3));
+		assertTrue("no optimize above threshold?", policy.shouldOptimizeOnClose(4));
+		assertFalse("off-peak without a window?", policy.shouldOptimizeOffPeak(10, atHour(3)));
+	}
+	
+	public void testOffPeakWindow() throws Exception
+	{
+		IndexMergePolicy nightly = new IndexMergePolicy(10, 30, 1, 5);
+		assertTrue("1am not off-peak?", nightly.isOffPeak(atHour(1)));
+		assertTrue("4am not off-peak?", nightly.isOffPeak(atHour(4)));
+		assertFalse("5am off-peak?", nightly.isOffPeak(atHour(5)));
+		assertFalse("optimize a single segment?", nightly.shouldOptimizeOffPeak(1, atHour(2)));
+		assertTrue("no optimize off-peak?", nightly.shouldOptimizeOffPeak(2, atHour(2)));
+		
+		IndexMergePolicy wrapping = new IndexMergePolicy(10, 30, 22, 2);
+		assertTrue("11pm not off-peak?", wrapping.isOffPeak(atHour(23)));
+		assertTrue("1am not off-peak?", wrapping.isOffPeak(atHour(1)));
+		assertFalse("noon off-peak?", wrapping.isOffPeak(atHour(12)));
+	}
+	
+	public void testSegmentsMergedAboveThreshold() throws Exception
+	{
+		// NOTE: Lucene folds a small flush into the previous segment, so 
+		// a tiny merge factor is needed to build up several segments
+		File indexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		IndexMergePolicy.initialize(new IndexMergePolicy(2, 100, IndexMergePolicy.NO_HOUR, IndexMergePolicy.NO_HOUR));
+		for(int i = 0; i < 10 && IndexMergePolicy.getSegmentCount(indexDir) < 2; ++i)
+			indexOneBulletin();
+		int segmentCount = IndexMergePolicy.getSegmentCount(indexDir);
+		assertTrue("only one segment?", segmentCount >= 2);
+		assertEquals("segment count not recorded?", segmentCount, IndexMergePolicy.getMergePolicy().getLastSegmentCount());
+		assertEquals("optimized below threshold?", 0, IndexMergePolicy.getMergePolicy().getOptimizeCount());
+		
+		IndexMergePolicy.initialize(new IndexMergePolicy(2, 0, IndexMergePolicy.NO_HOUR, IndexMergePolicy.NO_HOUR));
+		indexOneBulletin();
+		assertEquals("not merged?", 1, IndexMergePolicy.getSegmentCount(indexDir));
+		assertEquals("optimize not recorded?", 1, IndexMergePolicy.getMergePolicy().getOptimizeCount());
+		
+		BulletinIndexer unused = openBulletinIndexer();
+		unused.close();
+		assertEquals("optimized by a close that wrote nothing?", 1, IndexMergePolicy.getMergePolicy().getOptimizeCount());
+	}
+	
+	public void testSegmentCountFromSegmentsFile() throws Exception
+	{
+		File indexDir = createTempDirectory();
+		assertEquals("segments without a segments file?", 0, IndexMergePolicy.getSegmentCount(indexDir));
+		
+		String[] segmentNames = {"_a", "_b", "_c"};
+		Directory directory = FSDirectory.getDirectory(indexDir, false);
+		OutputStream out = directory.createFile(IndexMergePolicy.SEGMENTS_FILE_NAME);
+		out.writeInt(segmentNames.length);
+		writeSegments(out, segmentNames);
+		out.close();
+		assertEquals("wrong count from an old segments file?", 3, IndexMergePolicy.getSegmentCount(indexDir));
+		
+		// NOTE: Lucene 1.3 adds a format and a version, and its compound 
+		// segments have no .fnm files at all
+		out = directory.createFile(IndexMergePolicy.SEGMENTS_FILE_NAME);
+		out.writeInt(-1);
+		out.writeLong(System.currentTimeMillis());
+		out.writeInt(segmentNames.length);
+		writeSegments(out, segmentNames);
+		out.close();
+		directory.close();
+		assertEquals("wrong count from a versioned segments file?", 3, IndexMergePolicy.getSegmentCount(indexDir));
+		
+		DirectoryUtils.deleteEntireDirectoryTree(indexDir);
+	}
+	
+	private void writeSegments(OutputStream out, String[] segmentNames) throws Exception
+	{
+		out.writeInt(segmentNames.length);
+		for(int i = 0; i < segmentNames.length; ++i)
+		{
+			out.writeString(segmentNames[i]);
+			out.writeInt(1);
+		}
+	}
+	
+	private void indexOneBulletin() throws Exception
+	{
+		UniversalId bulletinId = UniversalIdForTesting.createDummyUniversalId();
+		BulletinIndexer indexer = openBulletinIndexer();
+		try
+		{
+			indexer.indexFieldData(bulletinId, generateSampleData(bulletinId), new BulletinHistory());
+		}
+		finally
+		{
+			indexer.close();
+		}
+	}
+	
+	private Calendar atHour(int hour)
+	{
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(Calendar.HOUR_OF_DAY, hour);
+		return calendar;
+	}
+}
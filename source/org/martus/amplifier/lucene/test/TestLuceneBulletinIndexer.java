@@ -25,6 +25,11 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.lucene.test;
 
+import java.io.File;
+import java.util.HashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
 import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinIndexer;
 import org.martus.amplifier.search.BulletinSearcher;
@@ -88,6 +93,78 @@ public class TestLuceneBulletinIndexer  extends CommonSearchTest
 		} 		
 	}
 
+	public void testAddIndexes() throws Exception
+	{
+		UniversalId[] bulletinIds = new UniversalId[2];
+		File[] partialIndexDirs = new File[bulletinIds.length];
+		for(int i = 0; i < bulletinIds.length; ++i)
+		{
+			bulletinIds[i] = UniversalIdForTesting.createDummyUniversalId();
+			partialIndexDirs[i] = new File(getTestBasePath(), "partialIndex" + i);
+			BulletinIndexer indexer = new LuceneBulletinIndexer(partialIndexDirs[i]);
+			try
+			{
+				indexer.indexFieldData(bulletinIds[i], generateSampleData(bulletinIds[i]), new BulletinHistory());
+			}
+			finally
+			{
+				indexer.close();
+			}
+		}
+		
+		File indexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		BulletinIndexer indexer = openBulletinIndexer();
+		indexer.close();
+		LuceneBulletinIndexer.addIndexes(indexDir, partialIndexDirs);
+		
+		BulletinSearcher searcher = openBulletinSearcher();
+		try 
+		{
+			for(int i = 0; i < bulletinIds.length; ++i)
+				assertNotNull("Didn't find merged bulletin " + i, searcher.lookup(bulletinIds[i]));
+		} 
+		finally 
+		{
+			searcher.close();
+		}
+	}
+
+	public void testAllFieldsSearchedButNotStored() throws Exception
+	{
+		UniversalId bulletinId = UniversalIdForTesting.createDummyUniversalId();
+		BulletinIndexer indexer = openBulletinIndexer();
+		try 
+		{
+			indexer.indexFieldData(bulletinId, generateSampleData(bulletinId), new BulletinHistory());
+		} 
+		finally 
+		{
+			indexer.close();
+		}
+		
+		IndexReader reader = IndexReader.open(LuceneBulletinIndexer.getIndexDir(getTestBasePath()));
+		try
+		{
+			assertNull("all fields stored?", reader.document(0).get(IN_ALL_FIELDS));
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		HashMap fields = new HashMap();
+		fields.put(RESULT_BASIC_QUERY_KEY, "sandwich");
+		BulletinSearcher searcher = openBulletinSearcher();
+		try 
+		{
+			assertEquals("not searched?", 1, searcher.search(fields).getCount());
+		} 
+		finally 
+		{
+			searcher.close();
+		}
+	}
+
 	public void testNewIndexerWithNoIndexDirectory()
 		throws BulletinIndexException
 	{
@@ -25,6 +25,7 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.lucene.test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -34,19 +35,28 @@ import java.util.Vector;
 
 import junit.framework.Assert;
 
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Hits;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.martus.amplifier.common.AmplifierLocalization;
 import org.martus.amplifier.common.SearchParameters;
 import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.lucene.LeafBulletinFilter;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
 import org.martus.amplifier.lucene.LuceneBulletinSearcher;
 import org.martus.amplifier.lucene.LuceneSearchConstants;
+import org.martus.amplifier.lucene.ScoredDocCollector;
 import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.presentation.SearchResults;
 import org.martus.amplifier.search.AttachmentInfo;
+import org.martus.amplifier.search.BulletinCatalog;
 import org.martus.amplifier.search.BulletinField;
 import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinIndexer;
 import org.martus.amplifier.search.BulletinInfo;
 import org.martus.amplifier.search.BulletinSearcher;
+import org.martus.amplifier.search.IndexedBulletinIdSet;
 import org.martus.amplifier.search.Results;
 import org.martus.amplifier.search.SearchConstants;
 import org.martus.common.MiniLocalization;
@@ -116,6 +126,85 @@ public class TestLuceneSearcher extends CommonSearchTest
 		searcher.close();
 	}
 
+	public void testLeafWhenOldVersionIndexedLast() throws Exception
+	{
+		try
+		{
+			indexer.indexFieldData(bulletinId2, fdp2, history);
+			indexer.indexFieldData(oldVersionId, fdp2, new BulletinHistory());
+		}
+		finally
+		{
+			indexer.close();
+		}
+
+		LuceneBulletinSearcher searcher = (LuceneBulletinSearcher)openBulletinSearcher();
+		try
+		{
+			Vector leafUids = searcher.getAllLeafUids();
+			assertEquals("not 1 leaf?", 1, leafUids.size());
+			assertContains("id2 not a leaf?", bulletinId2, leafUids);
+
+			HashMap fields = new HashMap();
+			fields.put(RESULT_BASIC_QUERY_KEY, "Lunch");
+			Results leafs = searcher.search(fields);
+			assertEquals("old version found?", 1, leafs.getCount());
+			assertEquals(bulletinId2, leafs.getBulletinInfo(0).getBulletinId());
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+
+	public void testGetIndexedBulletinIds() throws Exception
+	{
+		indexBulletin1And2();
+
+		BulletinSearcher searcher = openBulletinSearcher();
+		try
+		{
+			IndexedBulletinIdSet ids = searcher.getIndexedBulletinIds();
+			assertEquals("not all versions?", 3, ids.size());
+			assertTrue("no id1?", ids.contains(bulletinId1));
+			assertTrue("no id2?", ids.contains(bulletinId2));
+			assertTrue("no old version?", ids.contains(oldVersionId));
+			assertFalse("found foreign?", ids.contains(bulletinIdForeign));
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+
+	public void testCatalogClaimsEachBulletinOnce() throws Exception
+	{
+		indexBulletin1And2();
+		
+		File oldDirectory = MartusAmplifier.staticAmplifierDirectory;
+		MartusAmplifier.staticAmplifierDirectory = new File(getTestBasePath());
+		try
+		{
+			BulletinCatalog catalog = BulletinCatalog.getInstance();
+			catalog.loadIndexedBulletinIds();
+			assertFalse("claimed indexed bulletin?", catalog.claimBulletin(bulletinId1));
+			assertTrue("didn't claim new bulletin?", catalog.claimBulletin(bulletinIdForeign));
+			assertFalse("claimed twice?", catalog.claimBulletin(bulletinIdForeign));
+			
+			catalog.releaseBulletin(bulletinIdForeign);
+			assertTrue("not claimable after release?", catalog.claimBulletin(bulletinIdForeign));
+			
+			catalog.loadIndexedBulletinIds();
+			assertTrue("claim kept after reload?", catalog.claimBulletin(bulletinIdForeign));
+			catalog.releaseBulletin(bulletinIdForeign);
+		}
+		finally
+		{
+			BulletinCatalog.getInstance().clear();
+			MartusAmplifier.staticAmplifierDirectory = oldDirectory;
+		}
+	}
+
 	public void testNewSearcherWithNoIndexDirectory() throws Exception
 	{
 		deleteIndexDir();
@@ -217,6 +306,35 @@ public class TestLuceneSearcher extends CommonSearchTest
 		}
 	}
 	
+	public void testRecordedAttachmentSizes() throws Exception
+	{
+		AttachmentProxy[] proxies = fdp1.getAttachments();
+		assertTrue("need two attachments", proxies.length >= 2);
+		HashMap attachmentSizes = new HashMap();
+		attachmentSizes.put(proxies[0].getUniversalId().getLocalId(), new Long(5000));
+		attachmentSizes.put(proxies[1].getUniversalId().getLocalId(), new Long(10));
+		try 
+		{
+			indexer.indexFieldData(bulletinId1, fdp1, new BulletinHistory(), attachmentSizes);
+		} 
+		finally 
+		{
+			indexer.close();
+		}
+		
+		BulletinSearcher searcher = openBulletinSearcher();
+		try
+		{
+			List foundAttachments = searcher.lookup(bulletinId1).getAttachments();
+			assertEquals("wrong kb?", 4, ((AttachmentInfo)foundAttachments.get(0)).getSize());
+			assertEquals("small not rounded up?", 1, ((AttachmentInfo)foundAttachments.get(1)).getSize());
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+	
 	public void testReconstructFieldDataPacket()  throws Exception
 	{
 		indexBulletin1();
@@ -309,6 +427,97 @@ public class TestLuceneSearcher extends CommonSearchTest
 		results.getBulletinInfo(0);
 	}
 	
+	public void testWindowedAndSortedResults() throws Exception
+	{
+		indexBulletin1And2();
+		BulletinSearcher searcher = openBulletinSearcher();
+		Results results = null;
+		try
+		{
+			HashMap fields = new HashMap();
+			fields.put(RESULT_BASIC_QUERY_KEY, "Lunch");
+			results = searcher.search(fields);
+		}
+		finally
+		{
+			searcher.close();
+		}
+
+		assertEquals(2, results.getCount());
+		assertEquals("window not clipped?", 1, results.getBulletinInfos(1, 5).size());
+		assertEquals("empty window not empty?", 0, results.getBulletinInfos(2, 5).size());
+
+		results.sortBy(SEARCH_TITLE_INDEX_FIELD, false);
+		List window = results.getBulletinInfos(0, 2);
+		assertEquals(bulletinId2, ((BulletinInfo)window.get(0)).getBulletinId());
+		assertEquals(bulletinId1, ((BulletinInfo)window.get(1)).getBulletinId());
+
+		results.sortBy(SEARCH_TITLE_INDEX_FIELD, true);
+		assertEquals(bulletinId1, results.getBulletinInfo(0).getBulletinId());
+		assertEquals(bulletinId2, results.getBulletinInfo(1).getBulletinId());
+
+		results.sortBy(SEARCH_ENTRY_DATE_INDEX_FIELD, true);
+		assertEquals("not newest first?", bulletinId2, results.getBulletinInfo(0).getBulletinId());
+		results.sortBy(SEARCH_EVENT_DATE_INDEX_FIELD, false);
+		assertEquals("not earliest event first?", bulletinId1, results.getBulletinInfo(0).getBulletinId());
+	}
+
+	// NOTE: Results used to come from Hits. The collector must give the 
+	// same order, including ties, for more hits than it first has room 
+	// for
+	public void testResultsInSameOrderAsHits() throws Exception
+	{
+		int count = ScoredDocCollector.INITIAL_CAPACITY + 50;
+		try
+		{
+			for(int i = 0; i < count; ++i)
+			{
+				UniversalId bulletinId = UniversalIdForTesting.createDummyUniversalId();
+				HashMap fieldPairs = new HashMap();
+				fieldPairs.put(SEARCH_TITLE_INDEX_FIELD, "Bulletin " + i);
+				StringBuffer details = new StringBuffer("menu");
+				for(int words = 0; words <= i % 4; ++words)
+					details.append(" lunch");
+				fieldPairs.put(SEARCH_DETAILS_INDEX_FIELD, details.toString());
+				indexer.indexFieldData(bulletinId, generateFieldDataPacket(bulletinId, fieldPairs), new BulletinHistory());
+			}
+		}
+		finally
+		{
+			indexer.close();
+		}
+		
+		Results results = simpleSearch("lunch");
+		File indexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		IndexSearcher hitsSearcher = new IndexSearcher(indexDir.getPath());
+		try
+		{
+			Query query = QueryParser.parse("lunch", SearchResultConstants.IN_ALL_FIELDS, LuceneBulletinIndexer.getAnalyzer());
+			Hits hits = hitsSearcher.search(query, new LeafBulletinFilter());
+			assertEquals("wrong count?", count, results.getCount());
+			assertEquals("count differs from Hits?", hits.length(), results.getCount());
+			for(int i = 0; i < hits.length(); ++i)
+			{
+				String expectedId = hits.doc(i).get(LuceneSearchConstants.BULLETIN_UNIVERSAL_ID_INDEX_FIELD);
+				assertEquals("order differs from Hits at " + i, expectedId, results.getBulletinInfo(i).getBulletinId().toString());
+			}
+		}
+		finally
+		{
+			hitsSearcher.close();
+		}
+	}
+
+	public void testSortKeysIgnoreCase() throws Exception
+	{
+		BulletinField title = BulletinField.getFieldByXmlId(SEARCH_TITLE_INDEX_FIELD);
+		String lower = LuceneBulletinIndexer.createSortKey(title, "apple");
+		String upper = LuceneBulletinIndexer.createSortKey(title, "Apple");
+		String later = LuceneBulletinIndexer.createSortKey(title, "banana");
+		assertEquals("case matters?", lower, upper);
+		assertTrue("wrong order?", upper.compareTo(later) < 0);
+	}
+
 	public void testSearchAllFields() throws Exception
 	{
 		indexBulletin1();
@@ -470,7 +679,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(BulletinField.SEARCH_EVENT_START_DATE_INDEX_FIELD, defaultStartDate);
 			fields.put(BulletinField.SEARCH_EVENT_END_DATE_INDEX_FIELD, todayDate);		
 
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Should have found 1 result ?", 1, results.getCount());
 			BulletinInfo info = results.getBulletinInfo(0);
 			assertEquals("The Language returned not correct?", "?", info.get(SEARCH_LANGUAGE_INDEX_FIELD));
@@ -557,7 +766,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, startDate);
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, endDate);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Should have found 1 match? ", 1, results.getCount());			
 		}
 		finally 
@@ -566,6 +775,41 @@ public class TestLuceneSearcher extends CommonSearchTest
 		}
 	}	
 	
+	public void testAdvancedSearchDateBoundaries() throws Exception
+	{
+		indexBulletin1And2();
+		BulletinSearcher searcher = openBulletinSearcher();
+		
+		try 
+		{
+			HashMap fields = new HashMap();
+			fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, "2003-08-23");
+			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, "2003-08-30");
+			Results results = advancedSearch(searcher, fields);
+			assertEquals("last day of event range not included? ", 1, results.getCount());
+			assertEquals(bulletinId2, results.getBulletinInfo(0).getBulletinId());
+			
+			fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, "2003-08-24");
+			results = advancedSearch(searcher, fields);
+			assertEquals("found event that ended earlier? ", 0, results.getCount());
+			
+			fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, LuceneSearchConstants.EARLIEST_POSSIBLE_DATE);
+			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, LuceneSearchConstants.LATEST_POSSIBLE_DATE);
+			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, "2003-09-15");
+			results = advancedSearch(searcher, fields);
+			assertEquals("entry start date not included? ", 1, results.getCount());
+			assertEquals(bulletinId2, results.getBulletinInfo(0).getBulletinId());
+			
+			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, "2003-09-16");
+			results = advancedSearch(searcher, fields);
+			assertEquals("found earlier entry? ", 0, results.getCount());
+		}
+		finally 
+		{
+			searcher.close();
+		}
+	}
+	
 	public void testAdvancedSearchCombineEventDateAndBulletineField() throws Exception
 	{
 		indexBulletin1And2();
@@ -583,7 +827,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(SearchResultConstants.RESULT_FIELDS_KEY, BulletinField.SEARCH_TITLE_INDEX_FIELD);
 			fields.put(ANYWORD_TAG, "lunch");
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Combine search for eventdate and field? ", 1, results.getCount());
 		}
 		finally 
@@ -611,7 +855,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, nearToday);
 			fields.put(BulletinField.SEARCH_ENTRY_DATE_INDEX_FIELD, entryStartDate);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for entry date only? ", 1, results.getCount());
 			
 			fields.remove(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD);
@@ -619,7 +863,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, startDate);
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, endDate);			
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Combine search for eventdate and entry date? ", 1, results.getCount());
 		}
 		finally 
@@ -646,7 +890,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, defaultEndDate);		
 		
 			fields.put(BulletinField.SEARCH_LANGUAGE_INDEX_FIELD, "es");		
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search laguage with default event date? ", 1, results.getCount());
 				
 			fields = new HashMap();			
@@ -656,12 +900,12 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(BulletinField.SEARCH_LANGUAGE_INDEX_FIELD, "en");
 			fields.put(ANYWORD_TAG, "lunch");
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Combine search for eventdate, field, and laguage? ", 0, results.getCount());
 			
 			fields.remove(SEARCH_LANGUAGE_INDEX_FIELD);
 			fields.put(BulletinField.SEARCH_LANGUAGE_INDEX_FIELD, "fr");
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Combine search for eventdate, bulletin field, and language (not match)? ", 0, results.getCount());			
 						
 		}
@@ -697,27 +941,27 @@ public class TestLuceneSearcher extends CommonSearchTest
 			
 			//2003-05-11 and 2003-08-30
 			fields.put(BulletinField.SEARCH_ENTRY_DATE_INDEX_FIELD, pastWeek);		
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search for entry date submitted in past 1 week? ", 0, results.getCount());
 						
 			fields.remove(SEARCH_ENTRY_DATE_INDEX_FIELD);
 			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, pastMonth);
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search for entry date submitted in past 1 month? ", 1, results.getCount());
 			
 			fields.remove(SEARCH_ENTRY_DATE_INDEX_FIELD);
 			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, past3Month);
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search for entry date submitted in past 3 month? ", 1, results.getCount());
 			
 			fields.remove(SEARCH_ENTRY_DATE_INDEX_FIELD);
 			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, past6Month);
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search for entry date submitted in past 6 month? ", 2, results.getCount());
 			
 			fields.remove(SEARCH_ENTRY_DATE_INDEX_FIELD);
 			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, pastYear);
-			results = searcher.search(fields);			
+			results = advancedSearch(searcher, fields);			
 			assertEquals("search for entry date submitted in past 1 year? ", 2, results.getCount());
 			
 									
@@ -729,7 +973,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, past3Month);
 			fields.put(ANYWORD_TAG, "lunch");
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Combine search for eventdate, field, laguage, and event date? ", 1, results.getCount());
 								
 		}
@@ -755,33 +999,28 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, defaultEndDate);
 			fields.put(RESULT_FIELDS_KEY, IN_ALL_FIELDS);
 			
-			SearchParameters.FormatterForAllWordsSearch d = 
-				new SearchParameters.FormatterForAllWordsSearch();
-			SearchParameters.FormatterForExactPhraseSearch ed = 
-				new SearchParameters.FormatterForExactPhraseSearch();				
-
-			String query = d.getFormattedString("root sandwich");						
+			String query = "root sandwich";						
 			fields.put(THESE_WORD_TAG, query);
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for all of these words? ", 2, results.getCount());
 						
-			query = d.getFormattedString("Paul");	
+			query = "Paul";	
 			clear4Fields(fields);
 			fields.put(THESE_WORD_TAG, query);
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for all of these words? ", 1, results.getCount());
 										
-			query = ed.getFormattedString("ZZZ for 2nd Lunch?");
+			query = "ZZZ for 2nd Lunch?";
 			clear4Fields(fields);		
 			fields.put(EXACTPHRASE_TAG, query);			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for exact phrase? ", 1, results.getCount());
 						
 			clear4Fields(fields);
-			query = ed.getFormattedString("for lunch.");		
+			query = "for lunch.";		
 			fields.put(EXACTPHRASE_TAG, query);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for exact phrase? ", 2, results.getCount());											
 		}
 		finally 
@@ -806,30 +1045,25 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, defaultEndDate);
 			fields.put(RESULT_FIELDS_KEY, IN_ALL_FIELDS);
 			
-			SearchParameters.FormatterForAllWordsSearch d = 
-				new SearchParameters.FormatterForAllWordsSearch();
-			SearchParameters.FormatterForExactPhraseSearch ed = 
-				new SearchParameters.FormatterForExactPhraseSearch();	
-			
 			//combined these words and exactphrase
-			String query = d.getFormattedString("root sandwich");						
+			String query = "root sandwich";						
 			fields.put(THESE_WORD_TAG, query);		
 						
-			query = ed.getFormattedString("Paul");				
+			query = "Paul";				
 			fields.put(EXACTPHRASE_TAG, query);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for these words and exactphrase? ", 1, results.getCount());		
 			
 			clear4Fields(fields);
 			//test again with all match
-			query = d.getFormattedString("root sandwich");						
+			query = "root sandwich";						
 			fields.put(THESE_WORD_TAG, query);		
 						
-			query = ed.getFormattedString("Today");				
+			query = "Today";				
 			fields.put(EXACTPHRASE_TAG, query);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for these words and exactphrase? ", 2, results.getCount());											
 										
 		}
@@ -839,6 +1073,13 @@ public class TestLuceneSearcher extends CommonSearchTest
 		}
 	}
 	
+	private Results advancedSearch(BulletinSearcher searcher, HashMap fields) throws Exception
+	{
+		HashMap searchFields = new HashMap(fields);
+		searchFields.put(RESULT_WORDS_QUERY_KEY, SearchParameters.createWordsQuery(fields));
+		return searcher.search(searchFields);
+	}
+	
 	private void clear4Fields(HashMap fields)
 	{
 		fields.remove(ANYWORD_TAG);
@@ -863,30 +1104,25 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, defaultEndDate);
 			fields.put(RESULT_FIELDS_KEY, IN_ALL_FIELDS);
 			
-			SearchParameters.FormatterForAllWordsSearch d = 
-				new SearchParameters.FormatterForAllWordsSearch();
-			SearchParameters.FormatterForExactPhraseSearch ed = 
-				new SearchParameters.FormatterForExactPhraseSearch();	
-			
 			//combined these words and exactphrase
-			String query = d.getFormattedString("ni" + UnicodeConstants.TILDE_N_LOWER + "os");						
+			String query = "ni" + UnicodeConstants.TILDE_N_LOWER + "os";						
 			fields.put(THESE_WORD_TAG, query);		
 			
-			query = ed.getFormattedString("ni" + UnicodeConstants.TILDE_N_LOWER + "os");				
+			query = "ni" + UnicodeConstants.TILDE_N_LOWER + "os";				
 			fields.put(EXACTPHRASE_TAG, query);
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for foreign char not found? ", 1, results.getCount());		
 			clear4Fields(fields);
 			//test again with all match
-			query = d.getFormattedString("ninos");						
+			query = "ninos";						
 			fields.put(THESE_WORD_TAG, query);		
 			
-			query = ed.getFormattedString("ninos");				
+			query = "ninos";				
 			fields.put(EXACTPHRASE_TAG, query);
 			
 			//TODO this will change once "ninos" should find the real spanish spelling
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("search for ninos when there is a ni" + UnicodeConstants.TILDE_N_LOWER + "os", 0, results.getCount());											
 			
 		}
@@ -914,7 +1150,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(RESULT_SORTBY_KEY, SEARCH_TITLE_INDEX_FIELD);			
 			fields.put(ANYWORD_TAG, "lunch");			
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Should have found 2 matches? ", 2, results.getCount());
 			
 			int count = results.getCount();												
@@ -958,7 +1194,7 @@ public class TestLuceneSearcher extends CommonSearchTest
 			fields.put(RESULT_SORTBY_KEY, SEARCH_EVENT_DATE_INDEX_FIELD);			
 			fields.put(ANYWORD_TAG, "lunch");			
 			
-			results = searcher.search(fields);
+			results = advancedSearch(searcher, fields);
 			assertEquals("Should have found 2 matches? ", 2, results.getCount());
 			
 			int count = results.getCount();												
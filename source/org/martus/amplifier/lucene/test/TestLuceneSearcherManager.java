@@ -0,0 +1,170 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.lucene.IndexDirectoryPointer;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.LuceneSearcherManager;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.common.packet.BulletinHistory;
+import org.martus.common.packet.UniversalId;
+import org.martus.common.test.UniversalIdForTesting;
+
+public class TestLuceneSearcherManager extends CommonSearchTest
+{
+	public TestLuceneSearcherManager(String name)
+	{
+		super(name);
+	}
+
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		MartusAmplifier.localization = new AmplifierLocalization();
+		File indexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		manager = LuceneSearcherManager.getSharedManager(indexDir);
+	}
+	
+	public void tearDown() throws Exception
+	{
+		manager.close();
+		super.tearDown();
+	}
+	
+	public void testSharedManager() throws Exception
+	{
+		File indexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		assertSame("not shared?", manager, LuceneSearcherManager.getSharedManager(indexDir));
+	}
+
+	public void testSearcherReusedUntilIndexChanges() throws Exception
+	{
+		LuceneSearcherManager.SharedSearcher first = manager.acquire();
+		manager.release(first);
+		LuceneSearcherManager.SharedSearcher second = manager.acquire();
+		manager.release(second);
+		assertSame("reopened without a change?", first, second);
+		assertEquals(0, second.getReader().numDocs());
+		
+		indexOneBulletin();
+		LuceneSearcherManager.SharedSearcher third = manager.acquire();
+		manager.release(third);
+		assertNotSame("not reopened after a change?", second, third);
+		assertEquals(1, third.getReader().numDocs());
+	}
+	
+	public void testOldSearcherUsableUntilReleased() throws Exception
+	{
+		LuceneSearcherManager.SharedSearcher inFlight = manager.acquire();
+		indexOneBulletin();
+		
+		LuceneSearcherManager.SharedSearcher fresh = manager.acquire();
+		manager.release(fresh);
+		assertEquals(1, fresh.getReader().numDocs());
+		assertEquals("old searcher changed?", 0, inFlight.getReader().numDocs());
+		manager.release(inFlight);
+	}
+
+	public void testUnusedIndexerLeavesSearcher() throws Exception
+	{
+		LuceneSearcherManager.SharedSearcher first = manager.acquire();
+		manager.release(first);
+		
+		BulletinIndexer indexer = openBulletinIndexer();
+		indexer.close();
+		
+		LuceneSearcherManager.SharedSearcher second = manager.acquire();
+		manager.release(second);
+		assertSame("reopened after a sync that wrote nothing?", first, second);
+	}
+
+	public void testReplacedIndex() throws Exception
+	{
+		String basePath = getTestBasePath();
+		File oldIndexDir = manager.getIndexDir();
+		LuceneSearcherManager.SharedSearcher inFlight = manager.acquire();
+		
+		File newIndexDir = IndexDirectoryPointer.createSideIndexDir(basePath);
+		indexOneBulletin(new LuceneBulletinIndexer(newIndexDir));
+		try
+		{
+			assertEquals(oldIndexDir, IndexDirectoryPointer.switchTo(basePath, newIndexDir));
+			LuceneSearcherManager.indexReplaced(oldIndexDir);
+			assertEquals(newIndexDir, LuceneBulletinIndexer.getIndexDir(basePath));
+			
+			assertEquals("in-flight searcher closed?", 0, inFlight.getReader().numDocs());
+			manager.release(inFlight);
+			try
+			{
+				manager.acquire();
+				fail("Should not search a replaced index");
+			}
+			catch (IOException expected)
+			{
+			}
+			
+			LuceneSearcherManager newManager = LuceneSearcherManager.getSharedManager(newIndexDir);
+			assertNotSame("old manager still shared?", manager, newManager);
+			LuceneSearcherManager.SharedSearcher fresh = newManager.acquire();
+			assertEquals(1, fresh.getReader().numDocs());
+			newManager.release(fresh);
+			newManager.close();
+		}
+		finally
+		{
+			IndexDirectoryPointer.switchTo(basePath, oldIndexDir);
+		}
+		
+		IndexDirectoryPointer.deleteUnusedIndexDirs(basePath);
+		assertFalse("unused index kept?", newIndexDir.exists());
+		assertTrue("live index deleted?", oldIndexDir.exists());
+	}
+
+	private void indexOneBulletin() throws Exception
+	{
+		indexOneBulletin(openBulletinIndexer());
+	}
+	
+	private void indexOneBulletin(BulletinIndexer indexer) throws Exception
+	{
+		UniversalId bulletinId = UniversalIdForTesting.createDummyUniversalId();
+		try
+		{
+			indexer.indexFieldData(bulletinId, generateSampleData(bulletinId), new BulletinHistory());
+		}
+		finally
+		{
+			indexer.close();
+		}
+	}
+	
+	LuceneSearcherManager manager;
+}
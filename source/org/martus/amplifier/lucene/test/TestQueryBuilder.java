@@ -26,6 +26,11 @@ Boston, MA 02111-1307, USA.
 
 package org.martus.amplifier.lucene.test;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.martus.amplifier.common.SearchParameters;
+import org.martus.amplifier.common.SearchResultConstants;
 import org.martus.amplifier.lucene.QueryBuilder;
 import org.martus.util.TestCaseEnhanced;
 
@@ -43,4 +48,41 @@ public class TestQueryBuilder extends TestCaseEnhanced
 		String result = QueryBuilder.buildEntryDateSearchString(sampleStartDate);
 		assertEquals("[ 1970-04-21 TO 9999-99-99 ]", result);
 	}
+
+	public void testBuildWordsQuery() throws Exception
+	{
+		verifyQuery("+(+all:police +all:detention)", 
+				"", "police detention", "", SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL);
+		verifyQuery("+all:lunch +language:en", 
+				"lunch", "", "", "en");
+		verifyQuery("+(all:arrest all:detention) +(+all:village) +all:\"armed forces\" +language:en", 
+				"arrest detention", "village", "armed forces", "en");
+		verifyQuery("+(all:\"human rights\" all:abuse) +(+all:\"local police\" +all:station) +all:\"without a warrant\" +language:es", 
+				"\"human rights\" abuse", "\"local police\" station", "without a warrant", "es");
+	}
+	
+	public void testBuildWordsQueryWithoutWords() throws Exception
+	{
+		Map raw = createRawParameters("", "***", "", SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL);
+		assertNull(QueryBuilder.buildWordsQuery(SearchParameters.createWordsQuery(raw)));
+	}
+	
+	// NOTE: The expected queries are what QueryParser gave for the 
+	// same words formatted as query strings
+	private void verifyQuery(String expected, String anyWords, String allWords, String exactPhrase, String language) throws Exception
+	{
+		Map raw = createRawParameters(anyWords, allWords, exactPhrase, language);
+		assertEquals(expected, QueryBuilder.buildWordsQuery(SearchParameters.createWordsQuery(raw)).toString(""));
+	}
+
+	private Map createRawParameters(String anyWords, String allWords, String exactPhrase, String language)
+	{
+		Map raw = new HashMap();
+		raw.put(SearchResultConstants.ANYWORD_TAG, anyWords);
+		raw.put(SearchResultConstants.THESE_WORD_TAG, allWords);
+		raw.put(SearchResultConstants.EXACTPHRASE_TAG, exactPhrase);
+		raw.put(SearchResultConstants.RESULT_FIELDS_KEY, SearchResultConstants.IN_ALL_FIELDS);
+		raw.put(SearchResultConstants.RESULT_LANGUAGE_KEY, language);
+		return raw;
+	}
 }
@@ -0,0 +1,119 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene.test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.martus.amplifier.lucene.ScoredDocCollector;
+import org.martus.util.TestCaseEnhanced;
+
+public class TestScoredDocCollector extends TestCaseEnhanced
+{
+	public TestScoredDocCollector(String name)
+	{
+		super(name);
+	}
+	
+	public void testNothingCollected() throws Exception
+	{
+		ScoredDocCollector collector = new ScoredDocCollector();
+		assertEquals(0, collector.getCount());
+		assertEquals("found something?", 0, collector.getDocNumbersByScore().length);
+	}
+	
+	public void testBestScoreFirstAndTiesInDocumentOrder() throws Exception
+	{
+		ScoredDocCollector collector = new ScoredDocCollector();
+		collector.collect(5, 0.5f);
+		collector.collect(2, 0.9f);
+		collector.collect(7, 0.5f);
+		collector.collect(1, 0.5f);
+		collector.collect(3, 0.9f);
+		collector.collect(4, 0.1f);
+		
+		assertEquals(6, collector.getCount());
+		int[] expected = {2, 3, 1, 5, 7, 4};
+		assertEquals("wrong order?", toString(expected), toString(collector.getDocNumbersByScore()));
+	}
+	
+	// NOTE: More hits than the arrays start with, collected out of 
+	// document order, with only a few distinct scores so most are ties
+	public void testManyHitsWithTies() throws Exception
+	{
+		int count = ScoredDocCollector.INITIAL_CAPACITY * 3 + 7;
+		ScoredDocCollector collector = new ScoredDocCollector();
+		Hit[] hits = new Hit[count];
+		for(int i = 0; i < count; ++i)
+		{
+			int docNumber = (i * 7919) % count;
+			float score = (docNumber % 5) / 4.0f;
+			collector.collect(docNumber, score);
+			hits[i] = new Hit(docNumber, score);
+		}
+		
+		Arrays.sort(hits, new HitsOrder());
+		int[] expected = new int[count];
+		for(int i = 0; i < count; ++i)
+			expected[i] = hits[i].docNumber;
+		
+		assertEquals(count, collector.getCount());
+		assertEquals("wrong order?", toString(expected), toString(collector.getDocNumbersByScore()));
+	}
+	
+	private String toString(int[] docNumbers)
+	{
+		StringBuffer result = new StringBuffer();
+		for(int i = 0; i < docNumbers.length; ++i)
+			result.append(docNumbers[i]).append(' ');
+		return result.toString();
+	}
+	
+	static class Hit
+	{
+		Hit(int docNumberToUse, float scoreToUse)
+		{
+			docNumber = docNumberToUse;
+			score = scoreToUse;
+		}
+		
+		int docNumber;
+		float score;
+	}
+	
+	// NOTE: The order Hits uses: best score first, then document order
+	static class HitsOrder implements Comparator
+	{
+		public int compare(Object o1, Object o2)
+		{
+			Hit a = (Hit)o1;
+			Hit b = (Hit)o2;
+			if(a.score != b.score)
+				return (a.score > b.score) ? -1 : 1;
+			return a.docNumber - b.docNumber;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.lucene.test;
+
+import java.util.HashMap;
+
+import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.lucene.SearchResultCache;
+import org.martus.util.TestCaseEnhanced;
+
+public class TestSearchResultCache extends TestCaseEnhanced
+{
+	public TestSearchResultCache(String name)
+	{
+		super(name);
+	}
+
+	public void testCreateKey() throws Exception
+	{
+		HashMap fields = new HashMap();
+		fields.put(SearchResultConstants.RESULT_BASIC_QUERY_KEY, "lunch");
+		fields.put(SearchResultConstants.RESULT_SORTBY_KEY, "title");
+		String key = SearchResultCache.createKey(fields);
+		
+		HashMap sameSearch = new HashMap();
+		sameSearch.put(SearchResultConstants.RESULT_BASIC_QUERY_KEY, "lunch");
+		assertEquals("sort order in key?", key, SearchResultCache.createKey(sameSearch));
+		
+		sameSearch.put(SearchResultConstants.RESULT_BASIC_QUERY_KEY, "dinner");
+		assertNotEquals("different searches share a key?", key, SearchResultCache.createKey(sameSearch));
+	}
+
+	public void testHitsAndMisses() throws Exception
+	{
+		SearchResultCache cache = new SearchResultCache(1000);
+		int[] docNumbers = {3, 1, 2};
+		assertNull("found before put?", cache.get("a", 1));
+		cache.put("a", 1, docNumbers);
+		assertSame("not cached?", docNumbers, cache.get("a", 1));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	public void testNewGenerationDiscardsEntries() throws Exception
+	{
+		SearchResultCache cache = new SearchResultCache(1000);
+		cache.put("a", 1, new int[] {1});
+		assertNull("used old generation?", cache.get("a", 2));
+		assertEquals(0, cache.getEntryCount());
+		
+		cache.put("a", 1, new int[] {1});
+		assertEquals("stored old generation?", 0, cache.getEntryCount());
+		assertNull("older searcher used newer results?", cache.get("b", 1));
+	}
+	
+	public void testEvictsLeastRecentlyUsed() throws Exception
+	{
+		SearchResultCache cache = new SearchResultCache(1000);
+		cache.put("a", 1, new int[50]);
+		cache.put("b", 1, new int[50]);
+		cache.put("c", 1, new int[50]);
+		assertEquals(3, cache.getEntryCount());
+		assertNotNull(cache.get("a", 1));
+		
+		cache.put("d", 1, new int[50]);
+		assertEquals(1, cache.getEvictionCount());
+		assertNull("didn't evict oldest?", cache.get("b", 1));
+		assertNotNull("evicted recently used?", cache.get("a", 1));
+		assertTrue("over budget?", cache.getSizeInBytes() <= 1000);
+		
+		cache.put("huge", 1, new int[1000]);
+		assertNull("cached entry bigger than budget?", cache.get("huge", 1));
+		assertEquals(3, cache.getEntryCount());
+	}
+}
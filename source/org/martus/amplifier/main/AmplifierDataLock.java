@@ -0,0 +1,107 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A lock on the amplifier's data directory, held for as long as the 
+ * amplifier runs, so tools that must not run beside it, like the 
+ * OfflineIndexRebuilder, can tell that it is running. The operating 
+ * system holds the lock, so it goes away with the process even if 
+ * the process is killed, and a stale lock file means nothing.
+ */
+public class AmplifierDataLock
+{
+	private AmplifierDataLock(File lockFileToUse, RandomAccessFile fileToUse, FileLock lockToUse)
+	{
+		lockFile = lockFileToUse;
+		file = fileToUse;
+		lock = lockToUse;
+	}
+	
+	// NOTE: Returns null if the directory is already locked, by another 
+	// process or by this one. Locks this process holds are tracked here, 
+	// because on some systems opening and closing the file a second 
+	// time would release the lock that is already held.
+	public static AmplifierDataLock obtain(File amplifierDataDir) throws IOException
+	{
+		File lockFile = new File(amplifierDataDir, LOCK_FILENAME).getCanonicalFile();
+		synchronized(lockedFiles)
+		{
+			if(lockedFiles.contains(lockFile))
+				return null;
+			
+			RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+			FileLock lock = null;
+			try
+			{
+				lock = file.getChannel().tryLock();
+			}
+			catch (OverlappingFileLockException e)
+			{
+			}
+			if(lock == null)
+			{
+				file.close();
+				return null;
+			}
+			
+			lockedFiles.add(lockFile);
+			return new AmplifierDataLock(lockFile, file, lock);
+		}
+	}
+	
+	public void release() throws IOException
+	{
+		synchronized(lockedFiles)
+		{
+			try
+			{
+				lock.release();
+				file.close();
+			}
+			finally
+			{
+				lockedFiles.remove(lockFile);
+			}
+		}
+	}
+	
+	public static final String LOCK_FILENAME = "amplifier.lock";
+	
+	private static Set lockedFiles = new HashSet();
+	
+	private File lockFile;
+	private RandomAccessFile file;
+	private FileLock lock;
+}
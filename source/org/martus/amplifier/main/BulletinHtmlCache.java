@@ -0,0 +1,357 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.martus.amplifier.attachment.DataManager;
+import org.martus.common.MiniLocalization;
+import org.martus.common.bulletin.BulletinHtmlGenerator;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+import org.martus.util.DirectoryUtils;
+
+/**
+ * The HTML shown for a found bulletin, keyed by its field data packet 
+ * id. A field data packet never changes once it has been received, 
+ * so neither does its HTML, as long as the generator and the 
+ * localization stay the same. Those are part of the key too, and 
+ * HTML_FORMAT_VERSION must be raised whenever the generated HTML 
+ * changes, so HTML from an older amplifier is not shown.
+ * 
+ * Recently viewed HTML is kept in memory, least recently used first 
+ * out, within a byte budget. If a directory is given, the HTML is 
+ * also written there (gzipped) as bulletins are received, so even the 
+ * first view of a bulletin doesn't need to parse its XML. The HTML is 
+ * rendered while the bulletin is being parsed, on whichever thread 
+ * parses it, and only written here once the bulletin is stored.
+ */
+public class BulletinHtmlCache
+{
+	public BulletinHtmlCache(File diskDirectoryToUse, long maxBytesInMemoryToUse)
+	{
+		diskDirectory = diskDirectoryToUse;
+		maxBytesInMemory = maxBytesInMemoryToUse;
+		htmlInMemory = new LinkedHashMap(16, 0.75f, true);
+	}
+	
+	public String getHtml(DataManager dataManager, UniversalId fieldDataPacketId) throws Exception
+	{
+		String key = getKey(fieldDataPacketId);
+		String html = getFromMemory(key);
+		if(html != null)
+			return html;
+		
+		html = readFromDisk(key);
+		if(html == null)
+		{
+			html = generateHtml(dataManager, fieldDataPacketId);
+			writeToDisk(key, html);
+		}
+		putInMemory(key, html);
+		return html;
+	}
+	
+	public boolean needsHtml(UniversalId fieldDataPacketId)
+	{
+		if(diskDirectory == null)
+			return false;
+		return !getDiskFile(getKey(fieldDataPacketId)).exists();
+	}
+	
+	// NOTE: Called as each bulletin is received, with HTML from 
+	// generateHtml(FieldDataPacket), so this doesn't take up memory 
+	// for bulletins nobody has looked at yet
+	public void prepareHtml(UniversalId fieldDataPacketId, String html)
+	{
+		if(!needsHtml(fieldDataPacketId))
+			return;
+		writeToDisk(getKey(fieldDataPacketId), html);
+	}
+	
+	public synchronized long getSizeInBytes()
+	{
+		return bytesInMemory;
+	}
+	
+	public synchronized int getCountInMemory()
+	{
+		return htmlInMemory.size();
+	}
+	
+	public static String generateHtml(DataManager dataManager, UniversalId fieldDataPacketId) throws Exception
+	{
+		return generateHtml(dataManager.getFieldDataPacket(fieldDataPacketId));
+	}
+	
+	// NOTE: The packet must have been loaded with the top section 
+	// field specs, as DataManager.getFieldDataPacket(UniversalId) does
+	public static String generateHtml(FieldDataPacket fdp) throws Exception
+	{
+		BulletinHtmlGenerator generator = new BulletinHtmlGenerator(MartusAmplifier.localization);
+		return generator.getSectionHtmlString(fdp);
+	}
+	
+	public static String getKey(UniversalId fieldDataPacketId)
+	{
+		MiniLocalization localization = MartusAmplifier.localization;
+		return HTML_FORMAT_VERSION + ":" + localization.getCurrentLanguageCode() + ":" + 
+				localization.getCurrentDateFormatCode() + ":" + fieldDataPacketId;
+	}
+	
+	private synchronized String getFromMemory(String key)
+	{
+		return (String)htmlInMemory.get(key);
+	}
+	
+	private synchronized void putInMemory(String key, String html)
+	{
+		long bytes = estimateBytes(key, html);
+		if(bytes > maxBytesInMemory)
+			return;
+		
+		String replaced = (String)htmlInMemory.put(key, html);
+		if(replaced != null)
+			bytesInMemory -= estimateBytes(key, replaced);
+		bytesInMemory += bytes;
+		
+		// NOTE: get() on an access ordered map moves the entry, which 
+		// would break this iterator, so the entries are walked instead
+		Iterator oldestFirst = htmlInMemory.entrySet().iterator();
+		while(bytesInMemory > maxBytesInMemory)
+		{
+			Map.Entry oldest = (Map.Entry)oldestFirst.next();
+			oldestFirst.remove();
+			bytesInMemory -= estimateBytes((String)oldest.getKey(), (String)oldest.getValue());
+		}
+	}
+	
+	// NOTE: A file that can't be read is treated as missing, and 
+	// deleted, so the HTML is generated and written again instead of 
+	// the bulletin never being viewable
+	private String readFromDisk(String key)
+	{
+		if(diskDirectory == null)
+			return null;
+		
+		File file = getDiskFile(key);
+		if(!file.exists())
+			return null;
+		
+		try
+		{
+			Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), ENCODING);
+			try
+			{
+				StringBuffer html = new StringBuffer();
+				char[] buffer = new char[BUFFER_SIZE];
+				int count;
+				while((count = reader.read(buffer)) >= 0)
+					html.append(buffer, 0, count);
+				return html.toString();
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			file.delete();
+			return null;
+		}
+	}
+	
+	// NOTE: Written to a temporary file of its own first, so a reader 
+	// never sees a partly written file, even when two threads write 
+	// the same HTML at once. A failure here only means the HTML will 
+	// be generated again later.
+	private void writeToDisk(String key, String html)
+	{
+		if(diskDirectory == null)
+			return;
+		
+		File file = getDiskFile(key);
+		File tempFile = null;
+		try
+		{
+			file.getParentFile().mkdirs();
+			tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tempFile)), ENCODING);
+			try
+			{
+				writer.write(html);
+			}
+			finally
+			{
+				writer.close();
+			}
+			file.delete();
+			if(!tempFile.renameTo(file))
+				tempFile.delete();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			if(tempFile != null)
+				tempFile.delete();
+		}
+	}
+	
+	public File getDiskFile(String key)
+	{
+		String name = getDigest(key);
+		File bucket = new File(diskDirectory, name.substring(0, 2));
+		return new File(bucket, name + ".html.gz");
+	}
+	
+	private static String getDigest(String key)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(ENCODING));
+			StringBuffer hex = new StringBuffer(digest.length * 2);
+			for(int i = 0; i < digest.length; ++i)
+			{
+				hex.append(HEX_DIGITS.charAt((digest[i] >> 4) & 0x0f));
+				hex.append(HEX_DIGITS.charAt(digest[i] & 0x0f));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static long estimateBytes(String key, String html)
+	{
+		return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + html.length());
+	}
+	
+	static public synchronized void initialize(File diskDirectory)
+	{
+		if(diskDirectory != null)
+			clearIfOtherVersion(diskDirectory);
+		bulletinHtmlCacheSingleton = new BulletinHtmlCache(diskDirectory, DEFAULT_MAX_BYTES_IN_MEMORY);
+	}
+	
+	// NOTE: HTML written by another version of the generator can never 
+	// be read again, since the version is part of its key, so it is 
+	// deleted rather than left to fill the disk
+	public static void clearIfOtherVersion(File diskDirectory)
+	{
+		File versionFile = new File(diskDirectory, VERSION_FILE_NAME);
+		try
+		{
+			if(HTML_FORMAT_VERSION.equals(readVersion(versionFile)))
+				return;
+			
+			DirectoryUtils.deleteEntireDirectoryTree(diskDirectory);
+			diskDirectory.mkdirs();
+			Writer writer = new OutputStreamWriter(new FileOutputStream(versionFile), ENCODING);
+			try
+			{
+				writer.write(HTML_FORMAT_VERSION);
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	private static String readVersion(File versionFile) throws IOException
+	{
+		if(!versionFile.exists())
+			return null;
+		
+		Reader reader = new InputStreamReader(new FileInputStream(versionFile), ENCODING);
+		try
+		{
+			StringBuffer version = new StringBuffer();
+			int c;
+			while((c = reader.read()) >= 0)
+				version.append((char)c);
+			return version.toString();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	// NOTE: calling this without first calling initialize() will 
+	// automatically create a cache that is only kept in memory 
+	public static synchronized BulletinHtmlCache getBulletinHtmlCache()
+	{
+		if(bulletinHtmlCacheSingleton == null)
+		{
+			bulletinHtmlCacheSingleton = new BulletinHtmlCache(null, DEFAULT_MAX_BYTES_IN_MEMORY);
+		}
+		return bulletinHtmlCacheSingleton;
+	}
+	
+	public static final long DEFAULT_MAX_BYTES_IN_MEMORY = 16 * 1024 * 1024;
+	public static final String HTML_FORMAT_VERSION = "1";
+	
+	public static final String VERSION_FILE_NAME = "version.txt";
+	
+	private static final long ENTRY_OVERHEAD_BYTES = 128;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String ENCODING = "UTF-8";
+	private static final String HEX_DIGITS = "0123456789abcdef";
+	
+	private static BulletinHtmlCache bulletinHtmlCacheSingleton;
+	
+	private File diskDirectory;
+	private long maxBytesInMemory;
+	private LinkedHashMap htmlInMemory;
+	private long bytesInMemory;
+}
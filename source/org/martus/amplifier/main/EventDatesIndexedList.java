@@ -28,7 +28,6 @@ package org.martus.amplifier.main;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Vector;
 
 import org.martus.common.MiniLocalization;
 import org.martus.common.utilities.MartusFlexidate;
@@ -42,47 +41,49 @@ public class EventDatesIndexedList extends IndexedValuesList
 		super(fileToUse);
 	}
 	
-	public int getEarliestYear()
+	// NOTE: The year bounds are kept up to date as dates are added, so 
+	// building the search form doesn't parse every date ever indexed
+	public synchronized int getEarliestYear()
 	{
-		MiniLocalization localization = MartusAmplifier.localization;
-		int earliestYear = getThisYear();
-		Vector dateStrings = getIndexedValues();
-		for(int i = 0; i < dateStrings.size(); ++i)
-		{
-			MartusFlexidate flex = localization.createFlexidateFromStoredData((String)dateStrings.get(i));
-			MultiCalendar calendar = flex.getBeginDate();
-			if(calendar.isUnknown())
-				continue;
-			
-			int thisYear = calendar.getGregorianYear();
-			if(thisYear < earliestYear)
-				earliestYear = thisYear;
-		}
-		
+		int thisYear = getThisYear();
+		if(earliestYear == NO_YEAR || earliestYear > thisYear)
+			return thisYear;
 		return earliestYear;
 	}
 	
-	public int getLatestYear()
+	public synchronized int getLatestYear()
+	{
+		if(latestYear == NO_YEAR || latestYear <= 0)
+			return getThisYear();
+		return latestYear;
+	}
+	
+	protected synchronized void valuesCleared()
+	{
+		earliestYear = NO_YEAR;
+		latestYear = NO_YEAR;
+	}
+	
+	protected synchronized void valueAdded(String dateString)
 	{
 		MiniLocalization localization = MartusAmplifier.localization;
-		int latestYear = 0;
-		Vector dateStrings = getIndexedValues();
-		for(int i = 0; i < dateStrings.size(); ++i)
+		MartusFlexidate flex = localization.createFlexidateFromStoredData(dateString);
+		
+		MultiCalendar beginDate = flex.getBeginDate();
+		if(!beginDate.isUnknown())
 		{
-			MartusFlexidate flex = localization.createFlexidateFromStoredData((String)dateStrings.get(i));
-			MultiCalendar calendar = flex.getEndDate();
-			if(calendar.isUnknown())
-				continue;
-
-			int thisYear = calendar.getGregorianYear();
-			if(thisYear > latestYear)
-				latestYear = thisYear;
+			int beginYear = beginDate.getGregorianYear();
+			if(earliestYear == NO_YEAR || beginYear < earliestYear)
+				earliestYear = beginYear;
 		}
 		
-		if(latestYear == 0)
-			latestYear = getThisYear();
-		
-		return latestYear;
+		MultiCalendar endDate = flex.getEndDate();
+		if(!endDate.isUnknown())
+		{
+			int endYear = endDate.getGregorianYear();
+			if(latestYear == NO_YEAR || endYear > latestYear)
+				latestYear = endYear;
+		}
 	}
 	
 	private int getThisYear()
@@ -112,4 +113,9 @@ public class EventDatesIndexedList extends IndexedValuesList
 		
 	private static EventDatesIndexedList eventDatesIndexedSingleton;
 	
+	private static final int NO_YEAR = Integer.MIN_VALUE;
+	
+	private int earliestYear = NO_YEAR;
+	private int latestYear = NO_YEAR;
+	
 }
@@ -0,0 +1,414 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.lucene.IndexDirectoryPointer;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.LuceneSearcherManager;
+import org.martus.amplifier.search.BulletinField;
+import org.martus.amplifier.search.BulletinIndexException;
+import org.martus.common.FieldSpecCollection;
+import org.martus.common.LoggerInterface;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.bulletin.BulletinConstants;
+import org.martus.common.packet.BulletinHeaderPacket;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+import org.martus.util.DirectoryUtils;
+
+/**
+ * Builds a new index from the packets the amplifier has already 
+ * stored, in a directory next to the live index, so searches keep 
+ * using the live index until the new one is complete.
+ * 
+ * indexStoredBulletins may be called more than once. Each call only 
+ * indexes bulletins stored since the previous call, so the caller can 
+ * do the long first pass while bulletins are still being received, 
+ * and then a short final pass, and the switch, while no sync is 
+ * writing to the index.
+ */
+public class IndexRebuilder
+{
+	public IndexRebuilder(FileSystemDataManager dataManagerToUse, String basePathToUse, LoggerInterface loggerToUse) 
+		throws BulletinIndexException
+	{
+		dataManager = dataManagerToUse;
+		basePath = basePathToUse;
+		logger = loggerToUse;
+		newIndexDir = IndexDirectoryPointer.createSideIndexDir(basePath);
+		indexer = new LuceneBulletinIndexer(newIndexDir);
+		languages = new LanguagesIndexedList(getLanguagesIndexedFile(newIndexDir));
+		eventDates = new EventDatesIndexedList(getEventDatesIndexedFile(newIndexDir));
+		try
+		{
+			languages.createInitialList();
+			eventDates.createInitialList();
+		}
+		catch (IOException e)
+		{
+			throw new BulletinIndexException("Unable to create the indexed values lists", e);
+		}
+		indexedBulletinIds = new HashSet();
+	}
+	
+	public static File getLanguagesIndexedFile(File indexDir)
+	{
+		return new File(indexDir, LANGUAGES_INDEXED_FILENAME);
+	}
+	
+	public static File getEventDatesIndexedFile(File indexDir)
+	{
+		return new File(indexDir, EVENT_DATES_INDEXED_FILENAME);
+	}
+	
+	public File getNewIndexDir()
+	{
+		return newIndexDir;
+	}
+	
+	/**
+	 * Indexes every stored bulletin that this rebuilder has not indexed 
+	 * yet, and returns how many it indexed. A bulletin that can't be 
+	 * read is logged and skipped, so one bad packet can't stop the 
+	 * rebuild. Returns early if isStopRequested() becomes true.
+	 */
+	public int indexStoredBulletins() throws BulletinIndexException
+	{
+		return indexStoredBulletins(1);
+	}
+	
+	/**
+	 * Like indexStoredBulletins(), but reads and indexes the bulletins 
+	 * on several threads. Each thread builds its own partial index, and 
+	 * the partial indexes are merged into the new index at the end.
+	 */
+	public int indexStoredBulletins(int threadCount) throws BulletinIndexException
+	{
+		PendingBulletins pending = new PendingBulletins(getBulletinsNotYetIndexed());
+		if(threadCount <= 1 || pending.getTotal() < threadCount)
+			return indexPendingBulletins(pending, indexer);
+		
+		ReindexThread[] threads = new ReindexThread[threadCount];
+		File[] partialIndexDirs = new File[threadCount];
+		try
+		{
+			for(int i = 0; i < threadCount; ++i)
+			{
+				partialIndexDirs[i] = new File(newIndexDir.getPath() + PARTIAL_INDEX_SUFFIX + i);
+				threads[i] = new ReindexThread(pending, new LuceneBulletinIndexer(partialIndexDirs[i]));
+				threads[i].start();
+			}
+			
+			int indexedCount = 0;
+			for(int i = 0; i < threadCount; ++i)
+				threads[i].waitUntilFinished();
+			for(int i = 0; i < threadCount; ++i)
+			{
+				threads[i].throwIfFailed();
+				threads[i].closeIndexer();
+				indexedCount += threads[i].getIndexedCount();
+			}
+			
+			indexer.close();
+			LuceneBulletinIndexer.addIndexes(newIndexDir, partialIndexDirs);
+			return indexedCount;
+		}
+		finally
+		{
+			pending.stop();
+			for(int i = 0; i < threadCount; ++i)
+			{
+				if(threads[i] != null)
+				{
+					threads[i].waitUntilFinished();
+					threads[i].abandon();
+				}
+				if(partialIndexDirs[i] != null)
+					DirectoryUtils.deleteEntireDirectoryTree(partialIndexDirs[i]);
+			}
+		}
+	}
+	
+	private synchronized Vector getBulletinsNotYetIndexed()
+	{
+		Vector bulletinIds = dataManager.getStoredBulletinIds();
+		Vector notYetIndexed = new Vector();
+		for(int i = 0; i < bulletinIds.size(); ++i)
+		{
+			UniversalId bulletinId = (UniversalId)bulletinIds.get(i);
+			if(!indexedBulletinIds.contains(bulletinId))
+				notYetIndexed.add(bulletinId);
+		}
+		return notYetIndexed;
+	}
+	
+	int indexPendingBulletins(PendingBulletins pending, LuceneBulletinIndexer indexerToUse) 
+		throws BulletinIndexException
+	{
+		int indexedCount = 0;
+		while(!isStopRequested())
+		{
+			UniversalId bulletinId = pending.next();
+			if(bulletinId == null)
+				break;
+			
+			try
+			{
+				indexBulletin(bulletinId, indexerToUse);
+				bulletinWasIndexed(bulletinId);
+				++indexedCount;
+			}
+			catch (BulletinIndexException e)
+			{
+				pending.stop();
+				throw e;
+			}
+			catch (Exception e)
+			{
+				logger.logError("Unable to reindex " + bulletinId + ": " + e);
+			}
+		}
+		return indexedCount;
+	}
+	
+	// NOTE: Only a bulletin that was actually indexed is recorded, so one 
+	// that failed (for example, because its header was stored before its 
+	// field data) is tried again by the next pass, under the write lock
+	private synchronized void bulletinWasIndexed(UniversalId bulletinId)
+	{
+		indexedBulletinIds.add(bulletinId);
+	}
+	
+	/**
+	 * Called now and then while bulletins are being indexed, from 
+	 * whichever thread is indexing. Does nothing unless overridden.
+	 */
+	protected void reportProgress(int doneCount, int totalCount, long elapsedMillis)
+	{
+	}
+	
+	/**
+	 * Closes and optimizes the new index, makes it the live index, and 
+	 * returns the directory that was live before. Searches that are 
+	 * running in the old index finish there; their results are found 
+	 * again in the new index the next time they are used. The old 
+	 * directory is deleted the next time the amplifier starts.
+	 * 
+	 * The caller must make sure nothing is writing to the live index.
+	 */
+	public File switchToNewIndex() throws BulletinIndexException, IOException
+	{
+		indexer.close();
+		LuceneBulletinIndexer.optimize(newIndexDir);
+		languages.saveToFile();
+		eventDates.saveToFile();
+		
+		File oldIndexDir = IndexDirectoryPointer.switchTo(basePath, newIndexDir);
+		LanguagesIndexedList.initialize(getLanguagesIndexedFile(newIndexDir));
+		EventDatesIndexedList.initialize(getEventDatesIndexedFile(newIndexDir));
+		LuceneSearcherManager.indexReplaced(oldIndexDir);
+		return oldIndexDir;
+	}
+	
+	public void abandon()
+	{
+		try
+		{
+			indexer.close();
+		}
+		catch (BulletinIndexException e)
+		{
+			logger.logError("Unable to close the abandoned index: " + e.getMessage());
+		}
+		DirectoryUtils.deleteEntireDirectoryTree(newIndexDir);
+	}
+	
+	protected boolean isStopRequested()
+	{
+		return false;
+	}
+	
+	private void indexBulletin(UniversalId bulletinId, LuceneBulletinIndexer indexerToUse) throws Exception
+	{
+		BulletinHeaderPacket bhp = dataManager.getBulletinHeaderPacket(bulletinId);
+		UniversalId fieldDataId = UniversalId.createFromAccountAndLocalId(
+			bhp.getAccountId(), bhp.getFieldDataPacketId());
+		FieldSpecCollection fieldSpecs = new FieldSpecCollection(BulletinField.getDefaultSearchFieldSpecs());
+		FieldDataPacket fdp = dataManager.getFieldDataPacket(fieldDataId, fieldSpecs);
+		
+		indexerToUse.indexFieldData(bulletinId, fdp, bhp.getHistory(), getAttachmentSizes(fdp));
+		languages.addValue(fdp.get(BulletinConstants.TAGLANGUAGE));
+		eventDates.addValue(fdp.get(BulletinConstants.TAGEVENTDATE));
+	}
+	
+	private Map getAttachmentSizes(FieldDataPacket fdp) throws Exception
+	{
+		Map attachmentSizes = new HashMap();
+		AttachmentProxy[] proxies = fdp.getAttachments();
+		for(int i = 0; i < proxies.length; ++i)
+		{
+			UniversalId attachmentId = proxies[i].getUniversalId();
+			long sizeInBytes = dataManager.getAttachmentSizeInBytes(attachmentId);
+			attachmentSizes.put(attachmentId.getLocalId(), new Long(sizeInBytes));
+		}
+		return attachmentSizes;
+	}
+	
+	// NOTE: Hands out each bulletin once, to whichever thread asks next
+	class PendingBulletins
+	{
+		PendingBulletins(Vector bulletinIdsToIndex)
+		{
+			bulletinIds = bulletinIdsToIndex;
+			startedAt = System.currentTimeMillis();
+			lastReportedAt = startedAt;
+		}
+		
+		int getTotal()
+		{
+			return bulletinIds.size();
+		}
+		
+		synchronized UniversalId next()
+		{
+			long now = System.currentTimeMillis();
+			if(now - lastReportedAt >= PROGRESS_INTERVAL_MILLIS)
+			{
+				reportProgress(nextIndex, bulletinIds.size(), now - startedAt);
+				lastReportedAt = now;
+			}
+			
+			if(stopped || nextIndex >= bulletinIds.size())
+				return null;
+			
+			return (UniversalId)bulletinIds.get(nextIndex++);
+		}
+		
+		synchronized void stop()
+		{
+			stopped = true;
+		}
+		
+		private Vector bulletinIds;
+		private int nextIndex;
+		private boolean stopped;
+		private long startedAt;
+		private long lastReportedAt;
+	}
+	
+	class ReindexThread extends Thread
+	{
+		ReindexThread(PendingBulletins pendingToUse, LuceneBulletinIndexer indexerToUse)
+		{
+			super("Reindex");
+			pending = pendingToUse;
+			partialIndexer = indexerToUse;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				indexedCount = indexPendingBulletins(pending, partialIndexer);
+			}
+			catch (BulletinIndexException e)
+			{
+				failure = e;
+			}
+		}
+		
+		void waitUntilFinished()
+		{
+			while(isAlive())
+			{
+				try
+				{
+					join();
+				}
+				catch (InterruptedException ignoreAndKeepWaiting)
+				{
+				}
+			}
+		}
+		
+		void throwIfFailed() throws BulletinIndexException
+		{
+			if(failure != null)
+				throw failure;
+		}
+		
+		int getIndexedCount()
+		{
+			return indexedCount;
+		}
+		
+		void closeIndexer() throws BulletinIndexException
+		{
+			partialIndexer.close();
+		}
+		
+		void abandon()
+		{
+			try
+			{
+				partialIndexer.close();
+			}
+			catch (BulletinIndexException e)
+			{
+				logger.logError("Unable to close a partial index: " + e.getMessage());
+			}
+		}
+		
+		private PendingBulletins pending;
+		private LuceneBulletinIndexer partialIndexer;
+		private int indexedCount;
+		private BulletinIndexException failure;
+	}
+	
+	private static final String PARTIAL_INDEX_SUFFIX = "-part";
+	private static final long PROGRESS_INTERVAL_MILLIS = 10 * 1000;
+	
+	private static final String LANGUAGES_INDEXED_FILENAME = "languagesIndexed.txt";
+	private static final String EVENT_DATES_INDEXED_FILENAME = "eventDatesIndexed.txt";
+	
+	private FileSystemDataManager dataManager;
+	private String basePath;
+	private LoggerInterface logger;
+	private File newIndexDir;
+	private LuceneBulletinIndexer indexer;
+	private LanguagesIndexedList languages;
+	private EventDatesIndexedList eventDates;
+	private Set indexedBulletinIds;
+}
@@ -27,13 +27,27 @@ Boston, MA 02111-1307, USA.
 package org.martus.amplifier.main;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
 
 import org.martus.common.MartusUtilities;
 import org.martus.util.UnicodeWriter;
 
 
+/**
+ * A list of the distinct values seen in one field of the indexed 
+ * bulletins, kept in a file in the index directory.
+ * 
+ * New values are appended to the file rather than rewriting it. 
+ * getIndexedValues returns a snapshot that is replaced, never changed, 
+ * when a value is added, so readers need no locking and must not 
+ * modify it.
+ */
 public class IndexedValuesList
 {
 
@@ -45,38 +59,52 @@ public class IndexedValuesList
 	
 	void createInitialList() throws IOException
 	{
-		indexedValues = new Vector();
+		setValues(new Vector());
 	}
 
 
-	public void loadFromFile() throws IOException
+	public synchronized void loadFromFile() throws IOException
 	{
 		try
 		{
-			indexedValues = MartusUtilities.loadListFromFile(file);
+			setValues(MartusUtilities.loadListFromFile(file));
+			fileMatchesValues = true;
 		}
 		catch(IOException e)
 		{
 			createInitialList();
 			throw e;
 		}
+		finally
+		{
+			valuesChanged();
+		}
 	}
 
-	public void addValue(String language) throws IOException
+	public synchronized void addValue(String language) throws IOException
 	{
 		if(language.length() == 0)
 			return;
 		
 		if(indexedValues == null)
 			createInitialList();
-		if(!indexedValues.contains(language))
-		{
-			indexedValues.add(language);
+		if(!valueSet.add(language))
+			return;
+		
+		Vector newValues = new Vector(indexedValues.size() + 1);
+		newValues.addAll(indexedValues);
+		newValues.add(language);
+		indexedValues = newValues;
+		valueAdded(language);
+		valuesChanged();
+		
+		if(fileMatchesValues && file.exists())
+			appendToFile(language);
+		else
 			saveToFile();
-		}
 	}
 
-	public void saveToFile() throws IOException
+	public synchronized void saveToFile() throws IOException
 	{
 		UnicodeWriter writer = new UnicodeWriter(file);
 		for (int i = 0; i < indexedValues.size(); i++)
@@ -84,9 +112,55 @@ public class IndexedValuesList
 			writer.writeln((String)indexedValues.get(i));	
 		}
 		writer.close();
+		fileMatchesValues = true;
+	}
+
+	private void appendToFile(String value) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file.getPath(), true), "UTF-8");
+		try
+		{
+			writer.write(value);
+			writer.write(NEWLINE);
+		}
+		finally
+		{
+			writer.close();
+		}
 	}
 
-	public Vector getIndexedValues()
+	private void setValues(Vector values)
+	{
+		Vector distinctValues = new Vector(values.size());
+		valueSet = new HashSet();
+		valuesCleared();
+		for(int i = 0; i < values.size(); ++i)
+		{
+			String value = (String)values.get(i);
+			if(!valueSet.add(value))
+				continue;
+			distinctValues.add(value);
+			valueAdded(value);
+		}
+		indexedValues = distinctValues;
+	}
+
+	// NOTE: Called whenever the values have changed in any way
+	protected void valuesChanged()
+	{
+	}
+
+	// NOTE: Called before the values are replaced, then valueAdded is 
+	// called once for each value, so subclasses can keep running totals
+	protected void valuesCleared()
+	{
+	}
+
+	protected void valueAdded(String value)
+	{
+	}
+
+	public synchronized Vector getIndexedValues()
 	{
 		if(indexedValues == null)
 			return new Vector();
@@ -94,7 +168,11 @@ public class IndexedValuesList
 		return indexedValues;
 	}
 
+	private static final String NEWLINE = "\n";
+
 	protected File file;
 	protected Vector indexedValues;
+	private Set valueSet;
+	private boolean fileMatchesValues;
 
 }
@@ -27,7 +27,10 @@ package org.martus.amplifier.main;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Vector;
 
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.common.ChoiceEntry;
 import org.martus.amplifier.common.SearchResultConstants;
 
 
@@ -44,6 +47,37 @@ public class LanguagesIndexedList extends IndexedValuesList
 		addValue(SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL);
 	}
 
+	// NOTE: The returned Vector is shared by every request until another 
+	// language is indexed, so callers must not modify it
+	public synchronized Vector getLanguageChoices()
+	{
+		if(languageChoices == null)
+			languageChoices = buildLanguageChoices();
+		return languageChoices;
+	}
+
+	protected synchronized void valuesChanged()
+	{
+		languageChoices = null;
+	}
+
+	Vector buildLanguageChoices()
+	{
+		Vector languageCodes = getIndexedValues();
+		Vector choices = new Vector();
+		for(int i = 0; i < languageCodes.size(); ++i)
+		{
+			String code = (String)languageCodes.get(i);
+			//TODO remove this once we figure out the Other Language ? issue with lucene.
+			if(code.equals("?"))
+				continue;
+			String languageString = AmplifierLocalization.getLanguageString(code);
+			if(languageString == null)
+				languageString = code;
+			choices.add(new ChoiceEntry(code, languageString));
+		}
+		return choices;
+	}
 
 	
 	static public void initialize(File languagesIndexedFile) throws IOException
@@ -53,5 +87,7 @@ public class LanguagesIndexedList extends IndexedValuesList
 	}
 		
 	public static LanguagesIndexedList languagesIndexedSingleton;
+	
+	private Vector languageChoices;
 
 }
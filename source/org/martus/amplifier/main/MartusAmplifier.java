@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Vector;
 
@@ -37,9 +38,13 @@ import org.martus.amplifier.attachment.DataManager;
 import org.martus.amplifier.attachment.FileSystemDataManager;
 import org.martus.amplifier.common.AmplifierLocalization;
 import org.martus.amplifier.datasynch.BackupServerInfo;
-import org.martus.amplifier.datasynch.DataSynchManager;
+import org.martus.amplifier.datasynch.SyncCoordinator;
+import org.martus.amplifier.lucene.IndexDirectoryPointer;
+import org.martus.amplifier.lucene.IndexMergePolicy;
 import org.martus.amplifier.lucene.LuceneBulletinIndexer;
 import org.martus.amplifier.lucene.LuceneBulletinSearcher;
+import org.martus.amplifier.lucene.LuceneSearcherManager;
+import org.martus.amplifier.presentation.BulletinPageStore;
 import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinIndexer;
 import org.martus.amplifier.search.BulletinSearcher;
@@ -74,6 +79,13 @@ public class MartusAmplifier implements LoggerInterface
 	public void initalizeAmplifier(char[] password) throws Exception
 	{
 		staticAmplifierDirectory = coreServer.getDataDirectory();
+		// NOTE: Held until the process exits. Nothing else may use the 
+		// index while the amplifier runs, and the lucene lock file it is 
+		// about to delete could otherwise belong to another process
+		dataLock = AmplifierDataLock.obtain(staticAmplifierDirectory);
+		if(dataLock == null)
+			throw new IOException("Another amplifier or index rebuild is using " + staticAmplifierDirectory);
+		IndexDirectoryPointer.deleteUnusedIndexDirs(getStaticAmplifierDataPath());
 		deleteLuceneLockFile();
 
 		File indexDir = LuceneBulletinIndexer.getIndexDir(getStaticAmplifierDataPath());
@@ -89,10 +101,7 @@ public class MartusAmplifier implements LoggerInterface
 		}
 		
 		if(isIndexObsolete)
-		{
-			logError("Index needs to be rebuilt to be compatible with this version of the search engine!");
-			throw new Exception();
-		}
+			logWarning("Index needs to be rebuilt to be compatible with this version of the search engine. Searching the old index until the rebuild is done.");
 		
 		String packetsDirectory = getAmplifierPacketsDirectory().getPath();
 		File webAuthorizedUserPasswordFile = getWebPasswordConfigurationFile();
@@ -110,7 +119,12 @@ public class MartusAmplifier implements LoggerInterface
 			logNotice("** No password Required for Martus Web Search Engine **");
 		}
 
-		dataManager = new FileSystemDataManager(packetsDirectory);
+		loadSessionMemoryLimits(getSessionMemoryConfigurationFile());
+		loadIndexMergePolicy(getIndexMergeConfigurationFile());
+
+		FileSystemDataManager packetsManager = new FileSystemDataManager(packetsDirectory);
+		dataManager = packetsManager;
+		BulletinHtmlCache.initialize(new File(getStaticAmplifierDataPath(), HTML_CACHE_DIRECTORY));
 		
 		File backupServersDirectory = getServersWhoWeCallDirectory();
 		backupServersList = loadServersWeWillCall(backupServersDirectory, getSecurity());
@@ -118,7 +132,7 @@ public class MartusAmplifier implements LoggerInterface
 		loadAccountsWeWillNotAmplify(getAccountsNotAmplifiedFile());
 		logNotice(notAmplifiedAccountsList.size() + " account(s) will not get amplified");
 
-		File languagesIndexedFile = new File(indexDir, "languagesIndexed.txt");
+		File languagesIndexedFile = IndexRebuilder.getLanguagesIndexedFile(indexDir);
 		try
 		{
 			LanguagesIndexedList.initialize(languagesIndexedFile);
@@ -128,7 +142,7 @@ public class MartusAmplifier implements LoggerInterface
 			logWarning("LanguagesIndex" + e);
 		}
 
-		File eventDatesIndexedFile = new File(indexDir, "eventDatesIndexed.txt");
+		File eventDatesIndexedFile = IndexRebuilder.getEventDatesIndexedFile(indexDir);
 		try
 		{
 			EventDatesIndexedList.initialize(eventDatesIndexedFile);
@@ -140,6 +154,168 @@ public class MartusAmplifier implements LoggerInterface
 		
 		//Code.setDebug(true);
 		startServers(password);
+		
+		if(isIndexObsolete)
+			startIndexRebuild(packetsManager);
+	}
+
+	private void startIndexRebuild(final FileSystemDataManager packetsManager)
+	{
+		Thread rebuildThread = new Thread("IndexRebuilder")
+		{
+			public void run()
+			{
+				rebuildIndex(packetsManager);
+			}
+		};
+		rebuildThread.start();
+	}
+
+	// NOTE: Searches keep using the old index while the new one is built, 
+	// and syncs keep adding to the old index. The bulletins they add are 
+	// picked up by a final pass that runs while syncs wait, just before 
+	// the new index is switched in
+	void rebuildIndex(FileSystemDataManager packetsManager)
+	{
+		IndexRebuilder rebuilder = null;
+		boolean switched = false;
+		startSynch();
+		try
+		{
+			rebuilder = new IndexRebuilder(packetsManager, getStaticAmplifierDataPath(), this)
+			{
+				protected boolean isStopRequested()
+				{
+					return isShutdownRequested();
+				}
+			};
+			logNotice("Rebuilding the index in " + rebuilder.getNewIndexDir());
+			long startMillis = System.currentTimeMillis();
+			// NOTE: Half of the processors, so searches are still answered
+			int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+			int indexedCount = rebuilder.indexStoredBulletins(threadCount);
+			
+			synchronized(indexWriteLock)
+			{
+				indexedCount += rebuilder.indexStoredBulletins();
+				if(isShutdownRequested())
+				{
+					logNotice("Shutdown requested, index rebuild abandoned");
+					return;
+				}
+				rebuilder.switchToNewIndex();
+				switched = true;
+			}
+			
+			long millis = System.currentTimeMillis() - startMillis;
+			logNotice("Index rebuilt from " + indexedCount + " bulletins in " + millis + " ms");
+		}
+		catch (Exception e)
+		{
+			logError("Unable to rebuild the index", e);
+		}
+		finally
+		{
+			if(rebuilder != null && !switched)
+				rebuilder.abandon();
+			endSynch();
+		}
+	}
+
+	// NOTE: The optional file holds the most memory, in kilobytes, that 
+	// one session's search results may use, and then the most that all 
+	// of the sessions together may use. A file that can't be understood 
+	// is reported and the defaults are kept, so it can't stop startup.
+	public void loadSessionMemoryLimits(File sessionMemoryFile) throws IOException
+	{
+		if(!sessionMemoryFile.exists())
+			return;
+		
+		Vector limits = MartusUtilities.loadListFromFile(sessionMemoryFile);
+		long maxKbPerSession;
+		long maxKbTotal;
+		try
+		{
+			maxKbPerSession = parseSetting(limits, 0);
+			maxKbTotal = parseSetting(limits, 1);
+		}
+		catch (NumberFormatException e)
+		{
+			logWarning("Ignoring " + sessionMemoryFile + ", expected two sizes in KB: " + e.getMessage());
+			return;
+		}
+		if(maxKbPerSession <= 0 || maxKbTotal <= 0)
+		{
+			logWarning("Ignoring " + sessionMemoryFile + ", sizes must be more than 0 KB");
+			return;
+		}
+		BulletinPageStore.setInstance(new BulletinPageStore(maxKbPerSession * 1024, maxKbTotal * 1024));
+		logNotice("Search results limited to " + maxKbPerSession + " KB per session, " + maxKbTotal + " KB total");
+	}
+
+	// NOTE: The optional file holds the most index segments to allow 
+	// before optimizing when a sync finishes, and then the first and 
+	// last hour (0-23) of a nightly window in which the index is 
+	// optimized whenever it has more than one segment. As with the 
+	// session memory file, a bad file only keeps the defaults.
+	public void loadIndexMergePolicy(File indexMergeFile) throws IOException
+	{
+		if(!indexMergeFile.exists())
+			return;
+		
+		Vector settings = MartusUtilities.loadListFromFile(indexMergeFile);
+		int maxSegments;
+		int offPeakStartHour = IndexMergePolicy.NO_HOUR;
+		int offPeakEndHour = IndexMergePolicy.NO_HOUR;
+		try
+		{
+			maxSegments = (int)parseSetting(settings, 0);
+			if(settings.size() >= 2)
+			{
+				offPeakStartHour = (int)parseSetting(settings, 1);
+				offPeakEndHour = (int)parseSetting(settings, 2);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			logWarning("Ignoring " + indexMergeFile + ", expected a segment count and optionally two hours: " + e.getMessage());
+			return;
+		}
+		if(maxSegments < 1)
+		{
+			logWarning("Ignoring " + indexMergeFile + ", the segment count must be at least 1");
+			return;
+		}
+		if(offPeakStartHour != IndexMergePolicy.NO_HOUR && (!isHour(offPeakStartHour) || !isHour(offPeakEndHour)))
+		{
+			logWarning("Ignoring " + indexMergeFile + ", the off-peak hours must be from 0 to 23");
+			return;
+		}
+		IndexMergePolicy.initialize(new IndexMergePolicy(IndexMergePolicy.DEFAULT_MERGE_FACTOR, maxSegments, offPeakStartHour, offPeakEndHour));
+		String window = "no off-peak window";
+		if(offPeakStartHour >= 0)
+			window = "off-peak window " + offPeakStartHour + ":00 to " + offPeakEndHour + ":00";
+		logNotice("Index optimized above " + maxSegments + " segments, " + window);
+	}
+	
+	static long parseSetting(Vector lines, int index) throws NumberFormatException
+	{
+		if(index >= lines.size())
+			throw new NumberFormatException("line " + (index + 1) + " is missing");
+		String line = ((String)lines.get(index)).trim();
+		try
+		{
+			return Long.parseLong(line);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new NumberFormatException("line " + (index + 1) + " is not a number: " + line);
+		}
+	}
+	
+	private static boolean isHour(int hour)
+	{
+		return hour >= 0 && hour <= 23;
 	}
 
 	private boolean isExceptionWeCareAbout(Exception e)
@@ -266,6 +442,8 @@ public class MartusAmplifier implements LoggerInterface
 		startupFiles.add(getAccountsNotAmplifiedFile());
 		startupFiles.add(getJettyConfigurationFile());
 		startupFiles.add(getWebPasswordConfigurationFile());
+		startupFiles.add(getSessionMemoryConfigurationFile());
+		startupFiles.add(getIndexMergeConfigurationFile());
 		return startupFiles;
 	}
 	
@@ -300,52 +478,56 @@ public class MartusAmplifier implements LoggerInterface
 		return !isAmplifierSyncing;
 	}
 	
-	public boolean isAmplifierSyncing()
+	public synchronized boolean isAmplifierSyncing()
 	{
-		return isSyncing;
+		return syncingCount > 0;
 	}
 	
-	public void startSynch()
+	// NOTE: Bulletins from several servers are stored at once, so this 
+	// counts them and the amplifier is syncing until each one has ended
+	public synchronized void startSynch()
 	{
-		isSyncing = true;
+		++syncingCount;
 	}
 	
-	public void endSynch()
+	public synchronized void endSynch()
 	{
 		if(coreServer.isShutdownRequested())
 			logNotice("Shutdown requested and amp endSynch called");
 		
-		isSyncing = false;
+		--syncingCount;
 	}
 
+	// NOTE: Kept under its old name because the server's sync task 
+	// calls it once per period. Every server is pulled from each time
 	public void pullNewDataFromNextServer() 
+	{
+		pullNewDataFromAllServers();
+	}
+
+	public void pullNewDataFromAllServers()
 	{
 		if(coreServer.isShutdownRequested())
 			return;
 
-		int numberOfServersToPullFrom = backupServersList.size();
-		if(numberOfServersToPullFrom <= 0)
+		if(backupServersList.size() <= 0)
 			return;
 		
-		if(nextServerToPullFrom >= numberOfServersToPullFrom)
-			nextServerToPullFrom = 0;
-		
-		BackupServerInfo backupServerToCall = (BackupServerInfo)backupServersList.get(nextServerToPullFrom);
-		getLogger().logInfo("Pulling amplifier data from: " + backupServerToCall.getName() + "(" + backupServerToCall.getAddress() + ")");
-		pullNewDataFromOneServer(backupServerToCall);
-		
-		++nextServerToPullFrom;
+		synchronized(indexWriteLock)
+		{
+			pullNewDataFromAllServersAndOptimize();
+		}
 	}
-
-	private void pullNewDataFromOneServer(BackupServerInfo backupServerToCall)
+	
+	private void pullNewDataFromAllServersAndOptimize()
 	{
 		BulletinIndexer indexer = null;
 		try
 		{
-			DataSynchManager dataSyncManager = new DataSynchManager(this, backupServerToCall, coreServer.getLogger(), getSecurity());
+			SyncCoordinator coordinator = new SyncCoordinator(this, backupServersList, coreServer.getLogger(), getSecurity());
 			indexer = new LuceneBulletinIndexer(MartusAmplifier.getStaticAmplifierDataPath());
 		
-			dataSyncManager.getAllNewData(dataManager, indexer, getListOfAccountsWeWillNotAmplify());
+			coordinator.pullNewDataFromAllServers(dataManager, indexer, getListOfAccountsWeWillNotAmplify());
 		}
 		catch(Exception e)
 		{
@@ -366,6 +548,40 @@ public class MartusAmplifier implements LoggerInterface
 				}
 			}
 		}
+		
+		optimizeIndexIfOffPeak();
+		logInfo(IndexMergePolicy.getMergePolicy().toString());
+	}
+	
+	// NOTE: Runs on the sync task's thread, after the sync's indexer 
+	// has been closed, so it never competes with it for the index
+	private void optimizeIndexIfOffPeak()
+	{
+		if(coreServer.isShutdownRequested())
+			return;
+		
+		try
+		{
+			File indexDir = LuceneBulletinIndexer.getIndexDir(getStaticAmplifierDataPath());
+			int segmentCount = IndexMergePolicy.getSegmentCount(indexDir);
+			if(!IndexMergePolicy.getMergePolicy().shouldOptimizeOffPeak(segmentCount, Calendar.getInstance()))
+				return;
+			
+			startSynch();
+			try
+			{
+				long millis = LuceneBulletinIndexer.optimize(indexDir);
+				logNotice("Off-peak optimize merged " + segmentCount + " index segments in " + millis + " ms");
+			}
+			finally
+			{
+				endSynch();
+			}
+		}
+		catch (BulletinIndexException e)
+		{
+			logError("Unable to optimize the index: " + e.getMessage());
+		}
 	}
 
 	public void loadAccountsWeWillNotAmplify(File notAmplifiedAccountsFile) throws IOException
@@ -527,6 +743,16 @@ public class MartusAmplifier implements LoggerInterface
 		return new File(coreServer.getStartupConfigDirectory(), WEB_PASSWORD_CONFIGURATION_FILE);
 	}
 	
+	private File getSessionMemoryConfigurationFile()
+	{
+		return new File(coreServer.getStartupConfigDirectory(), SESSION_MEMORY_CONFIGURATION_FILE);
+	}
+	
+	private File getIndexMergeConfigurationFile()
+	{
+		return new File(coreServer.getStartupConfigDirectory(), INDEX_MERGE_CONFIGURATION_FILE);
+	}
+	
 	private File getKeystoreFile()
 	{
 		return new File(coreServer.getStartupConfigDirectory(), KEYSTORE_FILE);
@@ -567,20 +793,27 @@ public class MartusAmplifier implements LoggerInterface
 		if(coreServer != null)
 			logger = coreServer.getLogger();
 		
-		return new LuceneBulletinSearcher(indexPath, logger);
+		File indexDir = LuceneBulletinIndexer.getIndexDir(indexPath);
+		LuceneSearcherManager manager = LuceneSearcherManager.getSharedManager(indexDir);
+		return new LuceneBulletinSearcher(manager, logger);
 	}
 	
-	boolean isSyncing;
+	private int syncingCount;
+	private Object indexWriteLock = new Object();
 	private List backupServersList;
 	List notAmplifiedAccountsList;
 	private boolean loggedCanExitNoAmpSyncing;
 	private boolean loggedCanExitYes;
 	private boolean webPasswordProtected;
+	private AmplifierDataLock dataLock;
 	
 	private static final String SERVERS_WHO_WE_CALL_DIRIRECTORY = "serversWhoWeCall";
 	static public final String ACCOUNTS_NOT_AMPLIFIED_FILE = "accountsNotAmplified.txt";
 	private static final String JETTY_CONFIGURATION_FILE = "jettyConfiguration.xml";
 	private static final String WEB_PASSWORD_CONFIGURATION_FILE = "webauthorized.txt";
+	private static final String HTML_CACHE_DIRECTORY = "ampHtmlCache";
+	private static final String SESSION_MEMORY_CONFIGURATION_FILE = "sessionMemory.txt";
+	private static final String INDEX_MERGE_CONFIGURATION_FILE = "indexMerge.txt";
 	private static final String KEYSTORE_FILE = "keystore";
 	
 	static final long IMMEDIATELY = 0;
@@ -604,6 +837,4 @@ public class MartusAmplifier implements LoggerInterface
 	private static MartusCrypto staticSecurity;
 	private static String webAuthorizedUser;
 	private static String webAuthorizedPassword;
-	
-	private int nextServerToPullFrom;
 }
@@ -0,0 +1,180 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.lucene.IndexDirectoryPointer;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.common.LoggerToConsole;
+import org.martus.common.crypto.MartusSecurity;
+
+/**
+ * Rebuilds the amplifier's index from the packets it has already 
+ * stored, without pulling anything from the backup servers again. 
+ * The amplifier must not be running, and the tool refuses to start 
+ * while it is, or while the live index is locked for writing. The new 
+ * index is built beside the old one and only replaces it once it is 
+ * complete, so stopping the tool part way through leaves the old 
+ * index in use.
+ * 
+ * usage: OfflineIndexRebuilder --amplifier-data=<dir> --keypair=<file> [--threads=<n>]
+ * 
+ * The server's passphrase is read from standard input.
+ */
+public class OfflineIndexRebuilder
+{
+	public static void main(String[] args)
+	{
+		File amplifierDataDir = null;
+		File keyPairFile = null;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		for(int i = 0; i < args.length; ++i)
+		{
+			String value = args[i].substring(args[i].indexOf("=") + 1);
+			if(args[i].startsWith("--amplifier-data="))
+				amplifierDataDir = new File(value);
+			else if(args[i].startsWith("--keypair="))
+				keyPairFile = new File(value);
+			else if(args[i].startsWith("--threads="))
+				threadCount = Integer.parseInt(value);
+			else
+				exitWithUsage("Unknown argument: " + args[i]);
+		}
+		if(amplifierDataDir == null || keyPairFile == null)
+			exitWithUsage("--amplifier-data and --keypair are required");
+		if(!amplifierDataDir.isDirectory())
+			exitWithUsage("Not a directory: " + amplifierDataDir);
+		
+		try
+		{
+			System.out.print("Enter the server passphrase: ");
+			System.out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+			String passphrase = in.readLine();
+			if(passphrase == null)
+				exitWithUsage("No passphrase given");
+			
+			MartusSecurity security = new MartusSecurity();
+			security.readKeyPair(keyPairFile, passphrase.toCharArray());
+			MartusAmplifier.setStaticSecurity(security);
+			MartusAmplifier.localization = new AmplifierLocalization();
+			
+			rebuild(amplifierDataDir, security, threadCount);
+		}
+		catch (Exception e)
+		{
+			System.out.println();
+			System.out.println("Index rebuild failed: " + e);
+			e.printStackTrace();
+			System.exit(2);
+		}
+		System.exit(0);
+	}
+	
+	public static void rebuild(File amplifierDataDir, MartusSecurity security, int threadCount) throws Exception
+	{
+		AmplifierDataLock dataLock = AmplifierDataLock.obtain(amplifierDataDir);
+		if(dataLock == null)
+			throw new IOException("The amplifier, or another rebuild, is using " + amplifierDataDir + ". Stop it first.");
+		try
+		{
+			rebuildWhileLocked(amplifierDataDir, security, threadCount);
+		}
+		finally
+		{
+			dataLock.release();
+		}
+	}
+	
+	// NOTE: A lucene write lock left on the live index means a writer 
+	// did not finish, so the tool stops rather than deleting the lock 
+	// and possibly racing a writer it can't see
+	private static void rebuildWhileLocked(File amplifierDataDir, MartusSecurity security, int threadCount) throws Exception
+	{
+		String basePath = amplifierDataDir.getPath();
+		File liveIndexDir = new File(basePath, IndexDirectoryPointer.getCurrentIndexDirName(basePath));
+		if(LuceneBulletinIndexer.isIndexLocked(liveIndexDir))
+			throw new IOException("The index in " + liveIndexDir + " is locked for writing. " + 
+					"Make sure nothing is using it, then start the amplifier once to clear the lock.");
+		
+		File packetsDir = new File(amplifierDataDir, PACKETS_DIRECTORY);
+		FileSystemDataManager packetsManager = new FileSystemDataManager(packetsDir.getPath(), security);
+		IndexDirectoryPointer.deleteUnusedIndexDirs(basePath);
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(packetsManager, basePath, new LoggerToConsole())
+		{
+			protected void reportProgress(int doneCount, int totalCount, long elapsedMillis)
+			{
+				System.out.println(describeProgress(doneCount, totalCount, elapsedMillis));
+			}
+		};
+		System.out.println("Rebuilding the index in " + rebuilder.getNewIndexDir() + " using " + threadCount + " threads");
+		
+		long startedAt = System.currentTimeMillis();
+		int indexedCount;
+		try
+		{
+			indexedCount = rebuilder.indexStoredBulletins(threadCount);
+			rebuilder.switchToNewIndex();
+		}
+		catch (Exception e)
+		{
+			rebuilder.abandon();
+			throw e;
+		}
+		long elapsedMillis = System.currentTimeMillis() - startedAt;
+		IndexDirectoryPointer.deleteUnusedIndexDirs(basePath);
+		
+		System.out.println(describeProgress(indexedCount, indexedCount, elapsedMillis));
+		System.out.println("The index is now in " + rebuilder.getNewIndexDir());
+	}
+	
+	static String describeProgress(int doneCount, int totalCount, long elapsedMillis)
+	{
+		String progress = "Indexed " + doneCount + " of " + totalCount + " bulletins";
+		if(elapsedMillis <= 0 || doneCount <= 0)
+			return progress;
+		
+		long perSecond = (doneCount * 1000L) / elapsedMillis;
+		long secondsLeft = ((totalCount - doneCount) * elapsedMillis) / (doneCount * 1000L);
+		return progress + ", " + perSecond + " per second, about " + secondsLeft + " seconds left";
+	}
+	
+	private static void exitWithUsage(String message)
+	{
+		System.err.println(message);
+		System.err.println("usage: OfflineIndexRebuilder --amplifier-data=<dir> --keypair=<file> [--threads=<n>]");
+		System.exit(1);
+	}
+	
+	public static final String PACKETS_DIRECTORY = "ampPackets";
+}
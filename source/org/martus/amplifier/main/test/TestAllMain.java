@@ -54,6 +54,8 @@ public class TestAllMain extends TestSuite
 			suite.addTest(new TestSuite(TestIndexedValuesList.class));
 			suite.addTest(new TestSuite(TestLanguagesIndexedList.class));
 			suite.addTest(new TestSuite(TestEventDatesIndexedList.class));
+			suite.addTest(new TestSuite(TestBulletinHtmlCache.class));
+			suite.addTest(new TestSuite(TestIndexRebuilder.class));
 
 			return suite;
 		}
@@ -0,0 +1,237 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Vector;
+
+import org.martus.amplifier.attachment.DataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.main.BulletinHtmlCache;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.common.bulletin.BulletinConstants;
+import org.martus.common.bulletin.BulletinHtmlGenerator;
+import org.martus.common.fieldspec.StandardFieldSpecs;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+import org.martus.common.test.UniversalIdForTesting;
+import org.martus.util.DatePreference;
+import org.martus.util.DirectoryUtils;
+import org.martus.util.TestCaseEnhanced;
+import org.martus.util.inputstreamwithseek.ZipEntryInputStreamWithSeek;
+
+
+public class TestBulletinHtmlCache extends TestCaseEnhanced
+{
+	public TestBulletinHtmlCache(String name)
+	{
+		super(name);
+	}
+
+	public void setUp() throws Exception
+	{
+		MartusAmplifier.localization = new AmplifierLocalization();
+		cacheDirectory = createTempDirectory();
+		dataManager = new FieldDataPacketLoader();
+		fdpId = UniversalIdForTesting.createDummyUniversalId();
+	}
+	
+	public void tearDown() throws Exception
+	{
+		DirectoryUtils.deleteEntireDirectoryTree(cacheDirectory);
+	}
+
+	public void testGeneratedOnceAndKeptInMemory() throws Exception
+	{
+		BulletinHtmlCache cache = new BulletinHtmlCache(null, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		assertFalse("html needed without a disk directory?", cache.needsHtml(fdpId));
+		BulletinHtmlGenerator generator = new BulletinHtmlGenerator(MartusAmplifier.localization);
+		String expected = generator.getSectionHtmlString(dataManager.getFieldDataPacket(fdpId));
+		dataManager.loadCount = 0;
+		
+		assertEquals("wrong html?", expected, cache.getHtml(dataManager, fdpId));
+		assertEquals("wrong html from memory?", expected, cache.getHtml(dataManager, fdpId));
+		assertEquals("loaded more than once?", 1, dataManager.loadCount);
+		assertEquals(1, cache.getCountInMemory());
+	}
+	
+	public void testPreparedOnDisk() throws Exception
+	{
+		BulletinHtmlCache ingestCache = new BulletinHtmlCache(cacheDirectory, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		assertTrue("html not needed?", ingestCache.needsHtml(fdpId));
+		ingestCache.prepareHtml(fdpId, BulletinHtmlCache.generateHtml(dataManager, fdpId));
+		assertFalse("still needed once prepared?", ingestCache.needsHtml(fdpId));
+		assertEquals("kept in memory at ingest?", 0, ingestCache.getCountInMemory());
+		String expected = BulletinHtmlCache.generateHtml(dataManager, fdpId);
+		dataManager.loadCount = 0;
+		
+		BulletinHtmlCache viewingCache = new BulletinHtmlCache(cacheDirectory, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		assertEquals("wrong html from disk?", expected, viewingCache.getHtml(dataManager, fdpId));
+		assertEquals("parsed the packet again?", 0, dataManager.loadCount);
+	}
+	
+	public void testUnreadableDiskFileIsRegenerated() throws Exception
+	{
+		BulletinHtmlCache ingestCache = new BulletinHtmlCache(cacheDirectory, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		ingestCache.prepareHtml(fdpId, BulletinHtmlCache.generateHtml(dataManager, fdpId));
+		File diskFile = ingestCache.getDiskFile(BulletinHtmlCache.getKey(fdpId));
+		assertTrue("not on disk?", diskFile.exists());
+		FileOutputStream out = new FileOutputStream(diskFile);
+		out.write("not gzipped".getBytes());
+		out.close();
+		String expected = BulletinHtmlCache.generateHtml(dataManager, fdpId);
+		dataManager.loadCount = 0;
+		
+		BulletinHtmlCache viewingCache = new BulletinHtmlCache(cacheDirectory, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		assertEquals("wrong html after bad file?", expected, viewingCache.getHtml(dataManager, fdpId));
+		assertEquals("not regenerated?", 1, dataManager.loadCount);
+		
+		BulletinHtmlCache laterCache = new BulletinHtmlCache(cacheDirectory, BulletinHtmlCache.DEFAULT_MAX_BYTES_IN_MEMORY);
+		assertEquals("bad file not replaced?", expected, laterCache.getHtml(dataManager, fdpId));
+		assertEquals("not read from disk again?", 1, dataManager.loadCount);
+	}
+	
+	public void testKeyIncludesLocalization() throws Exception
+	{
+		String englishKey = BulletinHtmlCache.getKey(fdpId);
+		assertTrue("no version?", englishKey.startsWith(BulletinHtmlCache.HTML_FORMAT_VERSION + ":"));
+		MartusAmplifier.localization.setCurrentLanguageCode("fr");
+		assertNotEquals("same key for another language?", englishKey, BulletinHtmlCache.getKey(fdpId));
+		
+		MartusAmplifier.localization = new AmplifierLocalization();
+		MartusAmplifier.localization.setCurrentDateFormatCode(new DatePreference("dmy", '/').getDateTemplate());
+		assertNotEquals("same key for another date format?", englishKey, BulletinHtmlCache.getKey(fdpId));
+	}
+	
+	public void testOtherVersionIsCleared() throws Exception
+	{
+		File staleFile = new File(cacheDirectory, "ab/stale.html.gz");
+		staleFile.getParentFile().mkdirs();
+		staleFile.createNewFile();
+		
+		BulletinHtmlCache.clearIfOtherVersion(cacheDirectory);
+		assertFalse("old html kept?", staleFile.exists());
+		File versionFile = new File(cacheDirectory, BulletinHtmlCache.VERSION_FILE_NAME);
+		assertTrue("no version written?", versionFile.exists());
+		
+		staleFile.getParentFile().mkdirs();
+		staleFile.createNewFile();
+		BulletinHtmlCache.clearIfOtherVersion(cacheDirectory);
+		assertTrue("current html deleted?", staleFile.exists());
+	}
+	
+	public void testMemoryLimit() throws Exception
+	{
+		UniversalId firstId = UniversalIdForTesting.createFromAccountAndPrefix(fdpId.getAccountId(), "F");
+		UniversalId secondId = UniversalIdForTesting.createFromAccountAndPrefix(fdpId.getAccountId(), "F");
+		UniversalId thirdId = UniversalIdForTesting.createFromAccountAndPrefix(fdpId.getAccountId(), "F");
+		BulletinHtmlCache sizer = new BulletinHtmlCache(null, Long.MAX_VALUE);
+		sizer.getHtml(dataManager, firstId);
+		long bytesPerBulletin = sizer.getSizeInBytes();
+		
+		BulletinHtmlCache cache = new BulletinHtmlCache(null, 2 * bytesPerBulletin);
+		cache.getHtml(dataManager, firstId);
+		cache.getHtml(dataManager, secondId);
+		cache.getHtml(dataManager, thirdId);
+		assertEquals("not limited?", 2, cache.getCountInMemory());
+		
+		dataManager.loadCount = 0;
+		cache.getHtml(dataManager, thirdId);
+		assertEquals("newest dropped?", 0, dataManager.loadCount);
+		cache.getHtml(dataManager, firstId);
+		assertEquals("oldest not dropped?", 1, dataManager.loadCount);
+	}
+	
+	static class FieldDataPacketLoader implements DataManager
+	{
+		public FieldDataPacket getFieldDataPacket(UniversalId uid) throws Exception
+		{
+			++loadCount;
+			FieldDataPacket fdp = new FieldDataPacket(uid, StandardFieldSpecs.getDefaultTopSetionFieldSpecs());
+			fdp.set(BulletinConstants.TAGTITLE, "Title of " + uid.getLocalId());
+			fdp.set(BulletinConstants.TAGAUTHOR, "Author");
+			return fdp;
+		}
+		
+		public InputStream getAttachment(UniversalId attachmentId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public long getAttachmentSizeInKb(UniversalId attachmentId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public long getAttachmentSizeInBytes(UniversalId attachmentId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void putAttachment(UniversalId attachmentId, InputStream data)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void clearAllAttachments()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public File getContactInfoFile(String accountId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean hasContactInfo(String accountId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void writeContactInfoToFile(String accountId, Vector contactInfo)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public Vector getContactInfo(String accountId)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void putDataPacket(UniversalId uid, ZipEntryInputStreamWithSeek data)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		int loadCount;
+	}
+	
+	private File cacheDirectory;
+	private FieldDataPacketLoader dataManager;
+	private UniversalId fdpId;
+}
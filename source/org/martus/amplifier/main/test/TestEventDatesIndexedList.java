@@ -81,5 +81,21 @@ public class TestEventDatesIndexedList extends TestCaseEnhanced
 		assertEquals("wrong latest flexidate?", 2000, list.getLatestYear());
 	}
 	
+	public void testYearsAfterReload() throws Exception
+	{
+		EventDatesIndexedList list = new EventDatesIndexedList(file);
+		list.loadFromFile();
+		list.addValue("1990-01-01");
+		list.addValue("1995-06-01,19950601+3000");
+		
+		EventDatesIndexedList reloaded = new EventDatesIndexedList(file);
+		reloaded.loadFromFile();
+		assertEquals("wrong earliest after reload?", 1990, reloaded.getEarliestYear());
+		assertEquals("wrong latest after reload?", 2003, reloaded.getLatestYear());
+		
+		reloaded.loadFromFile();
+		assertEquals("earliest kept across loads?", 1990, reloaded.getEarliestYear());
+	}
+	
 	File file;
 }
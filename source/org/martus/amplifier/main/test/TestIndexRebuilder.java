@@ -0,0 +1,349 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.main.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+
+import org.apache.lucene.index.IndexWriter;
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.datasynch.BulletinExtractor;
+import org.martus.amplifier.lucene.IndexDirectoryPointer;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.LuceneBulletinSearcher;
+import org.martus.amplifier.main.AmplifierDataLock;
+import org.martus.amplifier.main.BulletinHtmlCache;
+import org.martus.amplifier.main.EventDatesIndexedList;
+import org.martus.amplifier.main.IndexRebuilder;
+import org.martus.amplifier.main.LanguagesIndexedList;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.main.OfflineIndexRebuilder;
+import org.martus.amplifier.search.BulletinField;
+import org.martus.amplifier.search.BulletinSearcher;
+import org.martus.amplifier.test.AbstractAmplifierTestCase;
+import org.martus.common.FieldSpecCollection;
+import org.martus.common.LoggerToNull;
+import org.martus.common.bulletin.Bulletin;
+import org.martus.common.bulletin.BulletinForTesting;
+import org.martus.common.crypto.MockMartusSecurity;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+import org.martus.common.test.MockBulletinStore;
+import org.martus.util.UnicodeWriter;
+
+public class TestIndexRebuilder extends AbstractAmplifierTestCase
+{
+	public TestIndexRebuilder(String name)
+	{
+		super(name);
+	}
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		security = new MockMartusSecurity();
+		security.createKeyPair();
+		MartusAmplifier.localization = new AmplifierLocalization();
+		LanguagesIndexedList.languagesIndexedSingleton = new LanguagesIndexedList(new File(getTestBasePath(), "oldLanguages"));
+		LanguagesIndexedList.languagesIndexedSingleton.addValue(STALE_LANGUAGE);
+		EventDatesIndexedList.initialize(new File(getTestBasePath(), "oldEventDates"));
+		BulletinHtmlCache.initialize(new File(getTestBasePath(), "htmlCache"));
+		dataManager = new FileSystemDataManager(getPacketsPath(), security);
+		store = new MockBulletinStore(this);
+		
+		// NOTE: Bulletins are stored as a sync would store them, but 
+		// indexed somewhere else, so only the rebuild indexes them here
+		unusedIndexer = new LuceneBulletinIndexer(new File(getTestBasePath(), "syncIndex"));
+		extractor = new BulletinExtractor(dataManager, unusedIndexer, security);
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		try
+		{
+			unusedIndexer.close();
+			dataManager.clearAllAttachments();
+		}
+		finally
+		{
+			super.tearDown();
+		}
+	}
+	
+	public void testTwoPassRebuild() throws Exception
+	{
+		UniversalId first = storeBulletin("First", "en", "2001-02-03");
+		UniversalId second = storeBulletin("Second", "en", "2001-02-03");
+		String oldIndexDirName = IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath());
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(dataManager, getTestBasePath(), new LoggerToNull());
+		assertEquals("first pass missed some?", 2, rebuilder.indexStoredBulletins());
+		UniversalId storedBetweenPasses = storeBulletin("Between", "en", "2001-02-03");
+		assertEquals("second pass didn't pick up the new one?", 1, rebuilder.indexStoredBulletins());
+		assertEquals("indexed again?", 0, rebuilder.indexStoredBulletins());
+		
+		File oldIndexDir = rebuilder.switchToNewIndex();
+		assertEquals("wrong old index?", oldIndexDirName, oldIndexDir.getName());
+		assertEquals("not switched?", rebuilder.getNewIndexDir().getName(), IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath()));
+		
+		BulletinSearcher searcher = new LuceneBulletinSearcher(getTestBasePath(), new LoggerToNull());
+		try
+		{
+			assertEquals("first not found?", "First", searcher.lookup(first).get(BulletinField.TAGAUTHOR));
+			assertNotNull("second not found?", searcher.lookup(second));
+			assertNotNull("bulletin stored between passes not found?", searcher.lookup(storedBetweenPasses));
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+	
+	public void testRebuildsIndexedValuesLists() throws Exception
+	{
+		storeBulletin("French", "fr", "1998-05-06");
+		storeBulletin("Spanish", "es", "2004-07-08");
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(dataManager, getTestBasePath(), new LoggerToNull());
+		rebuilder.indexStoredBulletins();
+		File newIndexDir = rebuilder.getNewIndexDir();
+		rebuilder.switchToNewIndex();
+		assertTrue("languages not saved?", IndexRebuilder.getLanguagesIndexedFile(newIndexDir).exists());
+		assertTrue("event dates not saved?", IndexRebuilder.getEventDatesIndexedFile(newIndexDir).exists());
+		
+		Vector languages = LanguagesIndexedList.languagesIndexedSingleton.getIndexedValues();
+		assertContains("french not rebuilt?", "fr", languages);
+		assertContains("spanish not rebuilt?", "es", languages);
+		assertFalse("kept a language from the old index?", languages.contains(STALE_LANGUAGE));
+		
+		EventDatesIndexedList eventDates = EventDatesIndexedList.getEventDatesIndexedList();
+		assertEquals("wrong earliest year?", 1998, eventDates.getEarliestYear());
+		assertEquals("wrong latest year?", 2004, eventDates.getLatestYear());
+	}
+	
+	public void testAbandon() throws Exception
+	{
+		storeBulletin("Abandoned", "en", "2001-02-03");
+		String oldIndexDirName = IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath());
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(dataManager, getTestBasePath(), new LoggerToNull());
+		assertEquals(1, rebuilder.indexStoredBulletins());
+		File newIndexDir = rebuilder.getNewIndexDir();
+		assertTrue("nothing written?", newIndexDir.exists());
+		
+		rebuilder.abandon();
+		assertFalse("new index kept?", newIndexDir.exists());
+		assertEquals("switched anyway?", oldIndexDirName, IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath()));
+		assertContains("live languages replaced?", STALE_LANGUAGE, LanguagesIndexedList.languagesIndexedSingleton.getIndexedValues());
+	}
+	
+	public void testRetriesBulletinThatFailedToIndex() throws Exception
+	{
+		storeBulletin("First", "en", "2001-02-03");
+		storeBulletin("Second", "en", "2001-02-03");
+		FieldDataFailsOnce failOnce = new FieldDataFailsOnce(getPacketsPath());
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(failOnce, getTestBasePath(), new LoggerToNull());
+		assertEquals("indexed the unreadable one?", 1, rebuilder.indexStoredBulletins());
+		assertEquals("final pass didn't retry the failed one?", 1, rebuilder.indexStoredBulletins());
+		assertEquals("indexed again?", 0, rebuilder.indexStoredBulletins());
+		rebuilder.abandon();
+	}
+	
+	public void testMultiThreadedRebuild() throws Exception
+	{
+		final int count = 7;
+		UniversalId[] bulletinIds = new UniversalId[count];
+		for(int i = 0; i < count - 1; ++i)
+			bulletinIds[i] = storeBulletin("Author" + i, "l" + i, "2001-02-03");
+		
+		IndexRebuilder rebuilder = new IndexRebuilder(dataManager, getTestBasePath(), new LoggerToNull());
+		assertEquals("threads missed some?", count - 1, rebuilder.indexStoredBulletins(3));
+		bulletinIds[count - 1] = storeBulletin("Last", "en", "2001-02-03");
+		assertEquals("final pass missed the new one?", 1, rebuilder.indexStoredBulletins(3));
+		rebuilder.switchToNewIndex();
+		
+		File[] leftOver = new File(getTestBasePath()).listFiles();
+		for(int i = 0; i < leftOver.length; ++i)
+			assertFalse("partial index kept: " + leftOver[i], leftOver[i].getName().indexOf("-part") >= 0);
+		
+		Vector languages = LanguagesIndexedList.languagesIndexedSingleton.getIndexedValues();
+		BulletinSearcher searcher = new LuceneBulletinSearcher(getTestBasePath(), new LoggerToNull());
+		try
+		{
+			for(int i = 0; i < count; ++i)
+			{
+				assertNotNull("not found " + i, searcher.lookup(bulletinIds[i]));
+				if(i < count - 1)
+					assertContains("language from a thread missing?", "l" + i, languages);
+			}
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+	
+	public void testOfflineRebuild() throws Exception
+	{
+		UniversalId bulletinId = storeBulletin("Offline", "en", "2001-02-03");
+		File amplifierDataDir = new File(getTestBasePath());
+		OfflineIndexRebuilder.rebuild(amplifierDataDir, security, 2);
+		
+		BulletinSearcher searcher = new LuceneBulletinSearcher(getTestBasePath(), new LoggerToNull());
+		try
+		{
+			assertNotNull("not rebuilt?", searcher.lookup(bulletinId));
+		}
+		finally
+		{
+			searcher.close();
+		}
+		AmplifierDataLock dataLock = AmplifierDataLock.obtain(amplifierDataDir);
+		assertNotNull("lock not released?", dataLock);
+		dataLock.release();
+	}
+	
+	public void testOfflineRebuildRefusesWhileAmplifierRuns() throws Exception
+	{
+		storeBulletin("Running", "en", "2001-02-03");
+		File amplifierDataDir = new File(getTestBasePath());
+		String liveIndexDirName = IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath());
+		AmplifierDataLock amplifierLock = AmplifierDataLock.obtain(amplifierDataDir);
+		assertNotNull("not locked?", amplifierLock);
+		try
+		{
+			assertNull("locked twice?", AmplifierDataLock.obtain(amplifierDataDir));
+			OfflineIndexRebuilder.rebuild(amplifierDataDir, security, 1);
+			fail("rebuilt while the amplifier was running?");
+		}
+		catch (IOException ignoreExpected)
+		{
+		}
+		finally
+		{
+			amplifierLock.release();
+		}
+		assertEquals("switched anyway?", liveIndexDirName, IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath()));
+	}
+	
+	public void testOfflineRebuildRefusesWhileIndexLocked() throws Exception
+	{
+		storeBulletin("Locked", "en", "2001-02-03");
+		File amplifierDataDir = new File(getTestBasePath());
+		File liveIndexDir = LuceneBulletinIndexer.getIndexDir(getTestBasePath());
+		IndexWriter writer = new IndexWriter(liveIndexDir, LuceneBulletinIndexer.getAnalyzer(), true);
+		try
+		{
+			assertTrue("not locked?", LuceneBulletinIndexer.isIndexLocked(liveIndexDir));
+			OfflineIndexRebuilder.rebuild(amplifierDataDir, security, 1);
+			fail("rebuilt while the index was locked?");
+		}
+		catch (IOException ignoreExpected)
+		{
+		}
+		finally
+		{
+			writer.close();
+		}
+		assertEquals("switched anyway?", liveIndexDir.getName(), IndexDirectoryPointer.getCurrentIndexDirName(getTestBasePath()));
+		AmplifierDataLock dataLock = AmplifierDataLock.obtain(amplifierDataDir);
+		assertNotNull("lock not released after refusing?", dataLock);
+		dataLock.release();
+	}
+	
+	// NOTE: On Windows the old pointer is deleted before the new one is 
+	// renamed into place, so a crash between the two leaves only the 
+	// new pointer file
+	public void testReadPointerFallsBackToNewPointer() throws Exception
+	{
+		File amplifierDir = createTempDirectory();
+		String indexDirName = "ampIndex-12345";
+		UnicodeWriter writer = new UnicodeWriter(new File(amplifierDir, IndexDirectoryPointer.POINTER_FILENAME + ".new"));
+		writer.writeln(indexDirName);
+		writer.close();
+		
+		assertEquals("new pointer not used?", indexDirName, IndexDirectoryPointer.getCurrentIndexDirName(amplifierDir.getPath()));
+		new File(amplifierDir, IndexDirectoryPointer.POINTER_FILENAME + ".new").delete();
+		amplifierDir.delete();
+	}
+	
+	private UniversalId storeBulletin(String author, String language, String eventDate) throws Exception
+	{
+		Bulletin b = new Bulletin(security);
+		b.set(BulletinField.TAGAUTHOR, author);
+		b.set(BulletinField.TAGLANGUAGE, language);
+		b.set(BulletinField.TAGEVENTDATE, eventDate);
+		b.set(BulletinField.TAGENTRYDATE, "2003-04-30");
+		b.setAllPrivate(false);
+		b.getFieldDataPacket().setEncrypted(false);
+		b.setSealed();
+		store.saveBulletinForTesting(b);
+		
+		File zipFile = createTempFileFromName("$$$MartusAmpRebuildTest");
+		BulletinForTesting.saveToFile(store.getDatabase(), b, zipFile, security);
+		extractor.extractAndStoreBulletin(zipFile);
+		zipFile.delete();
+		return b.getUniversalId();
+	}
+	
+	private String getPacketsPath()
+	{
+		return new File(getTestBasePath(), OfflineIndexRebuilder.PACKETS_DIRECTORY).getPath();
+	}
+	
+	// NOTE: Acts like a bulletin whose header was stored before its 
+	// field data, so the first attempt to index it fails
+	class FieldDataFailsOnce extends FileSystemDataManager
+	{
+		FieldDataFailsOnce(String baseDir) throws Exception
+		{
+			super(baseDir, security);
+		}
+		
+		public FieldDataPacket getFieldDataPacket(UniversalId uid, FieldSpecCollection fieldSpecs) throws Exception
+		{
+			if(!failed)
+			{
+				failed = true;
+				throw new IOException("Field data not stored yet");
+			}
+			return super.getFieldDataPacket(uid, fieldSpecs);
+		}
+		
+		private boolean failed;
+	}
+	
+	private static final String STALE_LANGUAGE = "de";
+	
+	private MockMartusSecurity security;
+	private FileSystemDataManager dataManager;
+	private MockBulletinStore store;
+	private LuceneBulletinIndexer unusedIndexer;
+	private BulletinExtractor extractor;
+}
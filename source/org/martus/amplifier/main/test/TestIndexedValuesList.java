@@ -71,6 +71,23 @@ public class TestIndexedValuesList extends TestCaseEnhanced
 		DirectoryUtils.deleteEntireDirectoryTree(baseDir);
 	}
 
+	public void testAddAppendsToFile() throws Exception
+	{
+		File baseDir = createTempDirectory();
+		File listFile = new File(baseDir, "langList.txt");
+		IndexedValuesList list = new IndexedValuesList(listFile);
+		list.addValue("en");
+		list.addValue("fr");
+		
+		Vector snapshot = list.getIndexedValues();
+		list.addValue("es");
+		assertEquals("snapshot changed?", 2, snapshot.size());
+		
+		Vector listFromFile = MartusUtilities.loadListFromFile(listFile);
+		assertEquals("not appended?", list.getIndexedValues(), listFromFile);
+		DirectoryUtils.deleteEntireDirectoryTree(baseDir);
+	}
+
 	public void testAdd() throws Exception
 	{
 		File baseDir = createTempDirectory();
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Vector;
 
+import org.martus.amplifier.common.ChoiceEntry;
 import org.martus.amplifier.common.SearchResultConstants;
 import org.martus.amplifier.main.LanguagesIndexedList;
 import org.martus.util.TestCaseEnhanced;
@@ -71,4 +72,30 @@ public class TestLanguagesIndexedList extends TestCaseEnhanced
 		languageListFile.delete();
 	}
 
+	public void testLanguageChoices() throws Exception
+	{
+		File languageListFile = createTempFile();
+		languageListFile.delete();
+		
+		LanguagesIndexedList list = new LanguagesIndexedList(languageListFile);
+		list.addValue("fr");
+		Vector choices = list.getLanguageChoices();
+		assertEquals("wrong choice count?", 2, choices.size());
+		ChoiceEntry french = (ChoiceEntry)choices.get(1);
+		assertEquals("wrong tag?", "fr", french.getTag());
+		assertEquals("wrong label?", "French", french.getLabel());
+		assertSame("rebuilt without a change?", choices, list.getLanguageChoices());
+		
+		list.addValue("fr");
+		assertSame("rebuilt for a duplicate?", choices, list.getLanguageChoices());
+		
+		list.addValue("xx");
+		Vector newChoices = list.getLanguageChoices();
+		assertNotSame("not rebuilt after add?", choices, newChoices);
+		assertEquals("wrong choice count after add?", 3, newChoices.size());
+		assertEquals("unknown code should be its own label", "xx", ((ChoiceEntry)newChoices.get(2)).getLabel());
+		
+		languageListFile.delete();
+	}
+
 }
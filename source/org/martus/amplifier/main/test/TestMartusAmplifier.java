@@ -30,7 +30,9 @@ import java.util.List;
 
 import org.martus.amplifier.ServerCallbackInterface;
 import org.martus.amplifier.datasynch.BackupServerInfo;
+import org.martus.amplifier.lucene.IndexMergePolicy;
 import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.presentation.BulletinPageStore;
 import org.martus.common.LoggerToNull;
 import org.martus.common.MartusUtilities;
 import org.martus.common.crypto.MockMartusSecurity;
@@ -111,5 +113,67 @@ public class TestMartusAmplifier extends TestCaseEnhanced
 		assertEquals("No account 1", account1, twoAccounts.get(0));
 		assertEquals("No account 2", account2, twoAccounts.get(1));
 	}
+	public void testBadSessionMemoryFileKeepsDefaults() throws Exception
+	{
+		File settingsFile = createTempFile();
+		MockMartusSecurity security = MockMartusSecurity.createServer();
+		MockMartusServer server = new MockMartusServer(settingsFile, new LoggerToNull(), security);
+		MartusAmplifier amp =  new MartusAmplifier(server); 
+		BulletinPageStore defaultStore = BulletinPageStore.getInstance();
+		
+		writeLines(settingsFile, new String[] {"512"});
+		amp.loadSessionMemoryLimits(settingsFile);
+		assertSame("used a one line file?", defaultStore, BulletinPageStore.getInstance());
+
+		writeLines(settingsFile, new String[] {"512", "lots"});
+		amp.loadSessionMemoryLimits(settingsFile);
+		assertSame("used a file that isn't numbers?", defaultStore, BulletinPageStore.getInstance());
+		
+		writeLines(settingsFile, new String[] {"512", "0"});
+		amp.loadSessionMemoryLimits(settingsFile);
+		assertSame("used a zero limit?", defaultStore, BulletinPageStore.getInstance());
+		
+		writeLines(settingsFile, new String[] {"512", "8192"});
+		amp.loadSessionMemoryLimits(settingsFile);
+		assertNotSame("good file not used?", defaultStore, BulletinPageStore.getInstance());
+		BulletinPageStore.setInstance(null);
+		settingsFile.delete();
+	}
+	
+	public void testBadIndexMergeFileKeepsDefaults() throws Exception
+	{
+		File settingsFile = createTempFile();
+		MockMartusSecurity security = MockMartusSecurity.createServer();
+		MockMartusServer server = new MockMartusServer(settingsFile, new LoggerToNull(), security);
+		MartusAmplifier amp =  new MartusAmplifier(server); 
+		IndexMergePolicy defaultPolicy = IndexMergePolicy.getMergePolicy();
+		
+		writeLines(settingsFile, new String[] {"many"});
+		amp.loadIndexMergePolicy(settingsFile);
+		assertSame("used a count that isn't a number?", defaultPolicy, IndexMergePolicy.getMergePolicy());
+		
+		writeLines(settingsFile, new String[] {"5", "2"});
+		amp.loadIndexMergePolicy(settingsFile);
+		assertSame("used a window with one hour?", defaultPolicy, IndexMergePolicy.getMergePolicy());
+		
+		writeLines(settingsFile, new String[] {"5", "2", "25"});
+		amp.loadIndexMergePolicy(settingsFile);
+		assertSame("used an hour past 23?", defaultPolicy, IndexMergePolicy.getMergePolicy());
+		
+		writeLines(settingsFile, new String[] {"5", "2", "4"});
+		amp.loadIndexMergePolicy(settingsFile);
+		assertEquals("good file not used?", 5, IndexMergePolicy.getMergePolicy().getMaxSegments());
+		IndexMergePolicy.initialize(null);
+		settingsFile.delete();
+	}
+	
+	private void writeLines(File file, String[] lines) throws Exception
+	{
+		UnicodeWriter writer = new UnicodeWriter(file);
+		for(int i = 0; i < lines.length; ++i)
+			writer.writeln(lines[i]);
+		writer.close();
+	}
+	
 	BackupServerInfo testInfo;
 }
@@ -42,7 +42,7 @@ public class AmplifierClientSideNetworkGateway implements AmplifierBulletinRetri
 	public NetworkResponse getAccountIds(MartusCrypto signer) throws Exception
 	{
 		Vector parameters = new Vector();
-		String signature = signer.createSignatureOfVectorOfStrings(parameters);
+		String signature = createSignature(signer, parameters);
 		return new NetworkResponse(server.getAccountIds(signer.getPublicKeyString(), parameters, signature));
 	}
 	
@@ -50,7 +50,7 @@ public class AmplifierClientSideNetworkGateway implements AmplifierBulletinRetri
 	{
 		Vector parameters = new Vector();
 		parameters.add(accountId);
-		String signature = signer.createSignatureOfVectorOfStrings(parameters);
+		String signature = createSignature(signer, parameters);
 		
 		return new NetworkResponse(server.getContactInfo(signer.getPublicKeyString(), parameters, signature));
 	}
@@ -60,7 +60,7 @@ public class AmplifierClientSideNetworkGateway implements AmplifierBulletinRetri
 	{
 		Vector parameters = new Vector();
 		parameters.add(accountId);
-		String signature = signer.createSignatureOfVectorOfStrings(parameters);
+		String signature = createSignature(signer, parameters);
 		return new NetworkResponse(server.getPublicBulletinLocalIds(signer.getPublicKeyString(), parameters, signature));
 			
 	}
@@ -73,12 +73,21 @@ public class AmplifierClientSideNetworkGateway implements AmplifierBulletinRetri
 		parameters.add(bulletinLocalId);
 		parameters.add(new Integer(chunkOffset));
 		parameters.add(new Integer(maxChunkSize));
-		String signature = signer.createSignatureOfVectorOfStrings(parameters);
+		String signature = createSignature(signer, parameters);
 		return new NetworkResponse(server.getAmplifierBulletinChunk(signer.getPublicKeyString(), parameters, signature));
 	}
 
 	
-	
+	// NOTE: The signer is shared by every download thread of every 
+	// backup server, and keeps a single signature engine, so only the 
+	// signing is synchronized on it, not the call to the server
+	private String createSignature(MartusCrypto signer, Vector parameters) throws Exception
+	{
+		synchronized(signer)
+		{
+			return signer.createSignatureOfVectorOfStrings(parameters);
+		}
+	}
 	
 	AmplifierNetworkInterface server;
 }
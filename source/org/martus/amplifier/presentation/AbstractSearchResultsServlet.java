@@ -34,6 +34,7 @@ import java.util.Vector;
 import org.apache.velocity.context.Context;
 import org.martus.amplifier.common.FindBulletinsFields;
 import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.search.BulletinIndexException;
 import org.martus.amplifier.search.BulletinInfo;
 import org.martus.amplifier.search.SearchConstants;
 import org.martus.amplifier.velocity.AmplifierServlet;
@@ -59,8 +60,6 @@ public abstract class AbstractSearchResultsServlet extends AmplifierServlet
 		session.setAttribute("foundBulletins", bulletins);
 				
 		sortBulletins(bulletins, sortField);
-		if (sortField.equals(SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD))
-			Collections.reverse(bulletins);			
 
 		setSearchedForInContext(request.getSession(), context);
 		setSearchResultsContext(bulletins, request, context);
@@ -77,8 +76,16 @@ public abstract class AbstractSearchResultsServlet extends AmplifierServlet
 	public static void setSearchResultsContext(List bulletins, AmplifierServletRequest request, Context context)
 	{
 		AmplifierServletSession session = request.getSession();
-		context.put("foundBulletins", bulletins);
+		int pageCount = (bulletins.size() + BULLETINS_PER_PAGE - 1) / BULLETINS_PER_PAGE;
+		int page = getPageToDisplay(request, pageCount);
+		int first = (page - 1) * BULLETINS_PER_PAGE;
+		int end = Math.min(first + BULLETINS_PER_PAGE, bulletins.size());
+		
+		context.put("foundBulletins", new Vector(bulletins.subList(first, end)));
 		context.put("totalBulletins", new Integer(bulletins.size()));
+		context.put("pageOffset", new Integer(first));
+		context.put("currentPage", new Integer(page));
+		context.put("pageCount", new Integer(pageCount));
 		Vector sortByFields = FindBulletinsFields.getSortByFieldDisplayNames();
 		context.put("sortByFields", sortByFields);
 		String sortBy = (String)session.getAttribute(SearchResultConstants.RESULT_SORTBY_KEY);
@@ -102,9 +109,42 @@ public abstract class AbstractSearchResultsServlet extends AmplifierServlet
 		context.put("errorMsg", msg);
 	}
 
-	public static void sortBulletins(List bulletinList, final String sortByFieldTag)
+	private static int getPageToDisplay(AmplifierServletRequest request, int pageCount)
+	{
+		int page = 1;
+		String pageString = request.getParameter("page");
+		if(pageString != null)
+		{
+			try
+			{
+				page = Integer.parseInt(pageString);
+			}
+			catch (NumberFormatException e)
+			{
+				// NOTE: The page number comes from a link we built, so a bad one 
+				// was typed or edited by hand; just show the first page
+			}
+		}
+		
+		if(page > pageCount)
+			page = pageCount;
+		if(page < 1)
+			page = 1;
+		return page;
+	}
+
+	public static void sortBulletins(List bulletinList, final String sortByFieldTag) throws BulletinIndexException
 	{
+		boolean newestFirst = sortByFieldTag.equals(SearchConstants.SEARCH_ENTRY_DATE_INDEX_FIELD);
+		if(bulletinList instanceof FoundBulletinsList)
+		{
+			((FoundBulletinsList)bulletinList).sortBy(sortByFieldTag, newestFirst);
+			return;
+		}
+		
 		Collections.sort(bulletinList, new BulletinSorter(sortByFieldTag));		
+		if(newestFirst)
+			Collections.reverse(bulletinList);
 	}
 
 	static class BulletinSorter implements Comparator
@@ -139,4 +179,5 @@ public abstract class AbstractSearchResultsServlet extends AmplifierServlet
 		return sortField;
 	}
 
+	public static final int BULLETINS_PER_PAGE = FoundBulletinsList.PAGE_SIZE;
 }
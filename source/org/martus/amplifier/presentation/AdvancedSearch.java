@@ -25,16 +25,9 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.presentation;
 
-import java.util.Vector;
-
 import org.apache.velocity.context.Context;
 import org.martus.amplifier.common.AdvancedSearchInfo;
-import org.martus.amplifier.common.AmplifierLocalization;
-import org.martus.amplifier.common.ChoiceEntry;
-import org.martus.amplifier.common.FindBulletinsFields;
 import org.martus.amplifier.common.RawSearchParameters;
-import org.martus.amplifier.main.EventDatesIndexedList;
-import org.martus.amplifier.main.LanguagesIndexedList;
 import org.martus.amplifier.velocity.AmplifierServlet;
 import org.martus.amplifier.velocity.AmplifierServletRequest;
 import org.martus.amplifier.velocity.AmplifierServletResponse;
@@ -43,29 +36,7 @@ public class AdvancedSearch extends AmplifierServlet
 {
 	public String selectTemplate(AmplifierServletRequest request, AmplifierServletResponse response, Context context) throws Exception
 	{				
-		context.put("monthFields", FindBulletinsFields.getMonthFieldDisplayNames());
-				
-		Vector filterFields = FindBulletinsFields.getFindWordFilterDisplayNames();
-		context.put("filterWordFields", filterFields);
-
-		Vector entryDateFields = FindBulletinsFields.getFindEntryDatesDisplayNames();
-		context.put("entryDateFields", entryDateFields);
-		
-		Vector bulletinFields = FindBulletinsFields.getBulletinFieldDisplayNames();
-		context.put("bulletinFields", bulletinFields);	
-		
-		Vector languageFields = getAvailableLanguageChoices();
-		context.put("languageFields", languageFields);		
-		
-		Vector sortByFields = FindBulletinsFields.getSortByFieldDisplayNames();
-		context.put("sortByFields", sortByFields);
-		
-		EventDatesIndexedList eventDates = EventDatesIndexedList.getEventDatesIndexedList();
-		Vector years = new Vector();
-		int earliestIndexedYear = eventDates.getEarliestYear();
-		for(int y = eventDates.getLatestYear(); y >= earliestIndexedYear; --y)
-			years.add(new Integer(y));
-		context.put("years", years);
+		AdvancedSearchPage.getCurrentPage().putInto(context);
 		
 		AdvancedSearchInfo defaultFields = (AdvancedSearchInfo) request.getSession().getAttribute("defaultAdvancedSearch");
 		if (defaultFields == null)
@@ -77,24 +48,5 @@ public class AdvancedSearch extends AmplifierServlet
 
 		return "AdvancedSearch.vm";
 	}
-	
-	Vector getAvailableLanguageChoices()
-	{
-		LanguagesIndexedList indexedLanguages = LanguagesIndexedList.languagesIndexedSingleton;
-		Vector languageCodes = indexedLanguages.getIndexedValues();
-		Vector fields = new Vector();
-		for(int i = 0; i < languageCodes.size(); ++i)
-		{
-			String code = (String)languageCodes.get(i);
-			//TODO remove this once we figure out the Other Language ? issue with lucene.
-			if(code.equals("?"))
-				continue;
-			String languageString = AmplifierLocalization.getLanguageString(code);
-			if(languageString == null)
-				languageString = code;
-			fields.add(new ChoiceEntry(code, languageString));
-		}
-		return fields;
-	}
 
 }
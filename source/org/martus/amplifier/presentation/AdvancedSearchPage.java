@@ -0,0 +1,125 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.presentation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.velocity.context.Context;
+import org.martus.amplifier.common.FindBulletinsFields;
+import org.martus.amplifier.main.EventDatesIndexedList;
+import org.martus.amplifier.main.LanguagesIndexedList;
+
+/**
+ * The choices shown on the advanced search page. They only change when 
+ * a sync indexes a new language or event date, so one model is shared 
+ * by every request, and a new one is built only when the language 
+ * choices or the range of event years have changed.
+ * 
+ * A model never changes once it is built, and its lists can't be 
+ * modified.
+ */
+public class AdvancedSearchPage
+{
+	public static synchronized AdvancedSearchPage getCurrentPage()
+	{
+		Vector languageChoices = LanguagesIndexedList.languagesIndexedSingleton.getLanguageChoices();
+		EventDatesIndexedList eventDates = EventDatesIndexedList.getEventDatesIndexedList();
+		int earliestYear = eventDates.getEarliestYear();
+		int latestYear = eventDates.getLatestYear();
+		
+		if(current == null || !current.isBuiltFrom(languageChoices, earliestYear, latestYear))
+			current = new AdvancedSearchPage(languageChoices, earliestYear, latestYear);
+		return current;
+	}
+	
+	AdvancedSearchPage(Vector languageChoicesToUse, int earliestYearToUse, int latestYearToUse)
+	{
+		languageChoices = languageChoicesToUse;
+		earliestYear = earliestYearToUse;
+		latestYear = latestYearToUse;
+		
+		monthFields = unmodifiable(FindBulletinsFields.getMonthFieldDisplayNames());
+		filterWordFields = unmodifiable(FindBulletinsFields.getFindWordFilterDisplayNames());
+		entryDateFields = unmodifiable(FindBulletinsFields.getFindEntryDatesDisplayNames());
+		bulletinFields = unmodifiable(FindBulletinsFields.getBulletinFieldDisplayNames());
+		languageFields = unmodifiable(languageChoices);
+		sortByFields = unmodifiable(FindBulletinsFields.getSortByFieldDisplayNames());
+		
+		Vector yearsNewestFirst = new Vector();
+		for(int y = latestYear; y >= earliestYear; --y)
+			yearsNewestFirst.add(new Integer(y));
+		years = unmodifiable(yearsNewestFirst);
+	}
+	
+	public void putInto(Context context)
+	{
+		context.put("monthFields", monthFields);
+		context.put("filterWordFields", filterWordFields);
+		context.put("entryDateFields", entryDateFields);
+		context.put("bulletinFields", bulletinFields);
+		context.put("languageFields", languageFields);
+		context.put("sortByFields", sortByFields);
+		context.put("years", years);
+	}
+	
+	public List getLanguageFields()
+	{
+		return languageFields;
+	}
+	
+	public List getYears()
+	{
+		return years;
+	}
+	
+	boolean isBuiltFrom(Vector languageChoicesToCheck, int earliestYearToCheck, int latestYearToCheck)
+	{
+		return languageChoices == languageChoicesToCheck && 
+			earliestYear == earliestYearToCheck && 
+			latestYear == latestYearToCheck;
+	}
+	
+	private static List unmodifiable(Vector choices)
+	{
+		return Collections.unmodifiableList(new Vector(choices));
+	}
+	
+	private Vector languageChoices;
+	private int earliestYear;
+	private int latestYear;
+	
+	private List monthFields;
+	private List filterWordFields;
+	private List entryDateFields;
+	private List bulletinFields;
+	private List languageFields;
+	private List sortByFields;
+	private List years;
+	
+	private static AdvancedSearchPage current;
+}
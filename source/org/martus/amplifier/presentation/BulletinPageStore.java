@@ -0,0 +1,329 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.presentation;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.martus.amplifier.search.BulletinInfo;
+
+/**
+ * Holds the recently displayed pages of BulletinInfos for every 
+ * FoundBulletinsList, so the lists kept in sessions only need the 
+ * search results themselves. Pages are dropped least recently used 
+ * first, both when one list goes over its own byte budget and when 
+ * all of the lists together go over the global budget. A dropped 
+ * page is simply rebuilt from the index when it is next needed.
+ * 
+ * Each list's search results are charged to its budget as well. They 
+ * can't be dropped, since the list needs them to rebuild its pages, 
+ * but counting them means a list with a very large result leaves less 
+ * room for stored pages, both its own and everyone else's.
+ * 
+ * The lists are only weakly referenced, so a list from an expired 
+ * session, and the search results it holds, can be collected even 
+ * while its pages are still stored. Those pages are dropped the next 
+ * time the store is used.
+ */
+public class BulletinPageStore
+{
+	public static synchronized BulletinPageStore getInstance()
+	{
+		if(instance == null)
+			instance = new BulletinPageStore(DEFAULT_MAX_BYTES_PER_LIST, DEFAULT_MAX_BYTES_TOTAL);
+		return instance;
+	}
+	
+	public static synchronized void setInstance(BulletinPageStore storeToUse)
+	{
+		instance = storeToUse;
+	}
+	
+	public BulletinPageStore(long maxBytesPerListToUse, long maxBytesTotalToUse)
+	{
+		maxBytesPerList = maxBytesPerListToUse;
+		maxBytesTotal = maxBytesTotalToUse;
+		pages = new LinkedHashMap(16, 0.75f, true);
+		owners = new HashMap();
+		collectedOwners = new ReferenceQueue();
+	}
+	
+	public synchronized List get(Object owner, int first)
+	{
+		removeCollectedOwners();
+		OwnerReference ownerReference = findOwner(owner);
+		if(ownerReference == null)
+			return null;
+		StoredPage page = (StoredPage)pages.get(new PageKey(ownerReference, first));
+		if(page == null)
+			return null;
+		return page.bulletins;
+	}
+	
+	public synchronized void put(Object owner, int first, List bulletins)
+	{
+		removeCollectedOwners();
+		OwnerReference ownerReference = findOrAddOwner(owner);
+		PageKey key = new PageKey(ownerReference, first);
+		remove(key);
+		
+		StoredPage page = new StoredPage(bulletins, estimateBytes(bulletins));
+		pages.put(key, page);
+		addBytes(ownerReference, page.bytes);
+		
+		evict(key, ownerReference, maxBytesPerList);
+		evict(key, null, maxBytesTotal);
+	}
+	
+	public synchronized void setResultsBytes(Object owner, long bytes)
+	{
+		removeCollectedOwners();
+		OwnerReference ownerReference = findOrAddOwner(owner);
+		addBytes(ownerReference, bytes - ownerReference.resultsBytes);
+		ownerReference.resultsBytes = bytes;
+		
+		evict(null, ownerReference, maxBytesPerList);
+		evict(null, null, maxBytesTotal);
+	}
+	
+	public synchronized void removeAll(Object owner)
+	{
+		removeCollectedOwners();
+		OwnerReference ownerReference = findOwner(owner);
+		if(ownerReference != null)
+			removePages(ownerReference);
+	}
+	
+	public synchronized long getSizeInBytes()
+	{
+		removeCollectedOwners();
+		return totalBytes;
+	}
+	
+	public synchronized long getSizeInBytes(Object owner)
+	{
+		removeCollectedOwners();
+		OwnerReference ownerReference = findOwner(owner);
+		if(ownerReference == null)
+			return 0;
+		return ownerReference.bytes;
+	}
+	
+	public synchronized int getPageCount()
+	{
+		removeCollectedOwners();
+		return pages.size();
+	}
+	
+	private OwnerReference findOwner(Object owner)
+	{
+		return (OwnerReference)owners.get(new OwnerReference(owner, null));
+	}
+	
+	private OwnerReference findOrAddOwner(Object owner)
+	{
+		OwnerReference ownerReference = findOwner(owner);
+		if(ownerReference == null)
+		{
+			ownerReference = new OwnerReference(owner, collectedOwners);
+			owners.put(ownerReference, ownerReference);
+		}
+		return ownerReference;
+	}
+	
+	private void removeCollectedOwners()
+	{
+		OwnerReference collected;
+		while((collected = (OwnerReference)collectedOwners.poll()) != null)
+		{
+			addBytes(collected, -collected.resultsBytes);
+			collected.resultsBytes = 0;
+			removePages(collected);
+		}
+	}
+	
+	private void removePages(OwnerReference ownerReference)
+	{
+		for(Iterator iter = pages.entrySet().iterator(); iter.hasNext();)
+		{
+			Map.Entry entry = (Map.Entry)iter.next();
+			if(((PageKey)entry.getKey()).owner != ownerReference)
+				continue;
+			
+			iter.remove();
+			addBytes(ownerReference, -((StoredPage)entry.getValue()).bytes);
+		}
+		if(ownerReference.resultsBytes == 0)
+			owners.remove(ownerReference);
+	}
+	
+	// NOTE: The page that was just stored is always kept, even if 
+	// it is bigger than the budget on its own. Search results are 
+	// counted in the bytes, but only pages are ever dropped.
+	private void evict(PageKey newestKey, OwnerReference owner, long maxBytes)
+	{
+		Iterator oldestFirst = pages.entrySet().iterator();
+		while(oldestFirst.hasNext())
+		{
+			long bytes = (owner == null) ? totalBytes : owner.bytes;
+			if(bytes <= maxBytes)
+				return;
+			
+			Map.Entry entry = (Map.Entry)oldestFirst.next();
+			PageKey key = (PageKey)entry.getKey();
+			if(key.equals(newestKey))
+				continue;
+			if(owner != null && key.owner != owner)
+				continue;
+			
+			oldestFirst.remove();
+			addBytes(key.owner, -((StoredPage)entry.getValue()).bytes);
+		}
+	}
+	
+	private void remove(PageKey key)
+	{
+		StoredPage page = (StoredPage)pages.remove(key);
+		if(page != null)
+			addBytes(key.owner, -page.bytes);
+	}
+	
+	private void addBytes(OwnerReference owner, long bytes)
+	{
+		totalBytes += bytes;
+		owner.bytes += bytes;
+	}
+	// NOTE: A rough guess at the heap used, which is all the budgets need
+	static long estimateBytes(List bulletins)
+	{
+		long bytes = 0;
+		for(int i = 0; i < bulletins.size(); ++i)
+		{
+			BulletinInfo info = (BulletinInfo)bulletins.get(i);
+			bytes += BULLETIN_OVERHEAD_BYTES;
+			for(Iterator iter = info.getFields().values().iterator(); iter.hasNext();)
+			{
+				Object value = iter.next();
+				bytes += STRING_OVERHEAD_BYTES;
+				if(value != null)
+					bytes += 2L * value.toString().length();
+			}
+			bytes += ATTACHMENT_BYTES * info.getAttachments().size();
+		}
+		return bytes;
+	}
+	
+	// NOTE: Lists are compared by identity, because AbstractList.equals 
+	// and hashCode would load every bulletin in them. Each stored list 
+	// has exactly one OwnerReference, which is kept while it has pages 
+	// or charged search results, so pages can be keyed by that 
+	// reference's identity.
+	static class OwnerReference extends WeakReference
+	{
+		OwnerReference(Object owner, ReferenceQueue queue)
+		{
+			super(owner, queue);
+			ownerHashCode = System.identityHashCode(owner);
+		}
+		
+		public boolean equals(Object other)
+		{
+			if(this == other)
+				return true;
+			if(!(other instanceof OwnerReference))
+				return false;
+			Object owner = get();
+			return owner != null && owner == ((OwnerReference)other).get();
+		}
+		
+		public int hashCode()
+		{
+			return ownerHashCode;
+		}
+		
+		int ownerHashCode;
+		long bytes;
+		long resultsBytes;
+	}
+	
+	static class PageKey
+	{
+		PageKey(OwnerReference ownerToUse, int firstToUse)
+		{
+			owner = ownerToUse;
+			first = firstToUse;
+		}
+		
+		public boolean equals(Object other)
+		{
+			if(!(other instanceof PageKey))
+				return false;
+			PageKey otherKey = (PageKey)other;
+			return owner == otherKey.owner && first == otherKey.first;
+		}
+		
+		public int hashCode()
+		{
+			return owner.hashCode() * 31 + first;
+		}
+		
+		OwnerReference owner;
+		int first;
+	}
+	
+	static class StoredPage
+	{
+		StoredPage(List bulletinsToUse, long bytesToUse)
+		{
+			bulletins = bulletinsToUse;
+			bytes = bytesToUse;
+		}
+		
+		List bulletins;
+		long bytes;
+	}
+	
+	public static final long DEFAULT_MAX_BYTES_PER_LIST = 256 * 1024;
+	public static final long DEFAULT_MAX_BYTES_TOTAL = 32 * 1024 * 1024;
+	
+	private static final long BULLETIN_OVERHEAD_BYTES = 256;
+	private static final long STRING_OVERHEAD_BYTES = 48;
+	private static final long ATTACHMENT_BYTES = 128;
+	
+	private static BulletinPageStore instance;
+	
+	private long maxBytesPerList;
+	private long maxBytesTotal;
+	private LinkedHashMap pages;
+	private HashMap owners;
+	private ReferenceQueue collectedOwners;
+	private long totalBytes;
+}
@@ -29,7 +29,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import org.martus.amplifier.common.AmplifierLocalization;
 import org.martus.amplifier.common.CharacterUtil;
 import org.martus.amplifier.common.RawSearchParameters;
 import org.martus.amplifier.common.SearchParameters;
@@ -38,7 +37,6 @@ import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.search.BulletinInfo;
 import org.martus.amplifier.search.BulletinSearcher;
 import org.martus.amplifier.search.Results;
-import org.martus.amplifier.search.SearchConstants;
 import org.martus.amplifier.velocity.AmplifierServletRequest;
 import org.martus.amplifier.velocity.AmplifierServletSession;
 
@@ -144,16 +142,7 @@ public class DoSearch extends AbstractSearchResultsServlet
 		try
 		{
 			Results results = searcher.search(fields);
-
-			ArrayList list = new ArrayList();
-			for (int i = 0; i < results.getCount(); i++)
-			{
-				BulletinInfo bulletinInfo = results.getBulletinInfo(i);
-				convertLanguageCode(bulletinInfo);
-				formatDataForHtmlDisplay(bulletinInfo.getFields());
-				list.add(bulletinInfo);
-			}
-			return list;
+			return new FoundBulletinsList(fields, results);
 		}
 		finally
 		{
@@ -163,13 +152,7 @@ public class DoSearch extends AbstractSearchResultsServlet
 	
 	public void convertLanguageCode(BulletinInfo bulletinInfo)
 	{
-		String code = bulletinInfo.get(SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD);
-		if(code == null)
-			return;
-		String languageString = AmplifierLocalization.getLanguageString(code);
-		if(languageString == null)
-			return;				
-		bulletinInfo.set(SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD, languageString);
+		FoundBulletinsList.convertLanguageCode(bulletinInfo);
 	}
 
-}
\ No newline at end of file
+}
@@ -28,14 +28,13 @@ package org.martus.amplifier.presentation;
 import java.util.List;
 
 import org.apache.velocity.context.Context;
+import org.martus.amplifier.main.BulletinHtmlCache;
 import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.search.BulletinInfo;
 import org.martus.amplifier.velocity.AmplifierServlet;
 import org.martus.amplifier.velocity.AmplifierServletRequest;
 import org.martus.amplifier.velocity.AmplifierServletResponse;
-import org.martus.common.bulletin.BulletinHtmlGenerator;
 import org.martus.common.crypto.MartusCrypto;
-import org.martus.common.packet.FieldDataPacket;
 
 public class FoundBulletin extends AmplifierServlet
 {
@@ -54,9 +53,8 @@ public class FoundBulletin extends AmplifierServlet
 		int index = getIndex(request);
 		BulletinInfo info = (BulletinInfo)bulletins.get(index - 1);
 		context.put("bulletin", info);
-		FieldDataPacket fdp = MartusAmplifier.dataManager.getFieldDataPacket(info.getFieldDataPacketUId());
-		BulletinHtmlGenerator generator = new BulletinHtmlGenerator(MartusAmplifier.localization);
-		String htmlRepresentation = generator.getSectionHtmlString(fdp);
+		BulletinHtmlCache htmlCache = BulletinHtmlCache.getBulletinHtmlCache();
+		String htmlRepresentation = htmlCache.getHtml(MartusAmplifier.dataManager, info.getFieldDataPacketUId());
 		context.put("htmlRepresntation", htmlRepresentation);
 		context.put("currentBulletin", new Integer(index));
 		context.put("searchedFor", request.getParameter("searchedFor"));
@@ -0,0 +1,205 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.presentation;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.search.BulletinIndexException;
+import org.martus.amplifier.search.BulletinInfo;
+import org.martus.amplifier.search.BulletinSearcher;
+import org.martus.amplifier.search.Results;
+import org.martus.amplifier.search.SearchConstants;
+
+/**
+ * The bulletins found by a search, as a List that is kept in the 
+ * session. The list itself only holds the search fields and the 
+ * Results, which are just document numbers. BulletinInfos are built 
+ * one page at a time as the pages are displayed, and the recent pages 
+ * are kept in the shared BulletinPageStore, which limits how much 
+ * memory they use. The Results are charged to the same budget.
+ * 
+ * If the index has been rebuilt since the search, the search is 
+ * run again from its fields.
+ */
+public class FoundBulletinsList extends AbstractList
+{
+	public FoundBulletinsList(Results resultsToUse) throws BulletinIndexException
+	{
+		this(null, resultsToUse);
+	}
+	
+	public FoundBulletinsList(Map searchFieldsToUse, Results resultsToUse) throws BulletinIndexException
+	{
+		if(searchFieldsToUse != null)
+			searchFields = new HashMap(searchFieldsToUse);
+		results = resultsToUse;
+		count = results.getCount();
+		chargeResults();
+	}
+	
+	public int size()
+	{
+		return count;
+	}
+
+	// NOTE: Loading a page can run the search again, and the new 
+	// results may be shorter than the list was when the index was 
+	// checked. Since a page being shown has already been sized from 
+	// the old count, the index is then clamped to the last bulletin 
+	// still found rather than failing the whole page.
+	public synchronized Object get(int index)
+	{
+		if(index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		
+		int first = getFirstOnPage(index);
+		List page = getPage(first);
+		if(index - first < page.size())
+			return page.get(index - first);
+		
+		if(count == 0)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		index = Math.min(index, count - 1);
+		first = getFirstOnPage(index);
+		page = getPage(first);
+		return page.get(Math.min(index - first, page.size() - 1));
+	}
+	
+	private static int getFirstOnPage(int index)
+	{
+		return index - (index % PAGE_SIZE);
+	}
+	
+	public synchronized void sortBy(String fieldTag, boolean descending) throws BulletinIndexException
+	{
+		if(fieldTag.equals(sortedBy) && descending == sortedDescending)
+			return;
+		
+		results.sortBy(fieldTag, descending);
+		sortedBy = fieldTag;
+		sortedDescending = descending;
+		getPageStore().removeAll(this);
+		chargeResults();
+	}
+	
+	private synchronized List getPage(int first)
+	{
+		List page = getPageStore().get(this, first);
+		if(page != null)
+			return page;
+
+		try
+		{
+			page = loadPage(first);
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+		for(int i = 0; i < page.size(); ++i)
+			prepareForDisplay((BulletinInfo)page.get(i));
+		getPageStore().put(this, first, page);
+		return page;
+	}
+	
+	private List loadPage(int first) throws Exception
+	{
+		try
+		{
+			return results.getBulletinInfos(first, PAGE_SIZE);
+		}
+		catch (BulletinIndexException e)
+		{
+			if(searchFields == null)
+				throw e;
+		}
+		
+		rerunSearch();
+		return results.getBulletinInfos(first, PAGE_SIZE);
+	}
+	
+	private void rerunSearch() throws Exception
+	{
+		BulletinSearcher searcher = MartusAmplifier.openBulletinSearcher();
+		try
+		{
+			results = searcher.search(searchFields);
+		}
+		finally
+		{
+			searcher.close();
+		}
+		
+		count = results.getCount();
+		if(sortedBy != null)
+			results.sortBy(sortedBy, sortedDescending);
+		getPageStore().removeAll(this);
+		chargeResults();
+	}
+	
+	// NOTE: Sorting adds a key per bulletin, and a search that is run 
+	// again may find more or fewer, so this is redone after each
+	private void chargeResults()
+	{
+		getPageStore().setResultsBytes(this, results.getSizeInBytes());
+	}
+	
+	private static BulletinPageStore getPageStore()
+	{
+		return BulletinPageStore.getInstance();
+	}
+
+	static void prepareForDisplay(BulletinInfo bulletinInfo)
+	{
+		// NOTE: Fields are escaped by #escapeHtml in the templates that 
+		// display them, rather than all fields being escaped here
+		convertLanguageCode(bulletinInfo);
+	}
+	
+	static void convertLanguageCode(BulletinInfo bulletinInfo)
+	{
+		String code = bulletinInfo.get(SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD);
+		if(code == null)
+			return;
+		String languageString = AmplifierLocalization.getLanguageString(code);
+		if(languageString == null)
+			return;				
+		bulletinInfo.set(SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD, languageString);
+	}
+	
+	public static final int PAGE_SIZE = 20;
+	
+	private Map searchFields;
+	private Results results;
+	private int count;
+	private String sortedBy;
+	private boolean sortedDescending;
+}
@@ -31,10 +31,13 @@ import java.util.HashMap;
 
 import org.apache.velocity.context.Context;
 import org.martus.amplifier.common.AdvancedSearchInfo;
+import org.martus.amplifier.common.AmplifierLocalization;
 import org.martus.amplifier.common.SearchResultConstants;
 import org.martus.amplifier.main.EventDatesIndexedList;
 import org.martus.amplifier.main.LanguagesIndexedList;
+import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.amplifier.presentation.AdvancedSearch;
+import org.martus.amplifier.presentation.AdvancedSearchPage;
 import org.martus.util.TestCaseEnhanced;
 
 public class TestAdvancedSearch extends TestCaseEnhanced
@@ -90,6 +93,26 @@ public class TestAdvancedSearch extends TestCaseEnhanced
 		
 	}	
 	
+	public void testPageRebuiltOnlyWhenChoicesChange() throws Exception
+	{
+		MartusAmplifier.localization = new AmplifierLocalization();
+		AdvancedSearchPage page = AdvancedSearchPage.getCurrentPage();
+		assertSame("rebuilt without a change?", page, AdvancedSearchPage.getCurrentPage());
+		
+		LanguagesIndexedList.languagesIndexedSingleton.addValue("fr");
+		AdvancedSearchPage withFrench = AdvancedSearchPage.getCurrentPage();
+		assertNotSame("not rebuilt for a new language?", page, withFrench);
+		assertEquals(page.getLanguageFields().size() + 1, withFrench.getLanguageFields().size());
+		
+		EventDatesIndexedList.getEventDatesIndexedList().addValue("1990-01-01");
+		AdvancedSearchPage withOlderDate = AdvancedSearchPage.getCurrentPage();
+		assertNotSame("not rebuilt for an earlier year?", withFrench, withOlderDate);
+		assertEquals(new Integer(1990), withOlderDate.getYears().get(withOlderDate.getYears().size() - 1));
+		
+		EventDatesIndexedList.getEventDatesIndexedList().addValue("1995-01-01");
+		assertSame("rebuilt for a year already shown?", withOlderDate, AdvancedSearchPage.getCurrentPage());
+	}
+	
 	private AdvancedSearchInfo defaultAdvancedSearchInfo()
 	{
 		HashMap map = new HashMap();
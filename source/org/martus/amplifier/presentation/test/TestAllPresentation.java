@@ -51,6 +51,7 @@ public class TestAllPresentation extends TestSuite
 		TestSuite suite= new TestSuite("All Martus Amplifier Presentation Tests");
 		
 		suite.addTest(new TestSuite(TestAdvancedSearch.class));
+		suite.addTest(new TestSuite(TestBulletinPageStore.class));
 		suite.addTest(new TestSuite(TestContactInfo.class));
 		suite.addTest(new TestSuite(TestDoSearch.class));
 		suite.addTest(new TestSuite(TestDownloadAttachment.class));
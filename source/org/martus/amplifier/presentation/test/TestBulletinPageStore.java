@@ -0,0 +1,161 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.presentation.test;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Vector;
+
+import org.martus.amplifier.presentation.BulletinPageStore;
+import org.martus.amplifier.search.BulletinInfo;
+import org.martus.common.test.UniversalIdForTesting;
+import org.martus.util.TestCaseEnhanced;
+
+
+public class TestBulletinPageStore extends TestCaseEnhanced
+{
+	public TestBulletinPageStore(String name)
+	{
+		super(name);
+	}
+	
+	public void setUp() throws Exception
+	{
+		super.setUp();
+		BulletinPageStore sizer = new BulletinPageStore(Long.MAX_VALUE, Long.MAX_VALUE);
+		sizer.put(this, 0, createPage());
+		pageBytes = sizer.getSizeInBytes();
+	}
+
+	public void testGetAndRemoveAll() throws Exception
+	{
+		BulletinPageStore store = new BulletinPageStore(Long.MAX_VALUE, Long.MAX_VALUE);
+		Object owner = new Object();
+		List page = createPage();
+		assertNull("found before put?", store.get(owner, 0));
+		store.put(owner, 0, page);
+		store.put(owner, 20, createPage());
+		assertSame("not stored?", page, store.get(owner, 0));
+		assertNull("found for other owner?", store.get(new Object(), 0));
+		assertEquals(2 * pageBytes, store.getSizeInBytes(owner));
+		
+		store.removeAll(owner);
+		assertNull("not removed?", store.get(owner, 0));
+		assertEquals(0, store.getSizeInBytes(owner));
+		assertEquals(0, store.getSizeInBytes());
+	}
+	
+	public void testLimitPerList() throws Exception
+	{
+		BulletinPageStore store = new BulletinPageStore(2 * pageBytes, Long.MAX_VALUE);
+		Object owner = new Object();
+		Object otherOwner = new Object();
+		store.put(otherOwner, 0, createPage());
+		store.put(owner, 0, createPage());
+		store.put(owner, 20, createPage());
+		assertNotNull(store.get(owner, 0));
+		
+		store.put(owner, 40, createPage());
+		assertEquals(2 * pageBytes, store.getSizeInBytes(owner));
+		assertNull("didn't drop least recently used?", store.get(owner, 20));
+		assertNotNull("dropped recently used?", store.get(owner, 0));
+		assertNotNull("dropped newest?", store.get(owner, 40));
+		assertNotNull("dropped other list's page?", store.get(otherOwner, 0));
+	}
+	
+	public void testLimitTotal() throws Exception
+	{
+		BulletinPageStore store = new BulletinPageStore(Long.MAX_VALUE, 2 * pageBytes);
+		Object first = new Object();
+		Object second = new Object();
+		Object third = new Object();
+		store.put(first, 0, createPage());
+		store.put(second, 0, createPage());
+		store.put(third, 0, createPage());
+		
+		assertEquals(2 * pageBytes, store.getSizeInBytes());
+		assertEquals(2, store.getPageCount());
+		assertNull("didn't drop oldest session's page?", store.get(first, 0));
+		assertEquals(0, store.getSizeInBytes(first));
+	}
+	
+	public void testResultsAreCharged() throws Exception
+	{
+		BulletinPageStore store = new BulletinPageStore(2 * pageBytes, Long.MAX_VALUE);
+		Object owner = new Object();
+		store.put(owner, 0, createPage());
+		store.put(owner, 20, createPage());
+		
+		store.setResultsBytes(owner, pageBytes);
+		assertEquals(2 * pageBytes, store.getSizeInBytes(owner));
+		assertNull("didn't make room for the results?", store.get(owner, 0));
+		assertNotNull("dropped too much?", store.get(owner, 20));
+		
+		store.removeAll(owner);
+		assertEquals("results not still charged?", pageBytes, store.getSizeInBytes(owner));
+		assertEquals(pageBytes, store.getSizeInBytes());
+		
+		store.setResultsBytes(owner, 0);
+		assertEquals(0, store.getSizeInBytes());
+	}
+	
+	public void testCollectedOwnerIsDropped() throws Exception
+	{
+		BulletinPageStore store = new BulletinPageStore(Long.MAX_VALUE, Long.MAX_VALUE);
+		Object keptOwner = new Object();
+		store.put(keptOwner, 0, createPage());
+		Object owner = new Object();
+		store.put(owner, 0, createPage());
+		store.setResultsBytes(owner, pageBytes);
+		WeakReference collected = new WeakReference(owner);
+		owner = null;
+		
+		// NOTE: The collector can't be forced, so this waits a while 
+		// for it, and only checks the store once the owner is gone
+		for(int tries = 0; tries < MAX_COLLECTION_TRIES && store.getPageCount() > 1; ++tries)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("owner kept alive by the store?", collected.get());
+		assertEquals("collected owner's page kept?", 1, store.getPageCount());
+		assertEquals(pageBytes, store.getSizeInBytes());
+		assertNotNull("other owner's page dropped?", store.get(keptOwner, 0));
+	}
+	
+	private List createPage()
+	{
+		BulletinInfo info = new BulletinInfo(UniversalIdForTesting.createDummyUniversalId());
+		info.set("title", "A title for the page store");
+		Vector page = new Vector();
+		page.add(info);
+		return page;
+	}
+	
+	private static final int MAX_COLLECTION_TRIES = 500;
+	
+	private long pageBytes;
+}
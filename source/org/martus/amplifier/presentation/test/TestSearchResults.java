@@ -145,6 +145,34 @@ public class TestSearchResults extends TestCaseEnhanced
 		assertEquals("SearchTag not the same?", mySearchByTag, context.get("currentlySortingBy"));		
 	}
 	
+	public void testSearchResultsContextShowsOnePage() throws Exception
+	{
+		MockAmplifierRequest request = new MockAmplifierRequest();
+		Context context = new MockContext();
+		int pageSize = AbstractSearchResultsServlet.BULLETINS_PER_PAGE;
+		List fakeBulletins = new ArrayList();
+		for(int i = 0; i < pageSize + 5; ++i)
+			fakeBulletins.add("bulletin " + i);
+
+		SearchResults.setSearchResultsContext(fakeBulletins, request, context);
+		assertEquals("not first page by default?", 1, ((Integer)context.get("currentPage")).intValue());
+		assertEquals("wrong page count?", 2, ((Integer)context.get("pageCount")).intValue());
+		assertEquals("not one page of bulletins?", pageSize, ((List)context.get("foundBulletins")).size());
+		assertEquals("wrong total?", fakeBulletins.size(), ((Integer)context.get("totalBulletins")).intValue());
+
+		request.putParameter("page", "2");
+		SearchResults.setSearchResultsContext(fakeBulletins, request, context);
+		assertEquals("not second page?", 2, ((Integer)context.get("currentPage")).intValue());
+		assertEquals("wrong offset?", pageSize, ((Integer)context.get("pageOffset")).intValue());
+		List secondPage = (List)context.get("foundBulletins");
+		assertEquals("wrong size of last page?", 5, secondPage.size());
+		assertEquals("wrong first bulletin on page?", fakeBulletins.get(pageSize), secondPage.get(0));
+
+		request.putParameter("page", "99");
+		SearchResults.setSearchResultsContext(fakeBulletins, request, context);
+		assertEquals("past the last page?", 2, ((Integer)context.get("currentPage")).intValue());
+	}
+	
 	public void testPopulateSimpleSearch() throws Exception
 	{
 		MockAmplifierRequest request = new MockAmplifierRequest();
@@ -25,6 +25,8 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.search;
 
+import java.util.HashSet;
+
 import org.martus.amplifier.main.MartusAmplifier;
 import org.martus.common.packet.UniversalId;
 
@@ -46,8 +48,62 @@ public class BulletinCatalog
 		return instance;
 	}
    
+	/**
+	 * Loads the ids of every indexed bulletin into memory, so 
+	 * bulletinHasBeenIndexed does not need to search the index.
+	 * Should be called at the start of each sync.
+	 */
+	public void loadIndexedBulletinIds() throws Exception
+	{
+		BulletinSearcher searcher = MartusAmplifier.openBulletinSearcher();
+		try
+		{
+			indexedBulletinIds = searcher.getIndexedBulletinIds();
+		}
+		finally
+		{
+			searcher.close();
+		}
+		synchronized(claimedBulletinIds)
+		{
+			claimedBulletinIds.clear();
+		}
+	}
+	
+	/**
+	 * Returns true if the bulletin has not been indexed and no other 
+	 * backup server's sync has already claimed it, so that a bulletin 
+	 * offered by several servers is only received once per sync. 
+	 * A claim lasts until the next loadIndexedBulletinIds, unless the 
+	 * bulletin could not be received and the claim is released.
+	 */
+	public boolean claimBulletin(UniversalId universalId) throws Exception
+	{
+		synchronized(claimedBulletinIds)
+		{
+			if(claimedBulletinIds.contains(universalId))
+				return false;
+			if(bulletinHasBeenIndexed(universalId))
+				return false;
+			claimedBulletinIds.add(universalId);
+			return true;
+		}
+	}
+	
+	public void releaseBulletin(UniversalId universalId)
+	{
+		synchronized(claimedBulletinIds)
+		{
+			claimedBulletinIds.remove(universalId);
+		}
+	}
+	
 	public boolean bulletinHasBeenIndexed(UniversalId universalId) throws Exception
 	{
+		IndexedBulletinIdSet ids = indexedBulletinIds;
+		if(ids != null)
+			return ids.contains(universalId);
+		
 		BulletinSearcher searcher = MartusAmplifier.openBulletinSearcher();
 		try
 		{
@@ -59,6 +115,28 @@ public class BulletinCatalog
 		}
 	}
 	
+	/**
+	 * Forgets the loaded ids and every claim, so bulletinHasBeenIndexed 
+	 * searches the index again until the next loadIndexedBulletinIds. 
+	 * Tests that load the catalog call this when they are done, so 
+	 * later tests don't see their ids.
+	 */
+	public void clear()
+	{
+		indexedBulletinIds = null;
+		synchronized(claimedBulletinIds)
+		{
+			claimedBulletinIds.clear();
+		}
+	}
+	
+	public void bulletinWasIndexed(UniversalId universalId)
+	{
+		IndexedBulletinIdSet ids = indexedBulletinIds;
+		if(ids != null)
+			ids.add(universalId);
+	}
+	
 	public static class DuplicateBulletinException extends BulletinIndexException
 	{
 		public DuplicateBulletinException(String message)
@@ -69,5 +147,8 @@ public class BulletinCatalog
 	}
 	
 	private static BulletinCatalog instance = new BulletinCatalog();
+	
+	private IndexedBulletinIdSet indexedBulletinIds;
+	private HashSet claimedBulletinIds = new HashSet();
 
 }
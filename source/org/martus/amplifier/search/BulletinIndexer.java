@@ -25,6 +25,8 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.search;
 
+import java.util.Map;
+
 import org.martus.common.packet.BulletinHistory;
 import org.martus.common.packet.FieldDataPacket;
 import org.martus.common.packet.UniversalId;
@@ -33,6 +35,12 @@ public interface BulletinIndexer extends SearchConstants
 {
 	void indexFieldData(UniversalId bulletinId, FieldDataPacket fdp, BulletinHistory history) 
 		throws BulletinIndexException;
+	
+	// NOTE: attachmentSizes maps each attachment's local id to its 
+	// stored size in bytes (as a Long), so results never need to ask 
+	// the DataManager
+	void indexFieldData(UniversalId bulletinId, FieldDataPacket fdp, BulletinHistory history, Map attachmentSizes) 
+		throws BulletinIndexException;
 		
 	void clearIndex() throws BulletinIndexException;
 		
@@ -0,0 +1,131 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.search;
+
+// NOTE: Holds the words of an advanced or simple search after they 
+// have been cleaned and split, so the search engine can build its 
+// query directly instead of formatting and reparsing a query string. 
+// Instances are never modified after they are built, so one can be 
+// shared by any number of searches
+public class BulletinQuery
+{
+	public BulletinQuery(String fieldToUse, String[] anyWordsToUse, 
+			String[] allWordsToUse, String exactPhraseToUse, String languageToUse)
+	{
+		field = fieldToUse;
+		anyWords = anyWordsToUse;
+		allWords = allWordsToUse;
+		exactPhrase = exactPhraseToUse;
+		language = languageToUse;
+	}
+	
+	public String getField()
+	{
+		return field;
+	}
+	
+	public int getAnyWordCount()
+	{
+		return anyWords.length;
+	}
+	
+	public String getAnyWord(int index)
+	{
+		return anyWords[index];
+	}
+	
+	public int getAllWordCount()
+	{
+		return allWords.length;
+	}
+	
+	public String getAllWord(int index)
+	{
+		return allWords[index];
+	}
+	
+	public String getExactPhrase()
+	{
+		return exactPhrase;
+	}
+	
+	public String getLanguage()
+	{
+		return language;
+	}
+	
+	// NOTE: Used as part of the search result cache key, so two 
+	// queries that search for the same thing must have the same string
+	public String toString()
+	{
+		StringBuffer result = new StringBuffer();
+		result.append("field=").append(field);
+		appendWords(result, " any=", anyWords);
+		appendWords(result, " all=", allWords);
+		result.append(" phrase=");
+		appendQuoted(result, exactPhrase);
+		result.append(" language=");
+		appendQuoted(result, language);
+		return result.toString();
+	}
+	
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof BulletinQuery))
+			return false;
+		return toString().equals(other.toString());
+	}
+	
+	public int hashCode()
+	{
+		return toString().hashCode();
+	}
+	
+	private static void appendWords(StringBuffer result, String label, String[] words)
+	{
+		result.append(label).append("[");
+		for(int i = 0; i < words.length; ++i)
+			appendQuoted(result, words[i]);
+		result.append("]");
+	}
+	
+	private static void appendQuoted(StringBuffer result, String text)
+	{
+		if(text == null)
+		{
+			result.append("null");
+			return;
+		}
+		result.append("\"").append(text).append("\"");
+	}
+	
+	private final String field;
+	private final String[] anyWords;
+	private final String[] allWords;
+	private final String exactPhrase;
+	private final String language;
+}
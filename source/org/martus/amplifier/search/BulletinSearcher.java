@@ -36,4 +36,6 @@ public interface BulletinSearcher extends SearchConstants
 	Results search(Map fields) throws Exception; 				
 		
 	BulletinInfo lookup(UniversalId bulletinId) throws Exception;	
+	
+	IndexedBulletinIdSet getIndexedBulletinIds() throws Exception;
 }
\ No newline at end of file
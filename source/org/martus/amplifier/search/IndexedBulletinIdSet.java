@@ -0,0 +1,73 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.search;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.martus.common.packet.UniversalId;
+
+/**
+ * An in-memory set of the bulletin ids that are in the index.
+ * 
+ * Local ids are grouped by account, so each (long) account id 
+ * is only held once no matter how many bulletins it has.
+ */
+public class IndexedBulletinIdSet
+{
+	public IndexedBulletinIdSet()
+	{
+		localIdsByAccount = new HashMap();
+	}
+	
+	public synchronized void add(UniversalId bulletinId)
+	{
+		HashSet localIds = (HashSet)localIdsByAccount.get(bulletinId.getAccountId());
+		if(localIds == null)
+		{
+			localIds = new HashSet();
+			localIdsByAccount.put(bulletinId.getAccountId(), localIds);
+		}
+		if(localIds.add(bulletinId.getLocalId()))
+			++count;
+	}
+	
+	public synchronized boolean contains(UniversalId bulletinId)
+	{
+		HashSet localIds = (HashSet)localIdsByAccount.get(bulletinId.getAccountId());
+		if(localIds == null)
+			return false;
+		return localIds.contains(bulletinId.getLocalId());
+	}
+	
+	public synchronized int size()
+	{
+		return count;
+	}
+	
+	private HashMap localIdsByAccount;
+	private int count;
+}
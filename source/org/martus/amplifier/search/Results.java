@@ -25,8 +25,13 @@ Boston, MA 02111-1307, USA.
 */
 package org.martus.amplifier.search;
 
+import java.util.List;
+
 public interface Results
 {
 	int getCount() throws BulletinIndexException;
 	BulletinInfo getBulletinInfo(int n) throws BulletinIndexException;
+	List getBulletinInfos(int first, int count) throws BulletinIndexException;
+	void sortBy(String fieldTag, boolean descending) throws BulletinIndexException;
+	long getSizeInBytes();
 }
@@ -51,7 +51,7 @@ public class TestAllSearch extends TestSuite
 		TestSuite suite =
 			new TestSuite("All Martus Amplifier Search Tests");
 
-		// NONE YET!		
+		suite.addTest(new TestSuite(TestIndexedBulletinIdSet.class));
 		
 		return suite;
 	}
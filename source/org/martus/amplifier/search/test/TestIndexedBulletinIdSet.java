@@ -0,0 +1,61 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.search.test;
+
+import org.martus.amplifier.search.IndexedBulletinIdSet;
+import org.martus.common.packet.UniversalId;
+import org.martus.util.TestCaseEnhanced;
+
+public class TestIndexedBulletinIdSet extends TestCaseEnhanced
+{
+	public TestIndexedBulletinIdSet(String name)
+	{
+		super(name);
+	}
+	
+	public void testBasics() throws Exception
+	{
+		IndexedBulletinIdSet ids = new IndexedBulletinIdSet();
+		UniversalId first = UniversalId.createFromAccountAndLocalId("account1", "B-1");
+		UniversalId sameAccount = UniversalId.createFromAccountAndLocalId("account1", "B-2");
+		UniversalId otherAccount = UniversalId.createFromAccountAndLocalId("account2", "B-1");
+		assertEquals("not empty?", 0, ids.size());
+		assertFalse("found in empty set?", ids.contains(first));
+		
+		ids.add(first);
+		assertTrue("didn't find added id?", ids.contains(first));
+		assertTrue("didn't find equal id?", ids.contains(UniversalId.createFromAccountAndLocalId("account1", "B-1")));
+		assertFalse("found other local id?", ids.contains(sameAccount));
+		assertFalse("found other account?", ids.contains(otherAccount));
+		
+		ids.add(sameAccount);
+		ids.add(otherAccount);
+		ids.add(first);
+		assertEquals("duplicate counted?", 3, ids.size());
+		assertTrue(ids.contains(sameAccount));
+		assertTrue(ids.contains(otherAccount));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reports how many bytes the current thread has allocated, when the 
+ * JVM can tell us. It uses the HotSpot ThreadMXBean by reflection, so 
+ * on other JVMs isAvailable is false and nothing is reported.
+ */
+public class AllocationCounter
+{
+	public AllocationCounter()
+	{
+		try
+		{
+			Class factoryClass = Class.forName("java.lang.management.ManagementFactory");
+			Object bean = factoryClass.getMethod("getThreadMXBean", new Class[0]).invoke(null, new Object[0]);
+			Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+			if(!beanClass.isInstance(bean))
+				return;
+			
+			Method getAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", new Class[] {Long.TYPE});
+			Method getThreadId = Thread.class.getMethod("getId", new Class[0]);
+			threadBean = bean;
+			getThreadAllocatedBytes = getAllocatedBytes;
+			getCurrentThreadId = getThreadId;
+		}
+		catch (Exception e)
+		{
+		}
+	}
+	
+	public boolean isAvailable()
+	{
+		return (threadBean != null);
+	}
+	
+	// NOTE: Returns -1 if the allocated bytes are not available
+	public long getAllocatedBytes()
+	{
+		if(!isAvailable())
+			return -1;
+		
+		try
+		{
+			Object threadId = getCurrentThreadId.invoke(Thread.currentThread(), new Object[0]);
+			Object bytes = getThreadAllocatedBytes.invoke(threadBean, new Object[] {threadId});
+			return ((Long)bytes).longValue();
+		}
+		catch (Exception e)
+		{
+			return -1;
+		}
+	}
+	
+	private Object threadBean;
+	private Method getThreadAllocatedBytes;
+	private Method getCurrentThreadId;
+}
@@ -0,0 +1,56 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+/**
+ * One operation to be timed by BenchmarkRunner. setUp is called once 
+ * before the warmup, and runOperation is then called many times.
+ */
+public abstract class Benchmark
+{
+	public Benchmark(String nameToUse)
+	{
+		name = nameToUse;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	public void setUp() throws Exception
+	{
+	}
+	
+	public void tearDown() throws Exception
+	{
+	}
+	
+	public abstract void runOperation() throws Exception;
+	
+	private String name;
+}
@@ -0,0 +1,70 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.lang.reflect.Method;
+
+public class BenchmarkClock
+{
+	// NOTE: System.nanoTime is looked up by reflection so the benchmarks 
+	// compile for the same JVM version as the rest of the amplifier. 
+	// Without it, times are only accurate to a millisecond
+	public static long nowInNanos()
+	{
+		if(NANO_TIME != null)
+		{
+			try
+			{
+				return ((Long)NANO_TIME.invoke(null, new Object[0])).longValue();
+			}
+			catch (Exception e)
+			{
+			}
+		}
+		return System.currentTimeMillis() * NANOS_PER_MILLI;
+	}
+	
+	public static boolean hasNanoTime()
+	{
+		return (NANO_TIME != null);
+	}
+	
+	private static Method findNanoTime()
+	{
+		try
+		{
+			return System.class.getMethod("nanoTime", new Class[0]);
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+	
+	public static final long NANOS_PER_MILLI = 1000000L;
+	private static final Method NANO_TIME = findNanoTime();
+}
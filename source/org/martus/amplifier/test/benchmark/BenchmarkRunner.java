@@ -0,0 +1,155 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Runs benchmarks in this JVM and prints their throughput, latency 
+ * percentiles and allocation rate. Each benchmark is warmed up first 
+ * so the JIT has compiled the code being measured, then timed over 
+ * several batches of operations.
+ */
+public class BenchmarkRunner
+{
+	public BenchmarkRunner(PrintStream outToUse, long warmupMillisToUse, int batchCountToUse, long batchMillisToUse)
+	{
+		out = outToUse;
+		warmupMillis = warmupMillisToUse;
+		batchCount = batchCountToUse;
+		batchMillis = batchMillisToUse;
+		allocationCounter = new AllocationCounter();
+	}
+	
+	public void run(Benchmark benchmark) throws Exception
+	{
+		benchmark.setUp();
+		try
+		{
+			int operationsPerBatch = warmUp(benchmark);
+			long totalOperations = (long)operationsPerBatch * batchCount;
+			int sampleEvery = (int)Math.max(1, totalOperations / MAX_LATENCY_SAMPLES);
+			long[] latencies = new long[(int)(totalOperations / sampleEvery) + 1];
+			int latencyCount = 0;
+			long operationNumber = 0;
+			
+			double bestOperationsPerSecond = 0;
+			long totalNanos = 0;
+			long totalAllocatedBytes = 0;
+			for(int batch = 0; batch < batchCount; ++batch)
+			{
+				long allocatedBefore = allocationCounter.getAllocatedBytes();
+				long started = BenchmarkClock.nowInNanos();
+				for(int i = 0; i < operationsPerBatch; ++i)
+				{
+					if(operationNumber++ % sampleEvery != 0)
+					{
+						benchmark.runOperation();
+						continue;
+					}
+					long operationStarted = BenchmarkClock.nowInNanos();
+					benchmark.runOperation();
+					latencies[latencyCount++] = BenchmarkClock.nowInNanos() - operationStarted;
+				}
+				long elapsed = Math.max(1, BenchmarkClock.nowInNanos() - started);
+				long allocatedAfter = allocationCounter.getAllocatedBytes();
+				
+				totalNanos += elapsed;
+				totalAllocatedBytes += allocatedAfter - allocatedBefore;
+				double operationsPerSecond = operationsPerBatch * NANOS_PER_SECOND / elapsed;
+				bestOperationsPerSecond = Math.max(bestOperationsPerSecond, operationsPerSecond);
+			}
+			
+			double averageOperationsPerSecond = totalOperations * NANOS_PER_SECOND / totalNanos;
+			out.println(benchmark.getName() + ": " + 
+					format(averageOperationsPerSecond) + " ops/s average, " + 
+					format(bestOperationsPerSecond) + " ops/s best");
+			
+			Arrays.sort(latencies, 0, latencyCount);
+			out.println("    latency us: p50 " + formatMicros(getPercentile(latencies, latencyCount, 50)) + 
+					", p90 " + formatMicros(getPercentile(latencies, latencyCount, 90)) + 
+					", p99 " + formatMicros(getPercentile(latencies, latencyCount, 99)) + 
+					", max " + formatMicros(latencies[latencyCount - 1]) + 
+					(BenchmarkClock.hasNanoTime() ? "" : " (millisecond clock)"));
+			
+			if(allocationCounter.isAvailable())
+			{
+				double megabytesPerSecond = totalAllocatedBytes * NANOS_PER_SECOND / totalNanos / BYTES_PER_MEGABYTE;
+				out.println("    allocation: " + format(megabytesPerSecond) + " MB/s, " + 
+						format((double)totalAllocatedBytes / totalOperations) + " bytes/op");
+			}
+		}
+		finally
+		{
+			benchmark.tearDown();
+		}
+	}
+	
+	// NOTE: Returns how many operations fit in one batch, so slow 
+	// operations still get several batches and fast ones are not timed 
+	// one at a time
+	private int warmUp(Benchmark benchmark) throws Exception
+	{
+		long started = System.currentTimeMillis();
+		long count = 0;
+		while(System.currentTimeMillis() - started < warmupMillis)
+		{
+			benchmark.runOperation();
+			++count;
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - started);
+		return (int)Math.max(1, count * batchMillis / elapsed);
+	}
+	
+	static long getPercentile(long[] sortedValues, int count, int percent)
+	{
+		int index = (int)Math.ceil(count * percent / 100.0) - 1;
+		return sortedValues[Math.max(0, Math.min(count - 1, index))];
+	}
+	
+	static String format(double value)
+	{
+		return new DecimalFormat("0.0").format(value);
+	}
+	
+	static String formatMicros(long nanos)
+	{
+		return format(nanos / 1000.0);
+	}
+	
+	private static final int MAX_LATENCY_SAMPLES = 100000;
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+	private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+	
+	private PrintStream out;
+	private long warmupMillis;
+	private int batchCount;
+	private long batchMillis;
+	private AllocationCounter allocationCounter;
+}
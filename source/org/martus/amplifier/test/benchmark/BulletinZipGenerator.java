@@ -0,0 +1,157 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Vector;
+
+import org.martus.amplifier.search.BulletinField;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.bulletin.Bulletin;
+import org.martus.common.bulletin.BulletinForTesting;
+import org.martus.common.crypto.MartusCrypto;
+import org.martus.common.packet.BulletinHistory;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.test.MockBulletinStore;
+import org.martus.util.TestCaseEnhanced;
+
+/**
+ * Writes the bulletins of a SyntheticCorpus as signed bulletin zip 
+ * files, the way a Martus server sends them to the amplifier. Each 
+ * version is its own zip file, with the local ids of the earlier 
+ * versions in its history, and is signed by the given MartusCrypto.
+ */
+// NOTE: Extends TestCaseEnhanced only because MockBulletinStore needs a 
+// test case. It is not a test and is never run as one
+public class BulletinZipGenerator extends TestCaseEnhanced
+{
+	public BulletinZipGenerator(SyntheticCorpus corpusToUse, MartusCrypto securityToUse, File directoryToUse) throws Exception
+	{
+		super("BulletinZipGenerator");
+		corpus = corpusToUse;
+		security = securityToUse;
+		directory = directoryToUse;
+		directory.mkdirs();
+		store = new MockBulletinStore(this);
+	}
+	
+	// NOTE: Returns the zip files in the order they should be received, 
+	// with every version after the ones it replaces
+	public List generateAll(PrintStream progress) throws Exception
+	{
+		List zipFiles = new Vector();
+		long lastReport = System.currentTimeMillis();
+		for(int bulletin = 0; bulletin < corpus.getBulletinCount(); ++bulletin)
+		{
+			List earlierLocalIds = new Vector();
+			int versionCount = corpus.getVersionCount(bulletin);
+			for(int version = 0; version < versionCount; ++version)
+			{
+				zipFiles.add(generateVersion(bulletin, version, earlierLocalIds));
+			}
+			
+			long now = System.currentTimeMillis();
+			if(now - lastReport >= PROGRESS_REPORT_MILLIS)
+			{
+				progress.println("Generated " + (bulletin + 1) + " of " + corpus.getBulletinCount() + " bulletins");
+				lastReport = now;
+			}
+		}
+		return zipFiles;
+	}
+	
+	// NOTE: Adds the new version's local id to earlierLocalIds, for the 
+	// history of the versions after it
+	private File generateVersion(int bulletin, int version, List earlierLocalIds) throws Exception
+	{
+		Bulletin b = new Bulletin(security);
+		FieldDataPacket fields = corpus.getFieldDataPacket(bulletin, version);
+		String[] tags = BulletinField.getSearchableXmlIds();
+		for(int i = 0; i < tags.length; ++i)
+			b.set(tags[i], fields.get(tags[i]));
+		
+		BulletinHistory history = new BulletinHistory();
+		for(int i = 0; i < earlierLocalIds.size(); ++i)
+			history.add((String)earlierLocalIds.get(i));
+		b.getBulletinHeaderPacket().setHistory(history);
+		
+		int attachmentCount = corpus.getAttachmentCount(bulletin, version);
+		File[] attachments = new File[attachmentCount];
+		try
+		{
+			for(int i = 0; i < attachmentCount; ++i)
+			{
+				attachments[i] = writeAttachment(corpus.getAttachmentData(bulletin, version, i));
+				b.addPublicAttachment(new AttachmentProxy(attachments[i]));
+			}
+			b.setAllPrivate(false);
+			b.getFieldDataPacket().setEncrypted(false);
+			b.setSealed();
+			
+			store.saveBulletinForTesting(b);
+			File zipFile = new File(directory, "bulletin-" + bulletin + "-" + version + ".zip");
+			BulletinForTesting.saveToFile(store.getDatabase(), b, zipFile, security);
+			earlierLocalIds.add(b.getLocalId());
+			return zipFile;
+		}
+		finally
+		{
+			for(int i = 0; i < attachments.length; ++i)
+			{
+				if(attachments[i] != null)
+					attachments[i].delete();
+			}
+		}
+	}
+	
+	private File writeAttachment(byte[] data) throws IOException
+	{
+		File attachment = File.createTempFile("$$$BulletinZipGenerator", null, directory);
+		OutputStream out = new FileOutputStream(attachment);
+		try
+		{
+			out.write(data);
+		}
+		finally
+		{
+			out.close();
+		}
+		return attachment;
+	}
+	
+	private static final long PROGRESS_REPORT_MILLIS = 10000;
+	
+	private SyntheticCorpus corpus;
+	private MartusCrypto security;
+	private File directory;
+	private MockBulletinStore store;
+}
@@ -0,0 +1,357 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.main.BulletinHtmlCache;
+import org.martus.amplifier.main.EventDatesIndexedList;
+import org.martus.amplifier.main.LanguagesIndexedList;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.crypto.MartusCrypto;
+import org.martus.common.crypto.MartusSecurity;
+import org.martus.common.crypto.MockMartusSecurity;
+import org.martus.common.packet.BulletinHeaderPacket;
+import org.martus.util.DirectoryUtils;
+
+/**
+ * Measures how fast the amplifier receives bulletins. The bulletins of 
+ * a SyntheticCorpus are written as signed zip files by 
+ * BulletinZipGenerator, then each one is passed once to 
+ * extractAndStoreBulletin, storing into a new FileSystemDataManager 
+ * and LuceneBulletinIndexer in a temporary directory. The time is 
+ * reported for the whole bulletin and for each step of receiving it, 
+ * as timed by TimedBulletinExtractor.
+ * 
+ * Afterwards, the steps that only read the zip file (header 
+ * verification, field data parsing and attachment decoding) are run 
+ * over and over on one bulletin by BenchmarkRunner, which gives steadier 
+ * numbers for them than a single pass does.
+ * 
+ * The zip files are signed with a real MartusSecurity key pair, unless 
+ * --mock-security is given.
+ * 
+ * usage: IngestBenchmark [--bulletins=<n>] [--versions=<n>] [--attachments=<n>] 
+ *     [--attachment-kb=<n>] [--details-words=<n>] [--seed=<n>] 
+ *     [--warmup-bulletins=<n>] [--mock-security] [--warmup-seconds=<n>] 
+ *     [--batches=<n>]
+ */
+public class IngestBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int bulletinCount = 1000;
+		int maxVersions = 2;
+		int maxAttachments = 2;
+		int maxAttachmentKb = 64;
+		int detailsWordCount = 200;
+		long seed = 1;
+		int warmupBulletinCount = 100;
+		boolean useMockSecurity = false;
+		int warmupSeconds = 2;
+		int batchCount = 5;
+		for(int i = 0; i < args.length; ++i)
+		{
+			String value = args[i].substring(args[i].indexOf("=") + 1);
+			if(args[i].startsWith("--bulletins="))
+				bulletinCount = Integer.parseInt(value);
+			else if(args[i].startsWith("--versions="))
+				maxVersions = Integer.parseInt(value);
+			else if(args[i].startsWith("--attachments="))
+				maxAttachments = Integer.parseInt(value);
+			else if(args[i].startsWith("--attachment-kb="))
+				maxAttachmentKb = Integer.parseInt(value);
+			else if(args[i].startsWith("--details-words="))
+				detailsWordCount = Integer.parseInt(value);
+			else if(args[i].startsWith("--seed="))
+				seed = Long.parseLong(value);
+			else if(args[i].startsWith("--warmup-bulletins="))
+				warmupBulletinCount = Integer.parseInt(value);
+			else if(args[i].equals("--mock-security"))
+				useMockSecurity = true;
+			else if(args[i].startsWith("--warmup-seconds="))
+				warmupSeconds = Integer.parseInt(value);
+			else if(args[i].startsWith("--batches="))
+				batchCount = Integer.parseInt(value);
+			else
+				exitWithUsage("Unknown argument: " + args[i]);
+		}
+		if(bulletinCount < 1)
+			exitWithUsage("At least one bulletin must be measured");
+		
+		MartusCrypto security = useMockSecurity ? new MockMartusSecurity() : new MartusSecurity();
+		security.createKeyPair();
+		
+		SyntheticCorpus corpus = new SyntheticCorpus(seed, warmupBulletinCount + bulletinCount, maxVersions, maxAttachments, maxAttachmentKb, detailsWordCount);
+		File workDir = SearchBenchmark.createTempDirectory("$$$IngestBenchmark");
+		try
+		{
+			IngestBenchmark benchmark = new IngestBenchmark(corpus, security, workDir, System.out);
+			benchmark.generateZipFiles();
+			benchmark.ingestAll(warmupBulletinCount);
+			BenchmarkRunner runner = new BenchmarkRunner(System.out, warmupSeconds * 1000L, batchCount, 1000);
+			benchmark.runPhaseBenchmarks(runner);
+		}
+		finally
+		{
+			DirectoryUtils.deleteEntireDirectoryTree(workDir);
+		}
+	}
+	
+	IngestBenchmark(SyntheticCorpus corpusToUse, MartusCrypto securityToUse, File workDirToUse, PrintStream outToUse)
+	{
+		corpus = corpusToUse;
+		security = securityToUse;
+		workDir = workDirToUse;
+		out = outToUse;
+	}
+	
+	void generateZipFiles() throws Exception
+	{
+		out.println("Generating zip files for " + corpus + 
+				(security instanceof MockMartusSecurity ? " with mock security" : ""));
+		long started = System.currentTimeMillis();
+		BulletinZipGenerator generator = new BulletinZipGenerator(corpus, security, new File(workDir, ZIP_DIRECTORY));
+		zipFiles = generator.generateAll(out);
+		out.println("Generated " + zipFiles.size() + " zip files, " + 
+				BenchmarkRunner.format(getTotalBytes(0) / BYTES_PER_MEGABYTE) + " MB, in " + 
+				(System.currentTimeMillis() - started) + " ms");
+	}
+	
+	// NOTE: The zip files for the first warmupBulletinCount bulletins are 
+	// received before anything is measured, so the JIT compiler and the 
+	// index have warmed up
+	void ingestAll(int warmupBulletinCount) throws Exception
+	{
+		File amplifierDir = new File(workDir, AMPLIFIER_DIRECTORY);
+		amplifierDir.mkdirs();
+		MartusAmplifier.localization = new AmplifierLocalization();
+		MartusAmplifier.setStaticSecurity(security);
+		FileSystemDataManager dataManager = new FileSystemDataManager(amplifierDir.getPath(), security);
+		MartusAmplifier.dataManager = dataManager;
+		LanguagesIndexedList.initialize(new File(amplifierDir, "languagesIndexed.txt"));
+		EventDatesIndexedList.initialize(new File(amplifierDir, "eventDatesIndexed.txt"));
+		BulletinHtmlCache.initialize(new File(amplifierDir, "htmlCache"));
+		
+		int warmupZipCount = 0;
+		for(int bulletin = 0; bulletin < warmupBulletinCount; ++bulletin)
+			warmupZipCount += corpus.getVersionCount(bulletin);
+		
+		LuceneBulletinIndexer indexer = new LuceneBulletinIndexer(amplifierDir.getPath());
+		try
+		{
+			indexer.clearIndex();
+			extractor = new TimedBulletinExtractor(dataManager, indexer, security);
+			for(int i = 0; i < warmupZipCount; ++i)
+				extractor.extractAndStoreBulletin((File)zipFiles.get(i));
+			extractor.resetPhases();
+			
+			AllocationCounter allocationCounter = new AllocationCounter();
+			int measuredCount = zipFiles.size() - warmupZipCount;
+			long[] latencies = new long[measuredCount];
+			long allocatedBefore = allocationCounter.getAllocatedBytes();
+			long started = BenchmarkClock.nowInNanos();
+			for(int i = 0; i < measuredCount; ++i)
+			{
+				long bulletinStarted = BenchmarkClock.nowInNanos();
+				extractor.extractAndStoreBulletin((File)zipFiles.get(warmupZipCount + i));
+				latencies[i] = BenchmarkClock.nowInNanos() - bulletinStarted;
+			}
+			long totalNanos = Math.max(1, BenchmarkClock.nowInNanos() - started);
+			long allocatedBytes = allocationCounter.getAllocatedBytes() - allocatedBefore;
+			
+			double seconds = totalNanos / NANOS_PER_SECOND;
+			out.println("extractAndStoreBulletin, " + measuredCount + " zip files: " + 
+					BenchmarkRunner.format(measuredCount / seconds) + " bulletins/s, " + 
+					BenchmarkRunner.format(getTotalBytes(warmupZipCount) / BYTES_PER_MEGABYTE / seconds) + " MB/s");
+			
+			Arrays.sort(latencies);
+			out.println("    latency us: p50 " + BenchmarkRunner.formatMicros(BenchmarkRunner.getPercentile(latencies, measuredCount, 50)) + 
+					", p90 " + BenchmarkRunner.formatMicros(BenchmarkRunner.getPercentile(latencies, measuredCount, 90)) + 
+					", p99 " + BenchmarkRunner.formatMicros(BenchmarkRunner.getPercentile(latencies, measuredCount, 99)) + 
+					", max " + BenchmarkRunner.formatMicros(latencies[measuredCount - 1]) + 
+					(BenchmarkClock.hasNanoTime() ? "" : " (millisecond clock)"));
+			
+			long timedNanos = 0;
+			for(int phase = 0; phase < TimedBulletinExtractor.PHASE_NAMES.length; ++phase)
+			{
+				long phaseNanos = extractor.getPhaseNanos(phase);
+				printPhase(TimedBulletinExtractor.PHASE_NAMES[phase], phaseNanos, measuredCount, totalNanos);
+				timedNanos += phaseNanos;
+			}
+			printPhase("other", totalNanos - timedNanos, measuredCount, totalNanos);
+			
+			if(allocationCounter.isAvailable())
+			{
+				out.println("    allocation: " + BenchmarkRunner.format(allocatedBytes / BYTES_PER_MEGABYTE / seconds) + " MB/s, " + 
+						BenchmarkRunner.format((double)allocatedBytes / measuredCount) + " bytes/bulletin");
+			}
+		}
+		finally
+		{
+			long closing = System.currentTimeMillis();
+			indexer.close();
+			out.println("Closed the index in " + (System.currentTimeMillis() - closing) + " ms");
+		}
+	}
+	
+	void runPhaseBenchmarks(BenchmarkRunner runner) throws Exception
+	{
+		ZipFile zip = openZipFileWithAttachments();
+		try
+		{
+			runner.run(new HeaderVerificationBenchmark(zip));
+			runner.run(new FieldDataParsingBenchmark(zip));
+			AttachmentProxy[] attachments = getAttachments(zip);
+			if(attachments.length > 0)
+				runner.run(new AttachmentDecodeBenchmark(zip, attachments));
+		}
+		finally
+		{
+			zip.close();
+		}
+	}
+	
+	// NOTE: Falls back to the last zip file if none have attachments
+	private ZipFile openZipFileWithAttachments() throws Exception
+	{
+		for(int i = 0; i < zipFiles.size(); ++i)
+		{
+			ZipFile zip = new ZipFile((File)zipFiles.get(i));
+			if(i == zipFiles.size() - 1 || getAttachments(zip).length > 0)
+				return zip;
+			zip.close();
+		}
+		return null;
+	}
+	
+	private AttachmentProxy[] getAttachments(ZipFile zip) throws Exception
+	{
+		BulletinHeaderPacket bhp = extractor.verifyHeaderPacket(zip);
+		return extractor.parseFieldData(bhp, zip).getAttachments();
+	}
+	
+	private long getTotalBytes(int firstZipFile)
+	{
+		long total = 0;
+		for(int i = firstZipFile; i < zipFiles.size(); ++i)
+			total += ((File)zipFiles.get(i)).length();
+		return total;
+	}
+	
+	private void printPhase(String name, long phaseNanos, int bulletinCount, long totalNanos)
+	{
+		out.println("    " + name + ": " + 
+				BenchmarkRunner.format(phaseNanos / (double)BenchmarkClock.NANOS_PER_MILLI) + " ms, " + 
+				BenchmarkRunner.formatMicros(phaseNanos / bulletinCount) + " us/bulletin, " + 
+				BenchmarkRunner.format(phaseNanos * 100.0 / totalNanos) + "%");
+	}
+	
+	private static void exitWithUsage(String message)
+	{
+		System.err.println(message);
+		System.err.println("usage: IngestBenchmark [--bulletins=<n>] [--versions=<n>] [--attachments=<n>] " + 
+				"[--attachment-kb=<n>] [--details-words=<n>] [--seed=<n>] [--warmup-bulletins=<n>] " + 
+				"[--mock-security] [--warmup-seconds=<n>] [--batches=<n>]");
+		System.exit(1);
+	}
+	
+	class HeaderVerificationBenchmark extends Benchmark
+	{
+		HeaderVerificationBenchmark(ZipFile zipToUse)
+		{
+			super("header verification, one bulletin");
+			zip = zipToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			extractor.verifyHeaderPacket(zip);
+		}
+		
+		private ZipFile zip;
+	}
+	
+	class FieldDataParsingBenchmark extends Benchmark
+	{
+		FieldDataParsingBenchmark(ZipFile zipToUse) throws Exception
+		{
+			super("field data parsing, one bulletin");
+			zip = zipToUse;
+			bhp = extractor.verifyHeaderPacket(zip);
+		}
+		
+		public void runOperation() throws Exception
+		{
+			extractor.parseFieldData(bhp, zip);
+		}
+		
+		private ZipFile zip;
+		private BulletinHeaderPacket bhp;
+	}
+	
+	// NOTE: Decodes every attachment of the bulletin, and deletes the 
+	// decoded files, which storing them would otherwise have done
+	class AttachmentDecodeBenchmark extends Benchmark
+	{
+		AttachmentDecodeBenchmark(ZipFile zipToUse, AttachmentProxy[] attachmentsToUse)
+		{
+			super("attachment decode, " + attachmentsToUse.length + " attachments");
+			zip = zipToUse;
+			attachments = attachmentsToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			for(int i = 0; i < attachments.length; ++i)
+				extractor.decodeAttachmentToFile(attachments[i], zip).delete();
+		}
+		
+		private ZipFile zip;
+		private AttachmentProxy[] attachments;
+	}
+	
+	static final String ZIP_DIRECTORY = "zips";
+	static final String AMPLIFIER_DIRECTORY = "amplifier";
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+	private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+	
+	private SyntheticCorpus corpus;
+	private MartusCrypto security;
+	private File workDir;
+	private PrintStream out;
+	private List zipFiles;
+	private TimedBulletinExtractor extractor;
+}
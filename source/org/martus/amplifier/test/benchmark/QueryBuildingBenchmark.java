@@ -0,0 +1,177 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.martus.amplifier.common.CharacterUtil;
+import org.martus.amplifier.common.SearchParameters;
+import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.QueryBuilder;
+import org.martus.amplifier.search.BulletinQuery;
+import org.martus.amplifier.search.SearchConstants;
+
+/**
+ * Compares the two ways an advanced search request becomes a Lucene 
+ * query: formatting the words into query strings and parsing them 
+ * with QueryParser, and building a BulletinQuery and turning it 
+ * directly into query objects. No index is needed.
+ * 
+ * usage: QueryBuildingBenchmark [--warmup-seconds=<n>] [--batches=<n>]
+ */
+public class QueryBuildingBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int warmupSeconds = 5;
+		int batchCount = 10;
+		for(int i = 0; i < args.length; ++i)
+		{
+			String value = args[i].substring(args[i].indexOf("=") + 1);
+			if(args[i].startsWith("--warmup-seconds="))
+				warmupSeconds = Integer.parseInt(value);
+			else if(args[i].startsWith("--batches="))
+				batchCount = Integer.parseInt(value);
+			else
+			{
+				System.err.println("Unknown argument: " + args[i]);
+				System.err.println("usage: QueryBuildingBenchmark [--warmup-seconds=<n>] [--batches=<n>]");
+				System.exit(1);
+			}
+		}
+		
+		BenchmarkRunner runner = new BenchmarkRunner(System.out, warmupSeconds * 1000L, batchCount, 1000);
+		for(int i = 0; i < SAMPLE_REQUESTS.length; ++i)
+		{
+			Map rawParameters = createRawParameters(SAMPLE_REQUESTS[i]);
+			runner.run(new FormattedStringsBenchmark(SAMPLE_NAMES[i], rawParameters));
+			runner.run(new WordsQueryBenchmark(SAMPLE_NAMES[i], rawParameters));
+		}
+	}
+	
+	static Map createRawParameters(String[] sample)
+	{
+		Map rawParameters = new HashMap();
+		rawParameters.put(SearchResultConstants.ANYWORD_TAG, sample[0]);
+		rawParameters.put(SearchResultConstants.THESE_WORD_TAG, sample[1]);
+		rawParameters.put(SearchResultConstants.EXACTPHRASE_TAG, sample[2]);
+		rawParameters.put(SearchResultConstants.WITHOUTWORDS_TAG, "");
+		rawParameters.put(SearchResultConstants.RESULT_FIELDS_KEY, SearchResultConstants.IN_ALL_FIELDS);
+		rawParameters.put(SearchResultConstants.RESULT_LANGUAGE_KEY, sample[3]);
+		return rawParameters;
+	}
+	
+	// NOTE: A copy of the query building that SearchParameters and 
+	// QueryBuilder did before BulletinQuery existed, kept only so the 
+	// two can still be compared
+	static class FormattedStringsBenchmark extends Benchmark
+	{
+		FormattedStringsBenchmark(String sampleName, Map rawParametersToUse)
+		{
+			super("formatted strings, " + sampleName);
+			rawParameters = rawParametersToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			String field = (String)rawParameters.get(SearchResultConstants.RESULT_FIELDS_KEY);
+			BooleanQuery query = new BooleanQuery();
+			
+			String allWords = getCleanedString(SearchResultConstants.THESE_WORD_TAG);
+			if(allWords.length() > 0)
+			{
+				String[] words = allWords.split(" ");
+				String formatted = "(";
+				for (int i = 0; i < words.length; i++)
+					formatted += "+" + words[i] + " ";
+				addParsed(query, formatted + ")", field);
+			}
+			
+			String exactPhrase = getCleanedString(SearchResultConstants.EXACTPHRASE_TAG);
+			if(exactPhrase.length() > 0)
+				addParsed(query, "\"" + exactPhrase.replace('\"', ' ').trim() + "\"", field);
+			
+			String anyWords = getCleanedString(SearchResultConstants.ANYWORD_TAG);
+			if(anyWords.length() > 0)
+				addParsed(query, "(" + anyWords + ")", field);
+			
+			String language = (String)rawParameters.get(SearchResultConstants.RESULT_LANGUAGE_KEY);
+			if(!language.equals(SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL))
+				addParsed(query, language, SearchConstants.SEARCH_LANGUAGE_INDEX_FIELD);
+		}
+		
+		private String getCleanedString(String tag)
+		{
+			return CharacterUtil.removeRestrictCharacters((String)rawParameters.get(tag));
+		}
+		
+		private void addParsed(BooleanQuery query, String queryString, String field) throws Exception
+		{
+			Query parsed = QueryParser.parse(queryString, field, LuceneBulletinIndexer.getAnalyzer());
+			query.add(parsed, true, false);
+		}
+		
+		private Map rawParameters;
+	}
+	
+	static class WordsQueryBenchmark extends Benchmark
+	{
+		WordsQueryBenchmark(String sampleName, Map rawParametersToUse)
+		{
+			super("words query, " + sampleName);
+			rawParameters = rawParametersToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			BulletinQuery query = SearchParameters.createWordsQuery(rawParameters);
+			QueryBuilder.buildWordsQuery(query);
+		}
+		
+		private Map rawParameters;
+	}
+	
+	static final String[] SAMPLE_NAMES = 
+	{
+		"simple search",
+		"advanced search",
+		"advanced search with phrases",
+	};
+	
+	// NOTE: Any words, all words, exact phrase and language
+	static final String[][] SAMPLE_REQUESTS = 
+	{
+		{"", "police detention", "", SearchResultConstants.LANGUAGE_ANYLANGUAGE_LABEL},
+		{"arrest detention torture", "village", "armed forces", "en"},
+		{"\"human rights\" abuse", "\"local police\" station report", "seized without a warrant", "es"},
+	};
+}
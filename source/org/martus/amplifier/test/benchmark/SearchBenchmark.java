@@ -0,0 +1,406 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+
+import org.martus.amplifier.attachment.FileSystemDataManager;
+import org.martus.amplifier.common.AmplifierLocalization;
+import org.martus.amplifier.common.SearchParameters;
+import org.martus.amplifier.common.SearchResultConstants;
+import org.martus.amplifier.lucene.LuceneBulletinIndexer;
+import org.martus.amplifier.lucene.LuceneBulletinSearcher;
+import org.martus.amplifier.lucene.LuceneSearchConstants;
+import org.martus.amplifier.lucene.LuceneSearcherManager;
+import org.martus.amplifier.main.MartusAmplifier;
+import org.martus.amplifier.presentation.AbstractSearchResultsServlet;
+import org.martus.amplifier.presentation.FoundBulletinsList;
+import org.martus.amplifier.search.Results;
+import org.martus.amplifier.search.SearchConstants;
+import org.martus.common.LoggerToNull;
+import org.martus.common.crypto.MockMartusSecurity;
+import org.martus.util.DirectoryUtils;
+
+/**
+ * Measures the search path against a SyntheticCorpus. The corpus is 
+ * indexed through LuceneBulletinIndexer, then simple and advanced 
+ * searches, getAllLeafUids, lookup, getBulletinInfo and sortBulletins 
+ * are each run by BenchmarkRunner. Searches marked uncached clear the 
+ * search result cache first, so they measure Lucene and not the cache.
+ * 
+ * Building the index for a large corpus takes a while, so when 
+ * --data-dir is given the index is kept there and used again by later 
+ * runs with the same corpus settings.
+ * 
+ * usage: SearchBenchmark [--bulletins=<n>] [--versions=<n>] [--attachments=<n>] 
+ *     [--attachment-kb=<n>] [--details-words=<n>] [--seed=<n>] [--data-dir=<dir>] 
+ *     [--warmup-seconds=<n>] [--batches=<n>]
+ */
+public class SearchBenchmark implements SearchConstants
+{
+	public static void main(String[] args) throws Exception
+	{
+		int bulletinCount = 10000;
+		int maxVersions = 3;
+		int maxAttachments = 2;
+		int maxAttachmentKb = 256;
+		int detailsWordCount = 200;
+		long seed = 1;
+		File dataDir = null;
+		int warmupSeconds = 5;
+		int batchCount = 10;
+		for(int i = 0; i < args.length; ++i)
+		{
+			String value = args[i].substring(args[i].indexOf("=") + 1);
+			if(args[i].startsWith("--bulletins="))
+				bulletinCount = Integer.parseInt(value);
+			else if(args[i].startsWith("--versions="))
+				maxVersions = Integer.parseInt(value);
+			else if(args[i].startsWith("--attachments="))
+				maxAttachments = Integer.parseInt(value);
+			else if(args[i].startsWith("--attachment-kb="))
+				maxAttachmentKb = Integer.parseInt(value);
+			else if(args[i].startsWith("--details-words="))
+				detailsWordCount = Integer.parseInt(value);
+			else if(args[i].startsWith("--seed="))
+				seed = Long.parseLong(value);
+			else if(args[i].startsWith("--data-dir="))
+				dataDir = new File(value);
+			else if(args[i].startsWith("--warmup-seconds="))
+				warmupSeconds = Integer.parseInt(value);
+			else if(args[i].startsWith("--batches="))
+				batchCount = Integer.parseInt(value);
+			else
+				exitWithUsage("Unknown argument: " + args[i]);
+		}
+		
+		SyntheticCorpus corpus = new SyntheticCorpus(seed, bulletinCount, maxVersions, maxAttachments, maxAttachmentKb, detailsWordCount);
+		boolean deleteDataDir = (dataDir == null);
+		if(deleteDataDir)
+			dataDir = createTempDirectory("$$$SearchBenchmark");
+		try
+		{
+			SearchBenchmark benchmark = new SearchBenchmark(corpus, dataDir);
+			benchmark.prepareIndex();
+			BenchmarkRunner runner = new BenchmarkRunner(System.out, warmupSeconds * 1000L, batchCount, 1000);
+			benchmark.runAll(runner);
+		}
+		finally
+		{
+			if(deleteDataDir)
+				DirectoryUtils.deleteEntireDirectoryTree(dataDir);
+		}
+	}
+	
+	SearchBenchmark(SyntheticCorpus corpusToUse, File dataDirToUse) throws Exception
+	{
+		corpus = corpusToUse;
+		dataDir = dataDirToUse;
+		
+		MartusAmplifier.localization = new AmplifierLocalization();
+		MockMartusSecurity security = new MockMartusSecurity();
+		security.createKeyPair();
+		MartusAmplifier.setStaticSecurity(security);
+		MartusAmplifier.dataManager = new FileSystemDataManager(dataDir.getPath());
+	}
+	
+	void prepareIndex() throws Exception
+	{
+		File corpusFile = new File(dataDir, CORPUS_FILE_NAME);
+		if(corpus.toString().equals(readCorpusDescription(corpusFile)))
+		{
+			System.out.println("Using the existing index for " + corpus);
+			return;
+		}
+		
+		System.out.println("Indexing " + corpus);
+		corpusFile.delete();
+		long started = System.currentTimeMillis();
+		LuceneBulletinIndexer indexer = new LuceneBulletinIndexer(dataDir.getPath());
+		try
+		{
+			indexer.clearIndex();
+			corpus.indexAll(indexer, System.out);
+		}
+		finally
+		{
+			indexer.close();
+		}
+		long indexed = System.currentTimeMillis();
+		LuceneBulletinIndexer.optimize(getIndexDir());
+		long optimized = System.currentTimeMillis();
+		System.out.println("Indexed in " + (indexed - started) + " ms (" + 
+				BenchmarkRunner.format(corpus.getBulletinCount() * 1000.0 / Math.max(1, indexed - started)) + 
+				" bulletins/s), optimized in " + (optimized - indexed) + " ms");
+		
+		writeCorpusDescription(corpusFile);
+	}
+	
+	void runAll(BenchmarkRunner runner) throws Exception
+	{
+		LuceneSearcherManager manager = LuceneSearcherManager.getSharedManager(getIndexDir());
+		LuceneBulletinSearcher searcher = new LuceneBulletinSearcher(manager, new LoggerToNull());
+		try
+		{
+			runner.run(new SearchBenchmarkCase("simple search, common word, uncached", manager, searcher, createSimpleSearch(COMMON_WORD_RANK), true));
+			runner.run(new SearchBenchmarkCase("simple search, rare word, uncached", manager, searcher, createSimpleSearch(RARE_WORD_RANK), true));
+			runner.run(new SearchBenchmarkCase("simple search, common word, cached", manager, searcher, createSimpleSearch(COMMON_WORD_RANK), false));
+			runner.run(new SearchBenchmarkCase("advanced search, uncached", manager, searcher, createAdvancedSearch(), true));
+			runner.run(new SearchBenchmarkCase("advanced search, cached", manager, searcher, createAdvancedSearch(), false));
+			runner.run(new GetAllLeafUidsBenchmark(searcher));
+			runner.run(new LookupBenchmark(searcher));
+			runner.run(new GetBulletinInfoBenchmark(searcher.search(createSimpleSearch(COMMON_WORD_RANK))));
+			Map sortedSearch = createSimpleSearch(COMMON_WORD_RANK);
+			runner.run(new SortFoundBulletinsBenchmark(new FoundBulletinsList(sortedSearch, searcher.search(sortedSearch))));
+			runner.run(new SortBulletinInfosBenchmark(searcher.search(createSimpleSearch(COMMON_WORD_RANK))));
+		}
+		finally
+		{
+			searcher.close();
+		}
+	}
+	
+	Map createSimpleSearch(int wordRank)
+	{
+		Map fields = new HashMap();
+		fields.put(SearchResultConstants.RESULT_BASIC_QUERY_KEY, corpus.getWord(wordRank));
+		return fields;
+	}
+	
+	// NOTE: Built the way SearchParameters builds the fields for the 
+	// advanced search page
+	Map createAdvancedSearch()
+	{
+		Map raw = new HashMap();
+		raw.put(SearchResultConstants.ANYWORD_TAG, corpus.getWord(COMMON_WORD_RANK) + " " + corpus.getWord(MIDDLE_WORD_RANK));
+		raw.put(SearchResultConstants.THESE_WORD_TAG, corpus.getWord(COMMON_WORD_RANK + 1));
+		raw.put(SearchResultConstants.EXACTPHRASE_TAG, "");
+		raw.put(SearchResultConstants.RESULT_FIELDS_KEY, SearchResultConstants.IN_ALL_FIELDS);
+		raw.put(SearchResultConstants.RESULT_LANGUAGE_KEY, "en");
+		
+		Map fields = new HashMap();
+		fields.put(SearchResultConstants.RESULT_WORDS_QUERY_KEY, SearchParameters.createWordsQuery(raw));
+		fields.put(LuceneSearchConstants.SEARCH_EVENT_START_DATE_INDEX_FIELD, "1995-01-01");
+		fields.put(LuceneSearchConstants.SEARCH_EVENT_END_DATE_INDEX_FIELD, "2000-12-31");
+		fields.put(LuceneSearchConstants.SEARCH_UNKNOWN_DATES_FIELD, Boolean.TRUE);
+		fields.put(SEARCH_ENTRY_DATE_INDEX_FIELD, LuceneSearchConstants.EARLIEST_POSSIBLE_DATE);
+		return fields;
+	}
+	
+	File getIndexDir() throws Exception
+	{
+		return LuceneBulletinIndexer.getIndexDir(dataDir.getPath());
+	}
+	
+	private String readCorpusDescription(File corpusFile) throws IOException
+	{
+		if(!corpusFile.exists())
+			return null;
+		BufferedReader reader = new BufferedReader(new FileReader(corpusFile));
+		try
+		{
+			return reader.readLine();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	private void writeCorpusDescription(File corpusFile) throws IOException
+	{
+		Writer writer = new FileWriter(corpusFile);
+		try
+		{
+			writer.write(corpus.toString() + "\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	static File createTempDirectory(String prefix) throws IOException
+	{
+		File dir = File.createTempFile(prefix, null);
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	private static void exitWithUsage(String message)
+	{
+		System.err.println(message);
+		System.err.println("usage: SearchBenchmark [--bulletins=<n>] [--versions=<n>] [--attachments=<n>] " + 
+				"[--attachment-kb=<n>] [--details-words=<n>] [--seed=<n>] [--data-dir=<dir>] [--warmup-seconds=<n>] [--batches=<n>]");
+		System.exit(1);
+	}
+	
+	static class SearchBenchmarkCase extends Benchmark
+	{
+		SearchBenchmarkCase(String name, LuceneSearcherManager managerToUse, LuceneBulletinSearcher searcherToUse, 
+				Map fieldsToUse, boolean uncachedToUse) throws Exception
+		{
+			super(name);
+			manager = managerToUse;
+			searcher = searcherToUse;
+			fields = fieldsToUse;
+			uncached = uncachedToUse;
+			System.out.println(name + ": " + searcher.search(fields).getCount() + " bulletins found");
+		}
+		
+		public void runOperation() throws Exception
+		{
+			if(uncached)
+				manager.getResultCache().clear();
+			searcher.search(fields);
+		}
+		
+		private LuceneSearcherManager manager;
+		private LuceneBulletinSearcher searcher;
+		private Map fields;
+		private boolean uncached;
+	}
+	
+	static class GetAllLeafUidsBenchmark extends Benchmark
+	{
+		GetAllLeafUidsBenchmark(LuceneBulletinSearcher searcherToUse)
+		{
+			super("getAllLeafUids");
+			searcher = searcherToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			searcher.getAllLeafUids();
+		}
+		
+		private LuceneBulletinSearcher searcher;
+	}
+	
+	class LookupBenchmark extends Benchmark
+	{
+		LookupBenchmark(LuceneBulletinSearcher searcherToUse)
+		{
+			super("lookup");
+			searcher = searcherToUse;
+			random = new Random(LOOKUP_SEED);
+		}
+		
+		public void runOperation() throws Exception
+		{
+			int bulletin = random.nextInt(corpus.getBulletinCount());
+			if(searcher.lookup(corpus.getLeafId(bulletin)) == null)
+				throw new Exception("Bulletin " + bulletin + " not found");
+		}
+		
+		private LuceneBulletinSearcher searcher;
+		private Random random;
+	}
+	
+	static class GetBulletinInfoBenchmark extends Benchmark
+	{
+		GetBulletinInfoBenchmark(Results resultsToUse)
+		{
+			super("getBulletinInfo, " + resultsToUse.getCount() + " results");
+			results = resultsToUse;
+			random = new Random(LOOKUP_SEED);
+		}
+		
+		public void runOperation() throws Exception
+		{
+			results.getBulletinInfo(random.nextInt(results.getCount()));
+		}
+		
+		private Results results;
+		private Random random;
+	}
+	
+	// NOTE: Alternates between the sort fields, since sorting a list 
+	// by the field it is already sorted by does nothing
+	static class SortFoundBulletinsBenchmark extends Benchmark
+	{
+		SortFoundBulletinsBenchmark(FoundBulletinsList bulletinsToUse)
+		{
+			super("sortBulletins, found list of " + bulletinsToUse.size());
+			bulletins = bulletinsToUse;
+		}
+		
+		public void runOperation() throws Exception
+		{
+			String sortBy = SORT_FIELDS[nextSortField++ % SORT_FIELDS.length];
+			AbstractSearchResultsServlet.sortBulletins(bulletins, sortBy);
+		}
+		
+		private FoundBulletinsList bulletins;
+		private int nextSortField;
+	}
+	
+	static class SortBulletinInfosBenchmark extends Benchmark
+	{
+		SortBulletinInfosBenchmark(Results results) throws Exception
+		{
+			super("sortBulletins, BulletinInfo list of " + Math.min(results.getCount(), SORTED_INFO_COUNT));
+			bulletinInfos = results.getBulletinInfos(0, Math.min(results.getCount(), SORTED_INFO_COUNT));
+		}
+		
+		public void runOperation() throws Exception
+		{
+			String sortBy = SORT_FIELDS[nextSortField++ % SORT_FIELDS.length];
+			AbstractSearchResultsServlet.sortBulletins(new Vector(bulletinInfos), sortBy);
+		}
+		
+		private List bulletinInfos;
+		private int nextSortField;
+	}
+	
+	static final String CORPUS_FILE_NAME = "benchmarkCorpus.txt";
+	static final int COMMON_WORD_RANK = 5;
+	static final int MIDDLE_WORD_RANK = 500;
+	static final int RARE_WORD_RANK = 20000;
+	static final long LOOKUP_SEED = 42;
+	static final int SORTED_INFO_COUNT = 1000;
+	static final String[] SORT_FIELDS = {
+		SEARCH_TITLE_INDEX_FIELD, 
+		SEARCH_AUTHOR_INDEX_FIELD, 
+		SEARCH_EVENT_DATE_INDEX_FIELD, 
+		SEARCH_ENTRY_DATE_INDEX_FIELD,
+	};
+	
+	private SyntheticCorpus corpus;
+	private File dataDir;
+}
@@ -0,0 +1,297 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.martus.amplifier.search.BulletinField;
+import org.martus.amplifier.search.BulletinIndexException;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.amplifier.search.SearchConstants;
+import org.martus.common.FieldSpecCollection;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.packet.BulletinHistory;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+
+/**
+ * Generates bulletins for benchmarks. Every bulletin, version and 
+ * attachment is made from a random number generator seeded by its 
+ * bulletin and version number, so the same settings always give the 
+ * same corpus, and any one bulletin can be made again without 
+ * generating the ones before it.
+ * 
+ * Words come from a made up vocabulary, picked so that a few are very 
+ * common and most are rare, the way words are in real bulletins. 
+ * getWord(rank) returns the rank'th most common word, for searches.
+ */
+public class SyntheticCorpus implements SearchConstants
+{
+	public SyntheticCorpus(long seedToUse, int bulletinCountToUse, int maxVersionsToUse, 
+			int maxAttachmentsToUse, int maxAttachmentKbToUse, int detailsWordCountToUse)
+	{
+		seed = seedToUse;
+		bulletinCount = bulletinCountToUse;
+		maxVersions = Math.max(1, maxVersionsToUse);
+		maxAttachments = maxAttachmentsToUse;
+		maxAttachmentBytes = Math.max(1, maxAttachmentKbToUse * 1024);
+		detailsWordCount = detailsWordCountToUse;
+		fieldSpecs = new FieldSpecCollection(BulletinField.getDefaultSearchFieldSpecs());
+	}
+	
+	public int getBulletinCount()
+	{
+		return bulletinCount;
+	}
+	
+	public int getVersionCount(int bulletin)
+	{
+		return 1 + createRandom(bulletin, 0, VERSION_COUNT_STREAM, 0).nextInt(maxVersions);
+	}
+	
+	public UniversalId getLeafId(int bulletin)
+	{
+		return getVersionId(bulletin, getVersionCount(bulletin) - 1);
+	}
+	
+	public UniversalId getVersionId(int bulletin, int version)
+	{
+		return UniversalId.createFromAccountAndLocalId(getAccountId(bulletin), "B-" + bulletin + "-" + version);
+	}
+	
+	public BulletinHistory getHistory(int bulletin, int version)
+	{
+		BulletinHistory history = new BulletinHistory();
+		for(int i = 0; i < version; ++i)
+			history.add(getVersionId(bulletin, i).getLocalId());
+		return history;
+	}
+	
+	public FieldDataPacket getFieldDataPacket(int bulletin, int version)
+	{
+		Random random = createRandom(bulletin, version, FIELDS_STREAM, 0);
+		String accountId = getAccountId(bulletin);
+		UniversalId fieldUid = UniversalId.createFromAccountAndLocalId(accountId, "F-" + bulletin + "-" + version);
+		FieldDataPacket fdp = new FieldDataPacket(fieldUid, fieldSpecs);
+		
+		fdp.set(SEARCH_AUTHOR_INDEX_FIELD, capitalize(getRandomWord(random)) + " " + capitalize(getRandomWord(random)));
+		fdp.set(SEARCH_ORGANIZATION_INDEX_FIELD, getRandomWords(random, 1 + random.nextInt(4)));
+		fdp.set(SEARCH_TITLE_INDEX_FIELD, capitalize(getRandomWords(random, 3 + random.nextInt(6))));
+		fdp.set(SEARCH_LOCATION_INDEX_FIELD, capitalize(getRandomWord(random)));
+		fdp.set(SEARCH_KEYWORDS_INDEX_FIELD, getRandomWords(random, random.nextInt(6)));
+		fdp.set(SEARCH_LANGUAGE_INDEX_FIELD, LANGUAGES[random.nextInt(LANGUAGES.length)]);
+		fdp.set(SEARCH_ENTRY_DATE_INDEX_FIELD, getRandomDate(random));
+		fdp.set(SEARCH_EVENT_DATE_INDEX_FIELD, getRandomEventDate(random));
+		fdp.set(SEARCH_SUMMARY_INDEX_FIELD, capitalize(getRandomWords(random, 20 + random.nextInt(40))) + ".");
+		fdp.set(SEARCH_DETAILS_INDEX_FIELD, capitalize(getRandomWords(random, detailsWordCount)) + ".");
+		
+		int attachmentCount = getAttachmentCount(bulletin, version);
+		for(int i = 0; i < attachmentCount; ++i)
+		{
+			UniversalId attachmentUid = UniversalId.createFromAccountAndLocalId(accountId, getAttachmentLocalId(bulletin, version, i));
+			String label = getRandomWord(random) + ATTACHMENT_EXTENSIONS[random.nextInt(ATTACHMENT_EXTENSIONS.length)];
+			fdp.addAttachment(new AttachmentProxy(attachmentUid, label, null));
+		}
+		return fdp;
+	}
+	
+	// NOTE: Maps each attachment's local id to its size in bytes (as a 
+	// Long), the way BulletinIndexer.indexFieldData expects
+	public Map getAttachmentSizes(int bulletin, int version)
+	{
+		Map sizes = new HashMap();
+		Random random = createRandom(bulletin, version, ATTACHMENT_SIZES_STREAM, 0);
+		int attachmentCount = getAttachmentCount(bulletin, version);
+		for(int i = 0; i < attachmentCount; ++i)
+		{
+			long size = 1 + random.nextInt(maxAttachmentBytes);
+			sizes.put(getAttachmentLocalId(bulletin, version, i), new Long(size));
+		}
+		return sizes;
+	}
+	
+	// NOTE: Attachment contents are made on demand, since a large 
+	// corpus would not fit in memory
+	public byte[] getAttachmentData(int bulletin, int version, int attachment)
+	{
+		Long size = (Long)getAttachmentSizes(bulletin, version).get(getAttachmentLocalId(bulletin, version, attachment));
+		byte[] data = new byte[size.intValue()];
+		createRandom(bulletin, version, ATTACHMENT_DATA_STREAM, attachment).nextBytes(data);
+		return data;
+	}
+	
+	public String getWord(int rank)
+	{
+		StringBuffer word = new StringBuffer();
+		int remaining = rank + SYLLABLES.length;
+		while(remaining > 0)
+		{
+			word.append(SYLLABLES[remaining % SYLLABLES.length]);
+			remaining /= SYLLABLES.length;
+		}
+		return word.toString();
+	}
+	
+	public void indexAll(BulletinIndexer indexer, PrintStream progress) throws BulletinIndexException
+	{
+		long started = System.currentTimeMillis();
+		long lastReport = started;
+		for(int bulletin = 0; bulletin < bulletinCount; ++bulletin)
+		{
+			int versionCount = getVersionCount(bulletin);
+			for(int version = 0; version < versionCount; ++version)
+			{
+				indexer.indexFieldData(getVersionId(bulletin, version), 
+						getFieldDataPacket(bulletin, version), 
+						getHistory(bulletin, version), 
+						getAttachmentSizes(bulletin, version));
+			}
+			
+			long now = System.currentTimeMillis();
+			if(now - lastReport >= PROGRESS_REPORT_MILLIS)
+			{
+				progress.println("Indexed " + (bulletin + 1) + " of " + bulletinCount + " bulletins");
+				lastReport = now;
+			}
+		}
+	}
+	
+	// NOTE: Describes the settings, so a saved index can be checked 
+	// against the corpus it is meant to hold
+	public String toString()
+	{
+		return "seed=" + seed + " bulletins=" + bulletinCount + " versions=" + maxVersions + 
+				" attachments=" + maxAttachments + " attachmentBytes=" + maxAttachmentBytes + " detailsWords=" + detailsWordCount;
+	}
+	
+	public int getAttachmentCount(int bulletin, int version)
+	{
+		return createRandom(bulletin, version, ATTACHMENT_COUNT_STREAM, 0).nextInt(maxAttachments + 1);
+	}
+	
+	// NOTE: Each kind of value has its own stream of random numbers, so 
+	// changing how one is generated does not change the others
+	private Random createRandom(int bulletin, int version, int stream, int index)
+	{
+		long mixed = seed;
+		mixed = mixed * 1000003L + bulletin;
+		mixed = mixed * 1000003L + version;
+		mixed = mixed * 1000003L + stream;
+		mixed = mixed * 1000003L + index;
+		return new Random(mixed);
+	}
+	
+	private String getAccountId(int bulletin)
+	{
+		return "BenchmarkAccount" + (bulletin % ACCOUNT_COUNT);
+	}
+	
+	private String getAttachmentLocalId(int bulletin, int version, int attachment)
+	{
+		return "A-" + bulletin + "-" + version + "-" + attachment;
+	}
+	
+	private String getRandomWords(Random random, int count)
+	{
+		StringBuffer words = new StringBuffer();
+		for(int i = 0; i < count; ++i)
+		{
+			if(i > 0)
+				words.append(' ');
+			words.append(getRandomWord(random));
+		}
+		return words.toString();
+	}
+	
+	// NOTE: Cubing the random number makes low ranks much more likely, 
+	// so a few words appear in most bulletins and most words are rare
+	private String getRandomWord(Random random)
+	{
+		double skewed = Math.pow(random.nextDouble(), 3);
+		return getWord((int)(skewed * VOCABULARY_SIZE));
+	}
+	
+	private String getRandomDate(Random random)
+	{
+		int year = FIRST_YEAR + random.nextInt(YEAR_COUNT);
+		int month = 1 + random.nextInt(12);
+		int day = 1 + random.nextInt(28);
+		return year + "-" + twoDigits(month) + "-" + twoDigits(day);
+	}
+	
+	// NOTE: About a third of event dates are ranges, which are stored 
+	// as the start date and a number of days
+	private String getRandomEventDate(Random random)
+	{
+		String date = getRandomDate(random);
+		if(random.nextInt(3) != 0)
+			return date;
+		return date + "," + date.replaceAll("-", "") + "+" + (1 + random.nextInt(60));
+	}
+	
+	private static String twoDigits(int value)
+	{
+		if(value < 10)
+			return "0" + value;
+		return Integer.toString(value);
+	}
+	
+	private static String capitalize(String text)
+	{
+		if(text.length() == 0)
+			return text;
+		return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+	}
+	
+	private static final String[] SYLLABLES = {
+		"ka", "lo", "mi", "ne", "ru", "sa", "ti", "vo", 
+		"ze", "ba", "du", "fe", "gi", "ho", "ja", "pe",
+	};
+	private static final String[] LANGUAGES = {"en", "es", "fr", "ru", "id", "ar", "ne", "th"};
+	private static final String[] ATTACHMENT_EXTENSIONS = {".jpg", ".pdf", ".doc", ".txt"};
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int ACCOUNT_COUNT = 50;
+	private static final int FIRST_YEAR = 1990;
+	private static final int YEAR_COUNT = 16;
+	private static final int VERSION_COUNT_STREAM = 0;
+	private static final int FIELDS_STREAM = 1;
+	private static final int ATTACHMENT_COUNT_STREAM = 2;
+	private static final int ATTACHMENT_SIZES_STREAM = 3;
+	private static final int ATTACHMENT_DATA_STREAM = 4;
+	private static final long PROGRESS_REPORT_MILLIS = 10 * 1000;
+	
+	private long seed;
+	private int bulletinCount;
+	private int maxVersions;
+	private int maxAttachments;
+	private int maxAttachmentBytes;
+	private int detailsWordCount;
+	private FieldSpecCollection fieldSpecs;
+}
@@ -0,0 +1,219 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+
+package org.martus.amplifier.test.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.martus.amplifier.attachment.AttachmentStorageException;
+import org.martus.amplifier.attachment.DataManager;
+import org.martus.amplifier.datasynch.BulletinExtractor;
+import org.martus.amplifier.search.BulletinIndexer;
+import org.martus.common.bulletin.AttachmentProxy;
+import org.martus.common.crypto.MartusCrypto;
+import org.martus.common.crypto.MartusCrypto.CryptoException;
+import org.martus.common.database.Database.RecordHiddenException;
+import org.martus.common.packet.BulletinHeaderPacket;
+import org.martus.common.packet.FieldDataPacket;
+import org.martus.common.packet.UniversalId;
+import org.martus.util.inputstreamwithseek.ZipEntryInputStreamWithSeek;
+
+/**
+ * A BulletinExtractor that adds up the time spent in each step of 
+ * receiving a bulletin. The steps are numbered by the PHASE_ constants, 
+ * and getPhaseNanos returns the total for one of them since the last 
+ * call to resetPhases.
+ */
+public class TimedBulletinExtractor extends BulletinExtractor
+{
+	public TimedBulletinExtractor(DataManager bulletinDataManager, BulletinIndexer bulletinIndexer, MartusCrypto verifier)
+	{
+		super(bulletinDataManager, bulletinIndexer, verifier);
+		phaseNanos = new long[PHASE_NAMES.length];
+	}
+	
+	public long getPhaseNanos(int phase)
+	{
+		return phaseNanos[phase];
+	}
+	
+	public void resetPhases()
+	{
+		for(int i = 0; i < phaseNanos.length; ++i)
+			phaseNanos[i] = 0;
+	}
+	
+	// NOTE: These call the steps without timing them, so a single step 
+	// can be run over and over by BenchmarkRunner
+	BulletinHeaderPacket verifyHeaderPacket(ZipFile bulletinZipFile) throws Exception
+	{
+		return super.loadHeaderPacket(bulletinZipFile);
+	}
+	
+	FieldDataPacket parseFieldData(BulletinHeaderPacket bhp, ZipFile bulletinZipFile) throws Exception
+	{
+		return super.loadFieldData(bhp, bulletinZipFile);
+	}
+	
+	File decodeAttachmentToFile(AttachmentProxy proxy, ZipFile bulletinZipFile) throws Exception
+	{
+		return super.decodeAttachment(proxy, bulletinZipFile);
+	}
+	
+	protected BulletinHeaderPacket loadHeaderPacket(ZipFile bulletinZipFile) throws Exception
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			return super.loadHeaderPacket(bulletinZipFile);
+		}
+		finally
+		{
+			addTime(PHASE_HEADER_VERIFICATION, started);
+		}
+	}
+	
+	protected FieldDataPacket loadFieldData(BulletinHeaderPacket bhp, ZipFile bulletinZipFile) throws Exception
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			return super.loadFieldData(bhp, bulletinZipFile);
+		}
+		finally
+		{
+			addTime(PHASE_FIELD_DATA_PARSING, started);
+		}
+	}
+	
+	protected void storeDataPacket(UniversalId uId, ZipEntryInputStreamWithSeek data) throws IOException, RecordHiddenException, CryptoException
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			super.storeDataPacket(uId, data);
+		}
+		finally
+		{
+			addTime(PHASE_PACKET_STORAGE, started);
+		}
+	}
+	
+	protected File decodeAttachment(AttachmentProxy proxy, ZipFile bulletinZipFile) throws Exception
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			return super.decodeAttachment(proxy, bulletinZipFile);
+		}
+		finally
+		{
+			addTime(PHASE_ATTACHMENT_DECODE, started);
+		}
+	}
+	
+	protected long storeAttachment(UniversalId attachmentId, File attachmentFile) 
+		throws IOException, AttachmentStorageException
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			return super.storeAttachment(attachmentId, attachmentFile);
+		}
+		finally
+		{
+			addTime(PHASE_ATTACHMENT_STORE, started);
+		}
+	}
+	
+	protected void indexFieldData(BulletinHeaderPacket bhp, FieldDataPacket fdp, Map attachmentSizes) throws Exception
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			super.indexFieldData(bhp, fdp, attachmentSizes);
+		}
+		finally
+		{
+			addTime(PHASE_INDEXING, started);
+		}
+	}
+	
+	protected String renderBulletinHtml(BulletinHeaderPacket bhp, ZipFile bulletinZipFile)
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			return super.renderBulletinHtml(bhp, bulletinZipFile);
+		}
+		finally
+		{
+			addTime(PHASE_HTML_RENDERING, started);
+		}
+	}
+	
+	protected void prepareBulletinHtml(UniversalId fieldDataPacketId, String html)
+	{
+		long started = BenchmarkClock.nowInNanos();
+		try
+		{
+			super.prepareBulletinHtml(fieldDataPacketId, html);
+		}
+		finally
+		{
+			addTime(PHASE_HTML_CACHE, started);
+		}
+	}
+	
+	private void addTime(int phase, long startedNanos)
+	{
+		phaseNanos[phase] += BenchmarkClock.nowInNanos() - startedNanos;
+	}
+	
+	public static final int PHASE_HEADER_VERIFICATION = 0;
+	public static final int PHASE_FIELD_DATA_PARSING = 1;
+	public static final int PHASE_PACKET_STORAGE = 2;
+	public static final int PHASE_ATTACHMENT_DECODE = 3;
+	public static final int PHASE_ATTACHMENT_STORE = 4;
+	public static final int PHASE_INDEXING = 5;
+	public static final int PHASE_HTML_RENDERING = 6;
+	public static final int PHASE_HTML_CACHE = 7;
+	public static final String[] PHASE_NAMES = {
+		"header verification", 
+		"field data parsing", 
+		"packet storage", 
+		"attachment decode", 
+		"attachment store", 
+		"indexing", 
+		"html rendering", 
+		"html cache", 
+	};
+	
+	private long[] phaseNanos;
+}
@@ -84,6 +84,8 @@ abstract public class AmplifierServlet extends VelocityServlet
 		 */
 		
 		p.setProperty( "runtime.log", path + "velocity.log" );
+		
+		p.setProperty( "userdirective", EscapeHtmlDirective.class.getName() );
 
 		return p;
 	}
@@ -179,12 +181,7 @@ abstract public class AmplifierServlet extends VelocityServlet
 
 	private static String formatDataForHtmlDisplay(String dataToFormat)
 	{
-		dataToFormat = dataToFormat.replaceAll("&", "&amp;");
-		dataToFormat = dataToFormat.replaceAll("<", "&lt;");
-		dataToFormat = dataToFormat.replaceAll("\n", "<BR/>");
-		dataToFormat = dataToFormat.replaceAll("\t", "&nbsp;&nbsp;&nbsp;&nbsp;");
-		dataToFormat = dataToFormat.replaceAll("  ", "&nbsp;&nbsp;");
-		return dataToFormat;
+		return HtmlEscaper.escape(dataToFormat);
 	}
 	
 	String errorMsg="";
@@ -0,0 +1,68 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.velocity;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.runtime.directive.Directive;
+import org.apache.velocity.runtime.parser.node.Node;
+
+/**
+ * Velocity directive that writes a value formatted by HtmlEscaper 
+ * straight to the response, so templates escape only the fields 
+ * they actually display: 
+ * 
+ *     #escapeHtml($bulletin.fields.title)
+ */
+public class EscapeHtmlDirective extends Directive
+{
+	public String getName()
+	{
+		return "escapeHtml";
+	}
+
+	public int getType()
+	{
+		return LINE;
+	}
+
+	public boolean render(InternalContextAdapter context, Writer writer, Node node)
+		throws IOException, MethodInvocationException
+	{
+		if(node.jjtGetNumChildren() == 0)
+			return false;
+		
+		Object value = node.jjtGetChild(0).value(context);
+		if(value == null)
+			return false;
+		
+		HtmlEscaper.write(writer, value.toString());
+		return true;
+	}
+}
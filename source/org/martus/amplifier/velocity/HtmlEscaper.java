@@ -0,0 +1,120 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.velocity;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Formats plain bulletin text for display in HTML in a single pass: 
+ * & and < are escaped, newlines become line breaks, tabs become four 
+ * non-breaking spaces, and each pair of spaces becomes two non-breaking 
+ * spaces, so runs of spaces are not collapsed by the browser.
+ */
+public class HtmlEscaper
+{
+	public static String escape(String text)
+	{
+		if(text == null)
+			return null;
+		if(!needsEscaping(text))
+			return text;
+		
+		StringWriter writer = new StringWriter(text.length() + 32);
+		try
+		{
+			write(writer, text);
+		}
+		catch (IOException e)
+		{
+			// NOTE: StringWriter never throws
+			throw new RuntimeException(e.toString());
+		}
+		return writer.toString();
+	}
+
+	public static void write(Writer writer, String text) throws IOException
+	{
+		if(text == null)
+			return;
+		
+		int length = text.length();
+		int unwritten = 0;
+		for(int i = 0; i < length; ++i)
+		{
+			String replacement = null;
+			char c = text.charAt(i);
+			switch(c)
+			{
+				case '&':
+					replacement = AMPERSAND;
+					break;
+				case '<':
+					replacement = LESS_THAN;
+					break;
+				case '\n':
+					replacement = NEWLINE;
+					break;
+				case '\t':
+					replacement = TAB;
+					break;
+				case ' ':
+					if(i + 1 < length && text.charAt(i + 1) == ' ')
+						replacement = TWO_SPACES;
+					break;
+			}
+			if(replacement == null)
+				continue;
+			
+			writer.write(text, unwritten, i - unwritten);
+			writer.write(replacement);
+			if(replacement == TWO_SPACES)
+				++i;
+			unwritten = i + 1;
+		}
+		writer.write(text, unwritten, length - unwritten);
+	}
+
+	static boolean needsEscaping(String text)
+	{
+		for(int i = 0; i < text.length(); ++i)
+		{
+			char c = text.charAt(i);
+			if(c == '&' || c == '<' || c == '\n' || c == '\t')
+				return true;
+			if(c == ' ' && i + 1 < text.length() && text.charAt(i + 1) == ' ')
+				return true;
+		}
+		return false;
+	}
+
+	private static final String AMPERSAND = "&amp;";
+	private static final String LESS_THAN = "&lt;";
+	private static final String NEWLINE = "<BR/>";
+	private static final String TAB = "&nbsp;&nbsp;&nbsp;&nbsp;";
+	private static final String TWO_SPACES = "&nbsp;&nbsp;";
+}
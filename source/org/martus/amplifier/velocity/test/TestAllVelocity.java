@@ -51,6 +51,7 @@ public class TestAllVelocity extends TestSuite
 		TestSuite suite= new TestSuite("All Martus Amplifier Velocity Tests");
 	
 		suite.addTest(new TestSuite(TestAmplifierServlet.class));
+		suite.addTest(new TestSuite(TestHtmlEscaper.class));
 		suite.addTest(new TestSuite(TestWrappedServletResponse.class));
 		
 		return suite;
@@ -0,0 +1,64 @@
+/*
+
+The Martus(tm) free, social justice documentation and
+monitoring software. Copyright (C) 2001-2007, Beneficent
+Technology, Inc. (The Benetech Initiative).
+
+Martus is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later
+version with the additions and exceptions described in the
+accompanying Martus license file entitled "license.txt".
+
+It is distributed WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, including warranties of fitness of purpose or
+merchantability.  See the accompanying Martus License and
+GPL license for more details on the required license terms
+for this software.
+
+You should have received a copy of the GNU General Public
+License along with this program; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA 02111-1307, USA.
+
+*/
+package org.martus.amplifier.velocity.test;
+
+import java.io.StringWriter;
+
+import org.martus.amplifier.velocity.HtmlEscaper;
+import org.martus.util.TestCaseEnhanced;
+
+
+public class TestHtmlEscaper extends TestCaseEnhanced
+{
+	public TestHtmlEscaper(String name)
+	{
+		super(name);
+	}
+	
+	public void testEscape() throws Exception
+	{
+		assertNull(HtmlEscaper.escape(null));
+		assertEquals("", HtmlEscaper.escape(""));
+		String plain = " a b c ";
+		assertSame("copied text that needed no escaping?", plain, HtmlEscaper.escape(plain));
+		
+		assertEquals("&lt;b>&amp;amp;</b>", HtmlEscaper.escape("<b>&amp;</b>"));
+		assertEquals("a<BR/>b<BR/>", HtmlEscaper.escape("a\nb\n"));
+		assertEquals("&nbsp;&nbsp;&nbsp;&nbsp;a", HtmlEscaper.escape("\ta"));
+		assertEquals("a&nbsp;&nbsp; b", HtmlEscaper.escape("a   b"));
+		assertEquals("&nbsp;&nbsp;&nbsp;&nbsp;", HtmlEscaper.escape("    "));
+	}
+
+	public void testWrite() throws Exception
+	{
+		StringWriter writer = new StringWriter();
+		writer.write("[");
+		HtmlEscaper.write(writer, "x < y  &\tz");
+		HtmlEscaper.write(writer, null);
+		writer.write("]");
+		assertEquals("[x &lt; y&nbsp;&nbsp;&amp;&nbsp;&nbsp;&nbsp;&nbsp;z]", writer.toString());
+	}
+}